@@ -9653,7 +9653,7 @@ public void compile(ICompilerContext context, int insn) {
 	// Use the interpreter if we need an accurate "dot" implementation
 	if (useAccurateVfpuDot) {
 		super.compile(context, insn);
-	} else {
+	} else if (!context.compileVMatrixMultiply(context.getVsize())) {
 		int vsize = context.getVsize();
 		if (vsize > 1) {
 		    context.startPfxCompiled();
@@ -9714,7 +9714,10 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	// Use the interpreter if we need an accurate "dot" implementation
+	if (useAccurateVfpuDot || !context.compileVMatrixTransform(2, true)) {
+		super.compile(context, insn);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -9745,7 +9748,10 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	// Use the interpreter if we need an accurate "dot" implementation
+	if (useAccurateVfpuDot || !context.compileVMatrixTransform(2, false)) {
+		super.compile(context, insn);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -9776,7 +9782,10 @@ public void interpret(Processor processor, int insn) {
 }
 @Override
 public void compile(ICompilerContext context, int insn) {
-	super.compile(context, insn);
+	// Use the interpreter if we need an accurate "dot" implementation
+	if (useAccurateVfpuDot || !context.compileVMatrixTransform(3, true)) {
+		super.compile(context, insn);
+	}
 }
 @Override
 public String disasm(int address, int insn) {
@@ -9810,7 +9819,7 @@ public void compile(ICompilerContext context, int insn) {
 	// Use the interpreter if we need an accurate "dot" implementation
 	if (useAccurateVfpuDot) {
 		super.compile(context, insn);
-	} else {
+	} else if (!context.compileVMatrixTransform(3, false)) {
 		final int vsize = 3;
 		final int vs = context.getVsRegisterIndex();
 		MethodVisitor mv = context.getMethodVisitor();
@@ -9869,7 +9878,7 @@ public void compile(ICompilerContext context, int insn) {
 	// Use the interpreter if we need an accurate "dot" implementation
 	if (useAccurateVfpuDot) {
 		super.compile(context, insn);
-	} else {
+	} else if (!context.compileVMatrixTransform(4, true)) {
 		final int vsize = 4;
 		final int vs = context.getVsRegisterIndex();
 		MethodVisitor mv = context.getMethodVisitor();
@@ -9930,7 +9939,7 @@ public void compile(ICompilerContext context, int insn) {
 	// Use the interpreter if we need an accurate "dot" implementation
 	if (useAccurateVfpuDot) {
 		super.compile(context, insn);
-	} else {
+	} else if (!context.compileVMatrixTransform(4, false)) {
 		final int vsize = 4;
 		final int vs = context.getVsRegisterIndex();
 		MethodVisitor mv = context.getMethodVisitor();
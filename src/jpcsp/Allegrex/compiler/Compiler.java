@@ -150,11 +150,15 @@ public class Compiler implements ICompiler {
 	private Document configuration;
 	private NativeCodeManager nativeCodeManager;
     private boolean ignoreInvalidMemory = false;
+    private boolean chainJumps = true;
+    private boolean registerCaching = true;
     public int defaultMethodMaxInstructions = 3000;
     private static final int maxRecompileExecutable = 50;
     private CompilerTypeManager compilerTypeManager;
     private HashSet<Integer> interpretedAddresses = new HashSet<Integer>();
     private Set<Integer> useMMIOAddresses = new HashSet<Integer>();
+    // Addresses of the instructions having accessed memory pages with watchpoints
+    private Set<Integer> watchpointCheckAddresses = new HashSet<Integer>();
 
 	private class IgnoreInvalidMemoryAccessSettingsListerner extends AbstractBoolSettingsListener {
 		@Override
@@ -163,6 +167,20 @@ public class Compiler implements ICompiler {
 		}
 	}
 
+	private class ChainJumpsSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setChainJumps(value);
+		}
+	}
+
+	private class RegisterCachingSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setRegisterCaching(value);
+		}
+	}
+
 	private class MethodMaxInstructionsSettingsListerner extends AbstractIntSettingsListener {
 		@Override
 		protected void settingsValueChanged(int value) {
@@ -178,6 +196,32 @@ public class Compiler implements ICompiler {
         ignoreInvalidMemory = enable;
     }
 
+    /**
+     * @return true if the compiled code blocks can call directly the code block
+     *         of a statically known jump target which is not part of the block,
+     *         instead of returning to the dispatcher (RuntimeContext.jump()).
+     */
+    public boolean isChainJumps() {
+    	return chainJumps;
+    }
+
+    private void setChainJumps(boolean chainJumps) {
+    	this.chainJumps = chainJumps;
+    }
+
+    /**
+     * @return true if the GPRs can be kept in local variables of the
+     *         compiled methods across consecutive simple instructions,
+     *         instead of being read and written in the CpuState by each instruction.
+     */
+    public boolean isRegisterCaching() {
+    	return registerCaching;
+    }
+
+    private void setRegisterCaching(boolean registerCaching) {
+    	this.registerCaching = registerCaching;
+    }
+
 	public static Compiler getInstance() {
 		if (instance == null) {
 			instance = new Compiler();
@@ -315,6 +359,8 @@ public class Compiler implements ICompiler {
     private void Initialise() {
     	Settings.getInstance().registerSettingsListener("Compiler", "emu.ignoreInvalidMemoryAccess", new IgnoreInvalidMemoryAccessSettingsListerner());
     	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.methodMaxInstructions", new MethodMaxInstructionsSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.chainJumps", new ChainJumpsSettingsListerner());
+    	Settings.getInstance().registerSettingsListener("Compiler", "emu.compiler.registerCaching", new RegisterCachingSettingsListerner());
 
     	DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		documentBuilderFactory.setIgnoringElementContentWhitespace(true);
@@ -739,4 +785,31 @@ public class Compiler implements ICompiler {
 	public boolean isUsingMMIO(int address) {
 		return useMMIOAddresses.contains(address & Memory.addressMask);
 	}
+
+	/**
+	 * Register an instruction whose memory accesses have to be checked
+	 * by the DebuggerMemory when it is compiled.
+	 *
+	 * @param address  the instruction address
+	 * @return         true if the instruction was not yet registered
+	 */
+	public boolean addWatchpointCheck(int address) {
+		return watchpointCheckAddresses.add(address & Memory.addressMask);
+	}
+
+	public boolean isCheckingWatchpoints(int address) {
+		return watchpointCheckAddresses.contains(address & Memory.addressMask);
+	}
+
+	public boolean isCheckingWatchpoints(int lowestAddress, int highestAddress) {
+		lowestAddress &= Memory.addressMask;
+		highestAddress &= Memory.addressMask;
+		for (int address : watchpointCheckAddresses) {
+			if (address >= lowestAddress && address <= highestAddress) {
+				return true;
+			}
+		}
+
+		return false;
+	}
 }
@@ -102,6 +102,7 @@ import jpcsp.HLE.modules.ThreadManForUser;
 import jpcsp.HLE.modules.reboot;
 import jpcsp.memory.DebuggerMemory;
 import jpcsp.memory.FastMemory;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.SafeFastMemory;
 import jpcsp.util.ClassAnalyzer;
 import jpcsp.util.DurationStatistics;
@@ -143,6 +144,10 @@ public class CompilerContext implements ICompilerContext {
     private static final int LOCAL_FIRST_SAVED_PARAMETER = LOCAL_MAX;
     private static final int LOCAL_NUMBER_SAVED_PARAMETERS = 8;
     private static final int LOCAL_MAX_WITH_SAVED_PARAMETERS = LOCAL_FIRST_SAVED_PARAMETER + LOCAL_NUMBER_SAVED_PARAMETERS;
+    private static final int LOCAL_FIRST_CACHED_REGISTER = LOCAL_MAX_WITH_SAVED_PARAMETERS;
+    private static final int LOCAL_MAX_WITH_CACHED_REGISTERS = LOCAL_FIRST_CACHED_REGISTER + 32;
+    private static final int LOCAL_FIRST_VFPU_MATRIX = LOCAL_MAX_WITH_CACHED_REGISTERS;
+    private static final int LOCAL_MAX_WITH_VFPU_MATRIX = LOCAL_FIRST_VFPU_MATRIX + 32;
     private static final int DEFAULT_MAX_STACK_SIZE = 11;
     private static final int SYSCALL_MAX_STACK_SIZE = 100;
     private static final int LOCAL_ERROR_POINTER = LOCAL_TMP3;
@@ -154,6 +159,18 @@ public class CompilerContext implements ICompilerContext {
     private boolean memWritePrepared = false;
     private boolean hiloPrepared = false;
     private int methodMaxInstructions;
+    private boolean chainJumps;
+    private boolean registerCaching;
+    // Register caching state of the method being compiled:
+    // - registerCachingActive: the current instruction is accessing the GPRs through the cache
+    // - cachedRegisters: bit mask of the GPRs having their current value in a local variable
+    // - dirtyRegisters: bit mask of the cached GPRs modified since they have been loaded
+    private boolean registerCachingEnabled;
+    private boolean registerCachingActive;
+    private int cachedRegisters;
+    private int dirtyRegisters;
+    private boolean preparedRegisterForStoreCached;
+    private static Set<Instruction> registerCachingInstructions;
     private NativeCodeManager nativeCodeManager;
     private final VfpuPfxSrcState vfpuPfxsState = new VfpuPfxSrcState();
     private final VfpuPfxSrcState vfpuPfxtState = new VfpuPfxSrcState();
@@ -191,6 +208,8 @@ public class CompilerContext implements ICompilerContext {
         this.instanceIndex = instanceIndex;
         nativeCodeManager = compiler.getNativeCodeManager();
         methodMaxInstructions = compiler.getDefaultMethodMaxInstructions();
+        chainJumps = compiler.isChainJumps();
+        registerCaching = compiler.isRegisterCaching();
         compilerTypeManager = compiler.getCompilerTypeManager();
 
         // Count instructions only when the profile is enabled or
@@ -217,6 +236,29 @@ public class CompilerContext implements ICompilerContext {
 	        addFastSyscall(0x74AE582A); // __sceSasGetEnvelopeHeight
 	        addFastSyscall(0x68A46B95); // __sceSasGetEndFlag
         }
+
+        if (registerCachingInstructions == null) {
+        	// The instructions accessing the GPRs only through
+        	// loadRegister()/storeRegister() and not calling any
+        	// method reading or writing the CpuState.
+        	registerCachingInstructions = new HashSet<Instruction>(Arrays.asList(new Instruction[] {
+        			Instructions.ADD, Instructions.ADDU, Instructions.ADDI, Instructions.ADDIU,
+        			Instructions.SUB, Instructions.SUBU,
+        			Instructions.AND, Instructions.ANDI, Instructions.OR, Instructions.ORI,
+        			Instructions.XOR, Instructions.XORI, Instructions.NOR, Instructions.LUI,
+        			Instructions.SLL, Instructions.SRL, Instructions.SRA,
+        			Instructions.SLLV, Instructions.SRLV, Instructions.SRAV,
+        			Instructions.ROTR, Instructions.ROTRV,
+        			Instructions.SLT, Instructions.SLTI, Instructions.SLTU, Instructions.SLTIU,
+        			Instructions.MOVZ, Instructions.MOVN, Instructions.SEB, Instructions.SEH,
+        			Instructions.EXT, Instructions.INS, Instructions.CLZ, Instructions.CLO,
+        			Instructions.MAX, Instructions.MIN,
+        			Instructions.MFHI, Instructions.MFLO, Instructions.MTLO,
+        			Instructions.MULT, Instructions.MULTU,
+        			Instructions.LB, Instructions.LBU, Instructions.LH, Instructions.LHU, Instructions.LW,
+        			Instructions.SB, Instructions.SH, Instructions.SW
+        	}));
+        }
     }
 
     private void addFastSyscall(int nid) {
@@ -294,6 +336,8 @@ public class CompilerContext implements ICompilerContext {
     public void loadRegister(int reg) {
     	if (reg == _zr) {
     		loadImm(0);
+    	} else if (isCachedRegister(reg)) {
+    		mv.visitVarInsn(Opcodes.ILOAD, getCachedRegisterLocal(reg));
     	} else {
 	    	loadCpu();
 	        mv.visitFieldInsn(Opcodes.GETFIELD, cpuInternalName, getGprFieldName(reg), "I");
@@ -491,7 +535,10 @@ public class CompilerContext implements ICompilerContext {
 
     public void prepareRegisterForStore(int reg) {
     	if (preparedRegisterForStore < 0) {
-        	loadCpu();
+    		preparedRegisterForStoreCached = isCachedRegister(reg);
+    		if (!preparedRegisterForStoreCached) {
+    			loadCpu();
+    		}
     		preparedRegisterForStore = reg;
     	}
     }
@@ -502,8 +549,14 @@ public class CompilerContext implements ICompilerContext {
 
     public void storeRegister(int reg) {
     	if (preparedRegisterForStore == reg) {
-	        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    		if (preparedRegisterForStoreCached) {
+    			storeCachedRegister(reg);
+    		} else {
+    			mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    		}
 	        preparedRegisterForStore = -1;
+    	} else if (isCachedRegister(reg)) {
+    		storeCachedRegister(reg);
     	} else {
 	    	loadCpu();
 	        mv.visitInsn(Opcodes.SWAP);
@@ -513,13 +566,149 @@ public class CompilerContext implements ICompilerContext {
 
     @Override
     public void storeRegister(int reg, int constantValue) {
+    	boolean cached;
     	if (preparedRegisterForStore == reg) {
+    		cached = preparedRegisterForStoreCached;
     		preparedRegisterForStore = -1;
     	} else {
-    		loadCpu();
+    		cached = isCachedRegister(reg);
+    		if (!cached) {
+    			loadCpu();
+    		}
     	}
     	loadImm(constantValue);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    	if (cached) {
+    		storeCachedRegister(reg);
+    	} else {
+    		mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    	}
+    }
+
+    private boolean isRegisterCachingPossible() {
+    	if (!registerCaching) {
+    		return false;
+    	}
+
+    	// The debugger and the LLE/MMIO are reading the GPRs
+    	// while executing an instruction.
+    	if (RuntimeContext.enableDebugger || State.debugger != null || RuntimeContextLLE.isLLEActive() || RuntimeContextLLE.hasMMIO()) {
+    		return false;
+    	}
+
+    	// The DebuggerMemory can pause the emulator on a memory access,
+    	// unless only checking the watchpoints from the other code blocks.
+    	if (Memory.getInstance() instanceof DebuggerMemory && (!RuntimeContext.hasMemoryWatchpoints() || isCheckingWatchpoints())) {
+    		return false;
+    	}
+
+    	if (RuntimeContext.debugCodeInstruction || RuntimeContext.debugMemoryRead || RuntimeContext.debugMemoryWrite || RuntimeContext.checkCodeModification) {
+    		return false;
+    	}
+
+    	return true;
+    }
+
+    private boolean isRegisterCachingInstruction(CodeInstruction codeInstruction) {
+    	if (codeInstruction.getClass() != CodeInstruction.class) {
+    		// Sequences and native code instructions are calling other methods
+    		return false;
+    	}
+
+    	// The delay slot instruction is compiled as part of a branching instruction
+    	if (codeInstruction.isDelaySlot()) {
+    		return false;
+    	}
+
+    	return registerCachingInstructions.contains(codeInstruction.getInsn());
+    }
+
+    private boolean isCachedRegister(int reg) {
+    	return registerCachingActive && (cachedRegisters & (1 << reg)) != 0;
+    }
+
+    private int getCachedRegisterLocal(int reg) {
+    	return LOCAL_FIRST_CACHED_REGISTER + reg;
+    }
+
+    private void storeCachedRegister(int reg) {
+    	mv.visitVarInsn(Opcodes.ISTORE, getCachedRegisterLocal(reg));
+    	dirtyRegisters |= 1 << reg;
+    }
+
+    /**
+     * Load a GPR into its local variable, so that the following
+     * instructions of the same code region can access it without
+     * going through the CpuState.
+     * This must only be called at the start of an instruction so that the
+     * local variable is initialized on every path of the code region.
+     *
+     * @param reg  the GPR to be cached
+     */
+    private void cacheRegister(int reg) {
+    	if (reg == _zr || (cachedRegisters & (1 << reg)) != 0) {
+    		return;
+    	}
+
+    	loadCpu();
+        mv.visitFieldInsn(Opcodes.GETFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    	mv.visitVarInsn(Opcodes.ISTORE, getCachedRegisterLocal(reg));
+    	cachedRegisters |= 1 << reg;
+    	maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_CACHED_REGISTERS);
+    }
+
+    /**
+     * Cache a GPR which is only written by the current instruction:
+     * its current value is not needed, the local variable is initialized
+     * by the store of the instruction.
+     *
+     * @param reg  the GPR written by the current instruction
+     */
+    private void cacheWrittenRegister(int reg) {
+    	if (reg == _zr || (cachedRegisters & (1 << reg)) != 0) {
+    		return;
+    	}
+
+    	cachedRegisters |= 1 << reg;
+    	maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_CACHED_REGISTERS);
+    }
+
+    /**
+     * Check if the destination register of an instruction is only written
+     * (and unconditionally written) by this instruction.
+     *
+     * @param codeInstruction  the instruction
+     * @param reg              the destination register
+     * @param rs               the first source register
+     * @param rt               the second source register
+     * @return                 true if the current value of the destination
+     *                         register is not read by the instruction
+     */
+    private boolean isWriteOnlyRegister(CodeInstruction codeInstruction, int reg, int rs, int rt) {
+    	Instruction insn = codeInstruction.getInsn();
+    	// MOVZ/MOVN are writing rd only conditionally and INS is merging into rt
+    	if (insn == Instructions.MOVZ || insn == Instructions.MOVN || insn == Instructions.INS) {
+    		return false;
+    	}
+
+    	return reg != rs && reg != rt;
+    }
+
+    /**
+     * Write back the modified cached GPRs to the CpuState and end the
+     * current code region.
+     * The registers cached but not modified are just dropped.
+     */
+    private void spillCachedRegisters() {
+    	for (int reg = 1; dirtyRegisters != 0 && reg < 32; reg++) {
+    		if ((dirtyRegisters & (1 << reg)) != 0) {
+    			loadCpu();
+    			mv.visitVarInsn(Opcodes.ILOAD, getCachedRegisterLocal(reg));
+    	        mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, getGprFieldName(reg), "I");
+    	        dirtyRegisters &= ~(1 << reg);
+    		}
+    	}
+    	cachedRegisters = 0;
+    	registerCachingActive = false;
     }
 
     public void prepareFRegisterForStore(int reg) {
@@ -1073,7 +1262,7 @@ public class CompilerContext implements ICompilerContext {
     			}
     		}
 
-    		if (checkMemoryAccess() && afterSyscallLabel != null && !useMMIO()) {
+    		if (checkMemoryAccess() && !RuntimeContext.hasMemoryWatchpoints() && afterSyscallLabel != null && !useMMIO()) {
     			Label addressGood = new Label();
     			if (canBeNull) {
         			mv.visitInsn(Opcodes.DUP);
@@ -2149,6 +2338,11 @@ public class CompilerContext implements ICompilerContext {
     }
 
     public void startSequenceMethod() {
+    	registerCachingEnabled = isRegisterCachingPossible();
+    	registerCachingActive = false;
+    	cachedRegisters = 0;
+    	dirtyRegisters = 0;
+
         if (storeCpuLocal) {
             mv.visitFieldInsn(Opcodes.GETSTATIC, runtimeContextInternalName, "cpu", cpuDescriptor);
             mv.visitVarInsn(Opcodes.ASTORE, LOCAL_CPU);
@@ -2169,6 +2363,7 @@ public class CompilerContext implements ICompilerContext {
     }
 
     public void endSequenceMethod() {
+    	spillCachedRegisters();
     	flushInstructionCount(false, true);
         mv.visitInsn(Opcodes.RETURN);
     }
@@ -2302,6 +2497,14 @@ public class CompilerContext implements ICompilerContext {
 	    	// Force the instruction to emit a label
     		codeInstruction.getLabel(false);
     	}
+
+	    // A code region using cached registers is ending before a branch target
+	    // or before an instruction which could access the CpuState.
+	    if (registerCachingEnabled) {
+	    	if (codeInstruction.isBranchTarget() || !isRegisterCachingInstruction(codeInstruction)) {
+	    		spillCachedRegisters();
+	    	}
+	    }
     }
 
     private void startNonBranchingCodeSequence() {
@@ -2356,7 +2559,7 @@ public class CompilerContext implements ICompilerContext {
     	}
 
 		// The pc is used by the DebuggerMemory or the LLE/MMIO
-    	if (Memory.getInstance() instanceof DebuggerMemory || RuntimeContextLLE.isLLEActive() || RuntimeContextLLE.hasMMIO()) {
+    	if ((Memory.getInstance() instanceof DebuggerMemory && (!RuntimeContext.hasMemoryWatchpoints() || isCheckingWatchpoints())) || RuntimeContextLLE.isLLEActive() || RuntimeContextLLE.hasMMIO()) {
     		storePc();
     	}
 
@@ -2378,7 +2581,7 @@ public class CompilerContext implements ICompilerContext {
 	    	}
 	    }
 
-	    if (RuntimeContext.enableDebugger) {
+	    if (RuntimeContext.enableDebugger || isCheckingWatchpoints()) {
 	    	loadImm(codeInstruction.getAddress());
             invokeStaticMethod(runtimeContextInternalName, RuntimeContext.debuggerName, "(I)V");
 	    }
@@ -2412,6 +2615,32 @@ public class CompilerContext implements ICompilerContext {
 	    if (codeInstruction.hasFlags(Instruction.FLAG_CONSUMES_VFPU_PFXT)) {
             disablePfxSrc(vfpuPfxtState);
         }
+
+	    if (registerCachingEnabled && isRegisterCachingInstruction(codeInstruction)) {
+	    	registerCachingActive = true;
+	    	int rs = codeInstruction.getRsRegisterIndex();
+	    	int rt = codeInstruction.getRtRegisterIndex();
+	    	if (codeInstruction.hasFlags(Instruction.FLAG_WRITES_RD)) {
+	    		int rd = codeInstruction.getRdRegisterIndex();
+	    		cacheRegister(rs);
+	    		cacheRegister(rt);
+	    		if (isWriteOnlyRegister(codeInstruction, rd, rs, rt)) {
+	    			cacheWrittenRegister(rd);
+	    		} else {
+	    			cacheRegister(rd);
+	    		}
+	    	} else if (codeInstruction.hasFlags(Instruction.FLAG_WRITES_RT)) {
+	    		cacheRegister(rs);
+	    		if (isWriteOnlyRegister(codeInstruction, rt, rs, _zr)) {
+	    			cacheWrittenRegister(rt);
+	    		} else {
+	    			cacheRegister(rt);
+	    		}
+	    	} else {
+	    		cacheRegister(rs);
+	    		cacheRegister(rt);
+	    	}
+	    }
     }
 
     private void disablePfxSrc(VfpuPfxSrcState pfxSrcState) {
@@ -2464,20 +2693,49 @@ public class CompilerContext implements ICompilerContext {
     public void visitJump(int opcode, int address) {
         flushInstructionCount(true, false);
         if (opcode == Opcodes.GOTO) {
-            loadImm(address);
-            visitJump();
+            visitJumpToAddress(address);
         } else {
         	Label jumpTarget = new Label();
         	Label notJumpTarget = new Label();
         	mv.visitJumpInsn(opcode, jumpTarget);
         	mv.visitJumpInsn(Opcodes.GOTO, notJumpTarget);
         	mv.visitLabel(jumpTarget);
-        	loadImm(address);
-        	visitJump();
+        	visitJumpToAddress(address);
         	mv.visitLabel(notJumpTarget);
         }
     }
 
+    private boolean canChainJump(int address) {
+    	if (!chainJumps || !Memory.isAddressGood(address) || Compiler.getInstance().isUsingMMIO(address)) {
+    		return false;
+    	}
+
+    	// Only jumps to a code block starting after the current code block
+    	// are chained: the start addresses along a chain are then strictly
+    	// increasing, so a chain cannot loop, which bounds the depth
+    	// of the Java stack. Comparing with the address of the jump
+    	// instruction is not sufficient, as a code block can contain
+    	// instructions below its start address (in-block backward branches).
+    	// The other jumps are returning to the dispatcher.
+    	return address > getCodeBlock().getStartAddress();
+    }
+
+    private void visitJumpToAddress(int address) {
+    	if (canChainJump(address)) {
+    		//     return _S1_x_0xADDRESS.s();
+    		// The code block of the target address is checking itself
+    		// if it has been invalidated (see the replace field).
+        	flushInstructionCount(true, false);
+        	checkSync();
+        	endMethod();
+	        invokeStaticMethod(getClassName(address, instanceIndex), getStaticExecMethodName(), getStaticExecMethodDesc());
+	        mv.visitInsn(Opcodes.IRETURN);
+    	} else {
+    		loadImm(address);
+    		visitJump();
+    	}
+    }
+
     public static String getClassName(int address, int instanceIndex) {
     	return String.format("_S1_%d_0x%08X", instanceIndex, address);
     }
@@ -2781,6 +3039,24 @@ public class CompilerContext implements ICompilerContext {
 		}
 	}
 
+	/**
+	 * Store a value into memoryInt, the stack is expected to be "memoryInt, index, value".
+	 * The write is reported to the MemoryPageTracker after the store,
+	 * so that a reader cannot see the new generation with the old content.
+	 */
+	private void visitMemoryIntStore() {
+		if (MemoryPageTracker.isEnabled()) {
+			// memoryInt, index, value -> index, memoryInt, index, value
+			mv.visitInsn(Opcodes.SWAP);
+			mv.visitInsn(Opcodes.DUP_X2);
+			mv.visitInsn(Opcodes.SWAP);
+			mv.visitInsn(Opcodes.IASTORE);
+			invokeStaticMethod(Type.getInternalName(MemoryPageTracker.class), "writeMemoryInt", "(I)V");
+		} else {
+			mv.visitInsn(Opcodes.IASTORE);
+		}
+	}
+
 	private boolean useMMIO() {
 		if (codeInstruction == null) {
 			return false;
@@ -2788,11 +3064,38 @@ public class CompilerContext implements ICompilerContext {
 		return codeInstruction.useMMIO();
 	}
 
+	private boolean useMemoryInt() {
+		if (!RuntimeContext.hasMemoryInt()) {
+			return false;
+		}
+
+		// This instruction has accessed a memory page with watchpoints,
+		// its memory accesses are checked by the DebuggerMemory.
+		if (codeInstruction != null && RuntimeContext.hasMemoryWatchpoints() && Compiler.getInstance().isCheckingWatchpoints(codeInstruction.getAddress())) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The code blocks with instructions having accessed memory pages with
+	 * watchpoints are compiled with the pc and debugger updates,
+	 * as done when all the memory accesses are going through the DebuggerMemory.
+	 */
+	private boolean isCheckingWatchpoints() {
+		if (!RuntimeContext.hasMemoryWatchpoints()) {
+			return false;
+		}
+
+		return Compiler.getInstance().isCheckingWatchpoints(getCodeBlock().getLowestAddress(), getCodeBlock().getHighestAddress());
+	}
+
 	@Override
 	public void memRead32(int registerIndex, int offset, boolean align32) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -2800,7 +3103,7 @@ public class CompilerContext implements ICompilerContext {
 
 		prepareMemIndex(registerIndex, offset, true, 32, align32);
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "read32", "(I)I", false);
 		} else {
 			mv.visitInsn(Opcodes.IALOAD);
@@ -2811,7 +3114,7 @@ public class CompilerContext implements ICompilerContext {
 	public void memRead16(int registerIndex, int offset) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -2832,7 +3135,7 @@ public class CompilerContext implements ICompilerContext {
             invokeStaticMethod(runtimeContextInternalName, "debugMemoryReadWrite", "(IIIZI)V");
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "read16", "(I)I", false);
 		} else {
             if (checkMemoryAccess()) {
@@ -2867,7 +3170,7 @@ public class CompilerContext implements ICompilerContext {
 	public void memRead8(int registerIndex, int offset) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -2888,7 +3191,7 @@ public class CompilerContext implements ICompilerContext {
             invokeStaticMethod(runtimeContextInternalName, "debugMemoryReadWrite", "(IIIZI)V");
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "read8", "(I)I", false);
 		} else {
             if (checkMemoryAccess()) {
@@ -2935,8 +3238,8 @@ public class CompilerContext implements ICompilerContext {
 			}
 		}
 
-		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
-			if (registerIndex == _sp) {
+		if (!useMMIO() && useMemoryInt()) {
+			if (registerIndex == _sp && !RuntimeContext.hasMemoryWatchpoints()) {
 				if (isCodeInstructionInKernelMemory()) {
 					// In kernel memory, the $sp value can have the flag 0x80000000.
 	    			// memoryInt[(address & 0x1FFFFFFF) / 4] == memoryInt[(address << 3) >>> 5]
@@ -2972,7 +3275,7 @@ public class CompilerContext implements ICompilerContext {
 	public void prepareMemWrite32(int registerIndex, int offset, boolean align32) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -2988,7 +3291,7 @@ public class CompilerContext implements ICompilerContext {
 		if (!memWritePrepared) {
 			if (useMMIO()) {
 				loadMMIO();
-			} else if (!RuntimeContext.hasMemoryInt()) {
+			} else if (!useMemoryInt()) {
 				loadMemory();
 			} else {
 				loadMemoryInt();
@@ -3025,10 +3328,10 @@ public class CompilerContext implements ICompilerContext {
 			}
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "write32", "(II)V", false);
 		} else {
-			mv.visitInsn(Opcodes.IASTORE);
+			visitMemoryIntStore();
 		}
 
 		memWritePrepared = false;
@@ -3038,7 +3341,7 @@ public class CompilerContext implements ICompilerContext {
 	public void prepareMemWrite16(int registerIndex, int offset) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -3050,7 +3353,7 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.IADD);
 		}
 
-		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
+		if (!useMMIO() && useMemoryInt()) {
 			if (checkMemoryAccess()) {
 				loadImm(codeInstruction.getAddress());
 				invokeStaticMethod(runtimeContextInternalName, "checkMemoryWrite16", "(II)I");
@@ -3065,7 +3368,7 @@ public class CompilerContext implements ICompilerContext {
 		if (!memWritePrepared) {
 			if (useMMIO()) {
 				loadMMIO();
-			} else if (!RuntimeContext.hasMemoryInt()) {
+			} else if (!useMemoryInt()) {
 				loadMemory();
 			} else {
 				loadMemoryInt();
@@ -3078,7 +3381,7 @@ public class CompilerContext implements ICompilerContext {
 				mv.visitInsn(Opcodes.IADD);
 			}
 
-			if (RuntimeContext.hasMemoryInt()) {
+			if (useMemoryInt()) {
 				if (checkMemoryAccess()) {
 					loadImm(codeInstruction.getAddress());
 					invokeStaticMethod(runtimeContextInternalName, "checkMemoryWrite16", "(II)I");
@@ -3087,7 +3390,7 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.SWAP);
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "write16", "(IS)V", false);
 		} else {
 			// tmp2 = value & 0xFFFF;
@@ -3123,7 +3426,7 @@ public class CompilerContext implements ICompilerContext {
 			loadTmp1();
 			mv.visitInsn(Opcodes.ISHL);
 			mv.visitInsn(Opcodes.IOR);
-			mv.visitInsn(Opcodes.IASTORE);
+			visitMemoryIntStore();
 		}
 
 		memWritePrepared = false;
@@ -3133,7 +3436,7 @@ public class CompilerContext implements ICompilerContext {
 	public void prepareMemWrite8(int registerIndex, int offset) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -3145,7 +3448,7 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.IADD);
 		}
 
-		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
+		if (!useMMIO() && useMemoryInt()) {
 			if (checkMemoryAccess()) {
 				loadImm(codeInstruction.getAddress());
 				invokeStaticMethod(runtimeContextInternalName, "checkMemoryWrite8", "(II)I");
@@ -3160,7 +3463,7 @@ public class CompilerContext implements ICompilerContext {
 		if (!memWritePrepared) {
 			if (useMMIO()) {
 				loadMMIO();
-			} else if (!RuntimeContext.hasMemoryInt()) {
+			} else if (!useMemoryInt()) {
 				loadMemory();
 			} else {
 				loadMemoryInt();
@@ -3173,7 +3476,7 @@ public class CompilerContext implements ICompilerContext {
 				mv.visitInsn(Opcodes.IADD);
 			}
 
-			if (RuntimeContext.hasMemoryInt()) {
+			if (useMemoryInt()) {
 				if (checkMemoryAccess()) {
 					loadImm(codeInstruction.getAddress());
 					invokeStaticMethod(runtimeContextInternalName, "checkMemoryWrite8", "(II)I");
@@ -3182,7 +3485,7 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.SWAP);
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "write8", "(IB)V", false);
 		} else {
 			// tmp2 = value & 0xFF;
@@ -3218,7 +3521,7 @@ public class CompilerContext implements ICompilerContext {
 			loadTmp1();
 			mv.visitInsn(Opcodes.ISHL);
 			mv.visitInsn(Opcodes.IOR);
-			mv.visitInsn(Opcodes.IASTORE);
+			visitMemoryIntStore();
 		}
 
 		memWritePrepared = false;
@@ -3228,7 +3531,7 @@ public class CompilerContext implements ICompilerContext {
 	public void memWriteZero8(int registerIndex, int offset) {
 		if (useMMIO()) {
 			loadMMIO();
-		} else if (!RuntimeContext.hasMemoryInt()) {
+		} else if (!useMemoryInt()) {
 			loadMemory();
 		} else {
 			loadMemoryInt();
@@ -3240,14 +3543,14 @@ public class CompilerContext implements ICompilerContext {
 			mv.visitInsn(Opcodes.IADD);
 		}
 
-		if (!useMMIO() && RuntimeContext.hasMemoryInt()) {
+		if (!useMMIO() && useMemoryInt()) {
 			if (checkMemoryAccess()) {
 				loadImm(codeInstruction.getAddress());
 				invokeStaticMethod(runtimeContextInternalName, "checkMemoryWrite8", "(II)I");
 			}
 		}
 
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt()) {
 			loadImm(0);
 	        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, memoryInternalName, "write8", "(IB)V", false);
 		} else {
@@ -3276,7 +3579,7 @@ public class CompilerContext implements ICompilerContext {
 			loadImm(-1);
 			mv.visitInsn(Opcodes.IXOR);
 			mv.visitInsn(Opcodes.IAND);
-			mv.visitInsn(Opcodes.IASTORE);
+			visitMemoryIntStore();
 		}
 	}
 
@@ -3301,7 +3604,7 @@ public class CompilerContext implements ICompilerContext {
     }
 
     private boolean checkMemoryAccess() {
-        if (!RuntimeContext.hasMemoryInt()) {
+        if (!useMemoryInt()) {
             return false;
         }
 
@@ -3309,6 +3612,11 @@ public class CompilerContext implements ICompilerContext {
             return true;
         }
 
+        // The memory check methods are also checking the watchpoints
+        if (RuntimeContext.hasMemoryWatchpoints()) {
+        	return true;
+        }
+
         return false;
     }
 
@@ -4200,17 +4508,149 @@ public class CompilerContext implements ICompilerContext {
 		}
 	}
 
+	private int getVfpuMatrixLocal(int matrix, int row, int n) {
+		return LOCAL_FIRST_VFPU_MATRIX + (matrix << 4) + (row << 2) + n;
+	}
+
+	private void loadVfpuMatrixLocal(int matrix, int row, int n) {
+		mv.visitVarInsn(Opcodes.FLOAD, getVfpuMatrixLocal(matrix, row, n));
+	}
+
+	private void storeVfpuMatrixLocal(int matrix, int row, int n) {
+		mv.visitVarInsn(Opcodes.FSTORE, getVfpuMatrixLocal(matrix, row, n));
+		maxLocalSize = Math.max(maxLocalSize, LOCAL_MAX_WITH_VFPU_MATRIX);
+	}
+
+	/**
+	 * Compile a VMMUL instruction as one fused block of float operations:
+	 * the vs and vt matrices are first loaded into local variables,
+	 * each element of the vd matrix is then computed from the locals and
+	 * stored directly.
+	 * As all the source elements are read before storing any result,
+	 * the vd matrix can overlap the vs or vt matrices.
+	 *
+	 * @param vsize   the matrix size (2, 3 or 4)
+	 * @return        true if the instruction could be compiled,
+	 *                false if a prefix is enabled.
+	 */
+	@Override
+	public boolean compileVMatrixMultiply(int vsize) {
+		if (vsize < 2 || !hasNoPfx()) {
+			return false;
+		}
+
+		final int vs = getVsRegisterIndex();
+		final int vt = getVtRegisterIndex();
+		final int vd = getVdRegisterIndex();
+
+		// Fallback to the interpreter if a prefix is only known at runtime
+		startPfxCompiled();
+		pfxVdOverlap = false;
+
+		for (int i = 0; i < vsize; i++) {
+			for (int n = 0; n < vsize; n++) {
+				loadVs(vsize, vs + i, n);
+				storeVfpuMatrixLocal(0, i, n);
+				loadVt(vsize, vt + i, n);
+				storeVfpuMatrixLocal(1, i, n);
+			}
+		}
+
+		for (int i = 0; i < vsize; i++) {
+			for (int j = 0; j < vsize; j++) {
+				prepareVdForStore(vsize, vd + i, j);
+				for (int n = 0; n < vsize; n++) {
+					loadVfpuMatrixLocal(0, j, n);
+					loadVfpuMatrixLocal(1, i, n);
+					mv.visitInsn(Opcodes.FMUL);
+					if (n > 0) {
+						mv.visitInsn(Opcodes.FADD);
+					}
+				}
+				storeVd(vsize, vd + i, j);
+			}
+		}
+
+		endPfxCompiled(vsize, true, false);
+
+		return true;
+	}
+
+	/**
+	 * Compile a VTFMn or VHTFMn instruction as one fused block of float operations:
+	 * the vs matrix and the vt vector are first loaded into local variables,
+	 * each element of the vd vector is then computed from the locals and
+	 * stored directly.
+	 *
+	 * @param vsize        the matrix size (2, 3 or 4)
+	 * @param homogeneous  true for VHTFMn, where the vt vector has only (vsize - 1) elements
+	 *                     and the last matrix column is added to the result
+	 * @return             true if the instruction could be compiled,
+	 *                     false if a prefix is enabled.
+	 */
+	@Override
+	public boolean compileVMatrixTransform(int vsize, boolean homogeneous) {
+		if (vsize < 2 || !hasNoPfx()) {
+			return false;
+		}
+
+		final int vs = getVsRegisterIndex();
+		final int vt = getVtRegisterIndex();
+		final int vtsize = homogeneous ? vsize - 1 : vsize;
+
+		// Fallback to the interpreter if a prefix is only known at runtime
+		startPfxCompiled();
+		pfxVdOverlap = false;
+
+		for (int n = 0; n < vtsize; n++) {
+			loadVt(vtsize, vt, n);
+			storeVfpuMatrixLocal(1, 0, n);
+		}
+		for (int i = 0; i < vsize; i++) {
+			for (int n = 0; n < vsize; n++) {
+				loadVs(vsize, vs + i, n);
+				storeVfpuMatrixLocal(0, i, n);
+			}
+		}
+
+		for (int i = 0; i < vsize; i++) {
+			prepareVdForStore(vsize, i);
+			for (int n = 0; n < vtsize; n++) {
+				loadVfpuMatrixLocal(0, i, n);
+				loadVfpuMatrixLocal(1, 0, n);
+				mv.visitInsn(Opcodes.FMUL);
+				if (n > 0) {
+					mv.visitInsn(Opcodes.FADD);
+				}
+			}
+			if (homogeneous) {
+				loadVfpuMatrixLocal(0, i, vsize - 1);
+				mv.visitInsn(Opcodes.FADD);
+			}
+			storeVd(vsize, i);
+		}
+
+		endPfxCompiled(vsize, true, false);
+
+		return true;
+	}
+
 	public void visitHook(NativeCodeSequence nativeCodeSequence) {
 		invokeStaticMethod(Type.getInternalName(nativeCodeSequence.getNativeCodeSequenceClass()), nativeCodeSequence.getMethodName(), "()V");
 	}
 
 	@Override
 	public boolean compileVFPULoad(int registerIndex, int offset, int vt, int count) {
-		if (!RuntimeContext.hasMemoryInt()) {
+		if (!useMemoryInt()) {
 			// Can only generate an optimized code sequence for memoryInt
 			return false;
 		}
 
+		if (RuntimeContext.hasMemoryWatchpoints()) {
+			// Each word has to be checked for a watchpoint
+			return false;
+		}
+
 		if ((vt & 32) != 0) {
 		    // Optimization possible only for column access
 			return false;
@@ -4265,11 +4705,21 @@ public class CompilerContext implements ICompilerContext {
 
 	@Override
 	public boolean compileVFPUStore(int registerIndex, int offset, int vt, int count) {
-		if (!RuntimeContext.hasMemoryInt()) {
+		if (!useMemoryInt()) {
 			// Can only generate an optimized code sequence for memoryInt
 			return false;
 		}
 
+		if (RuntimeContext.hasMemoryWatchpoints()) {
+			// Each word has to be checked for a watchpoint
+			return false;
+		}
+
+		if (MemoryPageTracker.isEnabled()) {
+			// The System.arraycopy would not be reported to the MemoryPageTracker
+			return false;
+		}
+
 		if ((vt & 32) != 0) {
 		    // Optimization possible only for column access
 			return false;
@@ -4352,6 +4802,10 @@ public class CompilerContext implements ICompilerContext {
 		if (!RuntimeContext.hasMemoryInt()) {
 			return;
 		}
+		// The $sp accesses have to be checked for watchpoints
+		if (RuntimeContext.hasMemoryWatchpoints()) {
+			return;
+		}
 		// Disable optimizations when the profiler is enabled.
 		if (Profiler.isProfilerEnabled()) {
 			return;
@@ -4517,6 +4971,11 @@ public class CompilerContext implements ICompilerContext {
 	 *         false if the sequence could not be compiled
 	 */
 	private boolean compileSWsequenceZR(int baseRegister, int[] offsets, int[] registers) {
+		if (MemoryPageTracker.isEnabled()) {
+			// The System.arraycopy would not be reported to the MemoryPageTracker
+			return false;
+		}
+
 		for (int i = 0; i < registers.length; i++) {
 			if (registers[i] != _zr) {
 				return false;
@@ -4557,7 +5016,7 @@ public class CompilerContext implements ICompilerContext {
 
 	private boolean compileSWLWsequence(int baseRegister, int[] offsets, int[] registers, boolean isLW) {
 		// Optimization only possible for memoryInt
-		if (useMMIO() || !RuntimeContext.hasMemoryInt()) {
+		if (useMMIO() || !useMemoryInt() || RuntimeContext.hasMemoryWatchpoints()) {
 			return false;
 		}
 		// Disable optimizations when the profiler is enabled.
@@ -4599,7 +5058,7 @@ public class CompilerContext implements ICompilerContext {
     			loadMemoryInt();
     			loadTmp1();
     			loadRegister(rt);
-    			mv.visitInsn(Opcodes.IASTORE);
+    			visitMemoryIntStore();
     		}
     	}
 
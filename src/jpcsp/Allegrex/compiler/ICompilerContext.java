@@ -174,6 +174,8 @@ public interface ICompilerContext {
     public void skipInstructions(int numberInstructionsToBeSkipped, boolean skipDelaySlot);
     public boolean compileSWsequence(int baseRegister, int[] offsets, int[] registers);
     public boolean compileLWsequence(int baseRegister, int[] offsets, int[] registers);
+    public boolean compileVMatrixMultiply(int vsize);
+    public boolean compileVMatrixTransform(int vsize, boolean homogeneous);
     public void storePc();
     public void loadLocalVar(int localVar);
     public void loadProcessor();
@@ -18,6 +18,7 @@ package jpcsp.Allegrex.compiler;
 
 import jpcsp.Memory;
 import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 
 /**
@@ -29,6 +30,7 @@ public class MemoryRange {
 	private int rawAddress;
 	private int length;
 	private int[] values;
+	private long generation = MemoryPageTracker.UNKNOWN_GENERATION;
 
 	public MemoryRange(int address, int length) {
 		setAddress(address);
@@ -42,6 +44,7 @@ public class MemoryRange {
 	public void setAddress(int address) {
 		this.address = address & Memory.addressMask;
 		rawAddress = address;
+		generation = MemoryPageTracker.UNKNOWN_GENERATION;
 	}
 
 	public int getLength() {
@@ -50,10 +53,12 @@ public class MemoryRange {
 
 	public void setLength(int length) {
 		this.length = length;
+		generation = MemoryPageTracker.UNKNOWN_GENERATION;
 	}
 
 	public void updateValues() {
 		values = new int[length >> 2];
+		generation = MemoryPageTracker.getGeneration(rawAddress, length);
 
 		if (RuntimeContext.hasMemoryInt(address)) {
 			System.arraycopy(RuntimeContext.getMemoryInt(), address >> 2, values, 0, values.length);
@@ -75,7 +80,7 @@ public class MemoryRange {
 	}
 
 	public void extendTop(int size) {
-		length += size;
+		setLength(length + size);
 	}
 
 	public int getValue(int address) {
@@ -83,6 +88,12 @@ public class MemoryRange {
 	}
 
 	public boolean areValuesChanged() {
+		// No need to compare the values when the memory range has not been written
+		long currentGeneration = MemoryPageTracker.getGeneration(rawAddress, length);
+		if (currentGeneration != MemoryPageTracker.UNKNOWN_GENERATION && currentGeneration == generation) {
+			return false;
+		}
+
 		if (RuntimeContext.hasMemoryInt(address)) {
 			// Optimized for the most common case (i.e. using memoryInt)
 			int[] memoryInt = RuntimeContext.getMemoryInt();
@@ -101,6 +112,9 @@ public class MemoryRange {
 			}
 		}
 
+		// The pages have been written but the values are unchanged
+		generation = currentGeneration;
+
 		return false;
 	}
 
@@ -135,6 +149,7 @@ public class MemoryRange {
 
 	public void free() {
 		values = null;
+		generation = MemoryPageTracker.UNKNOWN_GENERATION;
 	}
 
 	@Override
@@ -20,8 +20,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import jpcsp.Allegrex.Decoder;
 import jpcsp.Allegrex.compiler.nativeCode.NativeCodeManager;
 import jpcsp.Allegrex.compiler.nativeCode.NativeCodeSequence;
 import jpcsp.settings.AbstractBoolSettingsListener;
@@ -46,6 +49,10 @@ public class Profiler {
     private static final int backBranchMaxLength = 100;
     private static final int backBranchContextBefore = 5;
     private static final int backBranchContextAfter = 3;
+    private static final long nativeCodeCandidateMinBackBranchCount = 1000;
+    private static final int nativeCodeCandidateMaxLoopLength = 32;
+    private static final int nativeCodeCandidateMaxCodeBlockLength = 64;
+    private static final int nativeCodeCandidateMaxCount = 20;
     private static ProfilerEnabledSettingsListerner profilerEnabledSettingsListerner;
     private static int compilationCount;
     private static long compilationTimeMicros;
@@ -119,6 +126,90 @@ public class Profiler {
             logCodeBlock(codeBlock, allCycles, instructionCount, callCount, count, sortedBackBranches);
             count++;
         }
+
+        if (Settings.getInstance().readBool("emu.compiler.nativeCodeDiscovery")) {
+            logNativeCodeCandidates(sortedCodeBlocks, sortedBackBranches);
+        }
+    }
+
+    /**
+     * Log the hot loops which could be replaced by a new native code sequence,
+     * as a Compiler.xml skeleton: small code blocks without any call,
+     * whose loop is short and is accessing the memory.
+     */
+    private static void logNativeCodeCandidates(List<CodeBlock> codeBlocks, List<Integer> sortedBackBranches) {
+        NativeCodeManager nativeCodeManager = Compiler.getInstance().getNativeCodeManager();
+        Set<Integer> loggedCodeBlocks = new HashSet<Integer>();
+
+        for (int address : sortedBackBranches) {
+            if (backBranchCounts.get(address) < nativeCodeCandidateMinBackBranchCount || loggedCodeBlocks.size() >= nativeCodeCandidateMaxCount) {
+                break;
+            }
+
+            for (CodeBlock codeBlock : codeBlocks) {
+                int lowestAddress = codeBlock.getLowestAddress();
+                int highestAddress = codeBlock.getHighestAddress();
+                if (address < lowestAddress || address > highestAddress) {
+                    continue;
+                }
+                CodeInstruction codeInstruction = codeBlock.getCodeInstruction(address);
+                if (codeInstruction == null) {
+                    continue;
+                }
+
+                int branchingToAddress = codeInstruction.getBranchingTo();
+                int loopLength = (address - branchingToAddress) / 4 + 2;
+                int length = (highestAddress - lowestAddress) / 4 + 1;
+                if (loopLength > nativeCodeCandidateMaxLoopLength || length > nativeCodeCandidateMaxCodeBlockLength) {
+                    continue;
+                }
+                if (loggedCodeBlocks.contains(lowestAddress) || nativeCodeManager.getCompiledNativeCodeBlock(codeBlock.getStartAddress()) != null) {
+                    continue;
+                }
+                if (!isAccessingMemory(codeBlock, branchingToAddress, address + 4) || isCalling(codeBlock, lowestAddress, highestAddress)) {
+                    continue;
+                }
+
+                loggedCodeBlocks.add(lowestAddress);
+                log.info(String.format("Native code sequence candidate: loop %08X - %08X executed %,d times", branchingToAddress, address, backBranchCounts.get(address)));
+                log.info(String.format("\t<NativeCodeSequence name=\"candidate_%08X\">", lowestAddress));
+                log.info("\t\t<Class></Class>");
+                log.info("\t\t<IsReturning>true</IsReturning>");
+                log.info("\t\t<CodeInstructions><![CDATA[");
+                for (int instructionAddress = lowestAddress; instructionAddress <= highestAddress; instructionAddress += 4) {
+                    int opcode = codeBlock.getCodeInstructionOpcode(instructionAddress);
+                    log.info(String.format("%08X:[%08X]: %s", instructionAddress, opcode, Decoder.instruction(opcode).disasm(instructionAddress, opcode)));
+                }
+                log.info("]]></CodeInstructions>");
+                log.info("\t</NativeCodeSequence>");
+            }
+        }
+    }
+
+    private static boolean isAccessingMemory(CodeBlock codeBlock, int startAddress, int endAddress) {
+        for (int address = startAddress; address <= endAddress; address += 4) {
+            int op = codeBlock.getCodeInstructionOpcode(address) >>> 26;
+            // Load/store instructions, including lwc1/swc1 and the VFPU lv/sv
+            if ((op >= 0x20 && op <= 0x2E) || op == 0x31 || op == 0x32 || op == 0x36 || op == 0x39 || op == 0x3A || op == 0x3E) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCalling(CodeBlock codeBlock, int startAddress, int endAddress) {
+        for (int address = startAddress; address <= endAddress; address += 4) {
+            int opcode = codeBlock.getCodeInstructionOpcode(address);
+            int op = opcode >>> 26;
+            int funct = opcode & 0x3F;
+            // jal, jalr and syscall
+            if (op == 0x03 || (op == 0x00 && (funct == 0x09 || funct == 0x0C))) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     private static void logCodeBlock(CodeBlock codeBlock, long allCycles, long instructionCount, long callCount, int count, List<Integer> sortedBackBranches) {
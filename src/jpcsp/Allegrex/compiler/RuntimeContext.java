@@ -29,8 +29,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
 
+import jpcsp.Clock;
 import jpcsp.Emulator;
+import jpcsp.FastForwardClock;
 import jpcsp.Memory;
 import jpcsp.MemoryMap;
 import jpcsp.Processor;
@@ -50,8 +55,11 @@ import jpcsp.HLE.modules.ThreadManForUser;
 import jpcsp.HLE.modules.reboot;
 import jpcsp.HLE.modules.sceDisplay;
 import jpcsp.graphics.RE.externalge.ExternalGE;
+import jpcsp.graphics.VideoEngine;
 import jpcsp.mediaengine.MEProcessor;
+import jpcsp.Debugger.MemoryBreakpoints.MemoryBreakpoint;
 import jpcsp.memory.DebuggerMemory;
+import jpcsp.memory.MemoryWatchpoints;
 import jpcsp.memory.mmio.MMIOHandlerDisplayController;
 import jpcsp.scheduler.Scheduler;
 import jpcsp.settings.AbstractBoolSettingsListener;
@@ -78,6 +86,8 @@ public class RuntimeContext {
 	public  static Processor processor;
 	public  static CpuState cpu;
 	public  static Memory memory;
+	// Not null when the compiled code is accessing memoryInt but has to check the DebuggerMemory watchpoints
+	private static MemoryWatchpoints memoryWatchpoints;
 	public  static       boolean enableDebugger = true;
 	public  static final String debuggerName = "syncDebugger";
 	public  static       boolean debugCodeBlockCalls = false;
@@ -98,6 +108,9 @@ public class RuntimeContext {
 	public  static final boolean checkCodeModification = false;
 	private static final boolean invalidateAllCodeBlocks = false;
 	private static final int idleSleepMicros = 1000;
+	// Maximum duration of an idle park, only as a safety net:
+	// the parked threads are woken up by the events ending the idle state.
+	private static final int idleMaxParkMicros = 100000;
 	private static final Map<Integer, CodeBlock> codeBlocks = Collections.synchronizedMap(new HashMap<Integer, CodeBlock>());
 	private static int codeBlocksLowestAddress = Integer.MAX_VALUE;
 	private static int codeBlocksHighestAddress = Integer.MIN_VALUE;
@@ -127,6 +140,7 @@ public class RuntimeContext {
 	private static RuntimeThread syscallRuntimeThread;
 	private static sceDisplay sceDisplayModule;
 	private static final Object idleSyncObject = new Object();
+	private static final Set<Thread> idleParkedThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
 	public static int firmwareVersion;
 	private static boolean isHomebrew = false;
 	public static boolean javaThreadScheduling = true;
@@ -395,7 +409,7 @@ public class RuntimeContext {
     }
 
     private static void initialiseDebugger() {
-        if (State.debugger != null || (memory instanceof DebuggerMemory) || debugMemoryRead || debugMemoryWrite) {
+        if (State.debugger != null || (memory instanceof DebuggerMemory && memoryWatchpoints == null) || debugMemoryRead || debugMemoryWrite) {
         	enableDebugger = true;
         } else {
         	enableDebugger = false;
@@ -419,6 +433,7 @@ public class RuntimeContext {
         initialiseDebugger();
 
         Profiler.initialise();
+        SamplingProfiler.initialise();
 
         sceDisplayModule = Modules.sceDisplayModule;
 
@@ -505,6 +520,56 @@ public class RuntimeContext {
     public static void updateMemory() {
         memory = Emulator.getMemory();
         memoryInt = memory.getMemoryInt(0);
+        memoryWatchpoints = null;
+
+        if (memory instanceof DebuggerMemory) {
+        	DebuggerMemory debuggerMemory = (DebuggerMemory) memory;
+        	if (debuggerMemory.isCheckingWatchpointsOnly()) {
+        		// The compiled code can access the memory directly
+        		// and has only to check the pages having watchpoints.
+        		memoryInt = debuggerMemory.getDebuggedMemory().getMemoryInt(0);
+        		if (memoryInt != null) {
+        			memoryWatchpoints = debuggerMemory.getWatchpoints();
+        		}
+        	}
+        }
+    }
+
+    public static boolean hasMemoryWatchpoints() {
+    	return memoryWatchpoints != null;
+    }
+
+    public static void onDebuggerMemoryChanged() {
+    	updateMemory();
+    	initialiseDebugger();
+
+    	// Recompile all the code blocks for the new memory checks
+		Compiler compiler = Compiler.getInstance();
+		for (CodeBlock codeBlock : codeBlocks.values()) {
+			compiler.invalidateCodeBlock(codeBlock);
+		}
+    }
+
+    private static void onWatchedPageAccess(int rawAddress, int pc, int width, boolean isWrite) throws StopThreadException {
+    	// Recompile the code blocks of this instruction so that
+    	// its memory accesses are checked by the DebuggerMemory.
+		Compiler compiler = Compiler.getInstance();
+    	if (compiler.addWatchpointCheck(pc)) {
+    		for (CodeBlock codeBlock : codeBlocks.values()) {
+    			if (codeBlock.isOverlappingWithAddressRange(pc, 4)) {
+    				compiler.invalidateCodeBlock(codeBlock);
+    			}
+    		}
+    	}
+
+    	processor.cpu.pc = pc;
+    	if (memory instanceof DebuggerMemory) {
+    		((DebuggerMemory) memory).onWatchedPageAccess(rawAddress, width, isWrite);
+    	}
+
+    	if (Emulator.pause) {
+    		syncPause();
+    	}
     }
 
     public static void update() {
@@ -601,11 +666,12 @@ public class RuntimeContext {
     /*
      * While being idle, try to reduce the load on the host CPU
      * by sleeping as much as possible.
-     * We can now sleep until the next scheduler action needs to be executed.
+     * The thread is parked until the exact schedule of the next scheduler action,
+     * without waking up periodically to re-check the scheduler.
      *
      * If the scheduler is receiving, from another thread, a new action
-     * to be executed earlier, the wait state of this thread
-     * will be interrupted (see onNextScheduleModified()).
+     * to be executed earlier, the parked thread
+     * will be unparked (see onNextScheduleModified()).
      * This is for example the case when a GE list is ending (FINISH/SIGNAL + END)
      * and a GE callback has to be executed immediately.
      *
@@ -620,23 +686,35 @@ public class RuntimeContext {
 
         long delay = scheduler.getNextActionDelay(idleSleepMicros);
 		if (delay > 0) {
-			int intDelay;
-			if (delay >= idleSleepMicros) {
-				intDelay = idleSleepMicros;
-			} else {
-				intDelay = (int) delay;
+			// When running unthrottled, do not wait for the next scheduler action
+			// but move the clock directly to its schedule.
+			// Wait normally while the GE is still processing lists,
+			// the idle time is then not really idle on the host.
+			Clock clock = Emulator.getClock();
+			if (clock instanceof FastForwardClock && !VideoEngine.getInstance().hasDrawLists()) {
+				long nextActionDelay = scheduler.getNextActionDelay(0);
+				if (nextActionDelay > 0) {
+					((FastForwardClock) clock).skip(nextActionDelay);
+					return;
+				}
 			}
 
+			Thread thread = Thread.currentThread();
+			idleParkedThreads.add(thread);
 			try {
-				// Wait for intDelay milliseconds.
-				// The wait state will be terminated whenever the scheduler
-				// is receiving a new scheduler action (see onNextScheduleModified()),
-				// or whenever an interrupt has been triggered ().
-				synchronized (idleSyncObject) {
-					idleSyncObject.wait(intDelay / 1000, (intDelay % 1000) * 1000);
+				// Retrieve again the delay after having registered the thread:
+				// a scheduler action added in between would otherwise
+				// not unpark this thread.
+				delay = scheduler.getNextActionDelay(idleSleepMicros);
+				if (delay > 0) {
+					// Park until the next scheduler action.
+					// The park will be terminated whenever the scheduler
+					// is receiving a new scheduler action (see onNextScheduleModified()),
+					// or whenever an interrupt has been triggered (see onLLEInterrupt()).
+					LockSupport.parkNanos(idleSyncObject, Math.min(delay, idleMaxParkMicros) * 1000L);
 				}
-			} catch (InterruptedException e) {
-				// Ignore exception
+			} finally {
+				idleParkedThreads.remove(thread);
 			}
 		}
     }
@@ -679,6 +757,14 @@ public class RuntimeContext {
     	syncThreadImmediately();
     }
 
+    /**
+     * @return the RuntimeThread currently executing the emulated code,
+     *         or null if none (e.g. when the compiler is disabled).
+     */
+    public static RuntimeThread getCurrentRuntimeThread() {
+    	return currentRuntimeThread;
+    }
+
     public static RuntimeThread getRuntimeThread() {
     	Thread currentThread = Thread.currentThread();
 		if (currentThread instanceof RuntimeThread) {
@@ -1251,6 +1337,9 @@ public class RuntimeContext {
     		threads.clear();
 		}
 
+		// The idle thread has to notice the threads to be stopped
+		interruptIdleSleep();
+
 		List<RuntimeThread> threadList = wakeupToBeStoppedThreads();
 
 		// Wait for all threads to enter a syscall.
@@ -1502,6 +1591,10 @@ public class RuntimeContext {
         	}
         }
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_READ)) {
+        	onWatchedPageAccess(rawAddress, pc, 32, false);
+        }
+
         return rawAddress;
     }
 
@@ -1519,6 +1612,10 @@ public class RuntimeContext {
             }
         }
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_READ)) {
+        	onWatchedPageAccess(rawAddress, pc, 16, false);
+        }
+
         return rawAddress;
     }
 
@@ -1536,6 +1633,10 @@ public class RuntimeContext {
             }
         }
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_READ)) {
+        	onWatchedPageAccess(rawAddress, pc, 8, false);
+        }
+
         return rawAddress;
     }
 
@@ -1555,6 +1656,10 @@ public class RuntimeContext {
 
         sceDisplayModule.write32(rawAddress);
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_WRITE)) {
+        	onWatchedPageAccess(rawAddress, pc, 32, true);
+        }
+
         return rawAddress;
     }
 
@@ -1574,6 +1679,10 @@ public class RuntimeContext {
 
         sceDisplayModule.write16(rawAddress);
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_WRITE)) {
+        	onWatchedPageAccess(rawAddress, pc, 16, true);
+        }
+
         return rawAddress;
     }
 
@@ -1593,6 +1702,10 @@ public class RuntimeContext {
 
         sceDisplayModule.write8(rawAddress);
 
+        if (memoryWatchpoints != null && memoryWatchpoints.isPageWatched(rawAddress, MemoryWatchpoints.WATCH_WRITE)) {
+        	onWatchedPageAccess(rawAddress, pc, 8, true);
+        }
+
         return rawAddress;
     }
 
@@ -1625,14 +1738,13 @@ public class RuntimeContext {
     }
 
     /*
-     * Notify the thread waiting on the idleSyncObject that
-     * the idle should be ended.
+     * Unpark the threads parked in idleSleepInterruptable()
+     * as the idle should be ended.
      */
     private static void interruptIdleSleep() {
-    	synchronized (idleSyncObject) {
-        	// Interrupt the thread waiting on the idleSyncObject
-        	idleSyncObject.notifyAll();
-		}
+    	for (Thread thread : idleParkedThreads) {
+    		LockSupport.unpark(thread);
+    	}
     }
 
     public static void onNextScheduleModified() {
@@ -1722,7 +1834,8 @@ public class RuntimeContext {
     public static void debugMemory(int address, int length) {
     	if (memory instanceof DebuggerMemory) {
     		DebuggerMemory debuggerMemory = (DebuggerMemory) memory;
-    		debuggerMemory.addRangeReadWriteBreakpoint(address, address + length - 1);
+    		// Register a range breakpoint so that it is listed and exported with the other memory breakpoints
+    		debuggerMemory.getMemoryBreakpoints().add(new MemoryBreakpoint(debuggerMemory, address, address + length - 1, MemoryBreakpoint.AccessType.READWRITE));
     	}
     }
 
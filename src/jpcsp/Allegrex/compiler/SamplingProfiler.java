@@ -0,0 +1,300 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.Settings;
+import jpcsp.util.Utilities;
+
+/**
+ * Sampling profiler for the emulated code.
+ *
+ * Unlike the Profiler, this profiler does not require any instrumentation
+ * of the compiled code. A sampler thread is periodically capturing the Java
+ * stack of the running RuntimeThread: each compiled code block is a Java class
+ * named after its start address (see CompilerContext.getClassName()),
+ * so that the Java stack is also giving the call stack of the emulated code.
+ * When the emulated code is executing a syscall, the HLE function
+ * is added as the leaf of the call stack.
+ *
+ * The samples are symbolized, at exit, using the function names known for
+ * the module exports and imports (see Utilities.getFunctionNameByAddress())
+ * and written in the collapsed stack format, as used by flame graph tools:
+ *     threadName;function1;function2;...;leafFunction sampleCount
+ *
+ * The profiler is only sampling when the compiler is enabled.
+ */
+public class SamplingProfiler {
+	public static Logger log = Logger.getLogger("profiler");
+	private static final String classNamePrefix = "_S1_";
+	private static final String hleModulesPackage = "jpcsp.HLE.modules.";
+	private static final String collapsedFileName = "profiler.collapsed";
+	private static final int hotFunctionsReportCount = 30;
+	private static SamplingProfilerEnabledSettingsListerner samplingProfilerEnabledSettingsListerner;
+	private static volatile boolean enabled = false;
+	private static SamplerThread samplerThread;
+	// The collapsed stacks (with unsymbolized addresses) and their sample counts
+	private static final Map<String, long[]> samples = new HashMap<String, long[]>();
+	private static long sampleCount;
+
+	private static class SamplingProfilerEnabledSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setEnabled(value);
+		}
+	}
+
+	private static class SamplerThread extends Thread {
+		private final int intervalMillis;
+		private volatile boolean exit;
+
+		public SamplerThread(int intervalMillis) {
+			this.intervalMillis = intervalMillis;
+			setName("Sampling Profiler");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!exit) {
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					// Ignore exception
+				}
+
+				if (!exit && !Emulator.pause) {
+					sample();
+				}
+			}
+		}
+
+		public void exit() {
+			exit = true;
+			interrupt();
+		}
+	}
+
+	public static void initialise() {
+		if (samplingProfilerEnabledSettingsListerner == null) {
+			samplingProfilerEnabledSettingsListerner = new SamplingProfilerEnabledSettingsListerner();
+			Settings.getInstance().registerSettingsListener("SamplingProfiler", "emu.samplingProfiler", samplingProfilerEnabledSettingsListerner);
+		}
+	}
+
+	private static synchronized void setEnabled(boolean enabled) {
+		SamplingProfiler.enabled = enabled;
+
+		if (enabled) {
+			if (samplerThread == null) {
+				samplerThread = new SamplerThread(Math.max(Settings.getInstance().readInt("emu.samplingProfiler.interval", 20), 1));
+				samplerThread.start();
+			}
+		} else if (samplerThread != null) {
+			samplerThread.exit();
+			samplerThread = null;
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static synchronized void reset() {
+		samples.clear();
+		sampleCount = 0L;
+	}
+
+	private static void sample() {
+		RuntimeThread runtimeThread = RuntimeContext.getCurrentRuntimeThread();
+		if (runtimeThread == null) {
+			return;
+		}
+
+		// The Java stack trace is starting with the innermost frame
+		StackTraceElement[] stackTrace = runtimeThread.getStackTrace();
+
+		StringBuilder stack = new StringBuilder();
+		SceKernelThreadInfo threadInfo = runtimeThread.getThreadInfo();
+		String threadName = threadInfo == null ? runtimeThread.getName() : threadInfo.name;
+		stack.append(threadName.replace(';', '_'));
+
+		String previousClassName = null;
+		int innermostCodeBlockFrame = stackTrace.length;
+		for (int i = stackTrace.length - 1; i >= 0; i--) {
+			String className = stackTrace[i].getClassName();
+			if (className.startsWith(classNamePrefix)) {
+				// A code block can be split into several methods of the same class
+				if (!className.equals(previousClassName)) {
+					stack.append(';');
+					stack.append(className, className.lastIndexOf("0x"), className.length());
+					previousClassName = className;
+				}
+				innermostCodeBlockFrame = i;
+			}
+		}
+
+		if (innermostCodeBlockFrame >= stackTrace.length) {
+			// Not executing compiled code
+			return;
+		}
+
+		// Is the code block calling an HLE function?
+		for (int i = innermostCodeBlockFrame - 1; i >= 0; i--) {
+			String className = stackTrace[i].getClassName();
+			if (className.startsWith(hleModulesPackage)) {
+				stack.append(';');
+				stack.append(className, hleModulesPackage.length(), className.length());
+				stack.append('.');
+				stack.append(stackTrace[i].getMethodName());
+				break;
+			}
+		}
+
+		String key = stack.toString();
+		synchronized (SamplingProfiler.class) {
+			long[] count = samples.get(key);
+			if (count == null) {
+				count = new long[1];
+				samples.put(key, count);
+			}
+			count[0]++;
+			sampleCount++;
+		}
+	}
+
+	private static String getFunctionName(String frame, Map<String, String> functionNames) {
+		if (!frame.startsWith("0x")) {
+			return frame;
+		}
+
+		String functionName = functionNames.get(frame);
+		if (functionName == null) {
+			int address = (int) Long.parseLong(frame.substring(2), 16);
+			try {
+				functionName = Utilities.getFunctionNameByAddress(address);
+			} catch (RuntimeException e) {
+				functionName = null;
+			}
+			if (functionName == null) {
+				functionName = String.format("sub_%08X", address);
+			}
+			// The frames are separated by ';' in the collapsed format
+			functionName = functionName.replace(';', '_').replace(' ', '_');
+			functionNames.put(frame, functionName);
+		}
+
+		return functionName;
+	}
+
+	private static void addCount(Map<String, long[]> counts, String functionName, long count) {
+		long[] functionCount = counts.get(functionName);
+		if (functionCount == null) {
+			functionCount = new long[1];
+			counts.put(functionName, functionCount);
+		}
+		functionCount[0] += count;
+	}
+
+	private static void logHotFunctions(String title, final Map<String, long[]> counts) {
+		List<String> sortedFunctions = new ArrayList<String>(counts.keySet());
+		Collections.sort(sortedFunctions, new Comparator<String>() {
+			@Override
+			public int compare(String functionName1, String functionName2) {
+				return Long.compare(counts.get(functionName2)[0], counts.get(functionName1)[0]);
+			}
+		});
+
+		log.info(title);
+		for (int i = 0; i < sortedFunctions.size() && i < hotFunctionsReportCount; i++) {
+			String functionName = sortedFunctions.get(i);
+			long count = counts.get(functionName)[0];
+			log.info(String.format("    %5.1f%% %s (%d samples)", count * 100.0 / sampleCount, functionName, count));
+		}
+	}
+
+	public static synchronized void exit() {
+		if (samplerThread != null) {
+			samplerThread.exit();
+			samplerThread = null;
+		}
+
+		if (sampleCount == 0L) {
+			return;
+		}
+
+		Map<String, String> functionNames = new HashMap<String, String>();
+		Map<String, long[]> selfCounts = new HashMap<String, long[]>();
+		Map<String, long[]> totalCounts = new HashMap<String, long[]>();
+		File collapsedFile = new File(Settings.getInstance().getTmpDirectory(), collapsedFileName);
+		PrintWriter out = null;
+		try {
+			collapsedFile.getParentFile().mkdirs();
+			out = new PrintWriter(new FileWriter(collapsedFile));
+
+			Set<String> functionsInStack = new HashSet<String>();
+			for (Map.Entry<String, long[]> entry : samples.entrySet()) {
+				String[] frames = entry.getKey().split(";");
+				long count = entry.getValue()[0];
+
+				StringBuilder stack = new StringBuilder(frames[0]);
+				functionsInStack.clear();
+				String functionName = null;
+				for (int i = 1; i < frames.length; i++) {
+					functionName = getFunctionName(frames[i], functionNames);
+					stack.append(';');
+					stack.append(functionName);
+					// Count recursive functions only once
+					if (functionsInStack.add(functionName)) {
+						addCount(totalCounts, functionName, count);
+					}
+				}
+				if (functionName != null) {
+					addCount(selfCounts, functionName, count);
+				}
+
+				out.println(String.format("%s %d", stack, count));
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot write the sampling profiler output to '%s': %s", collapsedFile, e));
+		} finally {
+			Utilities.close(out);
+		}
+
+		log.info("------------------ Sampling Profiler ---------------");
+		log.info(String.format("%d samples, collapsed stacks written to '%s'", sampleCount, collapsedFile));
+		logHotFunctions("Hot functions (self):", selfCounts);
+		logHotFunctions("Hot functions (total):", totalCounts);
+	}
+}
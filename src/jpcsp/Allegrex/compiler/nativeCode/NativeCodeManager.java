@@ -31,6 +31,7 @@ import jpcsp.Allegrex.Decoder;
 import jpcsp.Allegrex.compiler.CodeBlock;
 import jpcsp.Allegrex.compiler.CodeInstruction;
 import jpcsp.Allegrex.compiler.Compiler;
+import jpcsp.settings.Settings;
 import jpcsp.util.Utilities;
 
 import org.w3c.dom.Element;
@@ -46,11 +47,18 @@ public class NativeCodeManager {
 	private HashMap<Integer, List<NativeCodeSequence>> nativeCodeSequencesByFirstOpcode;
 	private List<NativeCodeSequence> nativeCodeSequenceWithMaskInFirstOpcode;
 	private HashMap<Integer, NativeCodeSequence> compiledNativeCodeBlocks;
+	// Sequences matched with renamed temporary registers, see NormalizedNativeCodeSequence
+	private HashMap<Integer, List<NormalizedNativeCodeSequence>> normalizedNativeCodeSequencesByFirstKey;
+	private List<NormalizedNativeCodeSequence> normalizedNativeCodeSequencesWithMaskInFirstOpcode;
+	private boolean normalizedMatching;
 
 	public NativeCodeManager(Element configuration) {
 		compiledNativeCodeBlocks = new HashMap<Integer, NativeCodeSequence>();
 		nativeCodeSequencesByFirstOpcode = new HashMap<Integer, List<NativeCodeSequence>>();
 		nativeCodeSequenceWithMaskInFirstOpcode = new LinkedList<NativeCodeSequence>();
+		normalizedNativeCodeSequencesByFirstKey = new HashMap<Integer, List<NormalizedNativeCodeSequence>>();
+		normalizedNativeCodeSequencesWithMaskInFirstOpcode = new LinkedList<NormalizedNativeCodeSequence>();
+		normalizedMatching = Settings.getInstance().readBool("emu.compiler.normalizedNativeCode");
 
 		load(configuration);
 	}
@@ -189,7 +197,7 @@ public class NativeCodeManager {
 
 		for (int i = 0; i < Common.gprNames.length; i++) {
 			if (Common.gprNames[i].equals(valueString)) {
-				nativeCodeSequence.setParameter(parameter, i, false);
+				nativeCodeSequence.setRegisterParameter(parameter, i);
 				return;
 			}
 		}
@@ -321,6 +329,27 @@ public class NativeCodeManager {
 				// First opcode has not mask: only slow lookup possible
 				nativeCodeSequenceWithMaskInFirstOpcode.add(nativeCodeSequence);
 			}
+
+			if (normalizedMatching) {
+				addNormalizedNativeCodeSequence(nativeCodeSequence);
+			}
+		}
+	}
+
+	private void addNormalizedNativeCodeSequence(NativeCodeSequence nativeCodeSequence) {
+		NormalizedNativeCodeSequence normalizedNativeCodeSequence = NormalizedNativeCodeSequence.create(nativeCodeSequence);
+		if (normalizedNativeCodeSequence == null) {
+			return;
+		}
+
+		if (normalizedNativeCodeSequence.isFirstKeyIndexable()) {
+			int firstKey = normalizedNativeCodeSequence.getFirstKey();
+			if (!normalizedNativeCodeSequencesByFirstKey.containsKey(firstKey)) {
+				normalizedNativeCodeSequencesByFirstKey.put(firstKey, new LinkedList<NormalizedNativeCodeSequence>());
+			}
+			normalizedNativeCodeSequencesByFirstKey.get(firstKey).add(normalizedNativeCodeSequence);
+		} else {
+			normalizedNativeCodeSequencesWithMaskInFirstOpcode.add(normalizedNativeCodeSequence);
 		}
 	}
 
@@ -405,6 +434,48 @@ public class NativeCodeManager {
 			}
 		}
 
+		// Lookup for sequences compiled with a different register allocation
+		if (normalizedMatching) {
+			int firstKey = NormalizedNativeCodeSequence.getKey(firstOpcode);
+			if (firstKey != -1) {
+				List<NormalizedNativeCodeSequence> normalizedNativeCodeSequences = normalizedNativeCodeSequencesByFirstKey.get(firstKey);
+				if (normalizedNativeCodeSequences != null) {
+					for (NormalizedNativeCodeSequence normalizedNativeCodeSequence : normalizedNativeCodeSequences) {
+						if (isNormalizedNativeCodeSequence(normalizedNativeCodeSequence, codeInstruction, codeBlock)) {
+							return normalizedNativeCodeSequence.getNativeCodeSequence();
+						}
+					}
+				}
+			}
+
+			for (NormalizedNativeCodeSequence normalizedNativeCodeSequence : normalizedNativeCodeSequencesWithMaskInFirstOpcode) {
+				if (isNormalizedNativeCodeSequence(normalizedNativeCodeSequence, codeInstruction, codeBlock)) {
+					return normalizedNativeCodeSequence.getNativeCodeSequence();
+				}
+			}
+		}
+
 		return null;
 	}
+
+	private boolean isNormalizedNativeCodeSequence(NormalizedNativeCodeSequence normalizedNativeCodeSequence, CodeInstruction codeInstruction, CodeBlock codeBlock) {
+		NativeCodeSequence nativeCodeSequence = normalizedNativeCodeSequence.getNativeCodeSequence();
+		int address = codeInstruction.getAddress();
+
+		if (nativeCodeSequence.isWholeCodeBlock()) {
+			if (codeBlock.getStartAddress() != address || codeBlock.getLength() != nativeCodeSequence.getNumOpcodes()) {
+				return false;
+			}
+		}
+
+		if (!normalizedNativeCodeSequence.isMatching(codeBlock, address)) {
+			return false;
+		}
+
+		if (Compiler.log.isDebugEnabled()) {
+			Compiler.log.debug(String.format("Native code sequence '%s' matched with renamed registers at 0x%08X", nativeCodeSequence.getName(), address));
+		}
+
+		return true;
+	}
 }
\ No newline at end of file
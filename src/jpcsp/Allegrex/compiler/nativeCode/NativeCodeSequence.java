@@ -38,6 +38,7 @@ public class NativeCodeSequence {
 	private List<CodeInstruction> beforeCodeInstructions;
 	private boolean isHook = false;
 	private boolean isMethodReturning = false;
+	private int registerParameters = 0;
 
 	private static class NativeOpcodeInfo {
 		private int opcode;
@@ -133,6 +134,18 @@ public class NativeCodeSequence {
 		return opcodes.length;
 	}
 
+	public int getOpcode(int opcodeIndex) {
+		return opcodes[opcodeIndex].getOpcode();
+	}
+
+	public int getOpcodeMask(int opcodeIndex) {
+		return opcodes[opcodeIndex].getMask();
+	}
+
+	public String getOpcodeLabel(int opcodeIndex) {
+		return opcodes[opcodeIndex].getLabel();
+	}
+
 	public Class<INativeCodeSequence> getNativeCodeSequenceClass() {
 		return nativeCodeSequenceClass;
 	}
@@ -175,6 +188,18 @@ public class NativeCodeSequence {
 		parameters[parameter] = new ParameterInfo(value, isLabelIndex);
 	}
 
+	public void setRegisterParameter(int parameter, int register) {
+		setParameter(parameter, register, false);
+		registerParameters |= 1 << register;
+	}
+
+	/**
+	 * @return the set of GPR registers passed as parameters, as a bit mask.
+	 */
+	public int getRegisterParameters() {
+		return registerParameters;
+	}
+
 	public int getParameterValue(int parameter, int address) {
 		if (parameter >= parameters.length) {
 			return 0;
@@ -0,0 +1,437 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler.nativeCode;
+
+import static jpcsp.Allegrex.Common._a0;
+import static jpcsp.Allegrex.Common._a3;
+import static jpcsp.Allegrex.Common._at;
+import static jpcsp.Allegrex.Common._t0;
+import static jpcsp.Allegrex.Common._t7;
+import static jpcsp.Allegrex.Common._t8;
+import static jpcsp.Allegrex.Common._t9;
+
+import java.util.Arrays;
+
+import jpcsp.Allegrex.compiler.CodeBlock;
+
+/**
+ * Register-renaming invariant form of a returning NativeCodeSequence.
+ *
+ * The same C function (e.g. memcpy or strlen) is often compiled with
+ * a different register allocation for its temporary registers.
+ * Such a variant is matched by comparing the opcodes without their
+ * GPR fields, while building a consistent one-to-one mapping between
+ * the registers used by the sequence and the registers used by the code.
+ *
+ * Only the registers whose input value is never used by the sequence
+ * and which are not preserved across a function call (i.e. $at, $a0-$a3, $t0-$t9)
+ * can be renamed: as the sequence is returning, their values are no longer
+ * relevant after the sequence. All the other registers (input parameters,
+ * return values, $sp, $ra...) have to be identical.
+ *
+ * The absolute targets of the "j" instructions are compared relatively
+ * to the start of the sequence.
+ */
+public class NormalizedNativeCodeSequence {
+	private static final int RS = 1;
+	private static final int RT = 2;
+	private static final int RD = 4;
+	private static final int[] fieldShifts = { 21, 16, 11 };
+	private static final int registerMask = 0x1F;
+	private static final int jumpTargetMask = 0x03FFFFFF;
+	private final NativeCodeSequence nativeCodeSequence;
+	private final int[] keys;
+	private final int[] keyMasks;
+	private final int[] fields;
+	private final int[] opcodes;
+	private final int[] jumpTargetIndexes;
+	private final int[] initialMapping = new int[32];
+	private final int[] initialReverseMapping = new int[32];
+
+	/**
+	 * Description of the GPR fields of one opcode.
+	 */
+	private static class OpcodeInfo {
+		// Fields read or only partially written
+		public int read;
+		// Fields always completely written
+		public int written;
+		public boolean isBranch;
+		public boolean isLikely;
+		public boolean isJump;
+
+		public OpcodeInfo reads(int fields) {
+			read |= fields;
+			return this;
+		}
+
+		public OpcodeInfo writes(int fields) {
+			written |= fields;
+			return this;
+		}
+
+		public OpcodeInfo branch(boolean isLikely) {
+			isBranch = true;
+			this.isLikely = isLikely;
+			return this;
+		}
+
+		public int getFields() {
+			return read | written;
+		}
+	}
+
+	private NormalizedNativeCodeSequence(NativeCodeSequence nativeCodeSequence, int numOpcodes) {
+		this.nativeCodeSequence = nativeCodeSequence;
+		keys = new int[numOpcodes];
+		keyMasks = new int[numOpcodes];
+		fields = new int[numOpcodes];
+		opcodes = new int[numOpcodes];
+		jumpTargetIndexes = new int[numOpcodes];
+		Arrays.fill(initialMapping, -1);
+		Arrays.fill(initialReverseMapping, -1);
+	}
+
+	/**
+	 * Retrieve the GPR fields of an opcode.
+	 *
+	 * @param opcode  the opcode
+	 * @return        the opcode information, or null if the opcode cannot be
+	 *                part of a normalized sequence (unknown GPR usage or a call)
+	 */
+	private static OpcodeInfo getOpcodeInfo(int opcode) {
+		OpcodeInfo info = new OpcodeInfo();
+		int op = opcode >>> 26;
+		int rs = (opcode >> 21) & registerMask;
+		int rt = (opcode >> 16) & registerMask;
+		int funct = opcode & 0x3F;
+
+		switch (op) {
+			case 0x00: // SPECIAL
+				switch (funct) {
+					case 0x00: // sll
+					case 0x02: // srl, rotr
+					case 0x03: // sra
+						return info.reads(RT).writes(RD);
+					case 0x04: // sllv
+					case 0x06: // srlv, rotrv
+					case 0x07: // srav
+					case 0x16: // clz
+					case 0x17: // clo
+					case 0x20: case 0x21: case 0x22: case 0x23: // add, addu, sub, subu
+					case 0x24: case 0x25: case 0x26: case 0x27: // and, or, xor, nor
+					case 0x2A: case 0x2B: // slt, sltu
+					case 0x2C: case 0x2D: // max, min
+						return info.reads(RS | RT).writes(RD);
+					case 0x0A: // movz
+					case 0x0B: // movn
+						// Conditional write: the previous value of rd is used
+						return info.reads(RS | RT | RD);
+					case 0x08: // jr
+						return info.reads(RS).branch(false);
+					case 0x10: // mfhi
+					case 0x12: // mflo
+						return info.writes(RD);
+					case 0x11: // mthi
+					case 0x13: // mtlo
+						return info.reads(RS);
+					case 0x18: case 0x19: case 0x1A: case 0x1B: // mult, multu, div, divu
+					case 0x1C: case 0x1D: case 0x2E: case 0x2F: // madd, maddu, msub, msubu
+						return info.reads(RS | RT);
+					case 0x0D: // break
+					case 0x0F: // sync
+						return info;
+				}
+				// jalr, syscall and unknown instructions
+				return null;
+			case 0x01: // REGIMM
+				switch (rt) {
+					case 0x00: // bltz
+					case 0x01: // bgez
+						return info.reads(RS).branch(false);
+					case 0x02: // bltzl
+					case 0x03: // bgezl
+						return info.reads(RS).branch(true);
+				}
+				// bltzal, bgezal...
+				return null;
+			case 0x02: // j
+				info.isJump = true;
+				return info.branch(false);
+			case 0x04: case 0x05: case 0x06: case 0x07: // beq, bne, blez, bgtz
+				return info.reads(RS | RT).branch(false);
+			case 0x14: case 0x15: case 0x16: case 0x17: // beql, bnel, blezl, bgtzl
+				return info.reads(RS | RT).branch(true);
+			case 0x08: case 0x09: case 0x0A: case 0x0B: // addi, addiu, slti, sltiu
+			case 0x0C: case 0x0D: case 0x0E: case 0x0F: // andi, ori, xori, lui
+			case 0x20: case 0x21: case 0x23: // lb, lh, lw
+			case 0x24: case 0x25: case 0x30: // lbu, lhu, ll
+				return info.reads(RS).writes(RT);
+			case 0x22: case 0x26: // lwl, lwr: partial write
+			case 0x28: case 0x29: case 0x2A: case 0x2B: case 0x2E: // sb, sh, swl, sw, swr
+			case 0x38: // sc
+				return info.reads(RS | RT);
+			case 0x31: case 0x39: // lwc1, swc1 (rt is a FPU register)
+				return info.reads(RS);
+			case 0x11: // COP1
+				switch (rs) {
+					case 0x00: // mfc1
+					case 0x02: // cfc1
+						return info.writes(RT);
+					case 0x04: // mtc1
+					case 0x06: // ctc1
+						return info.reads(RT);
+					case 0x08: // bc1f, bc1t, bc1fl, bc1tl
+						return info.branch((rt & 0x02) != 0);
+					case 0x10: // FPU single precision operations
+					case 0x14: // cvt.s.w
+						return info;
+				}
+				return null;
+			case 0x1F: // SPECIAL3
+				switch (funct) {
+					case 0x00: // ext
+						return info.reads(RS).writes(RT);
+					case 0x04: // ins: partial write
+						return info.reads(RS | RT);
+					case 0x20: // seb, seh, wsbh, bitrev
+						return info.reads(RT).writes(RD);
+				}
+				return null;
+		}
+
+		// jal, VFPU and unknown instructions
+		return null;
+	}
+
+	private static int getFieldsMask(int fields) {
+		int mask = 0;
+		for (int i = 0; i < fieldShifts.length; i++) {
+			if ((fields & (1 << i)) != 0) {
+				mask |= registerMask << fieldShifts[i];
+			}
+		}
+
+		return mask;
+	}
+
+	private static int getRegister(int opcode, int field) {
+		return (opcode >> fieldShifts[field]) & registerMask;
+	}
+
+	private static boolean isRenamableRegister(int register) {
+		return register == _at || (register >= _a0 && register <= _a3) || (register >= _t0 && register <= _t7) || register == _t8 || register == _t9;
+	}
+
+	/**
+	 * Compute the key used to index the first opcode of a normalized sequence.
+	 *
+	 * @param opcode  the first opcode
+	 * @return        the key, or -1 if the opcode cannot start a normalized sequence
+	 */
+	public static int getKey(int opcode) {
+		OpcodeInfo info = getOpcodeInfo(opcode);
+		if (info == null || info.isJump) {
+			return -1;
+		}
+
+		return opcode & ~getFieldsMask(info.getFields());
+	}
+
+	/**
+	 * Build the normalized form of a native code sequence.
+	 *
+	 * @param nativeCodeSequence  the native code sequence
+	 * @return                    the normalized form, or null if the sequence
+	 *                            cannot be matched with renamed registers.
+	 */
+	public static NormalizedNativeCodeSequence create(NativeCodeSequence nativeCodeSequence) {
+		// Only the returning sequences allow a renaming of their temporary registers
+		if (!nativeCodeSequence.isReturning() || nativeCodeSequence.isHook() || nativeCodeSequence.getBeforeCodeInstructions() != null) {
+			return null;
+		}
+
+		int numOpcodes = nativeCodeSequence.getNumOpcodes();
+		if (numOpcodes <= 0) {
+			return null;
+		}
+
+		// The address of the sequence is only known from the labels, e.g. "08AE063C:[00801025]"
+		int startAddress = -1;
+		String firstLabel = nativeCodeSequence.getOpcodeLabel(0);
+		if (firstLabel != null && firstLabel.matches("\\p{XDigit}{8}")) {
+			startAddress = (int) Long.parseLong(firstLabel, 16);
+		}
+
+		NormalizedNativeCodeSequence normalized = new NormalizedNativeCodeSequence(nativeCodeSequence, numOpcodes);
+		OpcodeInfo[] infos = new OpcodeInfo[numOpcodes];
+		for (int i = 0; i < numOpcodes; i++) {
+			int opcode = nativeCodeSequence.getOpcode(i);
+			int mask = nativeCodeSequence.getOpcodeMask(i);
+			OpcodeInfo info = getOpcodeInfo(opcode);
+			if (info == null) {
+				return null;
+			}
+
+			int fieldsMask = getFieldsMask(info.getFields());
+			if ((fieldsMask & mask) != fieldsMask) {
+				// A register field is not completely defined by the opcode
+				return null;
+			}
+
+			int keyMask = mask & ~fieldsMask;
+			normalized.jumpTargetIndexes[i] = -1;
+			if (info.isJump && startAddress != -1 && (mask & jumpTargetMask) == jumpTargetMask) {
+				int address = startAddress + (i << 2);
+				int target = ((address + 4) & 0xF0000000) | ((opcode & jumpTargetMask) << 2);
+				int targetIndex = (target - startAddress) >> 2;
+				if (target >= startAddress && targetIndex < numOpcodes) {
+					// Jump inside the sequence: compare the relative target
+					normalized.jumpTargetIndexes[i] = targetIndex;
+					keyMask &= ~jumpTargetMask;
+				}
+			}
+
+			infos[i] = info;
+			normalized.opcodes[i] = opcode;
+			normalized.fields[i] = info.getFields();
+			normalized.keyMasks[i] = keyMask;
+			normalized.keys[i] = opcode & keyMask;
+		}
+
+		// Find the registers which can be renamed: the registers
+		// always written by the sequence before being read.
+		int registerParameters = nativeCodeSequence.getRegisterParameters();
+		boolean[] renamable = new boolean[32];
+		for (int register = 0; register < renamable.length; register++) {
+			if (!isRenamableRegister(register) || (registerParameters & (1 << register)) != 0) {
+				continue;
+			}
+
+			boolean unconditional = true;
+			for (int i = 0; i < numOpcodes; i++) {
+				OpcodeInfo info = infos[i];
+				int opcode = normalized.opcodes[i];
+				if (isUsingRegister(opcode, info.read, register)) {
+					// The input value of the register is used
+					break;
+				}
+				if (isUsingRegister(opcode, info.written, register)) {
+					renamable[register] = unconditional;
+					break;
+				}
+				// The instructions following a branch are only executed conditionally,
+				// except the delay slot of a non-likely branch.
+				if (i > 0 && infos[i - 1].isBranch) {
+					unconditional = false;
+				}
+				if (info.isBranch && info.isLikely) {
+					unconditional = false;
+				}
+			}
+		}
+
+		// All the registers used by the sequence and which cannot be renamed
+		// have to be identical in the matched code.
+		for (int i = 0; i < numOpcodes; i++) {
+			for (int field = 0; field < fieldShifts.length; field++) {
+				if ((normalized.fields[i] & (1 << field)) != 0) {
+					int register = getRegister(normalized.opcodes[i], field);
+					if (!renamable[register]) {
+						normalized.initialMapping[register] = register;
+						normalized.initialReverseMapping[register] = register;
+					}
+				}
+			}
+		}
+
+		return normalized;
+	}
+
+	private static boolean isUsingRegister(int opcode, int fields, int register) {
+		for (int field = 0; field < fieldShifts.length; field++) {
+			if ((fields & (1 << field)) != 0 && getRegister(opcode, field) == register) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public NativeCodeSequence getNativeCodeSequence() {
+		return nativeCodeSequence;
+	}
+
+	public int getFirstKey() {
+		return keys[0];
+	}
+
+	public boolean isFirstKeyIndexable() {
+		return keyMasks[0] == ~getFieldsMask(fields[0]);
+	}
+
+	/**
+	 * Check if the code at the given address is matching this sequence,
+	 * with a consistent renaming of the temporary registers.
+	 *
+	 * @param codeBlock   the code block containing the code
+	 * @param address     the address of the first instruction
+	 * @return            true if the code is matching
+	 */
+	public boolean isMatching(CodeBlock codeBlock, int address) {
+		int[] mapping = initialMapping.clone();
+		int[] reverseMapping = initialReverseMapping.clone();
+
+		for (int i = 0; i < keys.length; i++) {
+			int instructionAddress = address + (i << 2);
+			int opcode = codeBlock.getCodeInstructionOpcode(instructionAddress);
+			if ((opcode & keyMasks[i]) != keys[i]) {
+				return false;
+			}
+
+			int jumpTargetIndex = jumpTargetIndexes[i];
+			if (jumpTargetIndex >= 0) {
+				int target = ((instructionAddress + 4) & 0xF0000000) | ((opcode & jumpTargetMask) << 2);
+				if (target != address + (jumpTargetIndex << 2)) {
+					return false;
+				}
+			}
+
+			for (int field = 0; field < fieldShifts.length; field++) {
+				if ((fields[i] & (1 << field)) == 0) {
+					continue;
+				}
+
+				int sequenceRegister = getRegister(opcodes[i], field);
+				int codeRegister = getRegister(opcode, field);
+				int mappedRegister = mapping[sequenceRegister];
+				if (mappedRegister < 0) {
+					// First use of a renamed register
+					if (!isRenamableRegister(codeRegister) || reverseMapping[codeRegister] >= 0) {
+						return false;
+					}
+					mapping[sequenceRegister] = codeRegister;
+					reverseMapping[codeRegister] = sequenceRegister;
+				} else if (mappedRegister != codeRegister) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+}
@@ -72,6 +72,22 @@ public class Clock implements IState {
 		return isPaused;
 	}
 
+	/**
+	 * Continue from the current time of another clock, e.g. when this clock
+	 * is restored after having been replaced for some time by the other one.
+	 * The time is not going backwards.
+	 *
+	 * @param clock   the clock being replaced by this one
+	 */
+	public synchronized void continueFrom(Clock clock) {
+		if (clock.isPaused()) {
+			pause();
+		} else {
+			resume();
+		}
+		baseNanos += nanoTime() - clock.nanoTime();
+	}
+
 	public long nanoTime() {
 		long now;
 
@@ -524,34 +524,42 @@ public class MemoryBreakpointsDialog extends javax.swing.JDialog {
     
     private void cbTraceReadItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceReadItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryRead = cbTraceRead.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceReadItemStateChanged
     
     private void cbTraceRead8ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceRead8ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryRead8 = cbTraceRead8.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceRead8ItemStateChanged
     
     private void cbTraceRead16ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceRead16ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryRead16 = cbTraceRead16.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceRead16ItemStateChanged
     
     private void cbTraceRead32ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceRead32ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryRead32 = cbTraceRead32.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceRead32ItemStateChanged
     
     private void cbTraceWriteItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceWriteItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryWrite = cbTraceWrite.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceWriteItemStateChanged
     
     private void cbTraceWrite8ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceWrite8ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryWrite8 = cbTraceWrite8.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceWrite8ItemStateChanged
     
     private void cbTraceWrite16ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceWrite16ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryWrite16 = cbTraceWrite16.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceWrite16ItemStateChanged
     
     private void cbTraceWrite32ItemStateChanged(java.awt.event.ItemEvent evt) {//GEN-FIRST:event_cbTraceWrite32ItemStateChanged
         ((DebuggerMemory) Memory.getInstance()).traceMemoryWrite32 = cbTraceWrite32.isSelected();
+        ((DebuggerMemory) Memory.getInstance()).onTraceMemoryChanged();
     }//GEN-LAST:event_cbTraceWrite32ItemStateChanged
     
     private void btnExportActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnExportActionPerformed
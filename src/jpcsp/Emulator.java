@@ -20,9 +20,11 @@ import static jpcsp.HLE.modules.SysMemUserForUser.USER_PARTITION_ID;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.security.Security;
 
 import jpcsp.Allegrex.compiler.Compiler;
 import jpcsp.Allegrex.compiler.Profiler;
+import jpcsp.Allegrex.compiler.SamplingProfiler;
 import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.Allegrex.compiler.RuntimeContextLLE;
 import jpcsp.Debugger.InstructionCounter;
@@ -38,7 +40,12 @@ import jpcsp.HLE.kernel.types.SceModule;
 import jpcsp.HLE.modules.SysMemUserForUser;
 import jpcsp.HLE.modules.reboot;
 import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
+import jpcsp.crypto.AES128;
+import jpcsp.crypto.PreDecrypt;
+import jpcsp.crypto.PrxDecryptionCache;
 import jpcsp.graphics.GEProfiler;
+import jpcsp.graphics.GEStatistics;
+import jpcsp.graphics.GeListVertexPrefetcher;
 import jpcsp.graphics.VertexCache;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.externalge.ExternalGE;
@@ -50,6 +57,7 @@ import jpcsp.hardware.Battery;
 import jpcsp.hardware.Model;
 import jpcsp.hardware.Nand;
 import jpcsp.hardware.Wlan;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemorySections;
 import jpcsp.network.proonline.ProOnlineNetworkAdapter;
 import jpcsp.network.xlinkkai.XLinkKaiWlanAdapter;
@@ -96,26 +104,47 @@ public class Emulator implements Runnable {
         mainThread = new Thread(this, "Emu");
 
         instance = this;
+
+        PrxDecryptionCache.init();
     }
 
     public Thread getMainThread() {
         return mainThread;
     }
 
+    /**
+     * Initialize the security and the cryptographic services.
+     * Required before loading any encrypted EBOOT/PRX,
+     * from every entry point (MainGUI, HeadlessMain).
+     */
+    public static void initCrypto() {
+		// Re-enable all disabled algorithms as the PSP is allowing them
+		Security.setProperty("jdk.certpath.disabledAlgorithms", "");
+		Security.setProperty("jdk.tls.disabledAlgorithms", "");
+
+    	PreDecrypt.init();
+        AES128.init();
+        libkirk.AES.init();
+    }
+
     public static void exit() {
         if (DurationStatistics.collectStatistics) {
             log.info(TextureCache.getInstance().statistics);
         }
         RendererExecutor.exit();
         VertexCache.getInstance().exit();
+        GeListVertexPrefetcher.exit();
         Compiler.exit();
         RuntimeContextLLE.exit();
         RuntimeContext.exit();
         Profiler.exit();
+        SamplingProfiler.exit();
         GEProfiler.exit();
+        GEStatistics.exit();
         BaseRenderer.exit();
         BasePrimitiveRenderer.exit();
         ExternalGE.exit();
+        PrxDecryptionCache.exit();
         if (DurationStatistics.collectStatistics && Modules.ThreadManForUserModule.statistics != null && Modules.sceDisplayModule.statistics != null) {
             long totalMillis = getClock().milliTime();
             long displayMillis = Modules.sceDisplayModule.statistics.cumulatedTimeMillis;
@@ -238,12 +267,15 @@ public class Emulator implements Runnable {
         Nand.init();
         HLEModuleManager.getInstance().stopModules();
         NIDMapper.getInstance().unloadAll();
+        MemoryPageTracker.init();
         RuntimeContext.reset();
 
         if (!fromSyscall) {
             // Do not reset the profiler if we have been called from sceKernelLoadExec
             Profiler.reset();
+            SamplingProfiler.reset();
             GEProfiler.reset();
+            GEStatistics.reset();
             // Do not reset the clock if we have been called from sceKernelLoadExec
             getClock().reset();
         }
@@ -287,6 +319,7 @@ public class Emulator implements Runnable {
         RuntimeContext.start();
         RuntimeContextLLE.start();
         GEProfiler.initialise();
+        GEStatistics.initialise();
 
         clock.resume();
 
@@ -490,6 +523,27 @@ public class Emulator implements Runnable {
         }
     }
 
+    public static void setFastForwardClock() {
+        if (!(getClock() instanceof FastForwardClock)) {
+            // Change the clock to a clock skipping the idle time
+            setClock(new FastForwardClock(clock));
+        }
+    }
+
+    /**
+     * Restore a clock previously replaced, e.g. by setFastForwardClock().
+     * The restored clock is continuing from the current time,
+     * including the time skipped by a fast-forward clock.
+     *
+     * @param previousClock  the clock to be restored
+     */
+    public static void restoreClock(Clock previousClock) {
+        if (previousClock != clock) {
+            previousClock.continueFrom(clock);
+            setClock(previousClock);
+        }
+    }
+
     public void setModuleLoaded(boolean moduleLoaded) {
     	this.moduleLoaded = moduleLoaded;
     }
@@ -0,0 +1,56 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp;
+
+/**
+ * A PSP Clock that is not throttled to the real time:
+ * whenever the emulator is idle, the clock is directly moved forward
+ * to the time of the next scheduler action instead of waiting for it.
+ * The application is then running as fast as the emulation allows.
+ */
+public class FastForwardClock extends Clock {
+	private volatile long skippedNanos;
+
+	public FastForwardClock(Clock clock) {
+		super(clock);
+	}
+
+	/**
+	 * Move the clock forward.
+	 *
+	 * @param micros   number of microseconds to be skipped
+	 */
+	public void skip(long micros) {
+		if (micros > 0) {
+			skippedNanos += micros * 1000L;
+		}
+	}
+
+	public long getSkippedMicros() {
+		return skippedNanos / 1000L;
+	}
+
+	@Override
+	protected long getSystemNanoTime() {
+		return super.getSystemNanoTime() + skippedNanos;
+	}
+
+	@Override
+	protected long getSystemMilliTime() {
+		return super.getSystemMilliTime() + skippedNanos / 1000000L;
+	}
+}
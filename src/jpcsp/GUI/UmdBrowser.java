@@ -27,6 +27,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -59,6 +61,7 @@ import jpcsp.format.psmf.PsmfAudioDemuxVirtualFile;
 import jpcsp.settings.Settings;
 import jpcsp.util.Constants;
 import jpcsp.util.FileUtil;
+import jpcsp.util.Utilities;
 
 /**
  * @author Orphis, gid15
@@ -66,6 +69,10 @@ import jpcsp.util.FileUtil;
 public class UmdBrowser extends javax.swing.JDialog {
     private static final long serialVersionUID = 7788144302296106541L;
     private static Logger log = Emulator.log;
+    // The UMD information is loaded by a few threads in parallel, bounded
+    // as they are mainly waiting for the disk.
+    private static final int MAX_NUMBER_UMD_INFO_LOADERS = 4;
+    private static final String UMD_INFO_STAMP_FILE_NAME = "umdinfo.properties";
 
     private static class EbootFileFilter implements FileFilter {
         @Override
@@ -137,7 +144,7 @@ public class UmdBrowser extends javax.swing.JDialog {
 
     private final class MemStickTableModel extends AbstractTableModel {
         private static final long serialVersionUID = -1675488447176776560L;
-        private UmdInfoLoader umdInfoLoader;
+        private UmdInfoLoader[] umdInfoLoaders;
 
         public MemStickTableModel(File[] paths) {
             // Default values in case we return an error
@@ -205,11 +212,16 @@ public class UmdBrowser extends javax.swing.JDialog {
             // load the first row: its size is used to compute the table size
             loadUmdInfo(0);
 
-            umdInfoLoader = new UmdInfoLoader();
-            umdInfoLoader.setName("Umd Browser - Umd Info Loader");
-            umdInfoLoader.setPriority(Thread.MIN_PRIORITY);
-            umdInfoLoader.setDaemon(true);
-            umdInfoLoader.start();
+            int numberUmdInfoLoaders = Math.max(1, Math.min(MAX_NUMBER_UMD_INFO_LOADERS, Runtime.getRuntime().availableProcessors()));
+            numberUmdInfoLoaders = Math.min(numberUmdInfoLoaders, Math.max(1, programs.length - 1));
+            umdInfoLoaders = new UmdInfoLoader[numberUmdInfoLoaders];
+            for (int i = 0; i < numberUmdInfoLoaders; i++) {
+                umdInfoLoaders[i] = new UmdInfoLoader();
+                umdInfoLoaders[i].setName(String.format("Umd Browser - Umd Info Loader #%d", i + 1));
+                umdInfoLoaders[i].setPriority(Thread.MIN_PRIORITY);
+                umdInfoLoaders[i].setDaemon(true);
+                umdInfoLoaders[i].start();
+            }
         }
         
         @Override
@@ -297,6 +309,7 @@ public class UmdBrowser extends javax.swing.JDialog {
     private ImageIcon[] icons;
     private PSF[] psfs;
     private volatile boolean[] umdInfoLoaded;
+    private final AtomicInteger nextUmdInfoToLoad = new AtomicInteger(1);
     private UmdBrowserPmf umdBrowserPmf;
     private UmdBrowserSound umdBrowserSound;
     private int lastRowIndex = -1;
@@ -425,6 +438,49 @@ public class UmdBrowser extends javax.swing.JDialog {
         }
     }
 
+    /**
+     * Check if the cached UMD information has been extracted from the given file
+     * and if this file has not been changed since then.
+     */
+    private boolean isUmdBrowseCacheValid(String cacheDirectory, File file) {
+        File stampFile = new File(cacheDirectory + UMD_INFO_STAMP_FILE_NAME);
+        if (!stampFile.canRead()) {
+            return false;
+        }
+
+        Properties stamp = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(stampFile);
+            stamp.load(is);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            Utilities.close(is);
+        }
+
+        return file.getAbsolutePath().equals(stamp.getProperty("path")) &&
+               Long.toString(file.length()).equals(stamp.getProperty("size")) &&
+               Long.toString(file.lastModified()).equals(stamp.getProperty("lastModified"));
+    }
+
+    private void writeUmdBrowseCacheStamp(String cacheDirectory, File file) {
+        Properties stamp = new Properties();
+        stamp.setProperty("path", file.getAbsolutePath());
+        stamp.setProperty("size", Long.toString(file.length()));
+        stamp.setProperty("lastModified", Long.toString(file.lastModified()));
+
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(cacheDirectory + UMD_INFO_STAMP_FILE_NAME);
+            stamp.store(os, null);
+        } catch (IOException e) {
+            log.error(e);
+        } finally {
+            Utilities.close(os);
+        }
+    }
+
     private void loadUmdInfo(int rowIndex) {
         if (rowIndex >= umdInfoLoaded.length || umdInfoLoaded[rowIndex]) {
             return;
@@ -445,7 +501,7 @@ public class UmdBrowser extends javax.swing.JDialog {
             if (cacheEntry) {
                 String cacheDirectory = getUmdBrowseCacheDirectory(entryName);
                 File sfoFile = new File(cacheDirectory + "param.sfo");
-                if (sfoFile.canRead()) {
+                if (sfoFile.canRead() && isUmdBrowseCacheValid(cacheDirectory, programs[rowIndex])) {
                     // Read the param.sfo and ICON0.PNG from the UmdBrowserCache
                     byte[] sfo = new byte[(int) sfoFile.length()];
                     InputStream is = new FileInputStream(sfoFile);
@@ -468,30 +524,41 @@ public class UmdBrowser extends javax.swing.JDialog {
                     new File(cacheDirectory).mkdirs();
 
                     UmdIsoReader iso = new UmdIsoReader(programs[rowIndex].getPath());
-
-                    byte[] sfo = iso.readParamSFO();
-                    if (sfo == null) {
-                    	throw new FileNotFoundException();
-                    }
-                    writeUmdBrowseCacheFile(cacheDirectory, "param.sfo", sfo);
-                    ByteBuffer buf = ByteBuffer.wrap(sfo);
-                    psfs[rowIndex] = new PSF();
-                    psfs[rowIndex].read(buf);
-
-                    byte[] icon0 = iso.readIcon0();
-                    if (icon0 == null) {
-                        // default icon
-                        icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
-                    } else {
-                    	writeUmdBrowseCacheFile(cacheDirectory, "ICON0.PNG", icon0);
-                    	icons[rowIndex] = new ImageIcon(icon0);
+                    try {
+                        // Only a few files are read, do not index the complete directory tree
+                        iso.setUseIndex(false);
+
+                        byte[] sfo = iso.readParamSFO();
+                        if (sfo == null) {
+                            throw new FileNotFoundException();
+                        }
+                        writeUmdBrowseCacheFile(cacheDirectory, "param.sfo", sfo);
+                        ByteBuffer buf = ByteBuffer.wrap(sfo);
+                        psfs[rowIndex] = new PSF();
+                        psfs[rowIndex].read(buf);
+
+                        byte[] icon0 = iso.readIcon0();
+                        if (icon0 == null) {
+                            // default icon
+                            new File(cacheDirectory + "ICON0.PNG").delete();
+                            icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
+                        } else {
+                            writeUmdBrowseCacheFile(cacheDirectory, "ICON0.PNG", icon0);
+                            icons[rowIndex] = new ImageIcon(icon0);
+                        }
+
+                        writeUmdBrowseCacheStamp(cacheDirectory, programs[rowIndex]);
+                    } finally {
+                        iso.close();
                     }
                 }
             }
         } catch (FileNotFoundException e) {
             // Check if we're dealing with a UMD_VIDEO.
+            UmdIsoReader iso = null;
             try {
-                UmdIsoReader iso = new UmdIsoReader(programs[rowIndex].getPath());
+                iso = new UmdIsoReader(programs[rowIndex].getPath());
+                iso.setUseIndex(false);
 
                 UmdIsoFile paramSfo = iso.getFile("UMD_VIDEO/param.sfo");
                 UmdIsoFile umdDataFile = iso.getFile("UMD_DATA.BIN");
@@ -520,6 +587,14 @@ public class UmdBrowser extends javax.swing.JDialog {
                 icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
             } catch (IOException ve) {
                 log.error(ve);
+            } finally {
+                if (iso != null) {
+                    try {
+                        iso.close();
+                    } catch (IOException ve) {
+                        // Ignore exception
+                    }
+                }
             }
         } catch (IOException e) {
             log.error(e);
@@ -536,9 +611,13 @@ public class UmdBrowser extends javax.swing.JDialog {
         ImageIcon pic0Icon = null;
         ImageIcon pic1Icon = null;
         ImageIcon icon0Icon = null;
+        UmdIsoReader iso = null;
+        boolean isoUsedByVideo = false;
         try {
             int rowIndex = getSelectedRowIndex();
-            UmdIsoReader iso = new UmdIsoReader(programs[rowIndex].getPath());
+            iso = new UmdIsoReader(programs[rowIndex].getPath());
+            // Only a few files are read, do not build the path index
+            iso.setUseIndex(false);
 
             // Read PIC0.PNG
             try {
@@ -579,6 +658,9 @@ public class UmdBrowser extends javax.swing.JDialog {
             if (lastRowIndex != rowIndex) {
                 stopVideo();
                 umdBrowserPmf = new UmdBrowserPmf(iso, "PSP_GAME/ICON1.PMF", icon0Label);
+                // The video is read while being displayed,
+                // the iso will be closed by UmdBrowserPmf.stopVideo()
+                isoUsedByVideo = true;
                 if (iso.hasFile("PSP_GAME/SND0.AT3")) {
                 	umdBrowserSound = new UmdBrowserSound(Memory.getInstance(), iso.readSnd0());
                 } else {
@@ -605,6 +687,14 @@ public class UmdBrowser extends javax.swing.JDialog {
             // Ignore exception
         } catch (IOException e) {
             log.error(e);
+        } finally {
+            if (iso != null && !isoUsedByVideo) {
+                try {
+                    iso.close();
+                } catch (IOException e) {
+                    // Ignore exception
+                }
+            }
         }
         pic0Label.setIcon(pic0Icon);
         pic1Label.setIcon(pic1Icon);
@@ -710,18 +800,19 @@ public class UmdBrowser extends javax.swing.JDialog {
     }
 
     private void updateFilteredItem(int rowIndex) {
-    	boolean alreadyPresent = false;
-    	for (int i = 0; i < numberFilteredItems; i++) {
-    		if (filteredItems[i] == rowIndex) {
-    			alreadyPresent = true;
-    			break;
-    		}
-    	}
-
+    	String filter = getFilter();
     	boolean modified = false;
-    	if (!alreadyPresent) {
-    		String filter = getFilter();
-	    	synchronized (filteredItems) {
+    	// The UMD information is loaded by multiple threads
+    	synchronized (filteredItems) {
+	    	boolean alreadyPresent = false;
+	    	for (int i = 0; i < numberFilteredItems; i++) {
+	    		if (filteredItems[i] == rowIndex) {
+	    			alreadyPresent = true;
+	    			break;
+	    		}
+	    	}
+
+	    	if (!alreadyPresent) {
 	    		modified = filterItem(filter, rowIndex);
 	    	}
     	}
@@ -811,12 +902,17 @@ public class UmdBrowser extends javax.swing.JDialog {
 
     /**
      * Load asynchronously all the UMD information (icon, PSF).
+     * The loaders are sharing the rows to be loaded, in ascending order.
      */
     private class UmdInfoLoader extends Thread {
         @Override
         public void run() {
-            for (int i = 0; i < umdInfoLoaded.length; i++) {
-                loadUmdInfo(i);
+            while (true) {
+                int rowIndex = nextUmdInfoToLoad.getAndIncrement();
+                if (rowIndex >= umdInfoLoaded.length) {
+                    break;
+                }
+                loadUmdInfo(rowIndex);
             }
         }
     }
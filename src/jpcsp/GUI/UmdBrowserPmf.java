@@ -310,6 +310,12 @@ public class UmdBrowserPmf {
     public void stopVideo() {
         stopDisplayThread();
         closeVideo();
+
+        try {
+            iso.close();
+        } catch (IOException e) {
+            // Ignore Exception
+        }
     }
 
     public void stepVideo() {
@@ -149,10 +149,10 @@ public class Fat12VirtualFile extends FatVirtualFile {
 		int startIndex = (offset / 2 * 3) - (fatIndex * sectorSize);
 		for (int i = startIndex, j = 0; i < sectorSize; j += 2) {
 			int value = 0;
-			if (offset + j < fatClusterMap.length) {
-				value = fatClusterMap[offset + j];
-				if (offset + j + 1 < fatClusterMap.length) {
-					value |= fatClusterMap[offset + j + 1] << 12;
+			if (offset + j < getFatClusterMapLength()) {
+				value = getFatClusterMap(offset + j);
+				if (offset + j + 1 < getFatClusterMapLength()) {
+					value |= getFatClusterMap(offset + j + 1) << 12;
 				}
 			}
 
@@ -184,19 +184,19 @@ public class Fat12VirtualFile extends FatVirtualFile {
 			log.debug(String.format("Fat12VirtualFile.writeFatSector fatIndex=0x%X, index=0x%X, offset=0x%X", fatIndex, index, offset));
 		}
 
-		while (offset < sectorSize && index < fatClusterMap.length) {
-			if (offset >= 0 && offset + 1 < sectorSize && index < fatClusterMap.length) {
+		while (offset < sectorSize && index < getFatClusterMapLength()) {
+			if (offset >= 0 && offset + 1 < sectorSize && index < getFatClusterMapLength()) {
 				int fatEntry = readFatEntry0(offset);
-				if (fatEntry != fatClusterMap[index]) {
-					writeFatSectorEntry(index, fatEntry);
+				if (fatEntry != getFatClusterMap(index)) {
+					fatSectorEntryChanged(index, fatEntry);
 				}
 			}
 			index++;
 
-			if (offset >= -1 && offset + 2 < sectorSize && index < fatClusterMap.length) {
+			if (offset >= -1 && offset + 2 < sectorSize && index < getFatClusterMapLength()) {
 				int fatEntry = readFatEntry1(offset);
-				if (fatEntry != fatClusterMap[index]) {
-					writeFatSectorEntry(index, fatEntry);
+				if (fatEntry != getFatClusterMap(index)) {
+					fatSectorEntryChanged(index, fatEntry);
 				}
 			}
 			index++;
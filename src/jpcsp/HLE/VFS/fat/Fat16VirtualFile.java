@@ -45,9 +45,9 @@ public class Fat16VirtualFile extends Fat12VirtualFile {
 		}
 
 		int offset = (fatIndex * sectorSize) >> 1;
-		int maxSize = Math.min(sectorSize, (fatClusterMap.length - offset) << 1);
+		int maxSize = Math.min(sectorSize, (getFatClusterMapLength() - offset) << 1);
 		for (int i = 0, j = 0; i < maxSize; i += 2, j++) {
-			storeSectorInt16(currentSector, i, fatClusterMap[offset + j]);
+			storeSectorInt16(currentSector, i, getFatClusterMap(offset + j));
 		}
 	}
 
@@ -59,10 +59,11 @@ public class Fat16VirtualFile extends Fat12VirtualFile {
 			log.debug(String.format("Fat16VirtualFile.writeFatSector fatIndex=0x%X, offset=0x%X", fatIndex, offset));
 		}
 
-		for (int i = 0, j = 0; i < sectorSize; i += 2, j++) {
+		int maxSize = Math.min(sectorSize, (getFatClusterMapLength() - offset) << 1);
+		for (int i = 0, j = 0; i < maxSize; i += 2, j++) {
 			int fatEntry = readSectorInt16(currentSector, i);
-			if (fatEntry != fatClusterMap[offset + j]) {
-				writeFatSectorEntry(offset + j, fatEntry);
+			if (fatEntry != getFatClusterMap(offset + j)) {
+				fatSectorEntryChanged(offset + j, fatEntry);
 			}
 		}
 	}
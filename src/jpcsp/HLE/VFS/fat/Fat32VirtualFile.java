@@ -136,9 +136,9 @@ public class Fat32VirtualFile extends FatVirtualFile {
 		readEmptySector();
 
 		int offset = (fatIndex * sectorSize) >> 2;
-		int maxSize = Math.min(sectorSize, (fatClusterMap.length - offset) << 2);
+		int maxSize = Math.min(sectorSize, (getFatClusterMapLength() - offset) << 2);
 		for (int i = 0, j = 0; i < maxSize; i += 4, j++) {
-			storeSectorInt32(currentSector, i, fatClusterMap[offset + j]);
+			storeSectorInt32(currentSector, i, getFatClusterMap(offset + j));
 		}
 	}
 
@@ -150,10 +150,11 @@ public class Fat32VirtualFile extends FatVirtualFile {
 			log.debug(String.format("Fat32VirtualFile.writeFatSector fatIndex=0x%X, offset=0x%X", fatIndex, offset));
 		}
 
-		for (int i = 0, j = 0; i < sectorSize; i += 4, j++) {
+		int maxSize = Math.min(sectorSize, (getFatClusterMapLength() - offset) << 2);
+		for (int i = 0, j = 0; i < maxSize; i += 4, j++) {
 			int fatEntry = readSectorInt32(currentSector, i);
-			if (fatEntry != fatClusterMap[offset + j]) {
-				writeFatSectorEntry(offset + j, fatEntry);
+			if (fatEntry != getFatClusterMap(offset + j)) {
+				fatSectorEntryChanged(offset + j, fatEntry);
 			}
 		}
 	}
@@ -177,11 +178,8 @@ public class Fat32VirtualFile extends FatVirtualFile {
 
 	@Override
 	protected void setRootDirectory(FatFileInfo rootDirectory) {
-		for (int i = 0; i < rootDirectoryClusters.length; i++) {
-			setFatFileInfoMap(rootDirectoryClusters[i], rootDirectory);
-			int nextCluster = i < rootDirectoryClusters.length - 1 ? rootDirectoryClusters[i + 1] : getFatEOC();
-			setFatClusterMap(rootDirectoryClusters[i], nextCluster);
-		}
+		// The FAT entries of the root directory are computed from its clusters
 		rootDirectory.setClusters(rootDirectoryClusters);
+		setFatFileInfoMap(rootDirectory);
 	}
 }
@@ -51,6 +51,12 @@ public class FatBuilder {
 		this.maxNumberClusters = maxNumberClusters;
 	}
 
+	// The whole directory tree is scanned when building the FAT:
+	// the PSP is searching the FAT for free clusters, so that the clusters
+	// of all the existing files have to be allocated before the first
+	// FAT sector is read. The startup time and the heap used by the
+	// FatFileInfo objects are still growing with the number of files
+	// on the memory stick; only the cluster maps are kept sparse.
 	public FatFileInfo scan(String deviceName) {
 		firstFreeCluster = vFile.getFirstFreeCluster();
 
@@ -83,38 +89,20 @@ public class FatBuilder {
 		}
 	}
 
-	public void setClusters(FatFileInfo fileInfo, int[] clusters) {
-		fileInfo.setClusters(clusters);
-		vFile.setFatFileInfoMap(fileInfo);
-	}
-
-	private int allocateCluster() {
-		return firstFreeCluster++;
-	}
-
-	private int[] allocateClusters(long size) {
+	private void allocateClusters(FatFileInfo fileInfo, long size) {
 		int clusterSize = vFile.getClusterSize();
 		int numberClusters = (int) ((size + clusterSize - 1) / clusterSize);
 		if (numberClusters <= 0) {
-			return null;
-		}
-
-		int[] clusters = new int[numberClusters];
-		for (int i = 0; i < numberClusters; i++) {
-			clusters[i] = allocateCluster();
+			return;
 		}
 
-		// Fill the cluster chain in the cluster map
-		for (int i = 0; i < numberClusters - 1; i++) {
-			// Pointing to the next cluster
-			vFile.setFatClusterMap(clusters[i], clusters[i + 1]);
-		}
-		if (numberClusters > 0) {
-			// Last cluster in file (EOC)
-			vFile.setFatClusterMap(clusters[numberClusters - 1], vFile.getFatEOC());
-		}
+		// Each file is allocated a single run of consecutive clusters.
+		// The cluster chain in the cluster map is computed from this run
+		// only when the FAT is being read.
+		fileInfo.addClusters(firstFreeCluster, numberClusters);
+		firstFreeCluster += numberClusters;
 
-		return clusters;
+		vFile.setFatFileInfoMap(fileInfo);
 	}
 
 	private void allocateClusters(FatFileInfo fileInfo) {
@@ -132,8 +120,7 @@ public class FatBuilder {
 			dataSize = directoryTableEntrySize * directoryTableEntries;
 		}
 
-		int[] clusters = allocateClusters(dataSize);
-		setClusters(fileInfo, clusters);
+		allocateClusters(fileInfo, dataSize);
 	}
 
 	private void scan(String dirName, FatFileInfo parent) {
@@ -416,11 +403,7 @@ public class FatBuilder {
 
 		storeSectorInt16(directoryData, offset + 18, createDate);
 
-		int[] clusters = fileInfo.getClusters();
-		int entryClusterNumber = 0; // Empty file
-		if (clusters != null && clusters.length > 0) {
-			entryClusterNumber = clusters[0];
-		}
+		int entryClusterNumber = fileInfo.getFirstCluster(); // 0 for an empty file
 
 		storeSectorInt16(directoryData, offset + 20, entryClusterNumber >>> 16);
 
@@ -467,11 +450,7 @@ public class FatBuilder {
 
 		storeSectorInt16(directoryData, offset + 18, createDate);
 
-		int[] clusters = fileInfo.getClusters();
-		int entryClusterNumber = 0; // Empty file
-		if (clusters != null && clusters.length > 0) {
-			entryClusterNumber = clusters[0];
-		}
+		int entryClusterNumber = fileInfo.getFirstCluster(); // 0 for an empty file
 
 		storeSectorInt16(directoryData, offset + 20, entryClusterNumber >>> 16);
 
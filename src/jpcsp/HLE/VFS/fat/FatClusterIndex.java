@@ -0,0 +1,160 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE.VFS.fat;
+
+import java.util.Arrays;
+
+/**
+ * Map of the cluster numbers to the FatFileInfo owning them.
+ *
+ * The clusters are stored as sorted runs of consecutive clusters in primitive
+ * arrays: the memory used is depending on the number of runs (usually one run
+ * per file or directory) and not on the number of clusters of the partition.
+ */
+class FatClusterIndex {
+	private static final int INITIAL_CAPACITY = 64;
+	private int[] runStarts = new int[INITIAL_CAPACITY];
+	// The end of a run is exclusive
+	private int[] runEnds = new int[INITIAL_CAPACITY];
+	private FatFileInfo[] runInfos = new FatFileInfo[INITIAL_CAPACITY];
+	private int numberOfRuns;
+
+	public void clear() {
+		Arrays.fill(runInfos, 0, numberOfRuns, null);
+		numberOfRuns = 0;
+	}
+
+	public int getNumberOfRuns() {
+		return numberOfRuns;
+	}
+
+	public int getRunStart(int run) {
+		return runStarts[run];
+	}
+
+	public int getRunEnd(int run) {
+		return runEnds[run];
+	}
+
+	public FatFileInfo getRunInfo(int run) {
+		return runInfos[run];
+	}
+
+	// Return the index of the first run ending after the given cluster
+	private int search(int cluster) {
+		int low = 0;
+		int high = numberOfRuns;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (runEnds[middle] <= cluster) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	public FatFileInfo get(int cluster) {
+		int run = search(cluster);
+		if (run < numberOfRuns && runStarts[run] <= cluster) {
+			return runInfos[run];
+		}
+
+		return null;
+	}
+
+	/**
+	 * Map a run of consecutive clusters to a FatFileInfo.
+	 * Any previous mapping of these clusters is replaced.
+	 *
+	 * @param start     the first cluster of the run
+	 * @param count     the number of clusters in the run
+	 * @param fileInfo  the FatFileInfo owning the clusters
+	 */
+	public void put(int start, int count, FatFileInfo fileInfo) {
+		if (count <= 0) {
+			return;
+		}
+
+		int end = start + count;
+		int run = search(start);
+
+		// Remove or trim the runs overlapping the new one
+		while (run < numberOfRuns && runStarts[run] < end) {
+			if (runStarts[run] < start) {
+				if (runEnds[run] > end) {
+					// Split the run around the new one
+					insert(run + 1, end, runEnds[run], runInfos[run]);
+				}
+				runEnds[run] = start;
+				run++;
+			} else if (runEnds[run] > end) {
+				runStarts[run] = end;
+				break;
+			} else {
+				remove(run);
+			}
+		}
+
+		// Merge with the previous and/or the next run when owned by the same FatFileInfo
+		boolean mergePrevious = run > 0 && runEnds[run - 1] == start && runInfos[run - 1] == fileInfo;
+		boolean mergeNext = run < numberOfRuns && runStarts[run] == end && runInfos[run] == fileInfo;
+		if (mergePrevious && mergeNext) {
+			runEnds[run - 1] = runEnds[run];
+			remove(run);
+		} else if (mergePrevious) {
+			runEnds[run - 1] = end;
+		} else if (mergeNext) {
+			runStarts[run] = start;
+		} else {
+			insert(run, start, end, fileInfo);
+		}
+	}
+
+	private void insert(int run, int start, int end, FatFileInfo fileInfo) {
+		if (numberOfRuns >= runStarts.length) {
+			int capacity = runStarts.length * 2;
+			runStarts = Arrays.copyOf(runStarts, capacity);
+			runEnds = Arrays.copyOf(runEnds, capacity);
+			runInfos = Arrays.copyOf(runInfos, capacity);
+		}
+
+		int move = numberOfRuns - run;
+		if (move > 0) {
+			System.arraycopy(runStarts, run, runStarts, run + 1, move);
+			System.arraycopy(runEnds, run, runEnds, run + 1, move);
+			System.arraycopy(runInfos, run, runInfos, run + 1, move);
+		}
+		runStarts[run] = start;
+		runEnds[run] = end;
+		runInfos[run] = fileInfo;
+		numberOfRuns++;
+	}
+
+	private void remove(int run) {
+		int move = numberOfRuns - run - 1;
+		if (move > 0) {
+			System.arraycopy(runStarts, run + 1, runStarts, run, move);
+			System.arraycopy(runEnds, run + 1, runEnds, run, move);
+			System.arraycopy(runInfos, run + 1, runInfos, run, move);
+		}
+		numberOfRuns--;
+		runInfos[numberOfRuns] = null;
+	}
+}
@@ -39,7 +39,10 @@ public class FatFileInfo {
 	private boolean readOnly;
 	private ScePspDateTime lastModified;
 	private long fileSize;
-	private int[] clusters;
+	// The clusters are stored as runs of consecutive clusters:
+	// first cluster of run #0, number of clusters in run #0, first cluster of run #1...
+	private int[] clusterRuns;
+	private int numberOfClusters;
 	private List<FatFileInfo> children;
 	private IVirtualFile vFile;
 	private boolean vFileOpen;
@@ -115,11 +118,37 @@ public class FatFileInfo {
 	}
 
 	public int[] getClusters() {
+		if (clusterRuns == null) {
+			return null;
+		}
+
+		int[] clusters = new int[numberOfClusters];
+		for (int i = 0, n = 0; i < clusterRuns.length; i += 2) {
+			for (int j = 0; j < clusterRuns[i + 1]; j++) {
+				clusters[n++] = clusterRuns[i] + j;
+			}
+		}
+
 		return clusters;
 	}
 
 	public void setClusters(int[] clusters) {
-		this.clusters = clusters;
+		clusterRuns = null;
+		numberOfClusters = 0;
+
+		if (clusters != null) {
+			for (int i = 0; i < clusters.length; i++) {
+				addCluster(clusters[i]);
+			}
+		}
+	}
+
+	public int[] getClusterRuns() {
+		return clusterRuns;
+	}
+
+	public int getNumberOfClusters() {
+		return numberOfClusters;
 	}
 
 	public void addChild(FatFileInfo fileInfo) {
@@ -195,29 +224,103 @@ public class FatFileInfo {
 		return null;
 	}
 
-	public boolean hasCluster(int cluster) {
-		if (clusters != null) {
-			for (int i = 0; i < clusters.length; i++) {
-				if (clusters[i] == cluster) {
-					return true;
+	/**
+	 * Return the index of a cluster in the cluster chain.
+	 *
+	 * @param cluster  the cluster number
+	 * @return         the index of the cluster in the chain,
+	 *                 or -1 if the cluster is not part of the chain.
+	 */
+	public int getClusterIndex(int cluster) {
+		if (clusterRuns != null) {
+			for (int i = 0, index = 0; i < clusterRuns.length; i += 2) {
+				int offset = cluster - clusterRuns[i];
+				if (offset >= 0 && offset < clusterRuns[i + 1]) {
+					return index + offset;
+				}
+				index += clusterRuns[i + 1];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Return the cluster at the given index in the cluster chain.
+	 *
+	 * @param index  the index in the cluster chain
+	 * @return       the cluster number, or 0 if the index is past the end of the chain.
+	 */
+	public int getCluster(int index) {
+		if (clusterRuns != null && index >= 0) {
+			for (int i = 0; i < clusterRuns.length; i += 2) {
+				if (index < clusterRuns[i + 1]) {
+					return clusterRuns[i] + index;
+				}
+				index -= clusterRuns[i + 1];
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Return the cluster following the given cluster in the cluster chain.
+	 *
+	 * @param cluster  the cluster number
+	 * @return         the next cluster number, or -1 if the cluster
+	 *                 is the last one or is not part of the chain.
+	 */
+	public int getNextCluster(int cluster) {
+		if (clusterRuns != null) {
+			for (int i = 0; i < clusterRuns.length; i += 2) {
+				int offset = cluster - clusterRuns[i];
+				if (offset >= 0 && offset < clusterRuns[i + 1]) {
+					if (offset < clusterRuns[i + 1] - 1) {
+						return cluster + 1;
+					}
+					if (i + 2 < clusterRuns.length) {
+						return clusterRuns[i + 2];
+					}
+					break;
 				}
 			}
 		}
 
-		return false;
+		return -1;
+	}
+
+	public boolean hasCluster(int cluster) {
+		return getClusterIndex(cluster) >= 0;
 	}
 
 	public void addCluster(int cluster) {
-		clusters = Utilities.extendArray(clusters, 1);
-		clusters[clusters.length - 1] = cluster;
+		addClusters(cluster, 1);
+	}
+
+	public void addClusters(int firstCluster, int count) {
+		if (count <= 0) {
+			return;
+		}
+
+		int lastRun = clusterRuns == null ? -1 : clusterRuns.length - 2;
+		if (lastRun >= 0 && clusterRuns[lastRun] + clusterRuns[lastRun + 1] == firstCluster) {
+			// Extending the last run
+			clusterRuns[lastRun + 1] += count;
+		} else {
+			clusterRuns = Utilities.extendArray(clusterRuns, 2);
+			clusterRuns[clusterRuns.length - 2] = firstCluster;
+			clusterRuns[clusterRuns.length - 1] = count;
+		}
+		numberOfClusters += count;
 	}
 
 	public int getFirstCluster() {
-		if (clusters == null || clusters.length == 0) {
+		if (clusterRuns == null) {
 			return 0;
 		}
 
-		return clusters[0];
+		return clusterRuns[0];
 	}
 
 	public void read(StateInputStream stream) throws IOException {
@@ -235,7 +338,7 @@ public class FatFileInfo {
     		lastModified = ScePspDateTime.fromMSDOSTime(time);
     	}
     	fileSize = stream.readLong();
-    	clusters = stream.readIntsWithLength();
+    	setClusters(stream.readIntsWithLength());
     	fileData = stream.readBytesWithLength();
     	closeVirtualFile();
     }
@@ -268,7 +371,7 @@ public class FatFileInfo {
     		stream.writeInt(lastModified.toMSDOSTime());
     	}
     	stream.writeLong(fileSize);
-    	stream.writeIntsWithLength(clusters);
+    	stream.writeIntsWithLength(getClusters());
     	stream.writeBytesWithLength(fileData);
     }
 
@@ -315,18 +418,22 @@ public class FatFileInfo {
 
 		s.append(String.format(", size=0x%X", fileSize));
 
-		if (clusters != null) {
+		if (clusterRuns != null) {
 			s.append(", clusters=[");
-			// Display maximum 20 cluster entries
-			int length = Math.min(clusters.length, 20);
-			for (int i = 0; i < length; i++) {
+			// Display maximum 20 cluster runs
+			int length = Math.min(clusterRuns.length, 40);
+			for (int i = 0; i < length; i += 2) {
 				if (i > 0) {
 					s.append(", ");
 				}
-				s.append(String.format("0x%X", clusters[i]));
+				if (clusterRuns[i + 1] == 1) {
+					s.append(String.format("0x%X", clusterRuns[i]));
+				} else {
+					s.append(String.format("0x%X-0x%X", clusterRuns[i], clusterRuns[i] + clusterRuns[i + 1] - 1));
+				}
 			}
-			if (length < clusters.length) {
-				s.append(String.format(", ..., 0x%X", clusters[clusters.length - 1]));
+			if (length < clusterRuns.length) {
+				s.append(", ...");
 			}
 			s.append("]");
 		}
@@ -45,6 +45,7 @@ import jpcsp.HLE.VFS.IVirtualFile;
 import jpcsp.HLE.VFS.IVirtualFileSystem;
 import jpcsp.HLE.VFS.InvalidVirtualFile;
 import jpcsp.HLE.VFS.ReadCacheVirtualFile;
+import jpcsp.HLE.VFS.synchronize.ChangeJournal;
 import jpcsp.HLE.kernel.types.SceIoDirent;
 import jpcsp.HLE.kernel.types.SceIoStat;
 import jpcsp.HLE.modules.IoFileMgrForUser;
@@ -69,16 +70,26 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 	private long position;
 	protected int totalSectors;
     protected int fatSectors;
-    protected int[] fatClusterMap;
-    private FatFileInfo[] fatFileInfoMap;
+    // The FAT entries are computed from the cluster chains of the FatFileInfo's.
+    // Only the pages of FAT entries being modified are explicitly stored.
+    private static final int fatClusterMapPageShift = 10;
+    private static final int fatClusterMapPageSize = 1 << fatClusterMapPageShift;
+    private int[][] fatClusterMapPages;
+    private int fatClusterMapLength;
+    private final FatClusterIndex fatFileInfoMap = new FatClusterIndex();
     private FatBuilder builder;
     private int fatSectorNumber = bootSectorNumber + reservedSectors;
     private int fsInfoSectorNumber = bootSectorNumber + 1;
     protected FatFileInfo rootDirectory;
     protected int rootDirectoryStartSectorNumber = -1;
     protected int rootDirectoryEndSectorNumber = -1;
-    private final byte[] secondFat;
+    // The sectors of the second FAT, only allocated when being written
+    private final byte[][] secondFat;
     private IVirtualFile baseVirtualFile;
+    private ChangeJournal changeJournal;
+    private boolean journaling;
+    // Clusters appended by the PSP to a file or directory since the last FAT rebuild
+    private final Map<Integer, FatFileInfo> journalAllocatedClusters = new HashMap<Integer, FatFileInfo>();
 
 	protected FatVirtualFile(String deviceName, IVirtualFileSystem vfs, int totalSectors) {
 		this.deviceName = deviceName;
@@ -92,7 +103,7 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 			log.debug(String.format("totalSectors=0x%X, fatSectors=0x%X", totalSectors, fatSectors));
 		}
 
-		secondFat = new byte[fatSectors * sectorSize];
+		secondFat = new byte[fatSectors][];
 
 		reset();
 	}
@@ -105,6 +116,10 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 	protected abstract int getFirstDataClusterOffset();
 	protected abstract void setRootDirectory(FatFileInfo rootDirectory);
 
+	public void setChangeJournal(ChangeJournal changeJournal) {
+		this.changeJournal = changeJournal;
+	}
+
 	public void setBaseVirtualFile(IVirtualFile baseVirtualFile) {
 		this.baseVirtualFile = baseVirtualFile;
 	}
@@ -138,17 +153,16 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		usedSectors += getFirstDataClusterOffset();
 		int maxNumberClusters = (totalSectors - usedSectors) / getSectorsPerCluster();
 
-		// Allocate the FAT cluster map
-		fatClusterMap = new int[maxNumberClusters];
-		// First 2 special entries in the cluster map
-		fatClusterMap[0] = 0xFFFFFFF8 & getClusterMask(); // 0xF8 is matching the boot sector Media type field
-		fatClusterMap[1] = 0xFFFFFFFF & getClusterMask();
+		// The FAT cluster map pages are only allocated when being written
+		fatClusterMapLength = maxNumberClusters;
+		fatClusterMapPages = new int[getFatClusterMapPagesCount(maxNumberClusters)][];
 
-		// Allocate the FAT file info map
-		fatFileInfoMap = new FatFileInfo[maxNumberClusters];
+		fatFileInfoMap.clear();
 
 		// Reset the second FAT
-		Arrays.fill(secondFat, (byte) 0);
+		Arrays.fill(secondFat, null);
+
+		journalAllocatedClusters.clear();
 
 		builder = new FatBuilder(this, vfs, maxNumberClusters);
 	}
@@ -157,14 +171,21 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		builder.scan(deviceName);
 	}
 
+	private static int getFatClusterMapPagesCount(int length) {
+		return (length + fatClusterMapPageSize - 1) >> fatClusterMapPageShift;
+	}
+
 	private void extendClusterMap(int clusterNumber) {
-		int extend = clusterNumber + 1 - fatClusterMap.length;
+		int extend = clusterNumber + 1 - fatClusterMapLength;
 		if (extend > 0) {
 			if (log.isDebugEnabled()) {
 				log.debug(String.format("extendClusterMap clusterNumber=0x%X, extend=0x%X", clusterNumber, extend));
 			}
-			fatClusterMap = Utilities.extendArray(fatClusterMap, extend);
-			fatFileInfoMap = FatUtils.extendArray(fatFileInfoMap, extend);
+			fatClusterMapLength += extend;
+			int pagesCount = getFatClusterMapPagesCount(fatClusterMapLength);
+			if (pagesCount > fatClusterMapPages.length) {
+				fatClusterMapPages = Arrays.copyOf(fatClusterMapPages, pagesCount);
+			}
 		}
 	}
 
@@ -173,26 +194,91 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 			log.trace(String.format("setFatFileInfoMap %s", fileInfo));
 		}
 
-		int[] clusters = fileInfo.getClusters();
-		if (clusters != null) {
-			for (int i = 0; i < clusters.length; i++) {
-				setFatFileInfoMap(clusters[i], fileInfo);
+		int[] clusterRuns = fileInfo.getClusterRuns();
+		if (clusterRuns != null) {
+			for (int i = 0; i < clusterRuns.length; i += 2) {
+				int lastClusterNumber = clusterRuns[i] + clusterRuns[i + 1] - 1;
+				if (lastClusterNumber >= fatClusterMapLength) {
+					extendClusterMap(lastClusterNumber);
+				}
+				fatFileInfoMap.put(clusterRuns[i], clusterRuns[i + 1], fileInfo);
 			}
 		}
 	}
 
 	public void setFatFileInfoMap(int clusterNumber, FatFileInfo fileInfo) {
-		if (clusterNumber >= fatFileInfoMap.length) {
+		if (clusterNumber >= fatClusterMapLength) {
 			extendClusterMap(clusterNumber);
 		}
-		fatFileInfoMap[clusterNumber] = fileInfo;
+		fatFileInfoMap.put(clusterNumber, 1, fileInfo);
+	}
+
+	protected int getFatClusterMapLength() {
+		return fatClusterMapLength;
+	}
+
+	private int getDefaultFatClusterMap(int clusterNumber) {
+		// First 2 special entries in the cluster map
+		if (clusterNumber == 0) {
+			return 0xFFFFFFF8 & getClusterMask(); // 0xF8 is matching the boot sector Media type field
+		}
+		if (clusterNumber == 1) {
+			return 0xFFFFFFFF & getClusterMask();
+		}
+
+		FatFileInfo fileInfo = fatFileInfoMap.get(clusterNumber);
+		if (fileInfo == null) {
+			// Free cluster
+			return 0;
+		}
+
+		int nextClusterNumber = fileInfo.getNextCluster(clusterNumber);
+		if (nextClusterNumber < 0) {
+			return getFatEOC();
+		}
+
+		return nextClusterNumber;
+	}
+
+	protected int getFatClusterMap(int clusterNumber) {
+		int[] page = fatClusterMapPages[clusterNumber >> fatClusterMapPageShift];
+		if (page != null) {
+			return page[clusterNumber & (fatClusterMapPageSize - 1)];
+		}
+
+		return getDefaultFatClusterMap(clusterNumber);
 	}
 
 	public void setFatClusterMap(int clusterNumber, int value) {
-		if (clusterNumber >= fatClusterMap.length) {
+		if (clusterNumber >= fatClusterMapLength) {
 			extendClusterMap(clusterNumber);
 		}
-		fatClusterMap[clusterNumber] = value;
+
+		int pageIndex = clusterNumber >> fatClusterMapPageShift;
+		int[] page = fatClusterMapPages[pageIndex];
+		if (page == null) {
+			if (value == getDefaultFatClusterMap(clusterNumber)) {
+				// Matching the cluster chains, nothing to store
+				return;
+			}
+
+			page = new int[fatClusterMapPageSize];
+			int firstClusterNumberInPage = pageIndex << fatClusterMapPageShift;
+			for (int i = 0; i < fatClusterMapPageSize; i++) {
+				page[i] = getDefaultFatClusterMap(firstClusterNumberInPage + i);
+			}
+			fatClusterMapPages[pageIndex] = page;
+		}
+		page[clusterNumber & (fatClusterMapPageSize - 1)] = value;
+	}
+
+	private int[] getFatClusterMapArray() {
+		int[] fatClusterMap = new int[fatClusterMapLength];
+		for (int i = 0; i < fatClusterMap.length; i++) {
+			fatClusterMap[i] = getFatClusterMap(i);
+		}
+
+		return fatClusterMap;
 	}
 
 	private int getClusterNumber(int sectorNumber) {
@@ -295,14 +381,9 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 			}
 
 			long byteOffset = sectorOffsetInCluster * (long) sectorSize;
-			int[] clusters = fileInfo.getClusters();
-			if (clusters != null) {
-				for (int i = 0; i < clusters.length; i++) {
-					if (clusters[i] == clusterNumber) {
-						break;
-					}
-					byteOffset += getSectorsPerCluster() * sectorSize;
-				}
+			int clusterIndex = fileInfo.getClusterIndex(clusterNumber);
+			if (clusterIndex > 0) {
+				byteOffset += clusterIndex * (long) getClusterSize();
 			}
 
 			if (byteOffset < fileInfo.getFileSize()) {
@@ -339,18 +420,23 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		readEmptySector();
 
 		int clusterNumber = getClusterNumber(sectorNumber);
-		if (clusterNumber >= fatFileInfoMap.length) {
+		if (clusterNumber >= fatClusterMapLength) {
 			// Reading out of the allocated fat files
 			return;
 		}
-		FatFileInfo fileInfo = fatFileInfoMap[clusterNumber];
+		FatFileInfo fileInfo = fatFileInfoMap.get(clusterNumber);
 		int sectorOffsetInCluster = getSectorOffsetInCluster(sectorNumber);
 
 		readDataSector(sectorNumber, clusterNumber, sectorOffsetInCluster, fileInfo);
 	}
 
 	private void readSecondFatSector(int fatIndex) {
-		System.arraycopy(secondFat, fatIndex * sectorSize, currentSector, 0, sectorSize);
+		if (secondFat[fatIndex] == null) {
+			// The second FAT sector has never been written, it is matching the first FAT
+			readFatSector(fatIndex);
+		} else {
+			System.arraycopy(secondFat[fatIndex], 0, currentSector, 0, sectorSize);
+		}
 	}
 
 	protected void readEmptySector() {
@@ -392,7 +478,18 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 			log.debug(String.format("writeFatSectorEntry[0x%X]=0x%08X", clusterNumber, value));
 		}
 
-		fatClusterMap[clusterNumber] = value;
+		setFatClusterMap(clusterNumber, value);
+	}
+
+	// Called by writeFatSector() for each entry of currentSector
+	// being different from the entry computed from the cluster map.
+	protected void fatSectorEntryChanged(int clusterNumber, int value) {
+		if (journaling) {
+			// Only record the change, the cluster map is left unchanged
+			journalFatEntry(clusterNumber, value & getClusterMask());
+		} else {
+			writeFatSectorEntry(clusterNumber, value);
+		}
 	}
 
 	protected abstract void writeFatSector(int fatIndex);
@@ -455,14 +552,9 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		int sectorOffsetInCluster = getSectorOffsetInCluster(sectorNumber);
 
 		long byteOffset = sectorOffsetInCluster * (long) sectorSize;
-		int[] clusters = fileInfo.getClusters();
-		if (clusters != null) {
-			for (int i = 0; i < clusters.length; i++) {
-				if (clusters[i] == clusterNumber) {
-					break;
-				}
-				byteOffset += getClusterSize();
-			}
+		int clusterIndex = fileInfo.getClusterIndex(clusterNumber);
+		if (clusterIndex > 0) {
+			byteOffset += clusterIndex * (long) getClusterSize();
 		}
 
 		return byteOffset;
@@ -540,13 +632,16 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 	private void writeDataSector(int sectorNumber) {
 		int clusterNumber = getClusterNumber(sectorNumber);
 		int sectorOffsetInCluster = getSectorOffsetInCluster(sectorNumber);
-		FatFileInfo fileInfo = fatFileInfoMap[clusterNumber];
+		FatFileInfo fileInfo = fatFileInfoMap.get(clusterNumber);
 
 		writeDataSector(sectorNumber, clusterNumber, sectorOffsetInCluster, fileInfo);
 	}
 
 	private void writeSecondFatSector(int fatIndex) {
-		System.arraycopy(currentSector, 0, secondFat, fatIndex * sectorSize, sectorSize);
+		if (secondFat[fatIndex] == null) {
+			secondFat[fatIndex] = new byte[sectorSize];
+		}
+		System.arraycopy(currentSector, 0, secondFat[fatIndex], 0, sectorSize);
 	}
 
 	private void writeEmptySector() {
@@ -687,6 +782,117 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		return writeLength;
 	}
 
+	/**
+	 * Record in the change journal the directories and files modified by
+	 * writing data at the given offset. The data itself is not written.
+	 *
+	 * @param offset         the offset where the data is being written
+	 * @param inputPointer   the data being written
+	 * @param inputLength    the length of the data
+	 */
+	public void journalWrite(long offset, TPointer inputPointer, int inputLength) {
+		if (changeJournal != null) {
+			journalWrite(offset, inputPointer.getArray8(inputLength), 0, inputLength);
+		}
+	}
+
+	/**
+	 * Record in the change journal the directories and files modified by
+	 * writing data at the given offset. The data itself is not written.
+	 *
+	 * @param offset         the offset where the data is being written
+	 * @param inputBuffer    the data being written
+	 * @param inputOffset    the offset of the data in inputBuffer
+	 * @param inputLength    the length of the data
+	 */
+	public synchronized void journalWrite(long offset, byte[] inputBuffer, int inputOffset, int inputLength) {
+		if (changeJournal == null) {
+			return;
+		}
+
+		while (inputLength > 0) {
+			int sectorOffset = getSectorOffset(offset);
+			int length = Math.min(sectorSize - sectorOffset, inputLength);
+
+			journalSector(getSectorNumber(offset), inputBuffer, inputOffset, sectorOffset, length);
+
+			inputLength -= length;
+			inputOffset += length;
+			offset += length;
+		}
+	}
+
+	private void journalSector(int sectorNumber, byte[] inputBuffer, int inputOffset, int sectorOffset, int length) {
+		if (sectorNumber < fatSectorNumber) {
+			// The boot sector and the FsInfo sector are not describing any directory entry
+		} else if (sectorNumber < fatSectorNumber + fatSectors) {
+			// Compare the new FAT entries with the current ones,
+			// without updating the cluster map
+			int fatIndex = sectorNumber - fatSectorNumber;
+			readFatSector(fatIndex);
+			System.arraycopy(inputBuffer, inputOffset, currentSector, sectorOffset, length);
+			journaling = true;
+			try {
+				writeFatSector(fatIndex);
+			} finally {
+				journaling = false;
+			}
+		} else if (sectorNumber < fatSectorNumber + numberOfFats * fatSectors) {
+			// The second FAT is only a copy of the first one
+		} else if (sectorNumber >= rootDirectoryStartSectorNumber && sectorNumber <= rootDirectoryEndSectorNumber) {
+			journalEntry(rootDirectory);
+		} else {
+			journalCluster(getClusterNumber(sectorNumber));
+		}
+	}
+
+	private FatFileInfo getJournalFileInfo(int clusterNumber) {
+		FatFileInfo fileInfo = journalAllocatedClusters.get(clusterNumber);
+		if (fileInfo == null) {
+			fileInfo = fatFileInfoMap.get(clusterNumber);
+		}
+
+		return fileInfo;
+	}
+
+	private void journalFatEntry(int clusterNumber, int nextClusterNumber) {
+		FatFileInfo fileInfo = getJournalFileInfo(clusterNumber);
+		if (fileInfo == null) {
+			// Cluster chain of a new file or directory:
+			// its directory entry is being written in its parent directory.
+			return;
+		}
+
+		// The file or directory is being extended, truncated or deleted
+		journalEntry(fileInfo);
+
+		if (nextClusterNumber >= firstClusterNumber && nextClusterNumber < (getClusterMask() & 0xFFFFFFF0)) {
+			journalAllocatedClusters.put(nextClusterNumber, fileInfo);
+		}
+	}
+
+	private void journalCluster(int clusterNumber) {
+		FatFileInfo fileInfo = getJournalFileInfo(clusterNumber);
+		if (fileInfo == null) {
+			// Writing to a cluster not yet allocated in the FAT
+			changeJournal.addUnattributedChange();
+		} else {
+			journalEntry(fileInfo);
+		}
+	}
+
+	private void journalEntry(FatFileInfo fileInfo) {
+		if (fileInfo == null) {
+			changeJournal.addUnattributedChange();
+		} else if (fileInfo.isRootDirectory()) {
+			changeJournal.addDirectory("");
+		} else if (fileInfo.isDirectory()) {
+			changeJournal.addDirectory(fileInfo.getFullFileName());
+		} else {
+			changeJournal.addFile(fileInfo.getFullFileName());
+		}
+	}
+
 	@Override
 	public synchronized long ioLseek(long offset) {
 		position = offset;
@@ -741,10 +947,13 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
     	totalSectors = stream.readInt();
     	fatSectors = stream.readInt();
 
-    	fatClusterMap = stream.readIntsWithLength();
+    	int[] fatClusterMap = stream.readIntsWithLength();
+    	fatClusterMapLength = fatClusterMap.length;
+    	fatClusterMapPages = new int[getFatClusterMapPagesCount(fatClusterMapLength)][];
+    	Arrays.fill(secondFat, null);
 
     	// Read the fatFileInfoMap in the format: index, alreadyReadIndex, [object,] index, alreadyReadIndex, [object]..., -1
-    	fatFileInfoMap = new FatFileInfo[fatClusterMap.length];
+    	fatFileInfoMap.clear();
     	List<FatFileInfo> fatFileInfoList = new LinkedList<FatFileInfo>();
     	while (true) {
     		int i = stream.readInt();
@@ -756,14 +965,19 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
     		int alreadyReadIndex = stream.readInt();
     		if (alreadyReadIndex < 0) {
     			FatFileInfo fatFileInfo = new FatFileInfo();
-				fatFileInfoMap[i] = fatFileInfo;
+    			setFatFileInfoMap(i, fatFileInfo);
 				fatFileInfo.read(stream);
 				fatFileInfoList.add(fatFileInfo);
     		} else {
-    			fatFileInfoMap[i] = fatFileInfoMap[alreadyReadIndex];
+    			setFatFileInfoMap(i, fatFileInfoMap.get(alreadyReadIndex));
     		}
     	}
 
+    	// Only store the FAT entries not matching the cluster chains
+    	for (int i = 0; i < fatClusterMap.length; i++) {
+    		setFatClusterMap(i, fatClusterMap[i]);
+    	}
+
     	// Read the parent-children relations
     	for (FatFileInfo fatFileInfo : fatFileInfoList) {
 			fatFileInfo.read(stream, this);
@@ -778,14 +992,14 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
     	stream.writeInt(totalSectors);
     	stream.writeInt(fatSectors);
 
-    	stream.writeIntsWithLength(fatClusterMap);
+    	stream.writeIntsWithLength(getFatClusterMapArray());
 
     	// Write the fatFileInfoMap in the format: index, alreadyWrittenIndex, [object,] index, alreadyWrittenIndex, [object]..., -1
     	HashMap<FatFileInfo, Integer> alreadyWritten = new HashMap<FatFileInfo, Integer>();
     	List<FatFileInfo> fatFileInfoList = new LinkedList<FatFileInfo>();
-    	for (int i = 0; i < fatFileInfoMap.length; i++) {
-    		FatFileInfo fatFileInfo = fatFileInfoMap[i];
-    		if (fatFileInfo != null) {
+    	for (int run = 0; run < fatFileInfoMap.getNumberOfRuns(); run++) {
+    		FatFileInfo fatFileInfo = fatFileInfoMap.getRunInfo(run);
+    		for (int i = fatFileInfoMap.getRunStart(run); i < fatFileInfoMap.getRunEnd(run); i++) {
     			stream.writeInt(i);
     			Integer alreadyWrittenIndex = alreadyWritten.get(fatFileInfo);
     			if (alreadyWrittenIndex != null) {
@@ -809,9 +1023,9 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 
     private int getFatFileInfoMapIndex(FatFileInfo info) {
 		if (info != null) {
-			for (int i = 0; i < fatFileInfoMap.length; i++) {
-				if (info == fatFileInfoMap[i]) {
-					return i;
+			for (int run = 0; run < fatFileInfoMap.getNumberOfRuns(); run++) {
+				if (info == fatFileInfoMap.getRunInfo(run)) {
+					return fatFileInfoMap.getRunStart(run);
 				}
 			}
 		}
@@ -820,10 +1034,10 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 	}
 
 	private FatFileInfo getFatFileInfoFromMapIndex(int index) {
-		if (index < 0 || index >= fatFileInfoMap.length) {
+		if (index < 0) {
 			return null;
 		}
-		return fatFileInfoMap[index];
+		return fatFileInfoMap.get(index);
 	}
 
     public FatFileInfo readFatFileInfo(StateInputStream stream) throws IOException {
@@ -909,8 +1123,6 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 
     	reset();
 
-    	// Copy the fatClusterMap from the VFS
-    	System.arraycopy(fatVirtualFileSystem.getFatClusterMap(), 0, fatClusterMap, 0, fatClusterMap.length);
     	int rootDirectoryClusterNumber = fatVirtualFileSystem.getRootDirectoryClusterNumber();
 
     	// Rebuild all the FatFileInfo's
@@ -918,14 +1130,20 @@ public abstract class FatVirtualFile implements IVirtualFile, IVirtualCache, ISt
 		rootDirectory.addCluster(rootDirectoryClusterNumber);
     	setFatFileInfoMapRecursive(fatVirtualFileSystem, rootDirectoryClusterNumber, rootDirectory);
     	setFatFileInfoMap(rootDirectory);
+
+    	// Copy the fatClusterMap from the VFS: only the entries
+    	// not matching the rebuilt cluster chains need to be stored
+    	int[] fatClusterMap = fatVirtualFileSystem.getFatClusterMap();
+    	int length = Math.min(fatClusterMap.length, fatClusterMapLength);
+    	for (int i = 0; i < length; i++) {
+    		setFatClusterMap(i, fatClusterMap[i]);
+    	}
 	}
 
 	@Override
 	public synchronized void closeCachedFiles() {
-		for (FatFileInfo fatFileInfo : fatFileInfoMap) {
-			if (fatFileInfo != null) {
-				fatFileInfo.closeVirtualFile();
-			}
+		for (int run = 0; run < fatFileInfoMap.getNumberOfRuns(); run++) {
+			fatFileInfoMap.getRunInfo(run).closeVirtualFile();
 		}
 	}
 
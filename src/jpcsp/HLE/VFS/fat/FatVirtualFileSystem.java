@@ -58,12 +58,12 @@ public class FatVirtualFileSystem extends AbstractVirtualFileSystem implements I
 
 	private class FatVirtualFileInstance implements IVirtualFile {
 		private final long length;
-		private final int[] clusters;
+		private final FatFileInfo fatFileInfo;
 		private long position;
 
 		public FatVirtualFileInstance(FatFileInfo fatFileInfo) {
+			this.fatFileInfo = fatFileInfo;
 			length = fatFileInfo.getFileSize();
-			clusters = fatFileInfo.getClusters();
 		}
 
 		@Override
@@ -73,7 +73,7 @@ public class FatVirtualFileSystem extends AbstractVirtualFileSystem implements I
 
 		private int getSectorNumberFromPosition() {
 			int clusterIndex = (int) (position / (sectorSize * sectorsPerCluster));
-			int clusterNumber = clusters[clusterIndex];
+			int clusterNumber = fatFileInfo.getCluster(clusterIndex);
 			int sectorNumber = getSectorNumber(clusterNumber);
 			sectorNumber += (position / sectorSize) % sectorsPerCluster;
 
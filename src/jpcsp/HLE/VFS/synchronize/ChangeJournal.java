@@ -0,0 +1,139 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE.VFS.synchronize;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Journal of the directories and files modified on the input of a
+ * SynchronizeVirtualFileSystems since the last synchronization.
+ *
+ * The journal is filled by the writer of the input (e.g. by the FatVirtualFile
+ * when the PSP is writing sectors of the memory stick) and drained at each
+ * delta synchronization, so that only the journaled entries have to be
+ * compared with the output instead of the complete directory tree.
+ * The entries are coalesced: a file or directory modified several times
+ * between two synchronizations is only recorded once.
+ *
+ * When the journal cannot tell which entries have been modified
+ * (e.g. after loading a state or when too many entries have been modified),
+ * it is marked as overflowed and the next synchronization walks the complete tree.
+ */
+public class ChangeJournal {
+	private static final int MAX_ENTRIES = 1024;
+	// The directory names are sorted so that parent directories are synchronized first
+	private final Set<String> directories = new TreeSet<String>();
+	private final Set<String> files = new TreeSet<String>();
+	private boolean overflow;
+	private boolean unattributedChanges;
+
+	public synchronized void addDirectory(String dirName) {
+		if (!overflow && directories.add(dirName)) {
+			checkOverflow();
+		}
+	}
+
+	public synchronized void addFile(String fileName) {
+		if (!overflow && files.add(fileName)) {
+			checkOverflow();
+		}
+	}
+
+	/**
+	 * Record that some data has been written which could not be attributed
+	 * (yet) to a directory or to a file, e.g. in a newly allocated cluster.
+	 * Such data is expected to belong to a new entry whose parent directory
+	 * is also being journaled.
+	 */
+	public synchronized void addUnattributedChange() {
+		unattributedChanges = true;
+	}
+
+	public synchronized void setOverflow() {
+		overflow = true;
+		directories.clear();
+		files.clear();
+	}
+
+	private void checkOverflow() {
+		if (directories.size() + files.size() > MAX_ENTRIES) {
+			setOverflow();
+		}
+	}
+
+	public synchronized boolean isEmpty() {
+		return !overflow && !unattributedChanges && directories.isEmpty() && files.isEmpty();
+	}
+
+	/**
+	 * Retrieve the journaled entries and clear the journal.
+	 *
+	 * @return a copy of the journal before it was cleared
+	 */
+	public synchronized ChangeJournal drain() {
+		ChangeJournal changes = new ChangeJournal();
+		changes.directories.addAll(directories);
+		changes.files.addAll(files);
+		// Written data which could not be attributed to any modified directory
+		// is requiring a walk of the complete tree
+		changes.overflow = overflow || (unattributedChanges && directories.isEmpty());
+
+		directories.clear();
+		files.clear();
+		overflow = false;
+		unattributedChanges = false;
+
+		return changes;
+	}
+
+	/**
+	 * Add back into the journal the entries previously retrieved by drain(),
+	 * e.g. when their synchronization has failed and has to be retried.
+	 *
+	 * @param changes   the journal returned by drain()
+	 */
+	public synchronized void restore(ChangeJournal changes) {
+		if (changes.overflow) {
+			setOverflow();
+		} else if (!overflow) {
+			directories.addAll(changes.directories);
+			files.addAll(changes.files);
+			checkOverflow();
+		}
+	}
+
+	public boolean isOverflow() {
+		return overflow;
+	}
+
+	public Set<String> getDirectories() {
+		return directories;
+	}
+
+	public Set<String> getFiles() {
+		return files;
+	}
+
+	@Override
+	public synchronized String toString() {
+		if (overflow) {
+			return "ChangeJournal[overflow]";
+		}
+		return String.format("ChangeJournal[directories=%s, files=%s]", directories, files);
+	}
+}
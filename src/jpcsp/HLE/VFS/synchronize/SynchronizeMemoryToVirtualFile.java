@@ -33,6 +33,9 @@ public class SynchronizeMemoryToVirtualFile extends BaseSynchronize {
 	private int inputSize;
 	private IVirtualFile output;
 	private long outputOffset;
+	// Range of the input modified since the last synchronization
+	private int dirtyStart;
+	private int dirtyEnd;
 
 	public SynchronizeMemoryToVirtualFile(String name, TPointer input, int inputSize, IVirtualFile output, Object lock) {
 		super(name, lock);
@@ -43,10 +46,41 @@ public class SynchronizeMemoryToVirtualFile extends BaseSynchronize {
 		outputOffset = output.getPosition();
 	}
 
+	private void addDirtyRange(int offset, int length) {
+		synchronized (lock) {
+			if (dirtyStart >= dirtyEnd) {
+				dirtyStart = offset;
+				dirtyEnd = offset + length;
+			} else {
+				dirtyStart = Math.min(dirtyStart, offset);
+				dirtyEnd = Math.max(dirtyEnd, offset + length);
+			}
+		}
+	}
+
+	@Override
+	public void notifyWrite() {
+		addDirtyRange(0, inputSize);
+		super.notifyWrite();
+	}
+
+	/**
+	 * Notify that only a part of the input has been written.
+	 * Only the modified range is then written to the output.
+	 *
+	 * @param offset   the offset of the written data in the input
+	 * @param length   the length of the written data
+	 */
+	public void notifyWrite(int offset, int length) {
+		addDirtyRange(offset, length);
+		super.notifyWrite();
+	}
+
 	@Override
 	public void read(StateInputStream stream) throws IOException {
     	stream.readVersion(STATE_VERSION);
     	super.read(stream);
+    	addDirtyRange(0, inputSize);
 	}
 
 	@Override
@@ -59,22 +93,31 @@ public class SynchronizeMemoryToVirtualFile extends BaseSynchronize {
 	protected int deltaSynchronize() {
 		int result = 0;
 
-		long seekPosition = output.ioLseek(outputOffset);
-		if (seekPosition != outputOffset) {
-			log.error(String.format("Error while seeking in %s to 0x%X", output, outputOffset));
+		// Only write the range modified since the last synchronization
+		int start = dirtyStart;
+		int size = dirtyEnd - dirtyStart;
+		if (size <= 0) {
+			return result;
+		}
+
+		long seekPosition = output.ioLseek(outputOffset + start);
+		if (seekPosition != outputOffset + start) {
+			log.error(String.format("Error while seeking in %s to 0x%X", output, outputOffset + start));
 			result = IO_ERROR;
 		} else {
-			int writeSize = output.ioWrite(input, inputSize);
+			int writeSize = output.ioWrite(new TPointer(input, start), size);
 			if (writeSize < 0) {
 				log.error(String.format("Error while writing to %s: 0x%08X", output, writeSize));
 				result = writeSize;
-			} else if (writeSize != inputSize) {
-				log.error(String.format("Error while writing to %s: could not write 0x%X bytes, but only 0x%X", output, inputSize, writeSize));
+			} else if (writeSize != size) {
+				log.error(String.format("Error while writing to %s: could not write 0x%X bytes, but only 0x%X", output, size, writeSize));
 				result = IO_ERROR;
 			} else {
 				if (log.isDebugEnabled()) {
-					log.debug(String.format("deltaSynchronize successfully written %s", Utilities.getMemoryDump(input, 0x1000)));
+					log.debug(String.format("deltaSynchronize successfully written offset=0x%X, %s", start, Utilities.getMemoryDump(new TPointer(input, start), Math.min(size, 0x1000))));
 				}
+				dirtyStart = 0;
+				dirtyEnd = 0;
 			}
 		}
 
@@ -21,6 +21,7 @@ import static jpcsp.HLE.VFS.AbstractVirtualFileSystem.IO_ERROR;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import jpcsp.HLE.VFS.IVirtualCache;
 import jpcsp.HLE.VFS.IVirtualFile;
@@ -40,6 +41,7 @@ public class SynchronizeVirtualFileSystems extends BaseSynchronize {
 	private ScePspDateTime lastSyncDate;
 	private boolean somethingChanged;
 	private final Set<DirectoryEntryData> toBeDeleted = new HashSet<DirectoryEntryData>();
+	private ChangeJournal changeJournal;
 
 	private static class DirectoryEntryData {
 		final String dirName;
@@ -64,11 +66,27 @@ public class SynchronizeVirtualFileSystems extends BaseSynchronize {
 		lastSyncDate = nowDate();
 	}
 
+	/**
+	 * Set the journal of the entries modified on the input.
+	 * When a journal is set, the delta synchronization is only comparing
+	 * the journaled entries instead of walking the complete directory tree.
+	 *
+	 * @param changeJournal  the journal filled by the writer of the input
+	 */
+	public void setChangeJournal(ChangeJournal changeJournal) {
+		this.changeJournal = changeJournal;
+	}
+
 	@Override
 	public void read(StateInputStream stream) throws IOException {
     	stream.readVersion(STATE_VERSION);
 		lastSyncDate.read(stream);
     	super.read(stream);
+
+    	if (changeJournal != null) {
+    		// The input might be completely different after loading the state
+    		changeJournal.setOverflow();
+    	}
 	}
 
 	@Override
@@ -116,34 +134,57 @@ public class SynchronizeVirtualFileSystems extends BaseSynchronize {
 		somethingChanged = false;
 		toBeDeleted.clear();
 
-		invalidateCachedData();
-		closeCachedFiles();
-
 		ScePspDateTime newLastSync = nowDate();
 
-		if (log.isTraceEnabled()) {
-			log.trace(String.format("deltaSynchronize %s start", name));
+		ChangeJournal changes = null;
+		if (changeJournal != null) {
+			changes = changeJournal.drain();
+			if (changes.isEmpty()) {
+				// Nothing has been modified on the input
+				lastSyncDate = newLastSync;
+				return 0;
+			}
 		}
 
-		int result = deltaSynchronize("");
+		invalidateCachedData();
+		closeCachedFiles();
 
 		if (log.isTraceEnabled()) {
-			log.trace(String.format("deltaSynchronize %s end, somethingChanged=%b", name, somethingChanged));
+			log.trace(String.format("deltaSynchronize %s start, changes=%s", name, changes));
 		}
 
-		if (somethingChanged) {
-			flushCachedData();
+		int result = -1;
+		try {
+			if (changes == null || changes.isOverflow()) {
+				result = deltaSynchronize("", true);
+			} else {
+				result = deltaSynchronize(changes);
+			}
 
-			// Delete the directory entries as the very last step
-			for (DirectoryEntryData entry : toBeDeleted) {
-				int deleteResult = deleteEntry(entry.dirName, entry.dirent);
-				if (deleteResult != 0 && result == 0) {
-					result = deleteResult;
-				}
+			if (log.isTraceEnabled()) {
+				log.trace(String.format("deltaSynchronize %s end, somethingChanged=%b", name, somethingChanged));
 			}
-			toBeDeleted.clear();
 
-			somethingChanged = false;
+			if (somethingChanged) {
+				flushCachedData();
+
+				// Delete the directory entries as the very last step
+				for (DirectoryEntryData entry : toBeDeleted) {
+					int deleteResult = deleteEntry(entry.dirName, entry.dirent);
+					if (deleteResult != 0 && result == 0) {
+						result = deleteResult;
+					}
+				}
+				toBeDeleted.clear();
+
+				somethingChanged = false;
+			}
+		} finally {
+			if (result != 0 && changes != null) {
+				// The synchronization has failed and will be retried:
+				// the drained changes have to be synchronized again.
+				changeJournal.restore(changes);
+			}
 		}
 
 		// The new lastSync is the time when this sync has been started
@@ -224,9 +265,68 @@ public class SynchronizeVirtualFileSystems extends BaseSynchronize {
 		return false;
 	}
 
-	private int deltaSynchronize(String dirName) {
+	private static String getParentDirName(String fileName) {
+		int directorySeparator = fileName.lastIndexOf('/');
+		if (directorySeparator < 0) {
+			return "";
+		}
+
+		return fileName.substring(0, directorySeparator);
+	}
+
+	private static String getBaseName(String fileName) {
+		return fileName.substring(fileName.lastIndexOf('/') + 1);
+	}
+
+	private String getExistingDirName(String dirName) {
+		// A journaled directory might have been deleted in the meantime:
+		// its deletion will be found when comparing its parent directory.
+		while (dirName.length() > 0 && input.ioDopen(dirName) == null) {
+			dirName = getParentDirName(dirName);
+		}
+
+		return dirName;
+	}
+
+	private int deltaSynchronize(ChangeJournal changes) {
+		Set<String> dirNames = new TreeSet<String>();
+		for (String dirName : changes.getDirectories()) {
+			dirNames.add(getExistingDirName(dirName));
+		}
+
+		// Files whose directory entry has not been modified can be
+		// updated directly, without comparing their directory.
+		for (String fileName : changes.getFiles()) {
+			String dirName = getParentDirName(fileName);
+			if (dirNames.contains(dirName)) {
+				continue;
+			}
+
+			SceIoDirent entry = new SceIoDirent(new SceIoStat(), getBaseName(fileName));
+			if (input.ioDread(dirName, entry) == 1 && !isDirectory(entry)) {
+				int result = updateEntry(dirName, entry);
+				if (result != 0) {
+					return result;
+				}
+			} else {
+				// The file has been deleted or replaced
+				dirNames.add(getExistingDirName(dirName));
+			}
+		}
+
+		for (String dirName : dirNames) {
+			int result = deltaSynchronize(dirName, false);
+			if (result != 0) {
+				return result;
+			}
+		}
+
+		return 0;
+	}
+
+	private int deltaSynchronize(String dirName, boolean recursive) {
 		if (log.isTraceEnabled()) {
-			log.trace(String.format("deltaSynchronize '%s'", dirName));
+			log.trace(String.format("deltaSynchronize '%s', recursive=%b", dirName, recursive));
 		}
 
 		SceIoDirent inputEntries[] = getDirectoryEntries(input, dirName);
@@ -306,13 +406,13 @@ public class SynchronizeVirtualFileSystems extends BaseSynchronize {
 		}
 
 		for (int i = 0; i < inputEntries.length; i++) {
-			// Directory entry?
-			if (isDirectory(inputEntries[i])) {
+			// Directory entry? A new directory is always synchronized with its complete content.
+			if (isDirectory(inputEntries[i]) && (recursive || toBeCreated.contains(inputEntries[i]))) {
 				String subDirName = inputEntries[i].filename;
 				if (dirName.length() > 0) {
 					subDirName = dirName + '/' + subDirName;
 				}
-				int result = deltaSynchronize(subDirName);
+				int result = deltaSynchronize(subDirName, true);
 				if (result != 0) {
 					return result;
 				}
@@ -29,7 +29,6 @@ import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_KERNEL_WAIT_TIMEOUT;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_THREAD_READY;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_EVENTFLAG;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -41,6 +40,7 @@ import jpcsp.HLE.kernel.types.SceKernelEventFlagInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -48,7 +48,7 @@ public class EventFlagManager {
 
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private static HashMap<Integer, SceKernelEventFlagInfo> eventMap;
+    private static IntHashMap<SceKernelEventFlagInfo> eventMap;
     private EventFlagWaitStateChecker eventFlagWaitStateChecker;
 
     public final static int PSP_EVENT_WAITSINGLE = 0;
@@ -60,7 +60,7 @@ public class EventFlagManager {
     public final static int PSP_EVENT_WAITCLEAR = 0x20;
 
     public void reset() {
-        eventMap = new HashMap<Integer, SceKernelEventFlagInfo>();
+        eventMap = new IntHashMap<SceKernelEventFlagInfo>();
         eventFlagWaitStateChecker = new EventFlagWaitStateChecker();
     }
 
@@ -31,7 +31,6 @@ import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_FPL;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_High;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_Low;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -46,6 +45,7 @@ import jpcsp.HLE.kernel.types.SceKernelFplOptParam;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 import jpcsp.util.Utilities;
 
 import org.apache.log4j.Logger;
@@ -54,7 +54,7 @@ public class FplManager {
 
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelFplInfo> fplMap;
+    private IntHashMap<SceKernelFplInfo> fplMap;
     private FplWaitStateChecker fplWaitStateChecker;
 
     public final static int PSP_FPL_ATTR_FIFO = 0;
@@ -63,7 +63,7 @@ public class FplManager {
     public final static int PSP_FPL_ATTR_ADDR_HIGH = 0x4000;       // Create the fpl in high memory.
 
     public void reset() {
-        fplMap = new HashMap<Integer, SceKernelFplInfo>();
+        fplMap = new IntHashMap<SceKernelFplInfo>();
         fplWaitStateChecker = new FplWaitStateChecker();
     }
 
@@ -27,7 +27,6 @@ import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_KERNEL_WAIT_TIMEOUT;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_THREAD_READY;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_LWMUTEX;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -38,13 +37,14 @@ import jpcsp.HLE.kernel.types.SceKernelLwMutexInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class LwMutexManager {
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelLwMutexInfo> lwMutexMap;
+    private IntHashMap<SceKernelLwMutexInfo> lwMutexMap;
     private LwMutexWaitStateChecker lwMutexWaitStateChecker;
 
     public final static int PSP_LWMUTEX_ATTR_FIFO = 0;
@@ -52,7 +52,7 @@ public class LwMutexManager {
     private final static int PSP_LWMUTEX_ATTR_ALLOW_RECURSIVE = 0x200;
 
     public void reset() {
-        lwMutexMap = new HashMap<Integer, SceKernelLwMutexInfo>();
+        lwMutexMap = new IntHashMap<SceKernelLwMutexInfo>();
         lwMutexWaitStateChecker = new LwMutexWaitStateChecker();
     }
 
@@ -25,7 +25,6 @@ import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_KERNEL_WAIT_TIMEOUT;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_THREAD_READY;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_MBX;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.Memory;
@@ -38,13 +37,14 @@ import jpcsp.HLE.kernel.types.SceKernelMbxInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class MbxManager {
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelMbxInfo> mbxMap;
+    private IntHashMap<SceKernelMbxInfo> mbxMap;
     private MbxWaitStateChecker mbxWaitStateChecker;
 
     public final static int PSP_MBX_ATTR_FIFO = 0;
@@ -53,7 +53,7 @@ public class MbxManager {
     private final static int PSP_MBX_ATTR_MSG_PRIORITY = 0x400;   // Add new messages by MsgPacket priority.
 
     public void reset() {
-        mbxMap = new HashMap<Integer, SceKernelMbxInfo>();
+        mbxMap = new IntHashMap<SceKernelMbxInfo>();
         mbxWaitStateChecker = new MbxWaitStateChecker();
     }
 
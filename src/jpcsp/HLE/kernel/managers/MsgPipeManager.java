@@ -29,7 +29,6 @@ import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_MSGPIPE;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_High;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_Low;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -42,13 +41,14 @@ import jpcsp.HLE.kernel.types.SceKernelMppInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class MsgPipeManager {
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelMppInfo> msgMap;
+    private IntHashMap<SceKernelMppInfo> msgMap;
     private MsgPipeSendWaitStateChecker msgPipeSendWaitStateChecker;
     private MsgPipeReceiveWaitStateChecker msgPipeReceiveWaitStateChecker;
 
@@ -62,7 +62,7 @@ public class MsgPipeManager {
     public static final int PSP_MPP_WAIT_MODE_PARTIAL = 1;  // can receive a partial buffer
 
     public void reset() {
-        msgMap = new HashMap<Integer, SceKernelMppInfo>();
+        msgMap = new IntHashMap<SceKernelMppInfo>();
         msgPipeSendWaitStateChecker = new MsgPipeSendWaitStateChecker();
         msgPipeReceiveWaitStateChecker = new MsgPipeReceiveWaitStateChecker();
     }
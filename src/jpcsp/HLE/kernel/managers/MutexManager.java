@@ -28,7 +28,6 @@ import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_KERNEL_WAIT_TIMEOUT;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_THREAD_READY;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_MUTEX;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -41,13 +40,14 @@ import jpcsp.HLE.kernel.types.SceKernelMutexInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class MutexManager {
     public static Logger log = ThreadManForUser.log;
 
-    private HashMap<Integer, SceKernelMutexInfo> mutexMap;
+    private IntHashMap<SceKernelMutexInfo> mutexMap;
     private MutexWaitStateChecker mutexWaitStateChecker;
 
     public final static int PSP_MUTEX_ATTR_FIFO = 0;
@@ -55,7 +55,7 @@ public class MutexManager {
     private final static int PSP_MUTEX_ATTR_ALLOW_RECURSIVE = 0x200;
 
     public void reset() {
-        mutexMap = new HashMap<Integer, SceKernelMutexInfo>();
+        mutexMap = new IntHashMap<SceKernelMutexInfo>();
         mutexWaitStateChecker = new MutexWaitStateChecker();
     }
 
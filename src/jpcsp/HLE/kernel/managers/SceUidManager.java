@@ -16,12 +16,12 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.HLE.kernel.managers;
 
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.ListIterator;
 
 import jpcsp.Emulator;
 import jpcsp.HLE.kernel.types.SceUid;
+import jpcsp.util.IntHashMap;
 
 /**
  *
@@ -29,18 +29,30 @@ import jpcsp.HLE.kernel.types.SceUid;
  */
 public class SceUidManager {
 	// UID is a unique identifier across all purposes
-    private static HashMap<Integer, SceUid> uidMap = new HashMap<Integer, SceUid>();
+    private static IntHashMap<SceUid> uidMap = new IntHashMap<SceUid>();
     private static int uidNext = 0x1; // LocoRoco expects UID to be 8bit
     public static final int INVALID_ID = Integer.MIN_VALUE;
 
     // ID is an identifier only unique for the same purpose.
     // Different purposes can share the save ID values.
     // An ID has always a range of valid values, e.g. [0..255]
-    private static HashMap<Object, LinkedList<Integer>> freeIdsMap = new HashMap<Object, LinkedList<Integer>>();
+    private static HashMap<Object, UsedIds> usedIdsMap = new HashMap<Object, UsedIds>();
+
+    private static class UsedIds {
+    	public final int minimumId;
+    	public final int maximumId;
+    	// The IDs currently in use, as an offset from minimumId
+    	public final BitSet ids = new BitSet();
+
+    	public UsedIds(int minimumId, int maximumId) {
+    		this.minimumId = minimumId;
+    		this.maximumId = maximumId;
+    	}
+    }
 
     static public void reset() {
     	uidMap.clear();
-    	freeIdsMap.clear();
+    	usedIdsMap.clear();
     	uidNext = 1;
     }
 
@@ -107,27 +119,28 @@ public class SceUidManager {
      * @return           The lowest possible free ID for the given purpose
      */
     static public int getNewId(Object purpose, int minimumId, int maximumId) {
-    	LinkedList<Integer> freeIds = freeIdsMap.get(purpose);
-    	if (freeIds == null) {
-    		freeIds = new LinkedList<Integer>();
-    		for (int id = minimumId; id <= maximumId; id++) {
-    			freeIds.add(id);
-    		}
-    		freeIdsMap.put(purpose, freeIds);
+    	UsedIds usedIds = usedIdsMap.get(purpose);
+    	if (usedIds == null) {
+    		usedIds = new UsedIds(minimumId, maximumId);
+    		usedIdsMap.put(purpose, usedIds);
     	}
 
+    	// Return the lowest free ID
+    	int index = usedIds.ids.nextClearBit(0);
+
     	// No more free IDs?
-    	if (freeIds.size() <= 0) {
+    	if (index > usedIds.maximumId - usedIds.minimumId) {
     		// Return an invalid ID
     		return INVALID_ID;
     	}
 
-    	// Return the lowest free ID
-    	return freeIds.remove();
+    	usedIds.ids.set(index);
+
+    	return usedIds.minimumId + index;
     }
 
     static public void resetIds(Object purpose) {
-    	freeIdsMap.remove(purpose);
+    	usedIdsMap.remove(purpose);
     }
 
     /**
@@ -144,30 +157,21 @@ public class SceUidManager {
      *                        the ID was already released)
      */
     static public boolean releaseId(int id, Object purpose) {
-    	LinkedList<Integer> freeIds = freeIdsMap.get(purpose);
+    	UsedIds usedIds = usedIdsMap.get(purpose);
 
-    	if (freeIds == null) {
+    	if (usedIds == null) {
     		Emulator.log.warn(String.format("Attempt to release ID=%d with unknown purpose='%s'", id, purpose));
     		return false;
     	}
 
-    	// Add the id back to the freeIds list,
-    	// and keep the id's ordered (lowest first).
-    	for (ListIterator<Integer> lit = freeIds.listIterator(); lit.hasNext(); ) {
-    		int currentId = lit.next();
-    		if (currentId == id) {
-        		Emulator.log.warn(String.format("Attempt to release free ID=%d with purpose='%s'", id, purpose));
-        		return false;
-    		}
-    		if (currentId > id) {
-    			// Insert the id before the currentId
-    			lit.set(id);
-    			lit.add(currentId);
-    			return true;
-    		}
+    	int index = id - usedIds.minimumId;
+    	if (index < 0 || id > usedIds.maximumId || !usedIds.ids.get(index)) {
+    		Emulator.log.warn(String.format("Attempt to release free ID=%d with purpose='%s'", id, purpose));
+    		return false;
     	}
 
-    	freeIds.add(id);
+    	// Mark the id as being free
+    	usedIds.ids.clear(index);
 
     	return true;
     }
@@ -27,7 +27,6 @@ import static jpcsp.HLE.kernel.types.SceKernelErrors.ERROR_KERNEL_WAIT_TIMEOUT;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_THREAD_READY;
 import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_SEMA;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -40,20 +39,21 @@ import jpcsp.HLE.kernel.types.SceKernelSemaInfo;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class SemaManager {
     protected static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelSemaInfo> semaMap;
+    private IntHashMap<SceKernelSemaInfo> semaMap;
     private SemaWaitStateChecker semaWaitStateChecker;
 
     public final static int PSP_SEMA_ATTR_FIFO = 0;           // Signal waiting threads with a FIFO iterator.
     public final static int PSP_SEMA_ATTR_PRIORITY = 0x100;   // Signal waiting threads with a priority based iterator.
 
     public void reset() {
-        semaMap = new HashMap<Integer, SceKernelSemaInfo>();
+        semaMap = new IntHashMap<SceKernelSemaInfo>();
         semaWaitStateChecker = new SemaWaitStateChecker();
     }
 
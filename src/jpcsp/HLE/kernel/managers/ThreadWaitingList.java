@@ -16,22 +16,25 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.HLE.kernel.managers;
 
-import java.util.LinkedList;
-import java.util.List;
-
-import jpcsp.HLE.Modules;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 
 /**
  * Base implementation of a list of waiting threads.
  * Two implementations are provided to implement a FIFO list
  * and a list ordered by the thread priority.
+ *
+ * The list is intrusive: the links are stored in the threads themselves
+ * (SceKernelThreadInfo.waitingList, waitingListPrevious and waitingListNext),
+ * so that adding or removing a thread is not allocating any list node.
+ * A thread can only be linked in one waiting list at a time.
  * 
  * @author gid15
  *
  */
 public abstract class ThreadWaitingList {
-	protected List<Integer> waitingThreads = new LinkedList<Integer>();
+	protected SceKernelThreadInfo firstWaitingThread;
+	protected SceKernelThreadInfo lastWaitingThread;
+	private int numWaitingThreads;
 	protected int waitType;
 	protected int waitId;
 
@@ -48,72 +51,109 @@ public abstract class ThreadWaitingList {
 	}
 
 	public int getNumWaitingThreads() {
-		return waitingThreads.size();
+		return numWaitingThreads;
 	}
 
 	public abstract void addWaitingThread(SceKernelThreadInfo thread);
 
-	public void removeWaitingThread(SceKernelThreadInfo thread) {
-		waitingThreads.remove(new Integer(thread.uid));
+	/**
+	 * Link the thread into this list, before the given thread.
+	 * The thread is first removed from the waiting list it was still linked in.
+	 *
+	 * @param thread        the thread to be added
+	 * @param beforeThread  the thread will be added before this thread,
+	 *                      or at the end of the list when null
+	 */
+	protected void insertWaitingThread(SceKernelThreadInfo thread, SceKernelThreadInfo beforeThread) {
+		unlinkThread(thread);
+
+		SceKernelThreadInfo previousThread = beforeThread == null ? lastWaitingThread : beforeThread.waitingListPrevious;
+		thread.waitingList = this;
+		thread.waitingListPrevious = previousThread;
+		thread.waitingListNext = beforeThread;
+		if (previousThread == null) {
+			firstWaitingThread = thread;
+		} else {
+			previousThread.waitingListNext = thread;
+		}
+		if (beforeThread == null) {
+			lastWaitingThread = thread;
+		} else {
+			beforeThread.waitingListPrevious = thread;
+		}
+		numWaitingThreads++;
 	}
 
-	public SceKernelThreadInfo getNextWaitingThread(SceKernelThreadInfo baseThread) {
-		if (baseThread == null) {
-			return getFirstWaitingThread();
+	private void removeLinkedThread(SceKernelThreadInfo thread) {
+		if (thread.waitingListPrevious == null) {
+			firstWaitingThread = thread.waitingListNext;
+		} else {
+			thread.waitingListPrevious.waitingListNext = thread.waitingListNext;
 		}
-
-		int index = waitingThreads.indexOf(baseThread.uid);
-		if (index < 0 || (index + 1) >= getNumWaitingThreads()) {
-			return null;
+		if (thread.waitingListNext == null) {
+			lastWaitingThread = thread.waitingListPrevious;
+		} else {
+			thread.waitingListNext.waitingListPrevious = thread.waitingListPrevious;
 		}
+		thread.waitingList = null;
+		thread.waitingListPrevious = null;
+		thread.waitingListNext = null;
+		numWaitingThreads--;
+	}
 
-		int uid = waitingThreads.get(index + 1);
-		SceKernelThreadInfo thread = Modules.ThreadManForUserModule.getThreadById(uid);
-
-		// Is the thread still existing
-		if (thread == null) {
-			// Thread is no longer existing, delete it from the waiting list and retry
-			waitingThreads.remove(index + 1);
-			return getNextWaitingThread(baseThread);
+	/**
+	 * Remove the thread from the waiting list it is linked in, if any.
+	 *
+	 * @param thread   the thread
+	 */
+	public static void unlinkThread(SceKernelThreadInfo thread) {
+		if (thread.waitingList != null) {
+			thread.waitingList.removeLinkedThread(thread);
 		}
+	}
 
-		// Is the thread still waiting on this ID?
-		if (!thread.isWaitingForType(waitType) || thread.waitId != waitId) {
-			// The thread is no longer waiting on this object, remove it from the waiting list and retry
-			waitingThreads.remove(index + 1);
-			return getNextWaitingThread(baseThread);
+	public void removeWaitingThread(SceKernelThreadInfo thread) {
+		if (thread.waitingList == this) {
+			removeLinkedThread(thread);
 		}
+	}
 
-		return thread;
+	private boolean isStillWaiting(SceKernelThreadInfo thread) {
+		// Is the thread still waiting on this ID?
+		return thread.isWaitingForType(waitType) && thread.waitId == waitId;
 	}
 
-	public SceKernelThreadInfo getFirstWaitingThread() {
-		// Is the waiting list empty?
-		if (getNumWaitingThreads() <= 0) {
-			return null;
+	private SceKernelThreadInfo getWaitingThreadFrom(SceKernelThreadInfo thread) {
+		while (thread != null && !isStillWaiting(thread)) {
+			// The thread is no longer waiting on this object
+			// (or is no longer existing), remove it from the waiting list and retry
+			SceKernelThreadInfo nextThread = thread.waitingListNext;
+			removeLinkedThread(thread);
+			thread = nextThread;
 		}
 
-		int uid = waitingThreads.get(0);
-		SceKernelThreadInfo thread = Modules.ThreadManForUserModule.getThreadById(uid);
+		return thread;
+	}
 
-		// Is the thread still existing
-		if (thread == null) {
-			// Thread is no longer existing, delete it from the waiting list and retry
-			waitingThreads.remove(0);
+	public SceKernelThreadInfo getNextWaitingThread(SceKernelThreadInfo baseThread) {
+		if (baseThread == null) {
 			return getFirstWaitingThread();
 		}
 
-		// Is the thread still waiting on this ID?
-		if (!thread.isWaitingForType(waitType) || thread.waitId != waitId) {
-			// The thread is no longer waiting on this object, remove it from the waiting list and retry
-			waitingThreads.remove(0);
-			return getFirstWaitingThread();
+		if (baseThread.waitingList != this) {
+			return null;
 		}
 
-		return thread;
+		return getWaitingThreadFrom(baseThread.waitingListNext);
+	}
+
+	public SceKernelThreadInfo getFirstWaitingThread() {
+		return getWaitingThreadFrom(firstWaitingThread);
 	}
 
 	public void removeAllWaitingThreads() {
-		waitingThreads.clear();
+		while (firstWaitingThread != null) {
+			removeLinkedThread(firstWaitingThread);
+		}
 	}
 }
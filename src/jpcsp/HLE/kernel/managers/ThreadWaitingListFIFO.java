@@ -31,6 +31,6 @@ public class ThreadWaitingListFIFO extends ThreadWaitingList {
 
 	@Override
 	public void addWaitingThread(SceKernelThreadInfo thread) {
-		waitingThreads.add(thread.uid);
+		insertWaitingThread(thread, null);
 	}
 }
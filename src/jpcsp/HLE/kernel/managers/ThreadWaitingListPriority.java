@@ -16,9 +16,6 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.HLE.kernel.managers;
 
-import java.util.ListIterator;
-
-import jpcsp.HLE.Modules;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 
 /**
@@ -34,25 +31,16 @@ public class ThreadWaitingListPriority extends ThreadWaitingList {
 
 	@Override
 	public void addWaitingThread(SceKernelThreadInfo thread) {
-		boolean added = false;
-
-		if (!waitingThreads.isEmpty()) {
-			for (ListIterator<Integer> lit = waitingThreads.listIterator(); lit.hasNext(); ) {
-				int uid = lit.next().intValue();
-				SceKernelThreadInfo waitingThread = Modules.ThreadManForUserModule.getThreadById(uid);
-				if (waitingThread != null) {
-					if (thread.currentPriority < waitingThread.currentPriority) {
-						lit.previous();
-						lit.add(thread.uid);
-						added = true;
-						break;
-					}
-				}
-			}
+		// Remove first the thread if it is already in this list,
+		// to not compare it with itself
+		removeWaitingThread(thread);
+
+		// Insert the thread before the first thread having a lower priority
+		SceKernelThreadInfo beforeThread = firstWaitingThread;
+		while (beforeThread != null && thread.currentPriority >= beforeThread.currentPriority) {
+			beforeThread = beforeThread.waitingListNext;
 		}
 
-		if (!added) {
-			waitingThreads.add(thread.uid);
-		}
+		insertWaitingThread(thread, beforeThread);
 	}
 }
@@ -31,7 +31,6 @@ import static jpcsp.HLE.kernel.types.SceKernelThreadInfo.PSP_WAIT_VPL;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_High;
 import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_Low;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 import jpcsp.HLE.Modules;
@@ -45,13 +44,14 @@ import jpcsp.HLE.kernel.types.IWaitStateChecker;
 import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.util.IntHashMap;
 
 import org.apache.log4j.Logger;
 
 public class VplManager {
     public static Logger log = Modules.getLogger("ThreadManForUser");
 
-    private HashMap<Integer, SceKernelVplInfo> vplMap;
+    private IntHashMap<SceKernelVplInfo> vplMap;
     private VplWaitStateChecker vplWaitStateChecker;
 
     public final static int PSP_VPL_ATTR_FIFO =         0;
@@ -62,7 +62,7 @@ public class VplManager {
     public final static int PSP_VPL_ATTR_MASK = PSP_VPL_ATTR_ADDR_HIGH | PSP_VPL_ATTR_PASS | PSP_VPL_ATTR_PRIORITY | 0xFF; // Anything outside this mask is an illegal attr.
 
     public void reset() {
-        vplMap = new HashMap<Integer, SceKernelVplInfo>();
+        vplMap = new IntHashMap<SceKernelVplInfo>();
         vplWaitStateChecker = new VplWaitStateChecker();
     }
 
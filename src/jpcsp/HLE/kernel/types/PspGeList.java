@@ -258,6 +258,9 @@ public class PspGeList {
     	if (this.stall_addr != stall_addr) {
     		this.stall_addr = stall_addr;
 			ExternalGE.onStallAddrUpdated(this);
+			if (!ExternalGE.isActive()) {
+				videoEngine.prefetchListVertices(this, false);
+			}
     		sync();
     	}
     }
@@ -301,6 +304,7 @@ public class PspGeList {
     	if (ExternalGE.isActive()) {
     		ExternalGE.startList(this);
     	} else {
+    		videoEngine.prefetchListVertices(this, true);
     		videoEngine.pushDrawList(this);
     	}
     	sync();
@@ -313,6 +317,7 @@ public class PspGeList {
         if (ExternalGE.isActive()) {
         	ExternalGE.startListHead(this);
         } else {
+        	videoEngine.prefetchListVertices(this, true);
         	videoEngine.pushDrawListHead(this);
         }
     }
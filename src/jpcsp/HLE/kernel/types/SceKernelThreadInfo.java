@@ -34,6 +34,7 @@ import jpcsp.HLE.Modules;
 import jpcsp.HLE.TPointer;
 import jpcsp.HLE.TPointer32;
 import jpcsp.HLE.kernel.managers.SceUidManager;
+import jpcsp.HLE.kernel.managers.ThreadWaitingList;
 import jpcsp.HLE.modules.SysMemUserForUser;
 import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
 import jpcsp.HLE.modules.ThreadManForUser.Callback;
@@ -125,6 +126,10 @@ public class SceKernelThreadInfo extends pspAbstractMemoryMappedStructureVariabl
     public boolean unloadModuleAtDeletion;
     public boolean doCallbacks;
     public final ThreadWaitInfo wait;
+    // Links of the ThreadWaitingList this thread is waiting in
+    public ThreadWaitingList waitingList;
+    public SceKernelThreadInfo waitingListPrevious;
+    public SceKernelThreadInfo waitingListNext;
     public int displayLastWaitVcount;
     public long javaThreadId = -1;
     public long javaThreadCpuTimeNanos = -1;
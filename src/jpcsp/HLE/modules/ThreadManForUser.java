@@ -119,6 +119,7 @@ import jpcsp.HLE.kernel.Managers;
 import jpcsp.HLE.kernel.managers.IntrManager;
 import jpcsp.HLE.kernel.managers.SceUidManager;
 import jpcsp.HLE.kernel.managers.SystemTimeManager;
+import jpcsp.HLE.kernel.managers.ThreadWaitingList;
 import jpcsp.HLE.kernel.types.IAction;
 import jpcsp.HLE.kernel.types.IWaitStateChecker;
 import jpcsp.HLE.kernel.types.SceKernelAlarmInfo;
@@ -1479,6 +1480,7 @@ public class ThreadManForUser extends HLEModule {
         RuntimeContext.onThreadDeleted(thread);
 
         cancelThreadWait(thread);
+        ThreadWaitingList.unlinkThread(thread);
         threadMap.remove(thread.uid);
         if (thread.unloadModuleAtDeletion) {
         	SceModule module = Managers.modules.getModuleByUID(thread.moduleid);
@@ -72,7 +72,9 @@ import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
 
+import jpcsp.Clock;
 import jpcsp.Emulator;
+import jpcsp.FastForwardClock;
 import jpcsp.MainGUI;
 import jpcsp.Memory;
 import jpcsp.MemoryMap;
@@ -87,6 +89,7 @@ import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
 import jpcsp.HLE.kernel.types.ThreadWaitInfo;
 import jpcsp.graphics.DisplayScreen;
 import jpcsp.graphics.FrameBufferSettings;
+import jpcsp.graphics.GEStatistics;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.TextureSettings;
 import jpcsp.graphics.VertexCache;
@@ -492,6 +495,15 @@ public class sceDisplay extends HLEModule {
     private int framesSkippedInSequence;
     private LinkedList<Long> frameTimestamps = new LinkedList<Long>();
     private boolean skipNextFrameBufferSwitch;
+    // Turbo mode: render only one frame out of turboModePreviewInterval
+    private boolean turboMode;
+    private int turboModePreviewInterval = 10;
+    private int turboModeFrameCount;
+    private int turboModeVblanksWithoutSwitch;
+    // Without frame buffer switch during this number of vblanks,
+    // the application is assumed to be single-buffered
+    private static final int TURBO_MODE_MAX_VBLANKS_PER_FRAME = 6;
+    private Clock clockBeforeTurboMode;
     // Mpeg audio hack
     private int framePerSecFactor;
     // Display actions
@@ -582,7 +594,9 @@ public class sceDisplay extends HLEModule {
 
         @Override
         protected void doDisplay() {
-            Modules.sceDisplayModule.canvas.repaint();
+            if (Modules.sceDisplayModule.canvas != null) {
+                Modules.sceDisplayModule.canvas.repaint();
+            }
         }
     }
 
@@ -702,7 +716,10 @@ public class sceDisplay extends HLEModule {
 
     	displayScreen = new DisplayScreen();
 
-        canvas = new AWTGLCanvas_sceDisplay(createGLData());
+        // No AWT canvas is created when running without a screen (e.g. headless mode)
+        if (Screen.hasScreen()) {
+            canvas = new AWTGLCanvas_sceDisplay(createGLData());
+        }
         setScreenResolution(displayScreen.getWidth(), displayScreen.getHeight());
 
         // Remember the last window size only if not running in full screen
@@ -761,10 +778,54 @@ public class sceDisplay extends HLEModule {
         return desiredFps;
     }
 
+    /**
+     * Enable or disable the turbo mode: the emulator is running as fast as possible
+     * and only one frame out of previewInterval is rendered.
+     * The frame buffers being read back by the application (used as textures
+     * or copied to memory) are still rendered in every frame.
+     *
+     * @param turboMode        true to enable the turbo mode
+     * @param previewInterval  render one frame out of previewInterval
+     */
+    public void setTurboMode(boolean turboMode, int previewInterval) {
+    	if (log.isInfoEnabled()) {
+    		log.info(String.format("setTurboMode %b, previewInterval=%d", turboMode, previewInterval));
+    	}
+    	this.turboMode = turboMode;
+    	turboModePreviewInterval = Math.max(previewInterval, 1);
+    	turboModeFrameCount = 0;
+    	turboModeVblanksWithoutSwitch = 0;
+    	VideoEngine.getInstance().setTurboMode(turboMode);
+    	if (turboMode) {
+    		// The clock might already be a fast-forward clock (e.g. HeadlessMain --unthrottled)
+    		if (clockBeforeTurboMode == null && !(Emulator.getClock() instanceof FastForwardClock)) {
+    			clockBeforeTurboMode = Emulator.getClock();
+    			Emulator.setFastForwardClock();
+    		}
+    	} else {
+    		if (clockBeforeTurboMode != null) {
+    			Emulator.restoreClock(clockBeforeTurboMode);
+    			clockBeforeTurboMode = null;
+    		}
+    		VideoEngine.getInstance().setSkipThisFrame(false);
+    	}
+    }
+
+    private boolean isTurboModeFrameSkipped() {
+    	// Render only one frame out of turboModePreviewInterval, as a preview
+    	return (turboModeFrameCount % turboModePreviewInterval) != 0;
+    }
+
+    public boolean isTurboMode() {
+    	return turboMode;
+    }
+
     public final void setScreenResolution(int width, int height) {
         canvasWidth = width;
         canvasHeight = height;
-        canvas.setSize(width, height);
+        if (canvas != null) {
+            canvas.setSize(width, height);
+        }
     }
 
     public void setViewportResizeScaleFactor(int width, int height) {
@@ -810,11 +871,13 @@ public class sceDisplay extends HLEModule {
 
 		Dimension size = new Dimension(getResizedWidth(displayScreen.getWidth()), getResizedHeight(displayScreen.getHeight()));
 
-		// Resize the component while keeping the PSP aspect ratio
-		canvas.setSize(size);
+		if (canvas != null) {
+			// Resize the component while keeping the PSP aspect ratio
+			canvas.setSize(size);
 
-		// The preferred size is used when resizing the MainGUI
-		canvas.setPreferredSize(size);
+			// The preferred size is used when resizing the MainGUI
+			canvas.setPreferredSize(size);
+		}
 
 		if (Emulator.getMainGUI().isFullScreen()) {
 			Emulator.getMainGUI().setFullScreenDisplaySize();
@@ -828,7 +891,7 @@ public class sceDisplay extends HLEModule {
 		}
 
 		if (log.isDebugEnabled()) {
-			log.debug(String.format("setViewportResizeScaleFactor resize=%f, size(%dx%d), canvas(%dx%d), location(%d,%d)", viewportResizeFilterScaleFactor, size.width, size.height, canvasWidth, canvasHeight, canvas.getLocation().x, canvas.getLocation().y));
+			log.debug(String.format("setViewportResizeScaleFactor resize=%f, size(%dx%d), canvas(%dx%d), location(%s)", viewportResizeFilterScaleFactor, size.width, size.height, canvasWidth, canvasHeight, canvas == null ? "none" : String.format("%d,%d", canvas.getLocation().x, canvas.getLocation().y)));
 		}
     }
 
@@ -940,6 +1003,10 @@ public class sceDisplay extends HLEModule {
             log.info("Saving GE to Textures");
         }
 
+        if (Settings.getInstance().readBool("emu.turboMode")) {
+        	setTurboMode(true, Settings.getInstance().readInt("emu.turboModePreviewInterval", turboModePreviewInterval));
+        }
+
         try {
             captureRobot = new Robot();
             captureRobot.setAutoDelay(0);
@@ -1555,6 +1622,9 @@ public class sceDisplay extends HLEModule {
      * @param geTopAddress the GE address that need to be saved to memory
      */
     public void copyGeToMemory(int geTopAddress) {
+    	// The frame buffer is read back, it must not be skipped in turbo mode
+    	VideoEngine.getInstance().addReadBackFrameBuffer(geTopAddress);
+
     	if (isUsingSoftwareRenderer() || ExternalGE.isActive()) {
             // GE is already in memory when using the internal/external software renderer
     		return;
@@ -1621,6 +1691,16 @@ public class sceDisplay extends HLEModule {
         // Vcount increases at each VBLANK.
         vcount++;
 
+        if (turboMode) {
+        	turboModeVblanksWithoutSwitch++;
+        	if (turboModeVblanksWithoutSwitch >= TURBO_MODE_MAX_VBLANKS_PER_FRAME) {
+        		// Single-buffered application: the frame buffer is never switched,
+        		// count each vblank as a new frame
+        		turboModeFrameCount++;
+        		VideoEngine.getInstance().setSkipThisFrame(isTurboModeFrameSkipped());
+        	}
+        }
+
     	ExternalGE.onDisplayVblank();
 
         // Check the threads waiting for VBLANK (multi).
@@ -1929,6 +2009,7 @@ public class sceDisplay extends HLEModule {
         if (topaddr != fb.getTopAddr()) {
             // New frame counting for FPS
             frameCount++;
+            GEStatistics.endFrame();
         }
 
         // Keep track of how many frames have been skipped in sequence
@@ -1940,7 +2021,13 @@ public class sceDisplay extends HLEModule {
         }
 
         boolean skipThisFrame = false;
-        if (desiredFps > 0) {
+        if (turboMode) {
+        	if (topaddr != fb.getTopAddr()) {
+        		turboModeFrameCount++;
+        		turboModeVblanksWithoutSwitch = 0;
+        	}
+        	skipThisFrame = isTurboModeFrameSkipped();
+        } else if (desiredFps > 0) {
             // Remember the time stamps of the frames displayed during the last second.
             long currentFrameTimestamp = Emulator.getClock().currentTimeMillis();
             frameTimestamps.addLast(currentFrameTimestamp);
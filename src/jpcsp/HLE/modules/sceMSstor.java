@@ -44,6 +44,7 @@ import jpcsp.HLE.VFS.WriteCacheVirtualFile;
 import jpcsp.HLE.VFS.fat.Fat32VirtualFile;
 import jpcsp.HLE.VFS.fat.FatVirtualFileSystem;
 import jpcsp.HLE.VFS.local.LocalVirtualFileSystem;
+import jpcsp.HLE.VFS.synchronize.ChangeJournal;
 import jpcsp.HLE.VFS.synchronize.SynchronizeVirtualFileSystems;
 import jpcsp.HLE.BufferInfo.LengthInfo;
 import jpcsp.HLE.BufferInfo.Usage;
@@ -68,6 +69,7 @@ public class sceMSstor extends HLEModule {
     private byte[] dumpIoIoctl_0x02125803;
     private long position;
     private IVirtualFile vFile;
+    private Fat32VirtualFile fat32VirtualFile;
     private Fat32ScanThread scanThread;
     private final Object writeLock = new Object();
     private SynchronizeVirtualFileSystems sync;
@@ -188,6 +190,7 @@ public class sceMSstor extends HLEModule {
     		vFile.ioClose();
     		vFile = null;
     	}
+    	fat32VirtualFile = null;
 
     	scanThread = null;
 
@@ -422,6 +425,7 @@ public class sceMSstor extends HLEModule {
     	if (vFile != null) {
     		scanThread.waitForCompletion();
     		synchronized (writeLock) {
+    			fat32VirtualFile.journalWrite(vFile.getPosition(), data, len);
         		len = vFile.ioWrite(data, len);
     			sync.notifyWrite();
 			}
@@ -437,6 +441,7 @@ public class sceMSstor extends HLEModule {
     			// synchronize the vFile to make sure that the ioLseek/ioWrite combination is atomic
     			synchronized (vFile) {
         			position = vFile.ioLseek(offset);
+        			fat32VirtualFile.journalWrite(position, data, len);
             		len = vFile.ioWrite(data, len);
 				}
     			sync.notifyWrite();
@@ -523,11 +528,15 @@ public class sceMSstor extends HLEModule {
     	}
 
     	IVirtualFileSystem vfs = new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("ms0"), true);
-		Fat32VirtualFile fat32VirtualFile = new Fat32VirtualFile("ms0:", vfs);
+		fat32VirtualFile = new Fat32VirtualFile("ms0:", vfs);
 		vFile = new WriteCacheVirtualFile(log, fat32VirtualFile);
 		fat32VirtualFile.setBaseVirtualFile(vFile);
 		IVirtualFileSystem input = new FatVirtualFileSystem("ms0", vFile);
 		sync = new SynchronizeVirtualFileSystems("ms0", input, vfs, writeLock);
+		// Only the directories and files modified by the PSP need to be synchronized
+		ChangeJournal changeJournal = new ChangeJournal();
+		fat32VirtualFile.setChangeJournal(changeJournal);
+		sync.setChangeJournal(changeJournal);
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("openFile vFile=%s", vFile));
 		}
@@ -536,7 +545,7 @@ public class sceMSstor extends HLEModule {
     }
 
     public void hleInit() {
-    	Fat32VirtualFile fat32VirtualFile = openFile();
+    	openFile();
 
 		scanThread = new Fat32ScanThread(fat32VirtualFile);
 		scanThread.setName("Fat32VirtualFile Scan Thread");
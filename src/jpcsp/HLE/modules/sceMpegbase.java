@@ -49,6 +49,7 @@ import jpcsp.graphics.VideoEngine;
 import jpcsp.media.codec.h264.H264Utils;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.util.Debug;
@@ -196,6 +197,7 @@ public class sceMpegbase extends HLEModule {
 	        	value |= (buffer[j++]       ) << 24;
 	        	memoryInt[addrOffset++] = value;
 	        }
+	        MemoryPageTracker.write(addr, length4 << 2);
         } else {
     	    IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(mem, addr, length, 1);
 	        for (int i = 0, j = offset; i < length; i++) {
@@ -368,6 +370,7 @@ public class sceMpegbase extends HLEModule {
 	        	pixelIndex += width;
 	        	addrOffset += bufferWidth;
 	        }
+	        MemoryPageTracker.write(destAddr, rangeHeight * bufferWidth * bytesPerPixel);
 		} else {
         	TPointer addr = new TPointer(bufferRGB);
 	        for (int i = 0; i < rangeHeight; i++) {
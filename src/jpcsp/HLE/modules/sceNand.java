@@ -110,7 +110,7 @@ public class sceNand extends HLEModule {
     private ISynchronize syncFlash1;
     private ISynchronize syncFlash2;
     private ISynchronize syncFlash3;
-    private ISynchronize syncIpl;
+    private SynchronizeMemoryToVirtualFile syncIpl;
 
     @Override
 	public void start() {
@@ -1455,7 +1455,8 @@ public class sceNand extends HLEModule {
 		for (int i = 0; i < len; i++) {
 			int n = ppn + i;
 			if (n >= iplTablePpnStart && n <= iplPpnEnd) {
-				syncIpl.notifyWrite();
+				// Only the written page needs to be synchronized
+				syncIpl.notifyWrite((n - iplTablePpnStart) * pageSize, pageSize);
 			} else if (ppnToLbn[n] > flash0LbnStart && ppnToLbn[n] < flash1LbnStart) {
 				syncFlash0.notifyWrite();
     		} else if (ppnToLbn[n] > flash1LbnStart && ppnToLbn[n] < flash2LbnStart) {
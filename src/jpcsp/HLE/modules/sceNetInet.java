@@ -72,11 +72,13 @@ import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
+import jpcsp.network.NetworkReactor;
 import jpcsp.network.RawChannel;
 import jpcsp.network.RawSelector;
 import jpcsp.remote.HTTPConfiguration;
 import jpcsp.remote.HTTPConfiguration.HttpServerConfiguration;
 import jpcsp.remote.HTTPServer;
+import jpcsp.scheduler.Scheduler;
 import jpcsp.settings.AbstractStringSettingsListener;
 import jpcsp.settings.Settings;
 import jpcsp.util.Utilities;
@@ -156,6 +158,10 @@ public class sceNetInet extends HLEModule {
 
     // Polling period (micro seconds) for blocking operations
     protected static final int BLOCKED_OPERATION_POLLING_MICROS = 10000;
+    // Polling period (micro seconds) for blocking operations whose channels are watched
+    // by the NetworkReactor: the thread is woken up by the reactor as soon as a channel
+    // is ready, the polling is only a safety net (e.g. for a socket closed by another thread).
+    protected static final int WATCHED_BLOCKED_OPERATION_POLLING_MICROS = 1000000;
 
     protected static final int readSelectionKeyOperations = SelectionKey.OP_READ | SelectionKey.OP_ACCEPT;
     protected static final int writeSelectionKeyOperations = SelectionKey.OP_WRITE;
@@ -318,6 +324,9 @@ public class sceNetInet extends HLEModule {
 		public boolean threadBlocked;
 		public long timeout; // microseconds
 		public long start; // Clock.microTime
+		public long schedule; // Clock.microTime of the next polling, 0 if none
+		public boolean watched; // the channels are watched by the NetworkReactor
+		public boolean completed;
 		private boolean insideExecute;
 
 		public BlockingState(pspInetSocket inetSocket, long timeout) {
@@ -337,8 +346,10 @@ public class sceNetInet extends HLEModule {
 		public void execute() {
 			// Avoid executing the blocking state while already processing it.
 			// E.g. when the thread is unblocked by executeBlockingState(),
-			// this action is called again
-			if (!insideExecute) {
+			// this action is called again.
+			// The NetworkReactor might also have scheduled this action
+			// just before the operation completed.
+			if (!insideExecute && !completed) {
 				insideExecute = true;
 				executeBlockingState();
 				insideExecute = false;
@@ -346,6 +357,32 @@ public class sceNetInet extends HLEModule {
 		}
 
 		protected abstract void executeBlockingState();
+
+		/**
+		 * Watch the channels of this blocking state with the NetworkReactor.
+		 *
+		 * @param reactor  the network reactor
+		 * @return         true if the reactor will schedule this blocking state
+		 *                 once the channels are ready,
+		 *                 false if the channels have to be polled
+		 */
+		protected boolean watch(NetworkReactor reactor) {
+			return false;
+		}
+
+		protected boolean watch(NetworkReactor reactor, Selector selector) {
+			for (SelectionKey selectionKey : selector.keys()) {
+				try {
+					if (!reactor.watch(selectionKey.channel(), selectionKey.interestOps(), this)) {
+						return false;
+					}
+				} catch (CancelledKeyException e) {
+					return false;
+				}
+			}
+
+			return true;
+		}
 	}
 
 	protected static class BlockingAcceptState extends BlockingState {
@@ -360,6 +397,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedAccept(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return inetSocket.watch(reactor, SelectionKey.OP_ACCEPT, this);
+		}
 	}
 
 	protected static class BlockingPollState extends BlockingState {
@@ -376,6 +418,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			Modules.sceNetInetModule.blockedPoll(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return watch(reactor, selector);
+		}
 	}
 
 	protected static class BlockingSelectState extends BlockingState {
@@ -402,6 +449,12 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			Modules.sceNetInetModule.blockedSelect(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			// The raw sockets cannot be watched
+			return rawSelector.keys().isEmpty() && watch(reactor, selector);
+		}
 	}
 
 	protected static class BlockingReceiveState extends BlockingState {
@@ -422,6 +475,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedRecv(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return inetSocket.watch(reactor, SelectionKey.OP_READ, this);
+		}
 	}
 
 	protected static class BlockingReceiveFromState extends BlockingState {
@@ -444,6 +502,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedRecvfrom(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return inetSocket.watch(reactor, SelectionKey.OP_READ, this);
+		}
 	}
 
 	protected static class BlockingSendState extends BlockingState {
@@ -464,6 +527,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedSend(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return inetSocket.watch(reactor, SelectionKey.OP_WRITE, this);
+		}
 	}
 
 	protected static class BlockingSendToState extends BlockingState {
@@ -486,6 +554,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedSendto(this);
 		}
+
+		@Override
+		protected boolean watch(NetworkReactor reactor) {
+			return inetSocket.watch(reactor, SelectionKey.OP_WRITE, this);
+		}
 	}
 
 	protected abstract class pspInetSocket {
@@ -841,6 +914,16 @@ public class sceNetInet extends HLEModule {
 			return selector;
 		}
 
+		public boolean watch(NetworkReactor reactor, int interestOps, BlockingState blockingState) {
+			SelectableChannel selectableChannel = getSelectableChannel();
+			// Wait for the end of a pending connection
+			if (selectableChannel instanceof SocketChannel && ((SocketChannel) selectableChannel).isConnectionPending()) {
+				interestOps |= SelectionKey.OP_CONNECT;
+			}
+
+			return reactor.watch(selectableChannel, interestOps, blockingState);
+		}
+
 		public int recv(int buffer, int bufferLength, int flags) {
 			if ((flags & ~MSG_DONTWAIT) != 0) {
 				log.warn(String.format("sceNetInetRecv unsupported flag 0x%X on socket", flags));
@@ -1002,6 +1085,7 @@ public class sceNetInet extends HLEModule {
 							pendingBindAddress = socketChannel.socket().getLocalSocketAddress();
 						}
 						socketChannel.close();
+						NetworkReactor.channelClosed(socketChannel);
 						socketChannel = null;
 					}
 				}
@@ -1232,6 +1316,7 @@ public class sceNetInet extends HLEModule {
 			if (socketChannel != null) {
 				try {
 					socketChannel.close();
+					NetworkReactor.channelClosed(socketChannel);
 					socketChannel = null;
 				} catch (IOException e) {
 					log.error(e);
@@ -1243,6 +1328,7 @@ public class sceNetInet extends HLEModule {
 			if (serverSocketChannel != null) {
 				try {
 					serverSocketChannel.close();
+					NetworkReactor.channelClosed(serverSocketChannel);
 					serverSocketChannel = null;
 				} catch (IOException e) {
 					log.error(e);
@@ -1581,6 +1667,7 @@ public class sceNetInet extends HLEModule {
 			if (datagramChannel != null) {
 				try {
 					datagramChannel.close();
+					NetworkReactor.channelClosed(datagramChannel);
 					datagramChannel = null;
 				} catch (IOException e) {
 					log.error(e);
@@ -2275,11 +2362,12 @@ public class sceNetInet extends HLEModule {
 								if (registeredOperation != 0) {
 									Selector socketSelector = inetSocket.getSelector(selector, rawSelector);
 
-									// A channel may be registered at most once with any particular selector
-									if (selectableChannel.isRegistered()) {
+									// A channel may be registered at most once with any particular selector.
+									// The channel might also be registered with the NetworkReactor selector.
+									SelectionKey selectionKey = selectableChannel.keyFor(socketSelector);
+									if (selectionKey != null) {
 										// If the channel is already registered,
 										// add the new operation to the active registration
-										SelectionKey selectionKey = selectableChannel.keyFor(socketSelector);
 										selectionKey.interestOps(selectionKey.interestOps() | registeredOperation);
 									} else {
 										try {
@@ -2348,11 +2436,38 @@ public class sceNetInet extends HLEModule {
 			Modules.ThreadManForUserModule.hleBlockCurrentThread(SceKernelThreadInfo.JPCSP_WAIT_NET, blockingState);
 			blockingState.threadBlocked = true;
 		}
-		long schedule = Emulator.getClock().microTime() + BLOCKED_OPERATION_POLLING_MICROS;
-		Emulator.getScheduler().addAction(schedule, blockingState);
+
+		Scheduler scheduler = Emulator.getScheduler();
+		// The blocking state might have been scheduled by the NetworkReactor
+		// before its polling schedule
+		if (blockingState.schedule != 0L) {
+			scheduler.removeAction(blockingState.schedule, blockingState);
+		}
+
+		long now = Emulator.getClock().microTime();
+		long schedule;
+		blockingState.watched = blockingState.watch(NetworkReactor.getInstance());
+		if (blockingState.watched) {
+			// Only poll for the timeout
+			schedule = Math.min(now + WATCHED_BLOCKED_OPERATION_POLLING_MICROS, blockingState.start + blockingState.timeout);
+		} else {
+			schedule = now + BLOCKED_OPERATION_POLLING_MICROS;
+		}
+		blockingState.schedule = schedule;
+		scheduler.addAction(schedule, blockingState);
 	}
 
 	protected void unblockThread(BlockingState blockingState, int returnValue) {
+		blockingState.completed = true;
+		if (blockingState.schedule != 0L) {
+			Emulator.getScheduler().removeAction(blockingState.schedule, blockingState);
+			blockingState.schedule = 0L;
+		}
+		if (blockingState.watched) {
+			NetworkReactor.getInstance().cancel(blockingState);
+			blockingState.watched = false;
+		}
+
 		SceKernelThreadInfo thread = Modules.ThreadManForUserModule.getThreadById(blockingState.threadId);
 		if (thread != null) {
 			thread.cpuContext._v0 = returnValue;
@@ -3019,7 +3134,7 @@ public class sceNetInet extends HLEModule {
 								registeredOperations |= SelectionKey.OP_WRITE;
 							}
 							registeredOperations &= selectableChannel.validOps();
-							if (selectableChannel.isRegistered()) {
+							if (selectableChannel.keyFor(selector) != null) {
 								log.warn(String.format("sceNetInetPoll channel already registered pollFd[%d]=%s", i, pollFd));
 							} else {
 								try {
@@ -46,6 +46,7 @@ import jpcsp.media.codec.CodecFactory;
 import jpcsp.media.codec.IVideoCodec;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.scheduler.DelayThreadAction;
@@ -708,6 +709,7 @@ public class sceVideocodec extends HLEModule {
 	        	value += buffer[j++] << 24;
 	        	memoryInt[addrOffset++] = value;
 	        }
+	        MemoryPageTracker.write(address, length4 << 2);
         } else {
         	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, length, 1);
         	for (int i = 0, j = offset; i < length; i++) {
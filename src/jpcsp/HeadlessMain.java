@@ -0,0 +1,326 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp;
+
+import static jpcsp.graphics.VideoEngineUtilities.getPixelFormatBytes;
+
+import java.awt.DisplayMode;
+import java.awt.Rectangle;
+import java.awt.Window;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.GUI.IMainGUI;
+import jpcsp.HLE.HLEModuleManager;
+import jpcsp.HLE.Modules;
+import jpcsp.HLE.kernel.managers.IntrManager;
+import jpcsp.HLE.kernel.types.IAction;
+import jpcsp.HLE.modules.sceDisplay.BufferInfo;
+import jpcsp.filesystems.umdiso.UmdIsoFile;
+import jpcsp.filesystems.umdiso.UmdIsoReader;
+import jpcsp.format.PSF;
+import jpcsp.graphics.RE.RenderingEngineFactory;
+import jpcsp.graphics.capture.CaptureImage;
+import jpcsp.hardware.Screen;
+import jpcsp.settings.Settings;
+import jpcsp.util.Utilities;
+
+/**
+ * Run the emulator without any display, e.g. for automated smoke tests
+ * or frame-dump regression checks on machines without a screen.
+ *
+ * No AWT window is created, the GE lists are rendered by the software
+ * renderer (or are discarded with "--noRender").
+ * With "--unthrottled", the emulator is not paced to the real time:
+ * the vblanks are delivered as fast as the emulation allows.
+ *
+ * Usage:
+ *     jpcsp.HeadlessMain [options] (-f file | -u umd)
+ *         --unthrottled           run faster than the real time
+ *         --noRender              do not render the GE lists
+ *         --turbo n               run unthrottled and render only one frame out of n
+ *         --dumpFrames n          save the displayed frame every n vblanks
+ *         --dumpDirectory dir     directory for the dumped frames (default "tmp/frames/")
+ *         --statistics n          log the emulation statistics every n vblanks
+ *         --maxFrames n           stop the emulator after n vblanks
+ *
+ * The same options are available from jpcsp.MainGUI when the first argument is "--headless".
+ */
+public class HeadlessMain {
+	private static Logger log = Emulator.log;
+	private Emulator emulator;
+	private int dumpFramesInterval;
+	private String dumpDirectory = "tmp/frames/";
+	private int statisticsInterval;
+	private int maxFrames;
+	private int turboPreviewInterval;
+	private volatile int vblankCount;
+	private long startRealMillis;
+
+	private static class HeadlessGUI implements IMainGUI {
+		@Override public void setMainTitle(String title) { }
+		@Override public void RefreshButtons() { }
+		@Override public void setLocation() { }
+		@Override public DisplayMode getDisplayMode() { return new DisplayMode(Screen.width, Screen.height, 32, 60); }
+		@Override public void endWindowDialog() { }
+		@Override public boolean isFullScreen() { return false; }
+		@Override public boolean isVisible() { return false; }
+		@Override public void pack() { }
+		@Override public void setFullScreenDisplaySize() { }
+		@Override public void startWindowDialog(Window window) { }
+		@Override public void startBackgroundWindowDialog(Window window) { }
+		@Override public Rectangle getCaptureRectangle() { return null; }
+		@Override public void onUmdChange() { }
+		@Override public void onMemoryStickChange() { }
+		@Override public void setDisplayMinimumSize(int width, int height) { }
+		@Override public void setDisplaySize(int width, int height) { }
+		@Override public void run() { }
+		@Override public void pause() { }
+		@Override public void reset() { }
+		@Override public boolean isRunningFromVsh() { return false; }
+		@Override public boolean isRunningReboot() { return false; }
+		@Override public void doReboot() { }
+	}
+
+	private class VblankAction implements IAction {
+		@Override
+		public void execute() {
+			onVblank();
+		}
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+		initHeadless();
+		Emulator.initCrypto();
+		new HeadlessMain().run(args);
+	}
+
+	/**
+	 * Run without any screen. This has to be called before the first access
+	 * to the HLE modules, so that no AWT canvas is created by sceDisplay.
+	 */
+	public static void initHeadless() {
+		System.setProperty("java.awt.headless", "true");
+		Screen.setHasScreen(false);
+	}
+
+	public void run(String[] args) {
+		initHeadless();
+
+		emulator = new Emulator(new HeadlessGUI());
+
+		File file = null;
+		boolean isUmd = false;
+		boolean unthrottled = false;
+		boolean noRender = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--headless")) {
+				// Already processed by MainGUI
+			} else if (arg.equals("--logsettings") || arg.equals("--settingsFileName") || arg.equals("--debuggerMemoryFileName")) {
+				// These arguments have already been processed by MainGUI
+				i++;
+			} else if (arg.equals("--unthrottled")) {
+				unthrottled = true;
+			} else if (arg.equals("--noRender")) {
+				noRender = true;
+			} else if (arg.equals("--turbo") && i + 1 < args.length) {
+				turboPreviewInterval = Integer.parseInt(args[++i]);
+			} else if ((arg.equals("-f") || arg.equals("--loadfile")) && i + 1 < args.length) {
+				file = new File(args[++i]);
+				isUmd = false;
+			} else if ((arg.equals("-u") || arg.equals("--loadumd")) && i + 1 < args.length) {
+				file = new File(args[++i]);
+				isUmd = true;
+			} else if (arg.equals("--dumpFrames") && i + 1 < args.length) {
+				dumpFramesInterval = Integer.parseInt(args[++i]);
+			} else if (arg.equals("--dumpDirectory") && i + 1 < args.length) {
+				dumpDirectory = args[++i];
+				if (!dumpDirectory.endsWith("/")) {
+					dumpDirectory += "/";
+				}
+			} else if (arg.equals("--statistics") && i + 1 < args.length) {
+				statisticsInterval = Integer.parseInt(args[++i]);
+			} else if (arg.equals("--maxFrames") && i + 1 < args.length) {
+				maxFrames = Integer.parseInt(args[++i]);
+			} else {
+				log.error(String.format("Unknown headless option '%s'", arg));
+			}
+		}
+
+		if (file == null || !file.canRead()) {
+			log.error(String.format("Headless mode: no file or UMD to be loaded (%s)", file));
+			System.exit(1);
+		}
+
+		if (noRender && dumpFramesInterval > 0) {
+			log.warn("Headless mode: --dumpFrames is ignored with --noRender");
+			dumpFramesInterval = 0;
+		}
+		if (dumpFramesInterval > 0) {
+			new File(dumpDirectory).mkdirs();
+		}
+
+		RenderingEngineFactory.setUseNullRenderingEngine(noRender);
+		Modules.sceDisplayModule.setCalledFromCommandLine();
+		Modules.sceDisplayModule.setUseSoftwareRenderer(true);
+		if (unthrottled) {
+			Emulator.setFastForwardClock();
+		}
+		if (turboPreviewInterval > 0) {
+			Modules.sceDisplayModule.setTurboMode(true, turboPreviewInterval);
+		}
+
+		int exitCode = 0;
+		try {
+			if (isUmd) {
+				loadUmd(file);
+			} else {
+				loadFile(file);
+			}
+			runEmulator();
+		} catch (Exception e) {
+			log.error("Headless mode", e);
+			exitCode = 1;
+		}
+
+		logStatistics();
+		Emulator.exit();
+		System.exit(exitCode);
+	}
+
+	private void loadFile(File file) throws IOException, GeneralJpcspException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer readBuffer;
+		try {
+			readBuffer = Utilities.readAsByteBuffer(raf);
+		} finally {
+			raf.close();
+		}
+
+		emulator.load(file.getPath(), readBuffer);
+
+		Modules.IoFileMgrForUserModule.setfilepath(file.getParent());
+		Modules.IoFileMgrForUserModule.setIsoReader(null);
+		Modules.sceUmdUserModule.setIsoReader(null);
+	}
+
+	private void loadUmd(File file) throws IOException, GeneralJpcspException {
+		UmdIsoReader iso = new UmdIsoReader(file.getPath());
+
+		UmdIsoFile psfFile = iso.getFile("PSP_GAME/param.sfo");
+		byte[] data = new byte[(int) psfFile.length()];
+		psfFile.read(data);
+		psfFile.close();
+		PSF psf = new PSF();
+		psf.read(ByteBuffer.wrap(data));
+
+		if (psf.isLikelyHomebrew()) {
+			emulator.setFirmwareVersion(Loader.FIRMWAREVERSION_HOMEBREW);
+		} else {
+			emulator.setFirmwareVersion(psf.getString("PSP_SYSTEM_VER"));
+		}
+		String discId = psf.getString("DISC_ID");
+		State.discId = discId == null ? State.DISCID_UNKNOWN_UMD : discId;
+		State.title = psf.getPrintableString("TITLE");
+		Settings.getInstance().loadPatchSettings();
+
+		boolean loaded = false;
+		for (String bootPath : new String[] { "PSP_GAME/SYSDIR/EBOOT.BIN", "PSP_GAME/SYSDIR/BOOT.BIN" }) {
+			if (iso.hasFile(bootPath)) {
+				UmdIsoFile bootFile = iso.getFile(bootPath);
+				byte[] bootData = new byte[(int) bootFile.length()];
+				bootFile.read(bootData);
+				bootFile.close();
+				if (bootData.length > 0) {
+					emulator.load("disc0:/" + bootPath, ByteBuffer.wrap(bootData));
+					loaded = true;
+					break;
+				}
+			}
+		}
+
+		if (!loaded) {
+			throw new GeneralJpcspException(String.format("No bootable file found on the UMD '%s'", file));
+		}
+
+		RuntimeContext.setIsHomebrew(psf.isLikelyHomebrew());
+		Modules.IoFileMgrForUserModule.setfilepath("disc0/");
+		Modules.IoFileMgrForUserModule.setIsoReader(iso);
+		Modules.sceUmdUserModule.setIsoReader(iso);
+	}
+
+	private void runEmulator() {
+		IntrManager.getInstance().addVBlankAction(new VblankAction());
+
+		log.info(String.format("Starting headless emulation of '%s'", State.title));
+		startRealMillis = System.currentTimeMillis();
+		emulator.RunEmu();
+
+		while (!Emulator.pause && (maxFrames <= 0 || vblankCount < maxFrames)) {
+			Modules.sceDisplayModule.step();
+			Utilities.sleep(10, 0);
+		}
+
+		Emulator.PauseEmuWithStatus(Emulator.EMU_STATUS_PAUSE);
+		HLEModuleManager.getInstance().stopModules();
+	}
+
+	private void onVblank() {
+		vblankCount++;
+
+		if (dumpFramesInterval > 0 && (vblankCount % dumpFramesInterval) == 0) {
+			dumpFrame();
+		}
+
+		if (statisticsInterval > 0 && (vblankCount % statisticsInterval) == 0) {
+			logStatistics();
+		}
+	}
+
+	private void dumpFrame() {
+		BufferInfo fb = Modules.sceDisplayModule.getBufferInfoFb();
+		if (fb.topAddr == 0 || fb.width <= 0 || fb.height <= 0) {
+			return;
+		}
+
+		Buffer buffer = Memory.getInstance().getBuffer(fb.topAddr, fb.bufferWidth * fb.height * getPixelFormatBytes(fb.pixelFormat));
+		CaptureImage captureImage = new CaptureImage(fb.topAddr, 0, buffer, fb.width, fb.height, fb.bufferWidth, fb.pixelFormat, false, 0, false, true, null);
+		captureImage.setFileName(String.format("%sFrame%06d.png", dumpDirectory, vblankCount));
+		captureImage.setFileFormat("png");
+		try {
+			captureImage.write();
+		} catch (IOException e) {
+			log.error("Headless frame dump", e);
+		}
+	}
+
+	private void logStatistics() {
+		long realMillis = System.currentTimeMillis() - startRealMillis;
+		long emulatedMillis = Emulator.getClock().milliTime();
+		double speed = realMillis > 0 ? emulatedMillis / (double) realMillis : 0.0;
+		log.info(String.format("Headless statistics: %d vblanks, emulated time %.3fs, real time %.3fs, speed x%.2f, %.1f vblanks/s", vblankCount, emulatedMillis / 1000.0, realMillis / 1000.0, speed, realMillis > 0 ? vblankCount * 1000.0 / realMillis : 0.0));
+	}
+}
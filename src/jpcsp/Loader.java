@@ -83,6 +83,7 @@ import jpcsp.format.PSF;
 import jpcsp.format.PSP;
 import jpcsp.format.PSPModuleInfo;
 import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemorySection;
 import jpcsp.memory.MemorySections;
@@ -609,6 +610,7 @@ public class Loader {
                 		// Optimize the most common case
                 		if (RuntimeContext.hasMemoryInt(destAddr)) {
                 			intBuffer.get(RuntimeContext.getMemoryInt(), (memOffset & addressMask) >> 2, fileLen >> 2);
+                			MemoryPageTracker.write(memOffset, fileLen);
                 		} else {
                 			int[] buffer = new int[fileLen >> 2];
                 			intBuffer.get(buffer);
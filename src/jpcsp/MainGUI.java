@@ -40,7 +40,6 @@ import java.io.RandomAccessFile;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.security.Security;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.List;
@@ -51,8 +50,6 @@ import jpcsp.Allegrex.compiler.Profiler;
 import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.Allegrex.compiler.RuntimeContextLLE;
 import jpcsp.autotests.AutoTestsRunner;
-import jpcsp.crypto.AES128;
-import jpcsp.crypto.PreDecrypt;
 import jpcsp.Debugger.ElfHeaderInfo;
 import jpcsp.Debugger.ImageViewer;
 import jpcsp.Debugger.InstructionCounter;
@@ -2953,6 +2950,13 @@ private void threeTimesResizeActionPerformed(java.awt.event.ActionEvent evt) {//
 		out.println("  --settingsFileName FILE    Use the given file when saving/loading the settings (Settings.properties by default).");
 		out.println("  --vsh                      Run the PSP VSH.");
 		out.println("  --reboot                   Run a low-level emulation of the complete PSP reboot process. Still experimental.");
+		out.println("  --headless [OPTIONS]       Run without any display, must be the first option. Use with -f or -u option.");
+		out.println("    --unthrottled            Do not pace the emulation to the real time, run as fast as possible.");
+		out.println("    --noRender               Do not render the graphics.");
+		out.println("    --dumpFrames N           Save the displayed frame every N vblanks.");
+		out.println("    --dumpDirectory DIR      Save the dumped frames into the given directory, instead of \"tmp/frames/\" by default.");
+		out.println("    --statistics N           Log the emulation statistics every N vblanks.");
+		out.println("    --maxFrames N            Stop the emulation after N vblanks.");
     }
 
     private void processArgs(String[] args) {
@@ -3140,13 +3144,12 @@ private void threeTimesResizeActionPerformed(java.awt.event.ActionEvent evt) {//
     	initSettings(args);
     	initDebuggerMemory(args);
 
-		// Re-enable all disabled algorithms as the PSP is allowing them
-		Security.setProperty("jdk.certpath.disabledAlgorithms", "");
-		Security.setProperty("jdk.tls.disabledAlgorithms", "");
+    	if (args.length > 0 && args[0].equals("--headless")) {
+    		// Before the HLE modules are initialized
+    		HeadlessMain.initHeadless();
+    	}
 
-    	PreDecrypt.init();
-        AES128.init();
-        libkirk.AES.init();
+    	Emulator.initCrypto();
 
         HTTPServer.getInstance();
 
@@ -3166,6 +3169,10 @@ private void threeTimesResizeActionPerformed(java.awt.event.ActionEvent evt) {//
                 (new AutoTestsRunner()).run();
                 return;
             }
+            if (args[0].equals("--headless")) {
+                (new HeadlessMain()).run(args);
+                return;
+            }
         }
 
         try {
@@ -38,8 +38,10 @@ import jpcsp.memory.SafeDirectBufferMemory;
 import jpcsp.memory.SafeFastMemory;
 import jpcsp.memory.SafeNativeMemory;
 import jpcsp.memory.SafeSparseNativeMemory;
+import jpcsp.memory.SafeUnsafeMemory;
 import jpcsp.memory.SparseNativeMemory;
 import jpcsp.memory.StandardMemory;
+import jpcsp.memory.UnsafeMemory;
 import jpcsp.settings.AbstractBoolSettingsListener;
 import jpcsp.settings.Settings;
 import jpcsp.state.IState;
@@ -53,6 +55,7 @@ public abstract class Memory implements IState {
     private static Memory instance = null;
     public static boolean useNativeMemory = false;
     public static boolean useDirectBufferMemory = false;
+    public static boolean useUnsafeMemory = false;
     public static boolean useSafeMemory = true;
     public static final int addressMask = 0x1FFFFFFF;
     private boolean ignoreInvalidMemoryAccess = false;
@@ -72,6 +75,8 @@ public abstract class Memory implements IState {
             // - FastMemory            : high memory requirements, no address checking, very fast
             // - SafeDirectBufferMemory: high memory requirements, performs address checking, moderate
             // - DirectBufferMemory    : high memory requirements, no address checking, fast
+            // - SafeUnsafeMemory      : high off-heap memory requirements, performs address checking, fast
+            // - UnsafeMemory          : high off-heap memory requirements, no address checking, very fast
             //
             // Best choices are currently
             // 1) SafeFastMemory (address check is useful when debugging programs)
@@ -91,6 +96,10 @@ public abstract class Memory implements IState {
                 useSafeMemory = false;
             }
 
+            if (Settings.getInstance().readBool("emu.useUnsafeMemory")) {
+            	useUnsafeMemory = true;
+            }
+
         	if (useNativeMemory) {
         		try {
         			System.loadLibrary("memory");
@@ -106,6 +115,12 @@ public abstract class Memory implements IState {
         		} else {
         			instance = new NativeMemory();
         		}
+        	} else if (useUnsafeMemory) {
+        		if (useSafeMemory) {
+        			instance = new SafeUnsafeMemory();
+        		} else {
+        			instance = new UnsafeMemory();
+        		}
         	} else if (useDirectBufferMemory) {
         		if (useSafeMemory) {
         			instance = new SafeDirectBufferMemory();
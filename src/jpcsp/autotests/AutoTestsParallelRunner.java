@@ -0,0 +1,243 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.autotests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run the pspautotests in parallel.
+ *
+ * The emulator is based on static singletons, so that only one test can be
+ * executed at a time in one JVM. This runner is forking a pool of worker JVMs
+ * (see AutoTestsRunner.runWorker()), each one executing one test at a time.
+ * The workers are kept alive between the tests and are only restarted
+ * when they have crashed.
+ *
+ * Tests which have passed on a previous run, without any change to the
+ * test files or to the emulator, are skipped (see AutoTestsResultCache).
+ */
+public class AutoTestsParallelRunner {
+	// Time given to a worker to complete one test before it is killed, in seconds.
+	// This includes the worker startup time for the first test.
+	private static final int WORKER_TIMEOUT = AutoTestsRunner.FAIL_TIMEOUT * 3;
+	private final ConcurrentLinkedQueue<String> pendingTests = new ConcurrentLinkedQueue<String>();
+	private final AutoTestsResultCache resultCache;
+	private final AtomicInteger passedCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+	private final PrintStream out = System.out;
+
+	private class WorkerThread extends Thread {
+		private Process process;
+		private PrintStream processIn;
+		private BufferedReader processOut;
+
+		public WorkerThread(int index) {
+			setName(String.format("AutoTests Worker %d", index));
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				String baseFileName = pendingTests.poll();
+				if (baseFileName == null) {
+					break;
+				}
+
+				try {
+					runTest(baseFileName);
+				} catch (IOException e) {
+					report(baseFileName, false, String.format("%s: FAIL, worker crashed: %s\n", baseFileName, e));
+					stopProcess();
+				}
+			}
+
+			stopProcess();
+		}
+
+		private void startProcess() throws IOException {
+			List<String> command = new LinkedList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+				// Do not start the workers under a debugger
+				if (!arg.startsWith("-agentlib") && !arg.startsWith("-Xrunjdwp")) {
+					command.add(arg);
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(AutoTestsRunner.class.getName());
+			command.add(AutoTestsRunner.WORKER_ARG);
+
+			ProcessBuilder processBuilder = new ProcessBuilder(command);
+			processBuilder.redirectError(ProcessBuilder.Redirect.appendTo(new File(System.getProperty("java.io.tmpdir"), getName().replace(' ', '-') + ".log")));
+			process = processBuilder.start();
+			processIn = new PrintStream(process.getOutputStream(), true);
+			processOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		}
+
+		private void stopProcess() {
+			if (process != null) {
+				processIn.close();
+				process.destroy();
+				process = null;
+			}
+		}
+
+		private void runTest(String baseFileName) throws IOException {
+			if (process == null) {
+				startProcess();
+			}
+
+			// Kill the worker if it hangs on this test
+			final Process testProcess = process;
+			Thread watchdog = new Thread(String.format("%s Watchdog", getName())) {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(WORKER_TIMEOUT * 1000L);
+						testProcess.destroy();
+					} catch (InterruptedException e) {
+						// Test completed in time
+					}
+				}
+			};
+			watchdog.setDaemon(true);
+			watchdog.start();
+
+			try {
+				processIn.println(baseFileName);
+
+				String line;
+				do {
+					line = processOut.readLine();
+					if (line == null) {
+						throw new IOException("unexpected end of worker output");
+					}
+				} while (!line.startsWith(AutoTestsRunner.WORKER_RESULT_PREFIX));
+
+				boolean passed = line.substring(AutoTestsRunner.WORKER_RESULT_PREFIX.length()).startsWith(AutoTestsRunner.RESULT_OK);
+				StringBuilder testReport = new StringBuilder();
+				while (true) {
+					line = processOut.readLine();
+					if (line == null) {
+						throw new IOException("unexpected end of worker output");
+					}
+					if (line.equals(AutoTestsRunner.WORKER_END)) {
+						break;
+					}
+					testReport.append(line).append('\n');
+				}
+
+				report(baseFileName, passed, testReport.toString());
+			} finally {
+				watchdog.interrupt();
+			}
+		}
+	}
+
+	public AutoTestsParallelRunner(File rootDirectory, boolean useCache) {
+		resultCache = useCache ? new AutoTestsResultCache(rootDirectory) : null;
+	}
+
+	public static void run(File rootDirectory, int numberWorkers, boolean useCache) {
+		if (rootDirectory == null) {
+			System.err.println("Can't find pspautotests folder");
+			System.exit(1);
+		}
+
+		if (numberWorkers <= 0) {
+			numberWorkers = Runtime.getRuntime().availableProcessors();
+		}
+
+		AutoTestsParallelRunner runner = new AutoTestsParallelRunner(rootDirectory, useCache);
+		boolean success = runner.runTests(new File(rootDirectory, "tests"), numberWorkers);
+
+		System.exit(success ? 0 : 1);
+	}
+
+	public boolean runTests(File folder, int numberWorkers) {
+		List<String> tests = new LinkedList<String>();
+		AutoTestsRunner.collectTests(folder, tests);
+
+		int skippedCount = 0;
+		for (String baseFileName : tests) {
+			if (resultCache != null && resultCache.hasPassed(baseFileName)) {
+				skippedCount++;
+			} else {
+				pendingTests.add(baseFileName);
+			}
+		}
+
+		numberWorkers = Math.max(1, Math.min(numberWorkers, pendingTests.size()));
+		out.println(String.format("Running %d tests on %d workers, %d tests skipped as unchanged since their last successful run", pendingTests.size(), numberWorkers, skippedCount));
+
+		long start = System.currentTimeMillis();
+		List<WorkerThread> workers = new ArrayList<WorkerThread>(numberWorkers);
+		for (int i = 0; i < numberWorkers; i++) {
+			WorkerThread worker = new WorkerThread(i);
+			workers.add(worker);
+			worker.start();
+		}
+
+		for (WorkerThread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				// Ignore exception
+			}
+		}
+		long end = System.currentTimeMillis();
+
+		if (resultCache != null) {
+			resultCache.save();
+		}
+
+		out.println(String.format("%d tests passed, %d tests failed, %d tests skipped in %.1f seconds", passedCount.get(), failedCount.get(), skippedCount, (end - start) / 1000.0));
+
+		return failedCount.get() == 0;
+	}
+
+	private synchronized void report(String baseFileName, boolean passed, String testReport) {
+		if (passed) {
+			passedCount.incrementAndGet();
+		} else {
+			failedCount.incrementAndGet();
+		}
+
+		if (resultCache != null) {
+			resultCache.setResult(baseFileName, passed);
+		}
+
+		// Only print the complete report (e.g. the expected/actual diff) for failed tests
+		if (passed) {
+			out.println(String.format("%s: OK", baseFileName));
+		} else {
+			out.print(testReport);
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.autotests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import jpcsp.util.Utilities;
+
+/**
+ * Remembers the pspautotests which have passed, so that they can be skipped
+ * on a later run as long as neither the test files (prx, expected output and
+ * expected screenshot) nor the emulator classes have been changed.
+ */
+public class AutoTestsResultCache {
+	private static final String CACHE_FILE_NAME = ".autotests-cache";
+	private static final String EMULATOR_STAMP_KEY = "@emulator";
+	private final File cacheFile;
+	private final Properties passedTests = new Properties();
+	private final String emulatorStamp;
+
+	public AutoTestsResultCache(File rootDirectory) {
+		cacheFile = new File(rootDirectory, CACHE_FILE_NAME);
+		emulatorStamp = computeEmulatorStamp();
+		load();
+	}
+
+	private void load() {
+		if (!cacheFile.canRead()) {
+			return;
+		}
+
+		InputStream is = null;
+		try {
+			is = new FileInputStream(cacheFile);
+			passedTests.load(is);
+		} catch (IOException e) {
+			passedTests.clear();
+		} finally {
+			Utilities.close(is);
+		}
+
+		// The emulator has been changed since the last run, all the tests have to be executed again
+		if (!emulatorStamp.equals(passedTests.getProperty(EMULATOR_STAMP_KEY))) {
+			passedTests.clear();
+		}
+	}
+
+	public synchronized void save() {
+		passedTests.setProperty(EMULATOR_STAMP_KEY, emulatorStamp);
+
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(cacheFile);
+			passedTests.store(os, "pspautotests passed on a previous run");
+		} catch (IOException e) {
+			System.err.println(String.format("Cannot save the autotests cache '%s': %s", cacheFile, e));
+		} finally {
+			Utilities.close(os);
+		}
+	}
+
+	public synchronized boolean hasPassed(String baseFileName) {
+		String hash = passedTests.getProperty(baseFileName);
+		if (hash == null) {
+			return false;
+		}
+
+		return hash.equals(computeTestHash(baseFileName));
+	}
+
+	public synchronized void setResult(String baseFileName, boolean passed) {
+		String hash = passed ? computeTestHash(baseFileName) : null;
+		if (hash != null) {
+			passedTests.setProperty(baseFileName, hash);
+		} else {
+			passedTests.remove(baseFileName);
+		}
+	}
+
+	private static String computeTestHash(String baseFileName) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (String suffix : new String[] { ".prx", ".expected", ".expected.bmp" }) {
+				File file = new File(baseFileName + suffix);
+				if (file.canRead()) {
+					md.update(suffix.getBytes());
+					md.update(Files.readAllBytes(file.toPath()));
+				}
+			}
+			StringBuilder hash = new StringBuilder();
+			for (byte b : md.digest()) {
+				hash.append(String.format("%02x", b & 0xFF));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Build a stamp identifying the emulator build, from the size and
+	 * last modification time of the class path entries.
+	 */
+	private static String computeEmulatorStamp() {
+		StringBuilder stamp = new StringBuilder();
+		String classPath = System.getProperty("java.class.path", "");
+		for (String entry : classPath.split(File.pathSeparator)) {
+			File file = new File(entry);
+			stamp.append(String.format("%x:%x;", file.length(), lastModified(file)));
+		}
+
+		return stamp.toString();
+	}
+
+	private static long lastModified(File file) {
+		long lastModified = file.lastModified();
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			if (files != null) {
+				for (File child : files) {
+					lastModified = Math.max(lastModified, lastModified(child));
+				}
+			}
+		}
+
+		return lastModified;
+	}
+}
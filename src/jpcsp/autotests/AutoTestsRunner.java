@@ -31,10 +31,13 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.TimeoutException;
 
 import javax.imageio.ImageIO;
@@ -58,7 +61,15 @@ import jpcsp.log.LoggingOutputStream;
 
 public class AutoTestsRunner {
 	private static final Logger log = Logger.getLogger("pspautotests");
-	private static final int FAIL_TIMEOUT = 10; // in seconds
+	static final int FAIL_TIMEOUT = 10; // in seconds
+	// Protocol used between the AutoTestsParallelRunner and its worker processes
+	static final String WORKER_ARG = "--worker";
+	static final String WORKER_RESULT_PREFIX = "@@RESULT ";
+	static final String WORKER_END = "@@END";
+	static final String RESULT_OK = "OK";
+	static final String RESULT_FAIL = "FAIL";
+	// When not null, the test report is collected here instead of being printed
+	static private StringBuilder report;
 
 	static {
 		LWJGLFixer.fixOnce();
@@ -66,24 +77,59 @@ public class AutoTestsRunner {
 	}
 
 	static public void main(String[] args) {
-		new AutoTestsRunner().run();
+		boolean worker = false;
+		boolean useCache = false;
+		int numberWorkers = -1;
+		for (int i = 0; i < args.length; i++) {
+			if (WORKER_ARG.equals(args[i])) {
+				worker = true;
+			} else if ("--parallel".equals(args[i])) {
+				numberWorkers = 0;
+				useCache = true;
+			} else if (args[i].startsWith("--parallel=")) {
+				numberWorkers = Integer.parseInt(args[i].substring(11));
+				useCache = true;
+			} else if ("--no-cache".equals(args[i])) {
+				useCache = false;
+			}
+		}
+
+		if (worker) {
+			new AutoTestsRunner().runWorker();
+		} else if (numberWorkers >= 0) {
+			AutoTestsParallelRunner.run(rootDirectory, numberWorkers, useCache);
+		} else {
+			new AutoTestsRunner().run();
+		}
 	}
 
 	Emulator emulator;
 
 	static private void debug(String str) {
 		//log.info(str);
-		System.err.println(str);
+		if (report != null) {
+			report.append(str).append('\n');
+		} else {
+			System.err.println(str);
+		}
 	}
 
 	static private void info(String str) {
 		//log.info(str);
-		System.out.println(str);
+		if (report != null) {
+			report.append(str).append('\n');
+		} else {
+			System.out.println(str);
+		}
 	}
 
 	static private void error(String str) {
 		//log.error(str);
-		System.err.println(str);
+		if (report != null) {
+			report.append(str).append('\n');
+		} else {
+			System.err.println(str);
+		}
 	}
 
 	public static class DummyGUI implements IMainGUI {
@@ -132,6 +178,62 @@ public class AutoTestsRunner {
 		System.exit(0);
 	}
 
+	/**
+	 * Run as a worker process of the AutoTestsParallelRunner:
+	 * the base file names of the tests to be executed are read from stdin,
+	 * one per line, and the result of each test is written to stdout,
+	 * framed by WORKER_RESULT_PREFIX and WORKER_END.
+	 * The JVM and the emulator are kept warm between the tests.
+	 */
+	public void runWorker() {
+		// Keep the real stdout for the worker protocol, all the other output
+		// (including the console log appenders) is sent to stderr.
+		PrintStream protocolOut = System.out;
+		System.setOut(System.err);
+
+		DOMConfigurator.configure("LogSettings.xml");
+		Screen.setHasScreen(false);
+		Modules.sceDisplayModule.setCalledFromCommandLine();
+
+		// Each worker is using its own screenshot file
+		File screenshotFile = new File(String.format("testResult-%s.bmp", Long.toHexString(System.nanoTime())));
+		screenshotFile.deleteOnExit();
+		EmulatorVirtualFileSystem.setScreenshotFileName(screenshotFile.getPath());
+
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+			while (true) {
+				String baseFileName = in.readLine();
+				if (baseFileName == null) {
+					break;
+				}
+				baseFileName = baseFileName.trim();
+				if (baseFileName.length() == 0) {
+					continue;
+				}
+
+				report = new StringBuilder();
+				boolean passed;
+				try {
+					passed = runTest(baseFileName);
+				} catch (Throwable e) {
+					error(String.format("%s: FAIL, %s", baseFileName, e));
+					passed = false;
+				}
+
+				protocolOut.println(WORKER_RESULT_PREFIX + (passed ? RESULT_OK : RESULT_FAIL) + " " + baseFileName);
+				protocolOut.print(report);
+				protocolOut.println(WORKER_END);
+				protocolOut.flush();
+				report = null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		System.exit(0);
+	}
+
 	static private File rootDirectory = FileUtil.findFolderNameInAncestors(new File("."), "pspautotests");
 
 	protected void runImpl() throws Throwable {
@@ -146,6 +248,19 @@ public class AutoTestsRunner {
 	}
 
 	protected void runTestFolder(File folder) throws Throwable {
+		List<String> tests = new LinkedList<String>();
+		collectTests(folder, tests);
+		for (String baseFileName : tests) {
+			runTest(baseFileName);
+		}
+	}
+
+	/**
+	 * Collect the base file names of all the tests available in a folder
+	 * and its sub-folders, i.e. the file names of the ".expected" files
+	 * without their extension.
+	 */
+	static void collectTests(File folder, List<String> tests) {
 		File[] files = folder.listFiles();
 		if (files != null) {
 			for (File file : files) {
@@ -153,18 +268,18 @@ public class AutoTestsRunner {
 					continue;
 				}
 				if (file.isDirectory()) {
-					runTestFolder(file);
+					collectTests(file, tests);
 				} else if (file.isFile()) {
 					String name = file.getPath();
-					if (name.substring(name.length() - 9).equals(".expected")) {
-						runTest(name.substring(0, name.length() - 9));
+					if (name.endsWith(".expected")) {
+						tests.add(name.substring(0, name.length() - 9));
 					}
 				}
 			}
 		}
 	}
 
-	protected void runTest(String baseFileName) throws Throwable {
+	protected boolean runTest(String baseFileName) throws Throwable {
 		new File(EmulatorVirtualFileSystem.getScreenshotFileName()).delete();
 
 		boolean timeout = false;
@@ -173,7 +288,7 @@ public class AutoTestsRunner {
 		} catch (TimeoutException toe) {
 			timeout = true;
 		}
-		checkOutput(baseFileName, baseFileName + ".expected", timeout);
+		return checkOutput(baseFileName, baseFileName + ".expected", timeout);
 	}
 
 	protected BufferedImage readBmp(File imageFile) throws IOException {
@@ -253,12 +368,14 @@ public class AutoTestsRunner {
 		return equals;
 	}
 
-	protected void checkOutput(String baseFileName, String fileName, boolean timeout) throws IOException {
+	protected boolean checkOutput(String baseFileName, String fileName, boolean timeout) throws IOException {
+		boolean passed = true;
 		String actualOutput = AutoTestsOutput.getOutput().trim();
 		String expectedOutput = readFileAsString(fileName).trim();
 		if (actualOutput.equals(expectedOutput)) {
 			info(String.format("%s: OK", baseFileName));
 		} else {
+			passed = false;
 			if (timeout) {
 				error(String.format("%s: FAIL, TIMEOUT", baseFileName));
 			} else {
@@ -281,14 +398,19 @@ public class AutoTestsRunner {
 						info(String.format("%s: screenshots are identical", baseFileName));
 					} else {
 						error(String.format("%s: screenshots differ, see '%s'", baseFileName, compareScreenshot));
+						passed = false;
 					}
 				} else {
 					error(String.format("%s: cannot save screenshot from '%s' to '%s'", baseFileName, screenshotResult, savedScreenshotResult));
+					passed = false;
 				}
 			} else {
 				error(String.format("%s: FAIL, no result screenshot found", baseFileName));
+				passed = false;
 			}
 		}
+
+		return passed;
 	}
 
 	public static void diff(String x, String y) {
@@ -0,0 +1,353 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.crypto;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.settings.Settings;
+import jpcsp.util.Utilities;
+
+/**
+ * Persistent cache of the decrypted PRX and EBOOT images.
+ *
+ * The decrypted image only depends on the encrypted bytes, on the optional key
+ * and on the sign check flag. The cache entries are stored in the tmp directory,
+ * under a file name built from the SHA-1 hash of these values,
+ * so that a module is only decrypted once, even when loaded from different files.
+ *
+ * Each entry is verified by its size and by the SHA-1 hash of the decrypted image
+ * before being used. When the total size of the cache exceeds the size limit,
+ * the least recently used entries are deleted.
+ */
+public class PrxDecryptionCache {
+    public static Logger log = CryptoEngine.log;
+    private static final String CACHE_DIRECTORY = "prxcache";
+    private static final String ENTRY_FILE_EXTENSION = ".bin";
+    private static final String STATISTICS_FILE_NAME = "statistics.properties";
+    private static final int ENTRY_MAGIC = 0x43585250; // "PRXC"
+    private static final int ENTRY_VERSION = 1;
+    private static final int ENTRY_HEADER_SIZE = 12 + 20;
+    private static PrxDecryptionCache instance;
+    private final File cacheDirectory;
+    private final long maxSize;
+    private long hits;
+    private long misses;
+    private long previousHits;
+    private long previousMisses;
+
+    private static class EntryFileFilter implements FileFilter {
+        @Override
+        public boolean accept(File file) {
+            return file.isFile() && file.getName().endsWith(ENTRY_FILE_EXTENSION);
+        }
+    }
+
+    private static class LastModifiedComparator implements Comparator<File> {
+        @Override
+        public int compare(File file1, File file2) {
+            return Long.compare(file1.lastModified(), file2.lastModified());
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Settings.getInstance().readBool("emu.prxDecryptionCache");
+    }
+
+    public static synchronized PrxDecryptionCache getInstance() {
+        if (instance == null) {
+            instance = new PrxDecryptionCache();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Report the cache statistics at startup.
+     */
+    public static void init() {
+        if (isEnabled()) {
+            PrxDecryptionCache cache = getInstance();
+            if (log.isInfoEnabled()) {
+                File[] entries = cache.listEntries();
+                long size = 0L;
+                for (File entry : entries) {
+                    size += entry.length();
+                }
+                log.info(String.format("PRX decryption cache: %d entries (%d KB of %d KB), %d hits and %d misses in previous sessions", entries.length, size / 1024, cache.maxSize / 1024, cache.previousHits, cache.previousMisses));
+            }
+        }
+    }
+
+    public static void exit() {
+        if (instance != null) {
+            if (log.isInfoEnabled() && (instance.hits > 0 || instance.misses > 0)) {
+                log.info(String.format("PRX decryption cache: %d hits, %d misses", instance.hits, instance.misses));
+            }
+            instance.saveStatistics();
+        }
+    }
+
+    private PrxDecryptionCache() {
+        cacheDirectory = new File(Settings.getInstance().getTmpDirectory() + CACHE_DIRECTORY);
+        // The cache size limit is defined in MB
+        maxSize = Settings.getInstance().readInt("emu.prxDecryptionCacheSize", 256) * 1024L * 1024L;
+        loadStatistics();
+    }
+
+    /**
+     * Build the cache key of an encrypted image.
+     *
+     * @param buffer          the encrypted image
+     * @param size            the size of the encrypted image
+     * @param isSignChecked   the sign check flag used for the decryption
+     * @param key             the optional decryption key, or null
+     * @return                the cache key, or null if it cannot be computed
+     */
+    public static String getKey(byte[] buffer, int size, boolean isSignChecked, byte[] key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(buffer, 0, size);
+            md.update((byte) (isSignChecked ? 1 : 0));
+            if (key != null) {
+                md.update(key);
+            }
+            return toHexString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieve a decrypted image from the cache.
+     *
+     * @param key   the cache key, see getKey()
+     * @return      the decrypted image, or null if it is not present in the cache
+     */
+    public synchronized byte[] get(String key) {
+        File entryFile = getEntryFile(key);
+        byte[] decrypted = null;
+        if (entryFile.canRead()) {
+            decrypted = read(entryFile);
+            if (decrypted == null) {
+                // Invalid entry, it will be rebuilt
+                entryFile.delete();
+            } else {
+                // Keep track of the least recently used entries
+                entryFile.setLastModified(System.currentTimeMillis());
+            }
+        }
+
+        if (decrypted == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("PrxDecryptionCache %s for %s", decrypted == null ? "miss" : "hit", key));
+        }
+
+        return decrypted;
+    }
+
+    /**
+     * Store a decrypted image into the cache.
+     *
+     * @param key         the cache key, see getKey()
+     * @param decrypted   the decrypted image
+     */
+    public synchronized void put(String key, byte[] decrypted) {
+        if (ENTRY_HEADER_SIZE + decrypted.length > maxSize) {
+            return;
+        }
+
+        cacheDirectory.mkdirs();
+        File entryFile = getEntryFile(key);
+        // Write to a temporary file first, so that an incomplete entry is never used
+        File tmpFile = new File(cacheDirectory, key + ".tmp");
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(ENTRY_MAGIC);
+            out.writeInt(ENTRY_VERSION);
+            out.writeInt(decrypted.length);
+            out.write(getHash(decrypted));
+            out.write(decrypted);
+            out.close();
+            out = null;
+            entryFile.delete();
+            written = tmpFile.renameTo(entryFile);
+        } catch (IOException e) {
+            log.debug(String.format("Cannot write the PRX decryption cache entry '%s': %s", entryFile, e));
+        } finally {
+            Utilities.close(out);
+            if (!written) {
+                tmpFile.delete();
+            }
+        }
+
+        if (written) {
+            evict();
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(cacheDirectory, key + ENTRY_FILE_EXTENSION);
+    }
+
+    private File[] listEntries() {
+        File[] entries = cacheDirectory.listFiles(new EntryFileFilter());
+        return entries == null ? new File[0] : entries;
+    }
+
+    private byte[] read(File entryFile) {
+        long length = entryFile.length();
+        if (length < ENTRY_HEADER_SIZE) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+            if (in.readInt() != ENTRY_MAGIC || in.readInt() != ENTRY_VERSION) {
+                return null;
+            }
+            int size = in.readInt();
+            if (size < 0 || ENTRY_HEADER_SIZE + (long) size != length) {
+                return null;
+            }
+            byte[] hash = new byte[20];
+            in.readFully(hash);
+            byte[] decrypted = new byte[size];
+            in.readFully(decrypted);
+            if (!Arrays.equals(hash, getHash(decrypted))) {
+                log.warn(String.format("Corrupted PRX decryption cache entry '%s'", entryFile));
+                return null;
+            }
+
+            return decrypted;
+        } catch (IOException e) {
+            log.debug(String.format("Cannot read the PRX decryption cache entry '%s': %s", entryFile, e));
+            return null;
+        } finally {
+            Utilities.close(in);
+        }
+    }
+
+    /**
+     * Delete the least recently used entries when the cache size limit is exceeded.
+     */
+    private void evict() {
+        File[] entries = listEntries();
+        long size = 0L;
+        for (File entry : entries) {
+            size += entry.length();
+        }
+
+        if (size > maxSize) {
+            Arrays.sort(entries, new LastModifiedComparator());
+            for (int i = 0; i < entries.length && size > maxSize; i++) {
+                long entrySize = entries[i].length();
+                if (entries[i].delete()) {
+                    size -= entrySize;
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("PrxDecryptionCache evicted '%s'", entries[i].getName()));
+                    }
+                }
+            }
+        }
+    }
+
+    private void loadStatistics() {
+        File statisticsFile = new File(cacheDirectory, STATISTICS_FILE_NAME);
+        if (!statisticsFile.canRead()) {
+            return;
+        }
+
+        Properties statistics = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(statisticsFile);
+            statistics.load(is);
+            previousHits = Long.parseLong(statistics.getProperty("hits", "0"));
+            previousMisses = Long.parseLong(statistics.getProperty("misses", "0"));
+        } catch (IOException e) {
+            // Ignore exception
+        } catch (NumberFormatException e) {
+            // Ignore exception
+        } finally {
+            Utilities.close(is);
+        }
+    }
+
+    private synchronized void saveStatistics() {
+        if (hits == 0 && misses == 0) {
+            return;
+        }
+
+        Properties statistics = new Properties();
+        statistics.setProperty("hits", Long.toString(previousHits + hits));
+        statistics.setProperty("misses", Long.toString(previousMisses + misses));
+
+        cacheDirectory.mkdirs();
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(new File(cacheDirectory, STATISTICS_FILE_NAME));
+            statistics.store(os, "PRX decryption cache statistics");
+        } catch (IOException e) {
+            // Ignore exception
+        } finally {
+            Utilities.close(os);
+        }
+
+        previousHits += hits;
+        previousMisses += misses;
+        hits = 0;
+        misses = 0;
+    }
+
+    private static byte[] getHash(byte[] buffer) {
+        return new SHA1().doSHA1(buffer, buffer.length);
+    }
+
+    private static String toHexString(byte[] bytes) {
+        StringBuilder s = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            s.append(String.format("%02x", b & 0xFF));
+        }
+
+        return s.toString();
+    }
+}
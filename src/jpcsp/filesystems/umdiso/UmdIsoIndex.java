@@ -0,0 +1,230 @@
+/*
+ This file is part of jpcsp.
+
+ Jpcsp is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Jpcsp is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.filesystems.umdiso;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import jpcsp.Emulator;
+import jpcsp.filesystems.umdiso.iso9660.Iso9660Directory;
+import jpcsp.filesystems.umdiso.iso9660.Iso9660File;
+import jpcsp.filesystems.umdiso.iso9660.Iso9660Handler;
+import jpcsp.settings.Settings;
+import jpcsp.util.Utilities;
+
+/**
+ * Index of all the file and directory entries of an ISO9660 image.
+ *
+ * The directory tree is walked only once per image, then each path is resolved
+ * with a single hash lookup. The path keys are case-insensitive, like the
+ * directory scan done by Iso9660Directory.getFileIndex().
+ * When the image has a Joliet extension, the names from the primary volume
+ * descriptor are also indexed, as long as they do not conflict with a Joliet name.
+ * The "." and "\01" entries of each directory are indexed as well, as they are
+ * returned by Iso9660Directory.getFileList() and looked up by the callers.
+ *
+ * The index of an image file is persisted in the tmp directory and is reused
+ * as long as the image size and last modification time are unchanged.
+ */
+public class UmdIsoIndex {
+	private static final int INDEX_FILE_MAGIC = 0x58444955; // "UIDX"
+	private static final int INDEX_FILE_VERSION = 2;
+	private static final String INDEX_DIRECTORY = "umdindex";
+	private final Map<String, Iso9660File> entries = new HashMap<String, Iso9660File>();
+	// Sectors of the directories already indexed, to protect against corrupted directory trees
+	private final Set<Integer> indexedDirectories = new HashSet<Integer>();
+
+	private UmdIsoIndex() {
+	}
+
+	/**
+	 * Build the index of the image, either from its sidecar cache file
+	 * or by walking the directory tree.
+	 *
+	 * @param reader        the reader of the image
+	 * @param umdFilename   the image file name, or null if the image is not backed by a file
+	 * @return              the index
+	 * @throws IOException  the directory tree could not be read
+	 */
+	public static UmdIsoIndex build(UmdIsoReader reader, String umdFilename) throws IOException {
+		UmdIsoIndex index = new UmdIsoIndex();
+
+		File imageFile = umdFilename == null ? null : new File(umdFilename);
+		File indexFile = imageFile == null ? null : getIndexFile(imageFile);
+		if (indexFile != null && index.load(indexFile, imageFile)) {
+			if (Emulator.log.isDebugEnabled()) {
+				Emulator.log.debug(String.format("Loaded UMD index of '%s' from '%s' (%d entries)", umdFilename, indexFile, index.entries.size()));
+			}
+			return index;
+		}
+
+		long start = System.currentTimeMillis();
+		index.addDirectory("", new Iso9660Handler(reader, reader.hasJolietExtension()), reader, reader.hasJolietExtension());
+		if (reader.hasJolietExtension()) {
+			index.indexedDirectories.clear();
+			index.addDirectory("", new Iso9660Handler(reader, false), reader, false);
+		}
+		index.indexedDirectories.clear();
+		long end = System.currentTimeMillis();
+
+		if (Emulator.log.isDebugEnabled()) {
+			Emulator.log.debug(String.format("Built UMD index of '%s' in %d ms (%d entries)", umdFilename, end - start, index.entries.size()));
+		}
+
+		if (indexFile != null) {
+			index.save(indexFile, imageFile);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Return the key used to index a path.
+	 *
+	 * @param path   the canonical path, without "." and ".." components
+	 * @return       the index key
+	 */
+	public static String getKey(String path) {
+		return path.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Retrieve the entry matching a canonical path.
+	 *
+	 * @param path   the canonical path, without "." and ".." components
+	 * @return       the entry, or null if no such file or directory exists
+	 */
+	public Iso9660File getEntry(String path) {
+		return entries.get(getKey(path));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static boolean isSpecialEntry(String fileName) {
+		// "." is the directory itself, "\01" is its parent directory
+		return fileName.length() == 0 || fileName.equals(".") || fileName.equals("\01");
+	}
+
+	private void addDirectory(String path, Iso9660Directory dir, UmdIsoReader reader, boolean jolietExtension) throws IOException {
+		int numberOfEntries = dir.getNumberOfEntries();
+		for (int i = 0; i < numberOfEntries; i++) {
+			Iso9660File file = dir.getEntryByIndex(i);
+			String fileName = file.getFileName();
+			String filePath = path.length() == 0 ? fileName : path + "/" + fileName;
+			String key = getKey(filePath);
+			// Keep the first entry when names are conflicting,
+			// as returned by Iso9660Directory.getFileIndex()
+			if (entries.containsKey(key)) {
+				continue;
+			}
+			entries.put(key, file);
+
+			// Do not recurse into the directory itself or into its parent
+			if (!isSpecialEntry(fileName) && reader.isDirectory(file) && file.getSize() > 0 && indexedDirectories.add(file.getLBA())) {
+				addDirectory(filePath, new Iso9660Directory(reader, file.getLBA(), file.getSize(), jolietExtension), reader, jolietExtension);
+			}
+		}
+	}
+
+	private static File getIndexFile(File imageFile) {
+		String name = imageFile.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+		String path = imageFile.getAbsolutePath();
+		return new File(Settings.getInstance().getTmpDirectory() + INDEX_DIRECTORY, String.format("%s-%08X.idx", name, path.hashCode()));
+	}
+
+	private boolean load(File indexFile, File imageFile) {
+		if (!indexFile.canRead()) {
+			return false;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_FILE_MAGIC || in.readInt() != INDEX_FILE_VERSION) {
+				return false;
+			}
+			if (!imageFile.getAbsolutePath().equals(in.readUTF()) || imageFile.length() != in.readLong() || imageFile.lastModified() != in.readLong()) {
+				// The image has been changed since the index was saved
+				return false;
+			}
+
+			int numberOfEntries = in.readInt();
+			for (int i = 0; i < numberOfEntries; i++) {
+				String key = in.readUTF();
+				int lba = in.readInt();
+				long size = in.readLong();
+				int properties = in.readByte();
+				String fileName = in.readUTF();
+				Date timestamp = new Date(in.readLong());
+				entries.put(key, new Iso9660File(lba, size, properties, fileName, timestamp));
+			}
+		} catch (IOException e) {
+			Emulator.log.debug(String.format("Cannot read the UMD index '%s': %s", indexFile, e));
+			entries.clear();
+			return false;
+		} finally {
+			Utilities.close(in);
+		}
+
+		return true;
+	}
+
+	private void save(File indexFile, File imageFile) {
+		indexFile.getParentFile().mkdirs();
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			out.writeInt(INDEX_FILE_MAGIC);
+			out.writeInt(INDEX_FILE_VERSION);
+			out.writeUTF(imageFile.getAbsolutePath());
+			out.writeLong(imageFile.length());
+			out.writeLong(imageFile.lastModified());
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Iso9660File> entry : entries.entrySet()) {
+				Iso9660File file = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeInt(file.getLBA());
+				out.writeLong(file.getSize());
+				out.writeByte(file.getProperties());
+				out.writeUTF(file.getFileName());
+				out.writeLong(file.getTimestamp() == null ? 0L : file.getTimestamp().getTime());
+			}
+		} catch (IOException e) {
+			Emulator.log.debug(String.format("Cannot save the UMD index '%s': %s", indexFile, e));
+			Utilities.close(out);
+			out = null;
+			indexFile.delete();
+		} finally {
+			Utilities.close(out);
+		}
+	}
+}
@@ -50,6 +50,9 @@ public class UmdIsoReader implements IBrowser {
     private static boolean doIsoBuffering = false;
     private boolean hasJolietExtension;
     private boolean isPBP;
+    private String umdFilename;
+    private UmdIsoIndex index;
+    private boolean indexUnavailable;
 
     public UmdIsoReader(String umdFilename) throws IOException, FileNotFoundException {
     	init(umdFilename, doIsoBuffering);
@@ -60,6 +63,7 @@ public class UmdIsoReader implements IBrowser {
     }
 
     private void init(String umdFilename, boolean doIsoBuffering) throws IOException, FileNotFoundException {
+    	this.umdFilename = umdFilename;
     	isPBP = false;
     	if (umdFilename == null && doIsoBuffering) {
     		sectorDevice = null;
@@ -143,6 +147,22 @@ public class UmdIsoReader implements IBrowser {
         return true;
     }
 
+    /**
+     * Enable or disable the path index of the image.
+     * Without index, the paths are resolved by reading only the directories
+     * along the path, which is cheaper when accessing only a few files
+     * (e.g. when reading the PARAM.SFO and ICON0.PNG from the UmdBrowser).
+     *
+     * @param useIndex   true to use the path index (default)
+     *                   false to walk the directories on each lookup
+     */
+    public void setUseIndex(boolean useIndex) {
+    	indexUnavailable = !useIndex;
+    	if (!useIndex) {
+    		index = null;
+    	}
+    }
+
     public boolean hasJolietExtension() {
     	return hasJolietExtension;
     }
@@ -242,8 +262,9 @@ public class UmdIsoReader implements IBrowser {
             return info;
         }
 
+        UmdIsoIndex isoIndex = getIndex();
         int parentDirectoryIndex = filePath.lastIndexOf('/');
-        if (parentDirectoryIndex >= 0) {
+        if (parentDirectoryIndex >= 0 && isoIndex == null) {
             String parentDirectory = filePath.substring(0, parentDirectoryIndex);
             Iso9660Directory dir = dirCache.get(parentDirectory);
             if (dir != null) {
@@ -256,8 +277,6 @@ public class UmdIsoReader implements IBrowser {
             }
         }
 
-        Iso9660Directory dir = new Iso9660Handler(this);
-
         String[] path = filePath.split("[\\/]");
 
         // First convert the path to a canonical path by removing all the
@@ -276,7 +295,31 @@ public class UmdIsoReader implements IBrowser {
             }
         }
 
+        if (isoIndex != null) {
+        	if (pathLength == 0) {
+        		// The root directory has no entry, as for the directory walk
+        		return null;
+        	}
+
+        	StringBuilder canonicalPath = new StringBuilder();
+        	for (int i = 0; i < pathLength; i++) {
+        		if (i > 0) {
+        			canonicalPath.append('/');
+        		}
+        		canonicalPath.append(path[i]);
+        	}
+
+        	info = isoIndex.getEntry(canonicalPath.toString());
+        	if (info == null) {
+        		throw new FileNotFoundException(String.format("File '%s' not found in directory.", filePath));
+        	}
+        	fileCache.put(filePath, info);
+
+        	return info;
+        }
+
         // walk through the canonical path
+        Iso9660Directory dir = new Iso9660Handler(this);
         for (int i = 0; i < pathLength;) {
             int index = dir.getFileIndex(path[i]);
 
@@ -300,6 +343,31 @@ public class UmdIsoReader implements IBrowser {
         return info;
     }
 
+    /**
+     * Return the path index of the ISO image, building it on the first call.
+     *
+     * @return the index, or null if the image cannot be indexed
+     */
+    private UmdIsoIndex getIndex() {
+    	if (index == null && !indexUnavailable) {
+    		if (browser != null || numSectors <= 0) {
+    			indexUnavailable = true;
+    		} else {
+	    		try {
+	    			index = UmdIsoIndex.build(this, umdFilename);
+	    		} catch (IOException e) {
+	    			Emulator.log.warn(String.format("Cannot index the UMD '%s': %s", umdFilename, e));
+	    			indexUnavailable = true;
+	    		} catch (RuntimeException e) {
+	    			Emulator.log.warn(String.format("Cannot index the UMD '%s': %s", umdFilename, e));
+	    			indexUnavailable = true;
+	    		}
+    		}
+    	}
+
+    	return index;
+    }
+
     public UmdIsoFile getFile(String filePath) throws IOException, FileNotFoundException {
     	if (numSectors == 0) {
     		throw new FileNotFoundException(filePath);
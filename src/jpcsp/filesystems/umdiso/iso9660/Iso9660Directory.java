@@ -32,6 +32,10 @@ public class Iso9660Directory {
     private final List<Iso9660File> files;
 
     public Iso9660Directory(UmdIsoReader r, int directorySector, long directorySize) throws IOException {
+    	this(r, directorySector, directorySize, r.hasJolietExtension());
+    }
+
+    public Iso9660Directory(UmdIsoReader r, int directorySector, long directorySize, boolean jolietExtension) throws IOException {
         // parse directory sector
         UmdIsoFile dataStream = new UmdIsoFile(r, directorySector, directorySize, null, null);
 
@@ -50,7 +54,7 @@ public class Iso9660Directory {
 
             directorySize -= entryLength;
             int readLength = dataStream.read(b, 0, entryLength - 1);
-            Iso9660File file = new Iso9660File(b, readLength, r.hasJolietExtension());
+            Iso9660File file = new Iso9660File(b, readLength, jolietExtension);
 
             files.add(file);
         }
@@ -74,6 +78,10 @@ public class Iso9660Directory {
         throw new FileNotFoundException(String.format("File '%s' not found in directory.", fileName));
     }
 
+    public int getNumberOfEntries() {
+    	return files.size();
+    }
+
     public String[] getFileList() throws FileNotFoundException {
         String[] list = new String[files.size()];
         int i = 0;
@@ -122,6 +122,14 @@ public class Iso9660File {
         }
     }
 
+    public Iso9660File(int fileLBA, long fileSize, int fileProperties, String fileName, Date timestamp) {
+        this.fileLBA = fileLBA;
+        this.fileSize = fileSize;
+        this.fileProperties = fileProperties;
+        this.fileName = fileName;
+        this.timestamp = timestamp;
+    }
+
     public int getLBA()
     {
         return fileLBA;
@@ -32,10 +32,15 @@ public class Iso9660Handler extends Iso9660Directory {
 
     public Iso9660Handler(UmdIsoReader r) throws IOException
     {
-        super(r, 0, 0);
+    	this(r, r.hasJolietExtension());
+    }
+
+    public Iso9660Handler(UmdIsoReader r, boolean jolietExtension) throws IOException
+    {
+        super(r, 0, 0, jolietExtension);
 
         byte[] sector;
-        if (r.hasJolietExtension()) {
+        if (jolietExtension) {
         	sector = r.readSector(UmdIsoReader.startSectorJoliet);
         } else {
         	sector = r.readSector(UmdIsoReader.startSector);
@@ -47,12 +52,18 @@ public class Iso9660Handler extends Iso9660Directory {
         byte[] b = new byte[38];
 
         byteStream.read(b);
-        Iso9660File rootDirEntry = new Iso9660File(b, b.length, r.hasJolietExtension());
+        Iso9660File rootDirEntry = new Iso9660File(b, b.length, jolietExtension);
 
         int rootLBA = rootDirEntry.getLBA();
         long rootSize = rootDirEntry.getSize();
 
-        internalDir = new Iso9660Directory(r, rootLBA, rootSize);
+        internalDir = new Iso9660Directory(r, rootLBA, rootSize, jolietExtension);
+    }
+
+    @Override
+    public int getNumberOfEntries()
+    {
+        return internalDir.getNumberOfEntries();
     }
 
     @Override
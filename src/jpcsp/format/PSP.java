@@ -27,6 +27,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 import jpcsp.crypto.CryptoEngine;
+import jpcsp.crypto.PrxDecryptionCache;
 import jpcsp.settings.Settings;
 
 /**
@@ -169,10 +170,29 @@ public class PSP {
         }
 
         int inSize = inBuf.length;
-        byte[] elfBuffer = crypto.getPRXEngine().DecryptAndUncompressPRX(inBuf, inSize, isSignChecked, key);
+
+        // Reuse the image decrypted by a previous load, if available
+        PrxDecryptionCache cache = null;
+        String cacheKey = null;
+        byte[] elfBuffer = null;
+        if (PrxDecryptionCache.isEnabled()) {
+        	cacheKey = PrxDecryptionCache.getKey(inBuf, inSize, isSignChecked, key);
+        	if (cacheKey != null) {
+        		cache = PrxDecryptionCache.getInstance();
+        		elfBuffer = cache.get(cacheKey);
+        	}
+        }
 
         if (elfBuffer == null) {
-        	return null;
+        	elfBuffer = crypto.getPRXEngine().DecryptAndUncompressPRX(inBuf, inSize, isSignChecked, key);
+
+        	if (elfBuffer == null) {
+        		return null;
+        	}
+
+        	if (cache != null) {
+        		cache.put(cacheKey, elfBuffer);
+        	}
         }
 
         if (CryptoEngine.getExtractEbootStatus()) {
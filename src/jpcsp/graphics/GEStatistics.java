@@ -0,0 +1,401 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.remote.HTTPServer;
+import jpcsp.remote.IProcessHTTPRequest;
+import jpcsp.settings.AbstractBoolSettingsListener;
+import jpcsp.settings.Settings;
+
+/**
+ * Per-frame statistics of the Graphics Engine, switchable at runtime
+ * with the "emu.geStatistics" setting.
+ *
+ * The following information is collected for each frame:
+ * - the number of executed commands, per command,
+ * - the number of redundant pure state commands which have been skipped,
+ * - the commands having invalidated the current texture,
+ * - the texture and vertex cache misses, by reason,
+ * - the number of vertices per PRIM command,
+ * - the number of texture and CLUT reloads.
+ *
+ * The statistics of the last completed frame and the averages over all the
+ * frames are available as a live view on the remote HTTP server at
+ * "/gestatistics".
+ *
+ * The counters of the current frame are only updated by the GE thread,
+ * without synchronization. The emulator thread is only counting the ended
+ * frames in a volatile field: the GE thread is moving the counters of the
+ * ended frame to the totals when executing its next command, under the lock
+ * also taken when reading the totals.
+ */
+public class GEStatistics {
+	public static Logger log = Logger.getLogger("profiler");
+	public static final String httpPath = "/gestatistics";
+	private static final int NUMBER_COMMANDS = 256;
+	private static final int NUMBER_PRIM_SIZES = 18;
+	private static volatile boolean enabled = false;
+	private static StatisticsEnabledSettingsListerner statisticsEnabledSettingsListerner;
+	private static boolean httpRegistered;
+	private static final Counters currentFrame = new Counters();
+	private static final Counters lastFrame = new Counters();
+	private static final Counters allFrames = new Counters();
+	private static long numberFrames;
+	// Number of frames ended by the emulator thread
+	private static volatile int endedFrames;
+	// Number of ended frames moved to the totals, only accessed by the GE thread
+	private static int processedEndedFrames;
+
+	private static class StatisticsEnabledSettingsListerner extends AbstractBoolSettingsListener {
+		@Override
+		protected void settingsValueChanged(boolean value) {
+			setEnabled(value);
+		}
+	}
+
+	private static class Counters {
+		private final long[] commands = new long[NUMBER_COMMANDS];
+		private final long[] redundantCommands = new long[NUMBER_COMMANDS];
+		private final long[] textureInvalidations = new long[NUMBER_COMMANDS];
+		private final long[] primSizes = new long[NUMBER_PRIM_SIZES];
+		private long primVertices;
+		private long textureCacheHits;
+		private long textureCacheNotPresent;
+		private long textureCacheChanged;
+		private long vertexCacheHits;
+		private long vertexCacheNotPresent;
+		private long vertexCacheChanged;
+		private long textureReloads;
+		private long clutReloads;
+
+		public void clear() {
+			for (int i = 0; i < NUMBER_COMMANDS; i++) {
+				commands[i] = 0L;
+				redundantCommands[i] = 0L;
+				textureInvalidations[i] = 0L;
+			}
+			for (int i = 0; i < NUMBER_PRIM_SIZES; i++) {
+				primSizes[i] = 0L;
+			}
+			primVertices = 0L;
+			textureCacheHits = 0L;
+			textureCacheNotPresent = 0L;
+			textureCacheChanged = 0L;
+			vertexCacheHits = 0L;
+			vertexCacheNotPresent = 0L;
+			vertexCacheChanged = 0L;
+			textureReloads = 0L;
+			clutReloads = 0L;
+		}
+
+		public void set(Counters counters) {
+			clear();
+			add(counters);
+		}
+
+		public void add(Counters counters) {
+			for (int i = 0; i < NUMBER_COMMANDS; i++) {
+				commands[i] += counters.commands[i];
+				redundantCommands[i] += counters.redundantCommands[i];
+				textureInvalidations[i] += counters.textureInvalidations[i];
+			}
+			for (int i = 0; i < NUMBER_PRIM_SIZES; i++) {
+				primSizes[i] += counters.primSizes[i];
+			}
+			primVertices += counters.primVertices;
+			textureCacheHits += counters.textureCacheHits;
+			textureCacheNotPresent += counters.textureCacheNotPresent;
+			textureCacheChanged += counters.textureCacheChanged;
+			vertexCacheHits += counters.vertexCacheHits;
+			vertexCacheNotPresent += counters.vertexCacheNotPresent;
+			vertexCacheChanged += counters.vertexCacheChanged;
+			textureReloads += counters.textureReloads;
+			clutReloads += counters.clutReloads;
+		}
+
+		public long getTotalCommands() {
+			long total = 0L;
+			for (int i = 0; i < NUMBER_COMMANDS; i++) {
+				total += commands[i];
+			}
+			return total;
+		}
+
+		public long getTotalRedundantCommands() {
+			long total = 0L;
+			for (int i = 0; i < NUMBER_COMMANDS; i++) {
+				total += redundantCommands[i];
+			}
+			return total;
+		}
+
+		public long getTotalPrims() {
+			long total = 0L;
+			for (int i = 0; i < NUMBER_PRIM_SIZES; i++) {
+				total += primSizes[i];
+			}
+			return total;
+		}
+	}
+
+	private static class HTTPRequestProcessor implements IProcessHTTPRequest {
+		@Override
+		public boolean processRequest(HTTPServer server, OutputStream os, String path, HashMap<String, String> request) throws IOException {
+			if (!httpPath.equals(path)) {
+				return false;
+			}
+
+			server.sendResponse(os, getHTML());
+			return true;
+		}
+	}
+
+	public static void initialise() {
+		if (statisticsEnabledSettingsListerner == null) {
+			statisticsEnabledSettingsListerner = new StatisticsEnabledSettingsListerner();
+			Settings.getInstance().registerSettingsListener("GEStatistics", "emu.geStatistics", statisticsEnabledSettingsListerner);
+		}
+
+		reset();
+	}
+
+	private static void setEnabled(boolean enabled) {
+		if (enabled && !httpRegistered) {
+			HTTPServer.getInstance().register(httpPath, new HTTPRequestProcessor());
+			httpRegistered = true;
+		}
+
+		GEStatistics.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	// Only called when the emulator is reset, while the GE is not executing any list
+	public static synchronized void reset() {
+		currentFrame.clear();
+		lastFrame.clear();
+		allFrames.clear();
+		numberFrames = 0L;
+	}
+
+	public static void exit() {
+		if (!enabled || numberFrames == 0L) {
+			return;
+		}
+
+		log.info("------------------ GEStatistics --------------------");
+		log.info(getText(false));
+	}
+
+	/**
+	 * Called by the emulator thread when the application is switching
+	 * to a new frame buffer.
+	 * The counters of the ended frame are moved to the totals by the GE thread.
+	 */
+	public static void endFrame() {
+		if (!enabled) {
+			return;
+		}
+
+		// Only incremented by the emulator thread
+		endedFrames++;
+	}
+
+	private static synchronized void moveToTotals(int frames) {
+		lastFrame.set(currentFrame);
+		allFrames.add(currentFrame);
+		currentFrame.clear();
+		numberFrames += frames;
+	}
+
+	public static void command(int command, boolean textureInvalidated) {
+		int frames = endedFrames - processedEndedFrames;
+		if (frames != 0) {
+			processedEndedFrames += frames;
+			moveToTotals(frames);
+		}
+
+		currentFrame.commands[command]++;
+		if (textureInvalidated) {
+			currentFrame.textureInvalidations[command]++;
+		}
+	}
+
+	public static void redundantCommand(int command) {
+		currentFrame.redundantCommands[command]++;
+	}
+
+	public static void prim(int numberOfVertex) {
+		// Histogram by power of 2: 1, 2-3, 4-7, 8-15...
+		int index = Math.min(32 - Integer.numberOfLeadingZeros(numberOfVertex), NUMBER_PRIM_SIZES - 1);
+		currentFrame.primSizes[index]++;
+		currentFrame.primVertices += numberOfVertex;
+	}
+
+	public static void textureCacheHit() {
+		currentFrame.textureCacheHits++;
+	}
+
+	public static void textureCacheNotPresent() {
+		currentFrame.textureCacheNotPresent++;
+	}
+
+	public static void textureCacheChanged() {
+		currentFrame.textureCacheChanged++;
+	}
+
+	public static void vertexCacheHit() {
+		currentFrame.vertexCacheHits++;
+	}
+
+	public static void vertexCacheNotPresent() {
+		currentFrame.vertexCacheNotPresent++;
+	}
+
+	public static void vertexCacheChanged() {
+		currentFrame.vertexCacheChanged++;
+	}
+
+	public static void textureReload() {
+		currentFrame.textureReloads++;
+	}
+
+	public static void clutReload() {
+		currentFrame.clutReloads++;
+	}
+
+	private static List<Integer> getSortedCommands(final long[] counts) {
+		List<Integer> sortedCommands = new ArrayList<Integer>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0L) {
+				sortedCommands.add(i);
+			}
+		}
+
+		// Highest count first
+		Collections.sort(sortedCommands, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer command1, Integer command2) {
+				return Long.compare(counts[command2.intValue()], counts[command1.intValue()]);
+			}
+		});
+
+		return sortedCommands;
+	}
+
+	private static void appendCounter(StringBuilder s, boolean html, String name, long lastFrameCount, long allFramesCount) {
+		double average = allFramesCount / (double) numberFrames;
+		if (html) {
+			s.append(String.format("<tr><td>%s</td><td align=\"right\">%d</td><td align=\"right\">%.1f</td></tr>\n", name, lastFrameCount, average));
+		} else {
+			s.append(String.format("\n    %-32s %10d %12.1f", name, lastFrameCount, average));
+		}
+	}
+
+	private static void appendTitle(StringBuilder s, boolean html, String title) {
+		if (html) {
+			s.append(String.format("<tr><th align=\"left\">%s</th><th>Last frame</th><th>Frame average</th></tr>\n", title));
+		} else {
+			s.append(String.format("\n%-36s %10s %12s", title, "Last frame", "Average"));
+		}
+	}
+
+	private static void appendCommands(StringBuilder s, boolean html, String title, long[] lastFrameCounts, long[] allFramesCounts) {
+		List<Integer> sortedCommands = getSortedCommands(allFramesCounts);
+		if (sortedCommands.isEmpty()) {
+			return;
+		}
+
+		GeCommands geCommands = GeCommands.getInstance();
+		appendTitle(s, html, title);
+		for (Integer command : sortedCommands) {
+			int cmd = command.intValue();
+			appendCounter(s, html, geCommands.getCommandString(cmd), lastFrameCounts[cmd], allFramesCounts[cmd]);
+		}
+	}
+
+	private static synchronized String getText(boolean html) {
+		StringBuilder s = new StringBuilder();
+
+		if (html) {
+			s.append("<html><head><meta http-equiv=\"refresh\" content=\"1\"><title>GE statistics</title></head><body>\n");
+			if (!enabled) {
+				s.append("<p>The GE statistics are disabled (setting emu.geStatistics)</p>\n");
+			}
+			s.append(String.format("<p>%d frames</p>\n<table>\n", numberFrames));
+		} else {
+			s.append(String.format("%d frames", numberFrames));
+		}
+
+		if (numberFrames > 0L) {
+			appendTitle(s, html, "Summary");
+			appendCounter(s, html, "Commands", lastFrame.getTotalCommands(), allFrames.getTotalCommands());
+			appendCounter(s, html, "Redundant commands skipped", lastFrame.getTotalRedundantCommands(), allFrames.getTotalRedundantCommands());
+			appendCounter(s, html, "PRIM vertices", lastFrame.primVertices, allFrames.primVertices);
+			appendCounter(s, html, "Texture reloads", lastFrame.textureReloads, allFrames.textureReloads);
+			appendCounter(s, html, "CLUT reloads", lastFrame.clutReloads, allFrames.clutReloads);
+
+			appendTitle(s, html, "Texture cache");
+			appendCounter(s, html, "Hits", lastFrame.textureCacheHits, allFrames.textureCacheHits);
+			appendCounter(s, html, "Misses: not present", lastFrame.textureCacheNotPresent, allFrames.textureCacheNotPresent);
+			appendCounter(s, html, "Misses: texture changed", lastFrame.textureCacheChanged, allFrames.textureCacheChanged);
+
+			appendTitle(s, html, "Vertex cache");
+			appendCounter(s, html, "Hits", lastFrame.vertexCacheHits, allFrames.vertexCacheHits);
+			appendCounter(s, html, "Misses: not present", lastFrame.vertexCacheNotPresent, allFrames.vertexCacheNotPresent);
+			appendCounter(s, html, "Misses: vertex changed", lastFrame.vertexCacheChanged, allFrames.vertexCacheChanged);
+
+			if (allFrames.getTotalPrims() > 0L) {
+				appendTitle(s, html, "PRIM vertices");
+				for (int i = 1; i < NUMBER_PRIM_SIZES; i++) {
+					if (allFrames.primSizes[i] != 0L) {
+						int from = 1 << (i - 1);
+						int to = i == NUMBER_PRIM_SIZES - 1 ? Integer.MAX_VALUE : (1 << i) - 1;
+						String name = from == to ? String.valueOf(from) : (to == Integer.MAX_VALUE ? String.format("%d+", from) : String.format("%d-%d", from, to));
+						appendCounter(s, html, name, lastFrame.primSizes[i], allFrames.primSizes[i]);
+					}
+				}
+			}
+
+			appendCommands(s, html, "Commands", lastFrame.commands, allFrames.commands);
+			appendCommands(s, html, "Redundant commands skipped", lastFrame.redundantCommands, allFrames.redundantCommands);
+			appendCommands(s, html, "Texture invalidated by", lastFrame.textureInvalidations, allFrames.textureInvalidations);
+		}
+
+		if (html) {
+			s.append("</table>\n</body></html>\n");
+		}
+
+		return s.toString();
+	}
+
+	private static String getHTML() {
+		return getText(true);
+	}
+}
@@ -0,0 +1,308 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import static jpcsp.graphics.GeCommands.BASE;
+import static jpcsp.graphics.GeCommands.BJUMP;
+import static jpcsp.graphics.GeCommands.CALL;
+import static jpcsp.graphics.GeCommands.END;
+import static jpcsp.graphics.GeCommands.IADDR;
+import static jpcsp.graphics.GeCommands.JUMP;
+import static jpcsp.graphics.GeCommands.OFFSET_ADDR;
+import static jpcsp.graphics.GeCommands.ORIGIN_ADDR;
+import static jpcsp.graphics.GeCommands.PRIM;
+import static jpcsp.graphics.GeCommands.RET;
+import static jpcsp.graphics.GeCommands.SIGNAL;
+import static jpcsp.graphics.GeCommands.VADDR;
+import static jpcsp.graphics.GeCommands.VTYPE;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Memory;
+import jpcsp.HLE.kernel.types.PspGeList;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryReader;
+import jpcsp.util.CpuDurationStatistics;
+import jpcsp.util.DurationStatistics;
+
+/**
+ * Prefetch the vertices of the GE lists ahead of the VideoEngine,
+ * on a separate thread.
+ *
+ * Each list is walked from its start up to its stall address as soon as it is
+ * enqueued, and again each time its stall address is moved forward.
+ * The JUMP, CALL and RET commands are followed, using the BASE and OFFSET_ADDR
+ * registers seen in the list. The vertices of the PRIM commands are then
+ * submitted to the AsyncVertexCache, so that they are already checked and
+ * loaded when the PRIM command is executed by the VideoEngine.
+ * Nothing is prefetched when the AsyncVertexCache is not used
+ * (i.e. when "emu.useVertexCache" is disabled).
+ *
+ * The walk is only a prediction: the GE context (e.g. the base registers)
+ * at the time the list is executed is not known in advance, and the walk
+ * stops at the commands whose effect cannot be predicted (BJUMP, SIGNAL).
+ * The VideoEngine is still decoding and executing the list from memory,
+ * a wrong prediction is only costing a useless vertex check.
+ */
+public class GeListVertexPrefetcher {
+	private static Logger log = VideoEngine.log;
+	// Maximum number of commands walked for one list update,
+	// to protect against endless lists without stall address
+	private static final int MAX_COMMANDS = 0x10000;
+	private static final int MAX_STACK = 32;
+	private static GeListVertexPrefetcher instance;
+	private final PrefetchThread prefetchThread;
+
+	// Called from the CPU thread (list enqueue, stall address update)
+	// and from the settings listener
+	public static synchronized GeListVertexPrefetcher getInstance() {
+		if (instance == null) {
+			instance = new GeListVertexPrefetcher();
+		}
+
+		return instance;
+	}
+
+	private GeListVertexPrefetcher() {
+		prefetchThread = new PrefetchThread();
+		prefetchThread.setName("GE List Vertex Prefetch Thread");
+		prefetchThread.setDaemon(true);
+		prefetchThread.start();
+	}
+
+	/**
+	 * Prefetch the vertices of a GE list.
+	 *
+	 * @param list        the list
+	 * @param start       true if the list has just been enqueued,
+	 *                    false if only its stall address has been updated
+	 * @param base        the current value of the BASE register
+	 * @param baseOffset  the current value of the OFFSET_ADDR register
+	 */
+	public void addList(PspGeList list, boolean start, int base, int baseOffset) {
+		prefetchThread.addEntry(new PrefetchEntry(list, start, list.list_addr, list.getStallAddr(), base, baseOffset));
+	}
+
+	public static synchronized void exit() {
+		if (instance != null) {
+			instance.prefetchThread.exit();
+		}
+	}
+
+	private static class PrefetchEntry {
+		public PspGeList list;
+		public boolean start;
+		public int listAddr;
+		public int stallAddr;
+		public int base;
+		public int baseOffset;
+
+		public PrefetchEntry() {
+		}
+
+		public PrefetchEntry(PspGeList list, boolean start, int listAddr, int stallAddr, int base, int baseOffset) {
+			this.list = list;
+			this.start = start;
+			this.listAddr = listAddr;
+			this.stallAddr = stallAddr;
+			this.base = base;
+			this.baseOffset = baseOffset;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("PrefetchEntry(id=%d, start=%b, listAddr=0x%08X, stallAddr=0x%08X)", list.id, start, listAddr, stallAddr);
+		}
+	}
+
+	/**
+	 * The state of the walk through one list,
+	 * kept between two updates of the stall address.
+	 */
+	private static class ListState {
+		public int listAddr;
+		public int pc;
+		public int base;
+		public int baseOffset;
+		public int vtype;
+		public boolean vtypeKnown;
+		public int vertexAddr;
+		public int indexAddr;
+		public final int[] stack = new int[MAX_STACK * 2];
+		public int stackIndex;
+		public boolean ended;
+
+		public ListState(PrefetchEntry entry) {
+			listAddr = entry.listAddr;
+			pc = entry.listAddr;
+			base = entry.base;
+			baseOffset = entry.baseOffset;
+		}
+
+		public int getAddressRelOffset(int argument) {
+			return Memory.normalizeAddress((base | argument) + baseOffset);
+		}
+	}
+
+	private static class PrefetchThread extends Thread {
+		private final BlockingQueue<PrefetchEntry> entries = new LinkedBlockingQueue<PrefetchEntry>();
+		private final Map<PspGeList, ListState> listStates = new HashMap<PspGeList, ListState>();
+		private final VertexInfo vinfo = new VertexInfo();
+		private volatile boolean done = false;
+		public CpuDurationStatistics statistics = new CpuDurationStatistics("GE List Vertex Prefetch Thread");
+
+		public void exit() {
+			done = true;
+			// Add a dummy entry to allow the thread to exit
+			entries.add(new PrefetchEntry());
+			if (DurationStatistics.collectStatistics) {
+				log.info(statistics);
+			}
+		}
+
+		public void addEntry(PrefetchEntry entry) {
+			entries.add(entry);
+		}
+
+		@Override
+		public void run() {
+			while (!done) {
+				try {
+					PrefetchEntry entry = entries.take();
+					if (entry != null && !done) {
+						statistics.start();
+						prefetch(entry);
+						statistics.end();
+					}
+				} catch (InterruptedException e) {
+					// Ignore Exception
+				}
+			}
+		}
+
+		private void prefetch(PrefetchEntry entry) {
+			ListState state = listStates.get(entry.list);
+			if (entry.start || state == null || state.listAddr != entry.listAddr) {
+				state = new ListState(entry);
+				listStates.put(entry.list, state);
+			}
+
+			if (state.ended || state.pc == entry.stallAddr) {
+				return;
+			}
+
+			if (log.isTraceEnabled()) {
+				log.trace(String.format("Prefetching %s from 0x%08X", entry, state.pc));
+			}
+
+			Memory mem = Memory.getInstance();
+			IMemoryReader memoryReader = null;
+			for (int i = 0; i < MAX_COMMANDS && state.pc != entry.stallAddr && !state.ended; i++) {
+				if (memoryReader == null) {
+					if (!Memory.isAddressGood(state.pc)) {
+						state.ended = true;
+						break;
+					}
+					memoryReader = MemoryReader.getMemoryReader(state.pc, 4);
+				}
+
+				int instruction = memoryReader.readNext();
+				int commandAddr = state.pc;
+				state.pc += 4;
+				int argument = instruction & 0x00FFFFFF;
+				switch (VideoEngine.command(instruction)) {
+					case BASE:
+						state.base = (argument << 8) & 0xFF000000;
+						break;
+					case OFFSET_ADDR:
+						state.baseOffset = argument << 8;
+						break;
+					case ORIGIN_ADDR:
+						state.baseOffset = commandAddr;
+						break;
+					case VTYPE:
+						state.vtype = argument;
+						state.vtypeKnown = true;
+						break;
+					case VADDR:
+						state.vertexAddr = state.getAddressRelOffset(argument);
+						break;
+					case IADDR:
+						state.indexAddr = state.getAddressRelOffset(argument);
+						break;
+					case PRIM:
+						prim(mem, state, argument);
+						break;
+					case JUMP:
+						state.pc = state.getAddressRelOffset(argument) & 0xFFFFFFFC;
+						memoryReader = null;
+						break;
+					case CALL:
+						if (state.stackIndex >= state.stack.length) {
+							state.ended = true;
+						} else {
+							state.stack[state.stackIndex++] = state.pc;
+							state.stack[state.stackIndex++] = state.baseOffset;
+							state.pc = state.getAddressRelOffset(argument) & 0xFFFFFFFC;
+							memoryReader = null;
+						}
+						break;
+					case RET:
+						if (state.stackIndex > 0) {
+							state.baseOffset = state.stack[--state.stackIndex];
+							state.pc = state.stack[--state.stackIndex];
+							memoryReader = null;
+						}
+						break;
+					case BJUMP:
+					case SIGNAL:
+					case END:
+						// The next command to be executed cannot be predicted
+						// or the list is ending
+						state.ended = true;
+						break;
+				}
+			}
+		}
+
+		private void prim(Memory mem, ListState state, int argument) {
+			int numberOfVertex = argument & 0xFFFF;
+			int type = (argument >> 16) & 0x7;
+			if (!state.vtypeKnown || numberOfVertex == 0 || !Memory.isAddressGood(state.vertexAddr)) {
+				return;
+			}
+
+			AsyncVertexCache.getInstance().addAsyncCheck(type, state.vtype, numberOfVertex, state.indexAddr, state.vertexAddr);
+
+			// VADDR/IADDR are updated after vertex rendering,
+			// as done by VideoEngine.endRendering()
+			vinfo.processType(state.vtype);
+			if (vinfo.index == 0) {
+				vinfo.ptr_vertex = state.vertexAddr;
+				vinfo.ptr_index = 0;
+				state.vertexAddr = vinfo.getAddress(mem, numberOfVertex);
+			} else {
+				state.indexAddr += numberOfVertex * vinfo.index;
+			}
+		}
+	}
+}
@@ -29,6 +29,17 @@ public class RenderingEngineFactory {
 	private static final boolean enableDebugProxy = false;
 	private static final boolean enableCheckErrorsProxy = false;
 	private static final boolean enableStatisticsProxy = false;
+	private static boolean useNullRenderingEngine = false;
+
+	/**
+	 * Do not render anything, e.g. when running headless
+	 * without the need to dump any frame.
+	 *
+	 * @param useNullRenderingEngine  true to discard all the rendering
+	 */
+	public static void setUseNullRenderingEngine(boolean useNullRenderingEngine) {
+		RenderingEngineFactory.useNullRenderingEngine = useNullRenderingEngine;
+	}
 
 	private static IRenderingEngine createRenderingEngine(boolean forDisplay) {
 		final boolean isUsingSoftwareRenderer = sceDisplayModule.isUsingSoftwareRenderer();
@@ -36,7 +47,10 @@ public class RenderingEngineFactory {
 		// Build the rendering pipeline, from the last entry to the first one.
 		IRenderingEngine re;
 
-		if (isUsingSoftwareRenderer) {
+		if (useNullRenderingEngine && !forDisplay) {
+			// RenderingEngine discarding all the rendering
+			return new NullRenderingEngine();
+		} else if (isUsingSoftwareRenderer) {
 			// RenderingEngine using a complete software implementation, i.e. not using the GPU
 			re = new RESoftware();
 		} else {
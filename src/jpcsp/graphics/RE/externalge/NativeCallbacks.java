@@ -28,6 +28,7 @@ import org.apache.log4j.Logger;
 import jpcsp.Memory;
 import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.HLE.kernel.types.PspGeList;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.Hash;
 import jpcsp.util.Utilities;
@@ -120,6 +121,7 @@ public class NativeCallbacks {
 			IntBuffer destination = IntBuffer.wrap(RuntimeContext.getMemoryInt(), (address & Memory.addressMask) >> 2, length >> 2);
 			source.order(ByteOrder.nativeOrder());
 			destination.put(source.asIntBuffer());
+			MemoryPageTracker.write(address, length);
 		} else {
 			getMemory().copyToMemory(address, source, length);
 		}
@@ -143,6 +145,7 @@ public class NativeCallbacks {
 				destination.position(destinationOffset + offset);
 				destination.put(sourceInt);
 			}
+			MemoryPageTracker.write(address, length);
 		} else {
 			Memory mem = getMemory();
 			for (int y = 0; y < height; y++) {
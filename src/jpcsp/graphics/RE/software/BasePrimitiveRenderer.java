@@ -67,6 +67,11 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	public int fbAddress;
 	public int depthAddress;
     public IRendererWriter rendererWriter;
+	// Temporary values, to avoid allocations for each primitive
+	private final float[] screenCoordinates = new float[4];
+	private final float[] position4 = new float[4];
+	private final float[] projectedCoordinates = new float[4];
+	private final LongLongKey rendererKey = new LongLongKey();
 
 	protected void copy(BasePrimitiveRenderer from) {
 		super.copy(from);
@@ -146,7 +151,6 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	}
 
 	protected void addPosition(float[] p) {
-		float[] screenCoordinates = new float[4];
 		getScreenCoordinates(screenCoordinates, p);
 		prim.pxMax = maxInt(prim.pxMax, screenCoordinates[0]);
 		prim.pxMin = minInt(prim.pxMin, screenCoordinates[0]);
@@ -435,8 +439,9 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 
 		LongLongKey rendererKey = getRendererKey();
     	if (compiledRenderer == null || !rendererKey.equals(compiledRendererKey)) {
-			compiledRendererKey = rendererKey;
-			compiledRenderer = FilterCompiler.getInstance().getCompiledRenderer(this, rendererKey, context);
+    		// The key is kept by the FilterCompiler, do not share the temporary key
+			compiledRendererKey = new LongLongKey(rendererKey);
+			compiledRenderer = FilterCompiler.getInstance().getCompiledRenderer(this, compiledRendererKey, context);
 			if (isLogTraceEnabled) {
 				log.trace(String.format("Rendering using compiled renderer %s", compiledRenderer.getClass().getName()));
 			}
@@ -562,7 +567,6 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	        prim.pzMax = maxInt(prim.p1z, prim.p2z);
 	        prim.pzMin = minInt(prim.p1z, prim.p2z);
 		} else {
-			float[] screenCoordinates = new float[4];
 			getScreenCoordinates(screenCoordinates, pixel.v1x, pixel.v1y, pixel.v1z);
 			prim.p1x = screenCoordinates[0];
 			prim.p1y = screenCoordinates[1];
@@ -614,7 +618,6 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	        prim.pzMax = maxInt(prim.pzMax, prim.p3z);
 	        prim.pzMin = minInt(prim.pzMin, prim.p3z);
         } else {
-			float[] screenCoordinates = new float[4];
 			getScreenCoordinates(screenCoordinates, pixel.v3x, pixel.v3y, pixel.v3z);
 			prim.p3x = screenCoordinates[0];
 			prim.p3y = screenCoordinates[1];
@@ -801,12 +804,10 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	}
 
 	private void getScreenCoordinates(float[] screenCoordinates, float x, float y, float z) {
-		float[] position4 = new float[4];
 		position4[0] = x;
 		position4[1] = y;
 		position4[2] = z;
 		position4[3] = 1.f;
-		float[] projectedCoordinates = new float[4];
 		vectorMult44(projectedCoordinates, pixel.modelViewProjectionMatrix, position4);
 		float w = projectedCoordinates[3];
 		float wInverted = 1.f / w;
@@ -885,8 +886,18 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 		}
 	}
 
+	@Override
+	public void release() {
+		if (freeList != null) {
+			rendererWriter = null;
+		}
+
+		super.release();
+	}
+
 	protected LongLongKey getRendererKey() {
-		LongLongKey key = new LongLongKey(baseRendererKey);
+		LongLongKey key = rendererKey;
+		key.setKey(baseRendererKey);
 
 		key.addKeyComponent(needSourceDepthRead);
 		key.addKeyComponent(needDestinationDepthRead);
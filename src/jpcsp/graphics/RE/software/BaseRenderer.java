@@ -36,7 +36,6 @@ import jpcsp.graphics.GeContext;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.graphics.capture.CaptureManager;
-import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.ImageReader;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.LongLongKey;
@@ -123,6 +122,8 @@ public abstract class BaseRenderer implements IRenderer {
 	public int texMagFilter;
 	public int primaryColor;
 	public int[] ditherMatrix;
+	// Free list where this renderer is returned when released, null if not pooled
+	protected RendererPool.FreeList freeList;
 
 	protected void copy(BaseRenderer from) {
 		imageWriterSkipEOL = from.imageWriterSkipEOL;
@@ -170,6 +171,25 @@ public abstract class BaseRenderer implements IRenderer {
 		ditherMatrix = from.ditherMatrix;
 	}
 
+	@Override
+	public void release() {
+		if (freeList == null) {
+			return;
+		}
+
+		// Do not keep references to the textures and other objects while pooled
+		compiledRenderer = null;
+		compiledRendererKey = null;
+		lighting = null;
+		textureAccess = null;
+		cachedTexture = null;
+		envMapLightPosU = null;
+		envMapLightPosV = null;
+		ditherMatrix = null;
+
+		freeList.release(this);
+	}
+
 	protected BaseRenderer() {
 		isLogTraceEnabled = log.isTraceEnabled();
 		isLogDebugEnabled = log.isDebugEnabled();
@@ -329,8 +349,8 @@ public abstract class BaseRenderer implements IRenderer {
             	int[] clut32 = VideoEngine.getInstance().readClut32(mipmapLevel);
             	short[] clut16 = VideoEngine.getInstance().readClut16(mipmapLevel);
 	        	// Always request the whole buffer width
-	            IMemoryReader imageReader = ImageReader.getImageReader(textureAddress, textureBufferWidth, textureHeight, textureBufferWidth, context.texture_storage, context.texture_swizzle, context.tex_clut_addr, context.tex_clut_mode, context.tex_clut_num_blocks, context.tex_clut_start, context.tex_clut_shift, context.tex_clut_mask, clut32, clut16);
-	            textureAccess = new RandomTextureAccessReader(imageReader, textureBufferWidth, textureHeight);
+	            int[] pixels = ImageReader.readImage(textureAddress, textureBufferWidth, textureHeight, textureBufferWidth, context.texture_storage, context.texture_swizzle, context.tex_clut_addr, context.tex_clut_mode, context.tex_clut_num_blocks, context.tex_clut_start, context.tex_clut_shift, context.tex_clut_mask, clut32, clut16);
+	            textureAccess = new RandomTextureAccessReader(pixels, textureBufferWidth, textureHeight);
         	} else {
         		textureAccess = cachedTexture.getOriginalTexture();
         	}
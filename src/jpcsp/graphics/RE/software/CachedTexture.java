@@ -65,6 +65,17 @@ public abstract class CachedTexture implements IRandomTextureAccess {
 		return cachedTexture;
 	}
 
+	/**
+	 * Create a cached texture from pixels already decoded
+	 * in the format GU_COLOR_8888 (see ImageReader.readImage()).
+	 */
+	public static CachedTexture getDecodedCachedTexture(int width, int height, int pixelFormat, int[] pixels) {
+		CachedTexture cachedTexture = getCachedTexture(width, height, pixelFormat, 0);
+		cachedTexture.buffer = pixels;
+
+		return cachedTexture;
+	}
+
 	public static CachedTexture getCachedTexture(int width, int height, int pixelFormat, int[] buffer, int bufferOffset, int bufferLength) {
 		int offset = 0;
 		// When the texture is directly available from the memory,
@@ -43,4 +43,10 @@ public interface IRenderer {
 	public void render();
 
 	public IRenderer duplicate();
+
+	/**
+	 * Release a renderer returned by duplicate(), after its rendering.
+	 * The renderer can then be reused by a later call to duplicate().
+	 */
+	public void release();
 }
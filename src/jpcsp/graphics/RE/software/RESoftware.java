@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.graphics.RE.software;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.Buffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
@@ -27,7 +29,6 @@ import jpcsp.graphics.VertexState;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.graphics.RE.NullRenderingEngine;
-import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.ImageReader;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.Utilities;
@@ -62,6 +63,14 @@ public class RESoftware extends NullRenderingEngine {
     protected boolean boundingBoxVisible;
     protected BufferVertexReader bufferVertexReader;
     protected boolean useVertexTexture;
+    // Allocation statistics per frame
+    protected long frameStartAllocatedBytes;
+    protected long frameStartAllocatedRenderers;
+    protected long frameStartReusedRenderers;
+    protected long statisticsFrames;
+    protected long statisticsAllocatedBytes;
+    protected long statisticsAllocatedRenderers;
+    protected long statisticsReusedRenderers;
 
     public RESoftware() {
     	log.info("Using SoftwareRenderer");
@@ -76,6 +85,9 @@ public class RESoftware extends NullRenderingEngine {
 			log.info(spriteRenderStatistics);
 			log.info(cachedTextureStatistics);
 			log.info(textureResamplingStatistics);
+			if (statisticsFrames > 0) {
+				log.info(String.format("RESoftware allocations per frame: %,d bytes, %.1f renderers allocated, %.1f renderers reused (%d frames)", statisticsAllocatedBytes / statisticsFrames, statisticsAllocatedRenderers / (double) statisticsFrames, statisticsReusedRenderers / (double) statisticsFrames, statisticsFrames));
+			}
 		}
 	}
 
@@ -83,6 +95,54 @@ public class RESoftware extends NullRenderingEngine {
 	public void startDisplay() {
 		context = VideoEngine.getInstance().getContext();
 		rendererExecutor = RendererExecutor.getInstance();
+
+		if (isCollectingAllocationStatistics()) {
+			frameStartAllocatedBytes = getThreadAllocatedBytes();
+			frameStartAllocatedRenderers = getAllocatedRenderers();
+			frameStartReusedRenderers = getReusedRenderers();
+		}
+	}
+
+	@Override
+	public void endDisplay() {
+		if (isCollectingAllocationStatistics() && frameStartAllocatedBytes >= 0) {
+			long allocatedBytes = getThreadAllocatedBytes() - frameStartAllocatedBytes;
+			long allocatedRenderers = getAllocatedRenderers() - frameStartAllocatedRenderers;
+			long reusedRenderers = getReusedRenderers() - frameStartReusedRenderers;
+			statisticsFrames++;
+			statisticsAllocatedBytes += allocatedBytes;
+			statisticsAllocatedRenderers += allocatedRenderers;
+			statisticsReusedRenderers += reusedRenderers;
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("RESoftware frame allocations: %,d bytes, %d renderers allocated, %d renderers reused", allocatedBytes, allocatedRenderers, reusedRenderers));
+			}
+		}
+	}
+
+	protected boolean isCollectingAllocationStatistics() {
+		return DurationStatistics.collectStatistics || log.isDebugEnabled();
+	}
+
+	/**
+	 * @return the number of bytes allocated by the current thread,
+	 *         or -1 if not supported by the JVM.
+	 */
+	protected static long getThreadAllocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1L;
+	}
+
+	protected static long getAllocatedRenderers() {
+		return TriangleRenderer.pool.getAllocatedCount() + SpriteRenderer.pool.getAllocatedCount();
+	}
+
+	protected static long getReusedRenderers() {
+		return TriangleRenderer.pool.getReusedCount() + SpriteRenderer.pool.getReusedCount();
 	}
 
 	@Override
@@ -398,8 +458,8 @@ public class RESoftware extends NullRenderingEngine {
 			// TODO Cache all the texture levels
 			if (level == 0) {
 				int bufferWidth = context.texture_buffer_width[level];
-				IMemoryReader imageReader = ImageReader.getImageReader(context.texture_base_pointer[level], width, height, bufferWidth, internalFormat, false, 0, 0, 0, 0, 0, 0, null, null);
-				CachedTexture cachedTexture = CachedTexture.getCachedTexture(Math.min(width, bufferWidth), height, internalFormat, imageReader);
+				int[] pixels = ImageReader.readImage(context.texture_base_pointer[level], width, height, bufferWidth, internalFormat, false, 0, 0, 0, 0, 0, 0, null, null);
+				CachedTexture cachedTexture = CachedTexture.getDecodedCachedTexture(Math.min(width, bufferWidth), height, internalFormat, pixels);
 				CachedTextureResampled cachedTextureResampled = new CachedTextureResampled(cachedTexture);
 				cachedTextures.put(bindTexture, cachedTextureResampled);
 			}
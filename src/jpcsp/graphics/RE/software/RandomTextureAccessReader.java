@@ -39,6 +39,12 @@ public class RandomTextureAccessReader implements IRandomTextureAccess {
 		}
 	}
 
+	public RandomTextureAccessReader(int[] pixels, int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+
 	@Override
 	public int readPixel(int u, int v) {
 		return pixels[v * width + u];
@@ -101,6 +101,7 @@ public class RendererExecutor {
 					} catch (Exception e) {
 						VideoEngine.log.error("Error while rendering", e);
 					}
+					renderer.release();
 
 					synchronized (numberThreadsRenderingLock) {
 						numberThreadsRendering--;
@@ -0,0 +1,125 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of renderer instances, used to avoid the allocation of a new renderer
+ * each time a primitive is queued for an asynchronous rendering
+ * (see IRenderer.duplicate()).
+ *
+ * Each thread duplicating renderers has its own free list.
+ * A renderer is always returned to the free list of the thread
+ * which has allocated it: when released by another thread (e.g. by
+ * a RendererExecutor thread after the rendering), it is first queued
+ * in a concurrent queue and only moved back to the free list by the owner thread.
+ */
+public class RendererPool {
+	// Maximum number of free renderers kept per thread
+	private static final int maxFreeRenderers = 4096;
+	private final ThreadLocal<FreeList> freeLists = new ThreadLocal<FreeList>() {
+		@Override
+		protected FreeList initialValue() {
+			return new FreeList();
+		}
+	};
+
+	public static class FreeList {
+		private final Thread owner = Thread.currentThread();
+		private final ArrayDeque<BaseRenderer> freeRenderers = new ArrayDeque<BaseRenderer>();
+		private final ConcurrentLinkedQueue<BaseRenderer> releasedRenderers = new ConcurrentLinkedQueue<BaseRenderer>();
+		private final AtomicInteger releasedRenderersSize = new AtomicInteger();
+		// Statistics, only updated by the owner thread
+		private long allocatedCount;
+		private long reusedCount;
+
+		private BaseRenderer poll() {
+			BaseRenderer renderer = freeRenderers.pollFirst();
+			if (renderer == null) {
+				// Take back the renderers released by other threads
+				while (true) {
+					BaseRenderer releasedRenderer = releasedRenderers.poll();
+					if (releasedRenderer == null) {
+						break;
+					}
+					releasedRenderersSize.decrementAndGet();
+					freeRenderers.addFirst(releasedRenderer);
+				}
+				renderer = freeRenderers.pollFirst();
+			}
+
+			return renderer;
+		}
+
+		public void release(BaseRenderer renderer) {
+			if (Thread.currentThread() == owner) {
+				if (freeRenderers.size() < maxFreeRenderers) {
+					freeRenderers.addFirst(renderer);
+				}
+			} else if (releasedRenderersSize.incrementAndGet() <= maxFreeRenderers) {
+				releasedRenderers.add(renderer);
+			} else {
+				releasedRenderersSize.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Retrieve a free renderer allocated by the current thread.
+	 *
+	 * @return   a renderer previously released, or null if a new renderer
+	 *           has to be created and then added using add().
+	 */
+	public BaseRenderer poll() {
+		FreeList freeList = freeLists.get();
+		BaseRenderer renderer = freeList.poll();
+		if (renderer != null) {
+			freeList.reusedCount++;
+		}
+
+		return renderer;
+	}
+
+	/**
+	 * Attach a newly created renderer to the free list of the current thread,
+	 * so that it will be returned to this pool when it is released.
+	 *
+	 * @param renderer   the new renderer
+	 */
+	public void add(BaseRenderer renderer) {
+		FreeList freeList = freeLists.get();
+		freeList.allocatedCount++;
+		renderer.freeList = freeList;
+	}
+
+	/**
+	 * @return the number of renderers allocated by the current thread
+	 */
+	public long getAllocatedCount() {
+		return freeLists.get().allocatedCount;
+	}
+
+	/**
+	 * @return the number of renderers reused by the current thread
+	 */
+	public long getReusedCount() {
+		return freeLists.get().reusedCount;
+	}
+}
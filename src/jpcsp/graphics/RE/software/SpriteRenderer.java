@@ -24,6 +24,7 @@ import jpcsp.graphics.VertexState;
  *
  */
 public class SpriteRenderer extends BasePrimitiveRenderer {
+	static final RendererPool pool = new RendererPool();
 	protected VertexState v1;
 	protected VertexState v2;
 	protected int sourceDepth;
@@ -71,7 +72,11 @@ public class SpriteRenderer extends BasePrimitiveRenderer {
 
 	@Override
 	public IRenderer duplicate() {
-		SpriteRenderer spriteRenderer = new SpriteRenderer();
+		SpriteRenderer spriteRenderer = (SpriteRenderer) pool.poll();
+		if (spriteRenderer == null) {
+			spriteRenderer = new SpriteRenderer();
+			pool.add(spriteRenderer);
+		}
 		spriteRenderer.copy(this);
 
 		return spriteRenderer;
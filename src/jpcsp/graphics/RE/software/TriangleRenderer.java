@@ -24,6 +24,7 @@ import jpcsp.graphics.VertexState;
  *
  */
 public class TriangleRenderer extends BasePrimitiveRenderer {
+	static final RendererPool pool = new RendererPool();
 	protected boolean initialized;
 	private VertexState v1;
 	private VertexState v2;
@@ -126,7 +127,11 @@ public class TriangleRenderer extends BasePrimitiveRenderer {
 
 	@Override
 	public IRenderer duplicate() {
-		TriangleRenderer triangleRenderer = new TriangleRenderer();
+		TriangleRenderer triangleRenderer = (TriangleRenderer) pool.poll();
+		if (triangleRenderer == null) {
+			triangleRenderer = new TriangleRenderer();
+			pool.add(triangleRenderer);
+		}
 		triangleRenderer.copy(this);
 
 		return triangleRenderer;
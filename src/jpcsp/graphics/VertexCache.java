@@ -107,15 +107,24 @@ public class VertexCache {
 
 		if (vertex == null) {
 			statistics.notPresentHits++;
+			if (GEStatistics.isEnabled()) {
+				GEStatistics.vertexCacheNotPresent();
+			}
 			return vertex;
 		}
 
 		if (vertex.equals(vertexInfo, numberOfVertex, boneMatrix, numberOfWeightsForShader)) {
 			statistics.successfulHits++;
+			if (GEStatistics.isEnabled()) {
+				GEStatistics.vertexCacheHit();
+			}
 			return vertex;
 		}
 
 		statistics.changedHits++;
+		if (GEStatistics.isEnabled()) {
+			GEStatistics.vertexCacheChanged();
+		}
 		return null;
 	}
 
@@ -22,6 +22,7 @@ import java.nio.ByteOrder;
 import jpcsp.Memory;
 import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 
 // Based on soywiz/pspemulator
@@ -86,6 +87,9 @@ public class VertexInfo {
     private int vertexArrayId = -1;
     private int[] cachedVertices;
     private int[] cachedIndices;
+    private int cachedIndicesLength;
+    private int cachedVerticesLength;
+    private long cachedGeneration = MemoryPageTracker.UNKNOWN_GENERATION;
     private int cachedNumberOfVertex;
     private float[] cachedMorphWeights;
     private float[][] cachedBoneMatrix;
@@ -229,6 +233,30 @@ public class VertexInfo {
     public void setDirty() {
         cachedIndices = null;
         cachedVertices = null;
+        cachedGeneration = MemoryPageTracker.UNKNOWN_GENERATION;
+    }
+
+    private long getCachedGeneration() {
+        long generation = 0L;
+        if (cachedIndicesLength > 0) {
+            generation = MemoryPageTracker.getGeneration(ptr_index, cachedIndicesLength);
+        }
+        if (cachedVerticesLength > 0) {
+            generation = MemoryPageTracker.combine(generation, MemoryPageTracker.getGeneration(ptr_vertex, cachedVerticesLength));
+        }
+
+        return generation;
+    }
+
+    private boolean isMemoryUnchanged(VertexInfo vertexInfo) {
+        if (cachedGeneration == MemoryPageTracker.UNKNOWN_GENERATION) {
+            return false;
+        }
+        if (ptr_vertex != vertexInfo.ptr_vertex || ptr_index != vertexInfo.ptr_index) {
+            return false;
+        }
+
+        return getCachedGeneration() == cachedGeneration;
     }
 
     private boolean equals(int[] a, int[] b) {
@@ -259,12 +287,16 @@ public class VertexInfo {
         // Do not compare the vertices and indices of the new vertex if it has already
         // been checked during this display cycle
         if (!vertexCache.vertexAlreadyChecked(vertexInfo)) {
-            vertexInfo.readForCache(numberOfVertex);
-            if (!equals(cachedVertices, vertexInfo.cachedVertices)) {
-                return false;
-            }
-            if (!equals(cachedIndices, vertexInfo.cachedIndices)) {
-                return false;
+            // No need to compare the vertices and indices if their memory has not been written
+            if (!isMemoryUnchanged(vertexInfo)) {
+                vertexInfo.readForCache(numberOfVertex);
+                if (!equals(cachedVertices, vertexInfo.cachedVertices)) {
+                    return false;
+                }
+                if (!equals(cachedIndices, vertexInfo.cachedIndices)) {
+                    return false;
+                }
+                cachedGeneration = vertexInfo.cachedGeneration;
             }
             vertexCache.setVertexAlreadyChecked(vertexInfo);
         } else {
@@ -390,6 +422,9 @@ public class VertexInfo {
             return;
         }
 
+        cachedIndicesLength = 0;
+        cachedVerticesLength = 0;
+        long generation = 0L;
         int vertexArraySize;
         if (ptr_index != 0 && index != 0) {
             IMemoryReader memoryReader = null;
@@ -411,6 +446,9 @@ public class VertexInfo {
             // Remember the largest index
             int maxIndex = -1;
             if (memoryReader != null) {
+                cachedIndicesLength = (index == 3 ? 4 : index) * numberOfVertex;
+                // Retrieve the write generation before reading the memory
+                generation = MemoryPageTracker.getGeneration(ptr_index, cachedIndicesLength);
                 cachedIndices = new int[numberOfVertex];
                 for (int i = 0; i < numberOfVertex; i++) {
                     int index = memoryReader.readNext();
@@ -429,12 +467,16 @@ public class VertexInfo {
 
         if (ptr_vertex != 0) {
             vertexArraySize = (vertexArraySize + 3) & ~3;
+            cachedVerticesLength = vertexArraySize;
+            generation = MemoryPageTracker.combine(generation, MemoryPageTracker.getGeneration(ptr_vertex, cachedVerticesLength));
             cachedVertices = new int[vertexArraySize >> 2];
             IMemoryReader verticesReader = MemoryReader.getMemoryReader(ptr_vertex, vertexArraySize, 4);
             for (int i = 0; i < cachedVertices.length; i++) {
                 cachedVertices[i] = verticesReader.readNext();
             }
         }
+
+        cachedGeneration = generation;
     }
 
     public void prepareForCache(VertexCache vertexCache, int numberOfVertex, float[][] boneMatrix, int numberOfWeightsForBuffer) {
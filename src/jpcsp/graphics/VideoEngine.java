@@ -66,10 +66,15 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Semaphore;
 
 import javax.imageio.ImageIO;
@@ -196,6 +201,7 @@ public class VideoEngine {
     public static final boolean useTextureCache = true;
     private boolean useVertexCache = false;
     private boolean useAsyncVertexCache = true;
+    private boolean useGeListVertexPrefetch;
     public boolean useOptimisticVertexCache = false;
     private boolean useTextureAnisotropicFilter = false;
     private boolean usexBRZFilter = false;
@@ -223,6 +229,7 @@ public class VideoEngine {
     private boolean isLogInfoEnabled;
     private boolean isLogWarnEnabled;
     private boolean isGeProfilerEnabled;
+    private boolean isGeStatisticsEnabled;
     private int primCount;
     private int nopCount;
     private long listCount;
@@ -287,6 +294,14 @@ public class VideoEngine {
     private VertexState v2 = new VertexState();
     private boolean isBoundingBox;
     private boolean skipThisFrame;
+    private boolean skipThisFrameRequested;
+    // Turbo mode: the rendering to a frame buffer is not skipped
+    // when the frame buffer is read back (used as a texture or copied to memory).
+    // These are accessed from both the CPU thread and the GE thread.
+    private volatile boolean turboMode;
+    // The frame buffers rendered, with their maximum size in bytes
+    private final ConcurrentSkipListMap<Integer, Integer> renderedFrameBuffers = new ConcurrentSkipListMap<Integer, Integer>();
+    private final Set<Integer> readBackFrameBuffers = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
     // It is not safe in every application to simply skip the whole list.
     // This could be a compatibility option.
     private boolean skipListWhenSkippingFrame = false;
@@ -412,6 +427,14 @@ public class VideoEngine {
         }
     }
 
+    private class UseGeListVertexPrefetchSettingsListener extends AbstractBoolSettingsListener {
+
+        @Override
+        protected void settingsValueChanged(boolean value) {
+            setUseGeListVertexPrefetch(value);
+        }
+    }
+
     private static void log(String msg) {
         log.debug(msg);
     }
@@ -618,6 +641,7 @@ public class VideoEngine {
         Settings.getInstance().registerSettingsListener(name, "emu.plugins.xbrz", new UsexBRZFilterSettingsListerner());
         Settings.getInstance().registerSettingsListener(name, "emu.disableoptimizedvertexinforeading", new DisableOptimizedVertexInfoReadingListener());
         Settings.getInstance().registerSettingsListener(name, "emu.hideEffects", new HideEffectsSettingsListener());
+        Settings.getInstance().registerSettingsListener(name, "emu.useGeListVertexPrefetch", new UseGeListVertexPrefetchSettingsListener());
 
         setMaxTextureSize(Settings.getInstance().readInt("maxTextureSize", 512));
         setDoubleTexture2DCoords(Settings.getInstance().readBool("doubleTexture2DCoords"));
@@ -832,6 +856,7 @@ public class VideoEngine {
 
         logLevelUpdated();
         isGeProfilerEnabled = GEProfiler.isProfilerEnabled();
+        isGeStatisticsEnabled = GEStatistics.isEnabled();
         memoryForGEUpdated();
         somethingDisplayed = false;
         geBufChanged = true;
@@ -1323,6 +1348,9 @@ public class VideoEngine {
                 clut_buffer16[i] = (short) memoryReader.readNext();
             }
             clutIsDirty = false;
+            if (isGeStatisticsEnabled) {
+                GEStatistics.clutReload();
+            }
         }
 
         if (State.captureGeNextFrame) {
@@ -1344,6 +1372,9 @@ public class VideoEngine {
                 clut_buffer32[i] = memoryReader.readNext();
             }
             clutIsDirty = false;
+            if (isGeStatisticsEnabled) {
+                GEStatistics.clutReload();
+            }
         }
 
         if (State.captureGeNextFrame) {
@@ -1361,62 +1392,8 @@ public class VideoEngine {
     // UnSwizzling based on pspplayer
     private Buffer unswizzleTextureFromMemory(int texaddr, int bytesPerPixel, int level, int textureBufferWidthInPixels) {
         int rowWidth = (bytesPerPixel > 0) ? (textureBufferWidthInPixels * bytesPerPixel) : (textureBufferWidthInPixels / 2);
-        int pitch = rowWidth / 4;
-        int bxc = rowWidth / 16;
-        int byc = Math.max((context.texture_height[level] + 7) / 8, 1);
-
-        int ydest = 0;
-
-        IMemoryReader memoryReader = MemoryReader.getMemoryReader(texaddr, 4);
-        for (int by = 0; by < byc; by++) {
-            if (rowWidth >= 16) {
-                int xdest = ydest;
-                for (int bx = 0; bx < bxc; bx++) {
-                    int dest = xdest;
-                    for (int n = 0; n < 8; n++) {
-                        tmp_texture_buffer32[dest] = memoryReader.readNext();
-                        tmp_texture_buffer32[dest + 1] = memoryReader.readNext();
-                        tmp_texture_buffer32[dest + 2] = memoryReader.readNext();
-                        tmp_texture_buffer32[dest + 3] = memoryReader.readNext();
-
-                        dest += pitch;
-                    }
-                    xdest += 4;
-                }
-                ydest += (rowWidth * 8) / 4;
-            } else if (rowWidth == 8) {
-                for (int n = 0; n < 8; n++, ydest += 2) {
-                    tmp_texture_buffer32[ydest] = memoryReader.readNext();
-                    tmp_texture_buffer32[ydest + 1] = memoryReader.readNext();
-                    memoryReader.skip(2);
-                }
-            } else if (rowWidth == 4) {
-                for (int n = 0; n < 8; n++, ydest++) {
-                    tmp_texture_buffer32[ydest] = memoryReader.readNext();
-                    memoryReader.skip(3);
-                }
-            } else if (rowWidth == 2) {
-                for (int n = 0; n < 4; n++, ydest++) {
-                    int n1 = memoryReader.readNext() & 0xFFFF;
-                    memoryReader.skip(3);
-                    int n2 = memoryReader.readNext() & 0xFFFF;
-                    memoryReader.skip(3);
-                    tmp_texture_buffer32[ydest] = n1 | (n2 << 16);
-                }
-            } else if (rowWidth == 1) {
-                for (int n = 0; n < 2; n++, ydest++) {
-                    int n1 = memoryReader.readNext() & 0xFF;
-                    memoryReader.skip(3);
-                    int n2 = memoryReader.readNext() & 0xFF;
-                    memoryReader.skip(3);
-                    int n3 = memoryReader.readNext() & 0xFF;
-                    memoryReader.skip(3);
-                    int n4 = memoryReader.readNext() & 0xFF;
-                    memoryReader.skip(3);
-                    tmp_texture_buffer32[ydest] = n1 | (n2 << 8) | (n3 << 16) | (n4 << 24);
-                }
-            }
-        }
+
+        ImageReader.unswizzle(texaddr, tmp_texture_buffer32, 0, rowWidth, context.texture_height[level]);
 
         if (State.captureGeNextFrame) {
             log.info("Capture unswizzleTextureFromMemory");
@@ -1444,6 +1421,9 @@ public class VideoEngine {
                 if (isLogDebugEnabled) {
                     log.debug(String.format("%s 0x%06X redundant pure state cmd ignored", helper.getCommandString(command), intArgument(instruction)));
                 }
+                if (isGeStatisticsEnabled) {
+                    GEStatistics.redundantCommand(command);
+                }
                 return;
             }
             currentListCMDValues[command] = instruction;
@@ -1457,6 +1437,7 @@ public class VideoEngine {
         if (DurationStatistics.collectStatistics) {
             commandStatistics[command].start();
         }
+        boolean previousTextureChanged = textureChanged;
         switch (command) {
             case NOP:
                 executeCommandNOP();
@@ -2007,6 +1988,9 @@ public class VideoEngine {
         if (DurationStatistics.collectStatistics) {
             commandStatistics[command].end();
         }
+        if (isGeStatisticsEnabled) {
+            GEStatistics.command(command, textureChanged && !previousTextureChanged);
+        }
     }
 
     private void executeCommandUNKNOWN() {
@@ -2459,6 +2443,9 @@ public class VideoEngine {
         if (isGeProfilerEnabled) {
             GEProfiler.startGeCmd(PRIM);
         }
+        if (isGeStatisticsEnabled) {
+            GEStatistics.prim(numberOfVertex);
+        }
 
         loadTexture();
 
@@ -4746,6 +4733,11 @@ public class VideoEngine {
             log(String.format("%s fbp=0x%08X, fbw=%d", helper.getCommandString(FBP), context.fbp, context.fbw));
         }
         geBufChanged = true;
+
+        if (turboMode) {
+        	addRenderedFrameBuffer();
+        	updateSkipThisFrame();
+        }
     }
 
     private void executeCommandFBW() {
@@ -4754,6 +4746,10 @@ public class VideoEngine {
             log(String.format("%s fbp=0x%08X, fbw=%d", helper.getCommandString(FBW), context.fbp, context.fbw));
         }
         geBufChanged = true;
+
+        if (turboMode) {
+        	addRenderedFrameBuffer();
+        }
     }
 
     private void executeCommandZBP() {
@@ -4777,6 +4773,9 @@ public class VideoEngine {
 
         if (old_texture_base_pointer != context.texture_base_pointer[level]) {
             textureChanged = true;
+            if (turboMode && level == 0) {
+            	checkFrameBufferAsTexture(context.texture_base_pointer[level]);
+            }
         }
 
         if (isLogDebugEnabled) {
@@ -4793,6 +4792,9 @@ public class VideoEngine {
 
         if (old_texture_base_pointer != context.texture_base_pointer[level] || old_texture_buffer_width != context.texture_buffer_width[level]) {
             textureChanged = true;
+            if (turboMode && level == 0) {
+            	checkFrameBufferAsTexture(context.texture_base_pointer[level]);
+            }
         }
 
         if (isLogDebugEnabled) {
@@ -5113,6 +5115,10 @@ public class VideoEngine {
             log(String.format("psm=%d %s (0x%X)", context.psm, getPsmName(context.psm), normalArgument));
         }
         geBufChanged = true;
+
+        if (turboMode) {
+        	addRenderedFrameBuffer();
+        }
     }
 
     private void executeCommandSCISSOR1() {
@@ -6567,6 +6573,9 @@ public class VideoEngine {
             if (isGeProfilerEnabled) {
                 GEProfiler.loadTexture();
             }
+            if (isGeStatisticsEnabled) {
+                GEStatistics.textureReload();
+            }
 
             // If the texture is the current GE
             // first save the GE to memory before loading the texture.
@@ -7830,6 +7839,33 @@ public class VideoEngine {
         return useVertexCache && useAsyncVertexCache;
     }
 
+    private void setUseGeListVertexPrefetch(boolean useGeListVertexPrefetch) {
+        this.useGeListVertexPrefetch = useGeListVertexPrefetch;
+
+        if (useGeListVertexPrefetch) {
+            GeListVertexPrefetcher.getInstance();
+            log.info("Using GE List Vertex Prefetch");
+            if (!useAsyncVertexCache()) {
+                log.warn("The GE List Vertex Prefetch has no effect without the Vertex Cache");
+            }
+        }
+    }
+
+    /**
+     * Called when a list has been enqueued or when its stall address
+     * has been updated, to prefetch the vertices of the list ahead
+     * of its execution.
+     *
+     * @param list    the list
+     * @param start   true if the list has just been enqueued
+     */
+    public void prefetchListVertices(PspGeList list, boolean start) {
+        // The prefetched vertices are checked by the AsyncVertexCache
+        if (useGeListVertexPrefetch && useAsyncVertexCache()) {
+            GeListVertexPrefetcher.getInstance().addList(list, start, context.base, context.baseOffset);
+        }
+    }
+
     public boolean disableOptimizedVertexInfoReading() {
         return disableOptimizedVertexInfoReading;
     }
@@ -7919,13 +7955,97 @@ public class VideoEngine {
     }
 
     public void setSkipThisFrame(boolean skipThisFrame) {
-        this.skipThisFrame = skipThisFrame;
+        skipThisFrameRequested = skipThisFrame;
+        updateSkipThisFrame();
     }
 
     public boolean isSkipThisFrame() {
         return skipThisFrame;
     }
 
+    private void updateSkipThisFrame() {
+    	// Do not skip the rendering to a frame buffer being read back
+    	skipThisFrame = skipThisFrameRequested && !readBackFrameBuffers.contains(getFrameBufferKey(context.fbp));
+    }
+
+    private static int getFrameBufferKey(int address) {
+    	// The frame buffer pointers are relative to the start of the VRAM
+    	return address & (MemoryMap.SIZE_VRAM - 1);
+    }
+
+    private void addRenderedFrameBuffer() {
+    	// The frame buffer height is not known, assume the largest drawing height
+    	int size = context.fbw * maxDrawingHeight * IRenderingEngine.sizeOfTextureType[context.psm];
+    	int key = getFrameBufferKey(context.fbp);
+    	Integer previousSize = renderedFrameBuffers.get(key);
+    	if (previousSize == null || previousSize.intValue() < size) {
+    		renderedFrameBuffers.put(key, size);
+    	}
+    }
+
+    /**
+     * Find the rendered frame buffer containing the given VRAM address.
+     *
+     * @param address   the VRAM address
+     * @return          the key of the frame buffer, or -1 if the address
+     *                  is not inside a rendered frame buffer
+     */
+    private int findRenderedFrameBuffer(int address) {
+    	int key = getFrameBufferKey(address);
+    	Map.Entry<Integer, Integer> entry = renderedFrameBuffers.floorEntry(key);
+    	if (entry == null || key >= entry.getKey().intValue() + entry.getValue().intValue()) {
+    		return -1;
+    	}
+
+    	return entry.getKey().intValue();
+    }
+
+    private void checkFrameBufferAsTexture(int textureAddress) {
+    	if (Memory.isVRAM(textureAddress)) {
+    		// The texture can also start inside a frame buffer
+    		int key = findRenderedFrameBuffer(textureAddress);
+    		if (key >= 0 && readBackFrameBuffers.add(key)) {
+    			if (isLogDebugEnabled) {
+    				log.debug(String.format("Turbo mode: frame buffer 0x%08X used as a texture at 0x%08X, rendering it in all the frames", MemoryMap.START_VRAM + key, textureAddress));
+    			}
+    			updateSkipThisFrame();
+    		}
+    	}
+    }
+
+    /**
+     * Turbo mode: the rendering to the frame buffer containing the given address
+     * will not be skipped in the next frames, as its content is being read back.
+     * Can be called from any thread.
+     *
+     * @param address   an address inside the frame buffer
+     */
+    public void addReadBackFrameBuffer(int address) {
+    	if (turboMode && Memory.isVRAM(address)) {
+    		int key = findRenderedFrameBuffer(address);
+    		if (key < 0) {
+    			key = getFrameBufferKey(address);
+    		}
+    		if (readBackFrameBuffers.add(key)) {
+				if (isLogDebugEnabled) {
+					log.debug(String.format("Turbo mode: frame buffer 0x%08X copied to memory, rendering it in all the frames", MemoryMap.START_VRAM + key));
+				}
+				updateSkipThisFrame();
+    		}
+    	}
+    }
+
+    public void setTurboMode(boolean turboMode) {
+    	this.turboMode = turboMode;
+    	renderedFrameBuffers.clear();
+    	readBackFrameBuffers.clear();
+    	updateSkipThisFrame();
+    }
+
+    public boolean isTurboMode() {
+    	return turboMode;
+    }
+
     public void setHideEffects(boolean hideEffects) {
     	if (this.hideEffects != hideEffects) {
     		if (isLogInfoEnabled) {
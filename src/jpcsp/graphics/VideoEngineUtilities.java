@@ -290,6 +290,9 @@ public class VideoEngineUtilities {
     }
 
     public static void copyGeToMemory(IRenderingEngine re, int geTopAddress, boolean preserveScreen, boolean forceCopyToMemory) {
+    	// The frame buffer is read back, it must not be skipped in turbo mode
+    	VideoEngine.getInstance().addReadBackFrameBuffer(geTopAddress);
+
         if (sceDisplayModule.isUsingSoftwareRenderer()) {
             // GE is already in memory when using the software renderer
             return;
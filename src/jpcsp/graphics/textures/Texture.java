@@ -19,6 +19,7 @@ package jpcsp.graphics.textures;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.util.Hash;
 
 public class Texture {
@@ -46,6 +47,7 @@ public class Texture {
 	private int bufferLengthInBytes;
 	private int lineWidthInBytes;
 	private int hashStrideInBytes;
+	private long dataGeneration = MemoryPageTracker.UNKNOWN_GENERATION;
 
 	public Texture(TextureCache textureCache, int addr, int lineWidth, int width, int height, int pixelStorage, int clutAddr, int clutMode, int clutStart, int clutShift, int clutMask, int clutNumBlocks, int mipmapLevels, boolean mipmapShareClut, short[] values16, int[] values32) {
 		this.textureCache = textureCache;
@@ -105,10 +107,29 @@ public class Texture {
 					hashStrideInBytes = lineWidthInBytes - 4;
 				}
 			}
+			dataGeneration = getDataGeneration();
 			hashCode = hashCode(addr, bufferLengthInBytes, lineWidthInBytes, hashStrideInBytes, clutAddr, clutNumBlocks, mipmapLevels);
 		}
 	}
 
+	/**
+	 * Return the memory write generation of the pixel buffer and of the clut table.
+	 *
+	 * @return the write generation, or MemoryPageTracker.UNKNOWN_GENERATION
+	 *         if the memory writes are not tracked.
+	 */
+	private long getDataGeneration() {
+		long generation = 0L;
+		if (addr != 0) {
+			generation = MemoryPageTracker.getGeneration(addr, bufferLengthInBytes);
+		}
+		if (clutAddr != 0) {
+			generation = MemoryPageTracker.combine(generation, MemoryPageTracker.getGeneration(clutAddr, clutNumBlocks * 32));
+		}
+
+		return generation;
+	}
+
 	/**
 	 * Compute the Texture hashCode value,
 	 * based on the pixel buffer and the clut table.
@@ -171,9 +192,14 @@ public class Texture {
 			if (values32 != null) {
 				return equals(values32);
 			}
-			int hashCode = hashCode(addr, bufferLengthInBytes, lineWidthInBytes, hashStrideInBytes, clutAddr, clutNumBlocks, mipmapLevels);
-			if (hashCode != hashCode()) {
-				return false;
+			// No need to compute the hashCode if the texture memory has not been written
+			long currentDataGeneration = getDataGeneration();
+			if (currentDataGeneration == MemoryPageTracker.UNKNOWN_GENERATION || currentDataGeneration != dataGeneration) {
+				int hashCode = hashCode(addr, bufferLengthInBytes, lineWidthInBytes, hashStrideInBytes, clutAddr, clutNumBlocks, mipmapLevels);
+				if (hashCode != hashCode()) {
+					return false;
+				}
+				dataGeneration = currentDataGeneration;
 			}
 			textureCache.setTextureAlreadyHashed(addr, clutAddr, clutStart, clutMode);
 		}
@@ -27,6 +27,7 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
+import jpcsp.graphics.GEStatistics;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
@@ -119,15 +120,24 @@ public class TextureCache {
 
 		if (texture == null) {
 			statistics.notPresentHits++;
+			if (GEStatistics.isEnabled()) {
+				GEStatistics.textureCacheNotPresent();
+			}
 			return texture;
 		}
 
 		if (texture.equals(addr, lineWidth, width, height, pixelStorage, clutAddr, clutMode, clutStart, clutShift, clutMask, clutNumBlocks, mipmapLevels, mipmapShareClut, values16, values32)) {
 			statistics.successfulHits++;
+			if (GEStatistics.isEnabled()) {
+				GEStatistics.textureCacheHit();
+			}
 			return texture;
 		}
 
 		statistics.changedHits++;
+		if (GEStatistics.isEnabled()) {
+			GEStatistics.textureCacheChanged();
+		}
 		return null;
 	}
 
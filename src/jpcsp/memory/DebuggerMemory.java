@@ -26,7 +26,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -51,13 +50,10 @@ public class DebuggerMemory extends Memory {
     public boolean traceMemoryRead32 = false;
     public boolean traceMemoryWrite32 = false;
     public boolean pauseEmulatorOnMemoryBreakpoint = false;
-    private HashSet<Integer> memoryReadBreakpoint;
-    private HashSet<Integer> memoryWriteBreakpoint;
+    private final MemoryWatchpoints watchpoints;
     private List<MemoryBreakpoint> memoryBreakpoints;
-    private int lowestReadBreakpointAddress;
-    private int highestReadBreakpointAddress;
-    private int lowestWriteBreakpointAddress;
-    private int highestWriteBreakpointAddress;
+    // Whether the compiled code is checking only the watchpoints, see RuntimeContext.updateMemory()
+    private boolean checkingWatchpointsOnly;
     private Memory mem;
     // external breakpoint list
     public static String mBrkFilePath = "Memory.mbrk";
@@ -65,18 +61,13 @@ public class DebuggerMemory extends Memory {
     public DebuggerMemory(Memory mem) {
         this.mem = mem;
 
-        memoryReadBreakpoint = new HashSet<Integer>();
-        memoryWriteBreakpoint = new HashSet<Integer>();
+        watchpoints = new MemoryWatchpoints();
         memoryBreakpoints = new LinkedList<MemoryBreakpoint>();
 
-        lowestReadBreakpointAddress = Integer.MAX_VALUE;
-        highestReadBreakpointAddress = 0;
-        lowestWriteBreakpointAddress = Integer.MAX_VALUE;
-        highestWriteBreakpointAddress = 0;
-
         if (new File(mBrkFilePath).exists()) {
             importBreakpoints(mBrkFilePath);
         }
+        checkingWatchpointsOnly = isCheckingWatchpointsOnly();
     }
 
 	public List<MemoryBreakpoint> getMemoryBreakpoints() {
@@ -251,6 +242,37 @@ public class DebuggerMemory extends Memory {
         }
 
         log.info(String.format("%d memory breakpoint(s) imported", memoryBreakpoints.size()));
+
+        onTraceMemoryChanged();
+    }
+
+    public MemoryWatchpoints getWatchpoints() {
+    	return watchpoints;
+    }
+
+    /**
+     * When no memory access has to be traced, the compiled code can access
+     * the memory directly and is only checking the pages having watchpoints.
+     *
+     * @return true if only the memory accesses to watchpoints have to be checked
+     *         false if all the memory accesses have to go through the DebuggerMemory
+     */
+    public boolean isCheckingWatchpointsOnly() {
+    	return !traceMemoryRead && !traceMemoryWrite && !traceMemoryRead8 && !traceMemoryWrite8 && !traceMemoryRead16 && !traceMemoryWrite16 && !traceMemoryRead32 && !traceMemoryWrite32;
+    }
+
+    /**
+     * To be called after changing one of the traceMemoryXXX flags.
+     */
+    public void onTraceMemoryChanged() {
+    	boolean checkingWatchpointsOnly = isCheckingWatchpointsOnly();
+    	if (checkingWatchpointsOnly != this.checkingWatchpointsOnly) {
+    		this.checkingWatchpointsOnly = checkingWatchpointsOnly;
+    		if (Memory.getInstance() == this) {
+    			// Recompile the code for the new memory checks
+    			RuntimeContext.onDebuggerMemoryChanged();
+    		}
+    	}
     }
 
     public static boolean isInstalled() {
@@ -274,59 +296,35 @@ public class DebuggerMemory extends Memory {
     }
 
     public void addReadBreakpoint(int address) {
-        address &= Memory.addressMask;
-        if (address < lowestReadBreakpointAddress) {
-        	lowestReadBreakpointAddress = address;
-        }
-        if (address > highestReadBreakpointAddress) {
-        	highestReadBreakpointAddress = address;
-        }
-        memoryReadBreakpoint.add(address);
+    	watchpoints.addRead(address, address);
     }
 
     public void removeReadBreakpoint(int address) {
-        address &= Memory.addressMask;
-        memoryReadBreakpoint.remove(address);
+    	watchpoints.removeRead(address, address);
     }
 
     public void addRangeReadBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            addReadBreakpoint(address);
-        }
+    	watchpoints.addRead(start, end);
     }
 
     public void removeRangeReadBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            removeReadBreakpoint(address);
-        }
+    	watchpoints.removeRead(start, end);
     }
 
     public void addWriteBreakpoint(int address) {
-        address &= Memory.addressMask;
-        if (address < lowestWriteBreakpointAddress) {
-        	lowestWriteBreakpointAddress = address;
-        }
-        if (address > highestWriteBreakpointAddress) {
-        	highestWriteBreakpointAddress = address;
-        }
-        memoryWriteBreakpoint.add(address);
+    	watchpoints.addWrite(address, address);
     }
 
     public void removeWriteBreakpoint(int address) {
-        address &= Memory.addressMask;
-        memoryWriteBreakpoint.remove(address);
+    	watchpoints.removeWrite(address, address);
     }
 
     public void addRangeWriteBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            addWriteBreakpoint(address);
-        }
+    	watchpoints.addWrite(start, end);
     }
 
     public void removeRangeWriteBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            removeWriteBreakpoint(address);
-        }
+    	watchpoints.removeWrite(start, end);
     }
 
     public void addReadWriteBreakpoint(int address) {
@@ -340,15 +338,13 @@ public class DebuggerMemory extends Memory {
     }
 
     public void addRangeReadWriteBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            addReadWriteBreakpoint(address);
-        }
+    	addRangeReadBreakpoint(start, end);
+    	addRangeWriteBreakpoint(start, end);
     }
 
     public void removeRangeReadWriteBreakpoint(int start, int end) {
-        for (int address = start; address <= end; address++) {
-            removeReadWriteBreakpoint(address);
-        }
+    	removeRangeReadBreakpoint(start, end);
+    	removeRangeWriteBreakpoint(start, end);
     }
 
     protected String getMemoryReadMessage(int address, int value, int width) {
@@ -382,7 +378,7 @@ public class DebuggerMemory extends Memory {
             log.trace(getMemoryReadMessage(address, value, width));
         }
 
-        if ((pauseEmulatorOnMemoryBreakpoint || log.isInfoEnabled()) && memoryReadBreakpoint.contains(address & Memory.addressMask)) {
+        if ((pauseEmulatorOnMemoryBreakpoint || log.isInfoEnabled()) && watchpoints.isReadWatched(address, Math.max(width / 8, 1))) {
             log.info(getMemoryReadMessage(address, value, width));
             if (pauseEmulatorOnMemoryBreakpoint) {
                 Emulator.PauseEmuWithStatus(Emulator.EMU_STATUS_BREAKPOINT);
@@ -417,7 +413,7 @@ public class DebuggerMemory extends Memory {
             log.trace(getMemoryWriteMessage(address, value, width));
         }
 
-        if ((pauseEmulatorOnMemoryBreakpoint || log.isInfoEnabled()) && memoryWriteBreakpoint.contains(address & Memory.addressMask)) {
+        if ((pauseEmulatorOnMemoryBreakpoint || log.isInfoEnabled()) && watchpoints.isWriteWatched(address, width / 8)) {
             log.info(getMemoryWriteMessage(address, value, width));
             if (pauseEmulatorOnMemoryBreakpoint) {
                 Emulator.PauseEmuWithStatus(Emulator.EMU_STATUS_BREAKPOINT);
@@ -425,26 +421,41 @@ public class DebuggerMemory extends Memory {
         }
     }
 
+    /**
+     * Called by the compiled code when accessing a memory page having watchpoints.
+     * The compiled code is accessing the memory directly, the value being
+     * written is not yet known. The processor pc has to be set by the caller.
+     *
+     * @param address   the accessed address
+     * @param width     8, 16 or 32
+     * @param isWrite   true for a memory write, false for a memory read
+     */
+    public void onWatchedPageAccess(int address, int width, boolean isWrite) {
+    	if (isWrite) {
+	        if ((pauseEmulatorOnMemoryBreakpoint || log.isInfoEnabled()) && watchpoints.isWriteWatched(address, width / 8)) {
+	        	log.info(String.format("0x%08X - write%d(0x%08X, value not yet known)", getProcessor().cpu.pc, width, address));
+	            if (pauseEmulatorOnMemoryBreakpoint) {
+	                Emulator.PauseEmuWithStatus(Emulator.EMU_STATUS_BREAKPOINT);
+	            }
+	        }
+    	} else {
+    		int value;
+    		switch (width) {
+    			case 8:  value = mem.internalRead8(address); break;
+    			case 16: value = mem.internalRead16(address); break;
+    			default: value = mem.internalRead32(address); break;
+    		}
+    		memoryRead(address, value, width, false);
+    	}
+    }
+
     private boolean isCheckingMemoryWriteAccess(int address, int length, boolean trace) {
         if ((traceMemoryWrite || trace) && log.isTraceEnabled()) {
         	return true;
         }
 
-        address &= Memory.addressMask;
-
-        // Quick check using the lowest and highest values
-        if (address > highestWriteBreakpointAddress || address + length < lowestWriteBreakpointAddress) {
-        	return false;
-        }
-
         // Check if we have a write breakpoint in the address range
-        for (int i = 0; i < length; i++, address++) {
-	        if (memoryWriteBreakpoint.contains(address)) {
-	        	return true;
-	        }
-        }
-
-        return false;
+        return watchpoints.isWriteWatched(address, length);
     }
 
     private boolean isCheckingMemoryReadAccess(int address, int length, boolean trace) {
@@ -452,21 +463,8 @@ public class DebuggerMemory extends Memory {
         	return true;
         }
 
-        address &= Memory.addressMask;
-
-        // Quick check using the lowest and highest values
-        if (address > highestReadBreakpointAddress || address + length < lowestReadBreakpointAddress) {
-        	return false;
-        }
-
         // Check if we have a read breakpoint in the address range
-        for (int i = 0; i < length; i++, address++) {
-	        if (memoryReadBreakpoint.contains(address)) {
-	        	return true;
-	        }
-        }
-
-        return false;
+        return watchpoints.isReadWatched(address, length);
     }
 
     @Override
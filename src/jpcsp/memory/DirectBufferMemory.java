@@ -66,6 +66,7 @@ public class DirectBufferMemory extends Memory {
 		}
 		clearBuffer.clear();
 		byteBuffer.clear();
+		MemoryPageTracker.writeAll();
 	}
 
 	// Slice the buffer and keep the byteorder
@@ -81,6 +82,7 @@ public class DirectBufferMemory extends Memory {
 		ByteBuffer mem = slice(byteBuffer);
 		mem.position(address);
 		mem.put(source);
+		MemoryPageTracker.write(address, length);
 	}
 
 	protected ByteBuffer getByteBuffer(int address, int length) {
@@ -93,6 +95,8 @@ public class DirectBufferMemory extends Memory {
 
 	@Override
 	public Buffer getBuffer(int address, int length) {
+		// The returned buffer could be written by the caller
+		MemoryPageTracker.write(address, length);
 		return getByteBuffer(address, length);
 	}
 
@@ -119,11 +123,13 @@ public class DirectBufferMemory extends Memory {
 				write8(destination + i, (byte) sourceReader.readNext());
 			}
 		}
+		MemoryPageTracker.write(destination, length);
 	}
 
 	@Override
 	public void memset(int address, byte data, int length) {
 		ByteBuffer destination = getByteBuffer(address, length);
+		int setLength = length;
 		ByteBuffer source;
 		if (data == 0) {
 			source = slice(clearBuffer);
@@ -145,6 +151,7 @@ public class DirectBufferMemory extends Memory {
 			source.limit(length);
 			destination.put(source);
 		}
+		MemoryPageTracker.write(address, setLength);
 	}
 
 	@Override
@@ -169,17 +176,20 @@ public class DirectBufferMemory extends Memory {
 	public void write16(int address, short data) {
 		address &= addressMask;
 		shortBuffer.put(address >> 1, data);
+		MemoryPageTracker.write(address);
 	}
 
 	@Override
 	public void write32(int address, int data) {
 		address &= addressMask;
 		intBuffer.put(address >> 2, data);
+		MemoryPageTracker.write(address);
 	}
 
 	@Override
 	public void write8(int address, byte data) {
 		address &= addressMask;
 		byteBuffer.put(address, data);
+		MemoryPageTracker.write(address);
 	}
 }
@@ -86,6 +86,7 @@ public class FastMemory extends Memory {
 	public void Initialise() {
 		Arrays.fill(zero, 0);
 		Arrays.fill(all, 0);
+		MemoryPageTracker.writeAll();
 	}
 
 	@Override
@@ -166,6 +167,9 @@ public class FastMemory extends Memory {
 		}
 
 		all[address >> 2] = memData;
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
         Modules.sceDisplayModule.write8(address);
 	}
 
@@ -182,6 +186,9 @@ public class FastMemory extends Memory {
 		}
 
 		all[address >> 2] = memData;
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
         Modules.sceDisplayModule.write16(address);
 	}
 
@@ -196,6 +203,9 @@ public class FastMemory extends Memory {
 		}
 
 		all[address >> 2] = data;
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
 		Modules.sceDisplayModule.write32(address);
 	}
 
@@ -211,6 +221,9 @@ public class FastMemory extends Memory {
 
 		all[address >> 2] = (int) data;
 		all[(address >> 2) + 1] = (int) (data >> 32);
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address, 8);
+		}
 	}
 
 	@Override
@@ -222,6 +235,15 @@ public class FastMemory extends Memory {
 	public IntBuffer getBuffer(int address, int length) {
 		address = normalizeAddress(address);
 
+		// The returned buffer could be written by the caller.
+		// The generation is bumped before the caller is writing:
+		// a caller writing into the buffer while a concurrent reader
+		// could validate the same range has to report its writes
+		// to the MemoryPageTracker after having written them.
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address, length);
+		}
+
 		IntBuffer buffer = getMainMemoryByteBuffer();
 		buffer.position(address >> 2);
 		buffer.limit(round4(round4(address) + length) >> 2);
@@ -238,6 +260,8 @@ public class FastMemory extends Memory {
 		address = normalizeAddress(address);
 
         Modules.sceDisplayModule.write(address);
+        int setAddress = address;
+        int setLength = length;
 
         for (; !isIntAligned(address) && length > 0; address++, length--) {
 			write8(address, data);
@@ -262,6 +286,13 @@ public class FastMemory extends Memory {
 		for (; length > 0; address++, length--) {
 			write8(address, data);
 		}
+
+		// Report the write only once the memory has been set,
+		// so that a concurrent reader cannot cache the old content
+		// under the new generation.
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(setAddress, setLength);
+		}
 	}
 
 	@Override
@@ -326,6 +357,8 @@ public class FastMemory extends Memory {
 		source = normalizeAddress(source);
 
         Modules.sceDisplayModule.write(destination);
+        int copyDestination = destination;
+        int copyLength = length;
 
         if (isIntAligned(source) && isIntAligned(destination) && isIntAligned(length)) {
 			// Source, destination and length are "int"-aligned
@@ -386,11 +419,17 @@ public class FastMemory extends Memory {
 				}
 			}
 		}
+
+		// Report the write only once the memory has been copied
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(copyDestination, copyLength);
+		}
 	}
 
 	@Override
 	protected void read(StateInputStream stream, int address, int length) throws IOException {
 		stream.readInts(all, address >> 2, length >> 2);
+		MemoryPageTracker.write(address, length);
 	}
 
 	@Override
@@ -31,6 +31,8 @@ import static jpcsp.graphics.GeCommands.CMODE_FORMAT_16BIT_ABGR5551;
 import static jpcsp.graphics.GeCommands.CMODE_FORMAT_16BIT_ABGR4444;
 import static jpcsp.graphics.GeCommands.CMODE_FORMAT_32BIT_ABGR8888;
 
+import jpcsp.Memory;
+import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.RE.IRenderingEngine;
 
@@ -197,6 +199,359 @@ public class ImageReader {
 		return imageReader;
 	}
 
+	/**
+	 * Read a complete image and return its pixels in the format GU_COLOR_8888 (ABGR).
+	 *
+	 * The returned pixels are identical to the ones returned by the
+	 * IMemoryReader.readNext() calls on the reader built by getImageReader()
+	 * with the same parameters, but the image is decoded in bulk:
+	 * the image is unswizzled and converted row by row
+	 * over int arrays, without any call to a chain of decoders.
+	 *
+	 * @return  an array of height * Math.min(width, bufferWidth) pixels
+	 * @see     #getImageReader(int, int, int, int, int, boolean, int, int, int, int, int, int, int[], short[])
+	 */
+	public static int[] readImage(int address, int width, int height, int bufferWidth, int pixelFormat, boolean swizzle, int clutAddr, int clutMode, int clutNumBlocks, int clutStart, int clutShift, int clutMask, int[] clut32, short[] clut16) {
+		int imageWidth = Math.min(width, bufferWidth);
+		int[] pixels = new int[imageWidth * height];
+
+		if (!readImage(pixels, address, width, height, bufferWidth, pixelFormat, swizzle, clutAddr, clutMode, clutNumBlocks, clutStart, clutShift, clutMask, clut32, clut16)) {
+			// Combination not supported by the bulk decoders, use the chain of decoders
+			IMemoryReader imageReader = getImageReader(address, width, height, bufferWidth, pixelFormat, swizzle, clutAddr, clutMode, clutNumBlocks, clutStart, clutShift, clutMask, clut32, clut16);
+			for (int i = 0; i < pixels.length; i++) {
+				pixels[i] = imageReader.readNext();
+			}
+		}
+
+		return pixels;
+	}
+
+	private static boolean readImage(int[] pixels, int address, int width, int height, int bufferWidth, int pixelFormat, boolean swizzle, int clutAddr, int clutMode, int clutNumBlocks, int clutStart, int clutShift, int clutMask, int[] clut32, short[] clut16) {
+		if ((address & 3) != 0 || height <= 0 || bufferWidth <= 0) {
+			return false;
+		}
+
+		boolean isCompressed = pixelFormat == TPSM_PIXEL_STORAGE_MODE_DXT1 || pixelFormat == TPSM_PIXEL_STORAGE_MODE_DXT3 || pixelFormat == TPSM_PIXEL_STORAGE_MODE_DXT5;
+		int bytesPerPixel = getBytesPerPixel(pixelFormat);
+		int rowWidth = (bytesPerPixel > 0) ? (bufferWidth * bytesPerPixel) : (bufferWidth / 2);
+		if (swizzle && (isCompressed || !isUnswizzleSupported(rowWidth))) {
+			return false;
+		}
+
+		//
+		// Step 1 and 2: read the image from memory and unswizzle it if applicable
+		//
+		int[] words;
+		int wordsOffset;
+		if (swizzle) {
+			int pitch = rowWidth >> 2;
+			int numberOfBlocks = Math.max((height + 7) >> 3, 1);
+			words = new int[numberOfBlocks * Math.max(pitch << 3, 8)];
+			wordsOffset = 0;
+			unswizzle(address, words, 0, rowWidth, height);
+		} else {
+			int length = (getImageByteSize(width, height, bufferWidth, pixelFormat) + 3) >> 2;
+			words = getMemoryInt(address, length);
+			if (words != null) {
+				wordsOffset = (address & Memory.addressMask) >> 2;
+			} else {
+				words = readWords(address, length);
+				wordsOffset = 0;
+			}
+		}
+
+		//
+		// Step 3 to 6: split the values, apply the clut and convert to 8888 ABGR, row by row
+		//
+		int imageWidth = Math.min(width, bufferWidth);
+		switch (pixelFormat) {
+			case TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR4444:
+			case TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR5551:
+			case TPSM_PIXEL_STORAGE_MODE_16BIT_BGR5650:
+				decode16(words, wordsOffset, pixels, imageWidth, height, bufferWidth, pixelFormat);
+				break;
+			case TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888:
+				for (int y = 0, i = 0; y < height; y++, i += imageWidth) {
+					System.arraycopy(words, wordsOffset + y * bufferWidth, pixels, i, imageWidth);
+				}
+				break;
+			case TPSM_PIXEL_STORAGE_MODE_4BIT_INDEXED:
+			case TPSM_PIXEL_STORAGE_MODE_8BIT_INDEXED:
+			case TPSM_PIXEL_STORAGE_MODE_16BIT_INDEXED:
+			case TPSM_PIXEL_STORAGE_MODE_32BIT_INDEXED:
+				decodeIndexed(words, wordsOffset, pixels, imageWidth, height, bufferWidth, pixelFormat, clutAddr, clutMode, clutNumBlocks, clutStart, clutShift, clutMask, clut32, clut16);
+				break;
+			case TPSM_PIXEL_STORAGE_MODE_DXT1:
+			case TPSM_PIXEL_STORAGE_MODE_DXT3:
+			case TPSM_PIXEL_STORAGE_MODE_DXT5:
+				decodeDXT(words, wordsOffset, pixels, width, height, bufferWidth, pixelFormat);
+				break;
+			default:
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the memory int array when the given area can be directly
+	 * accessed from it.
+	 */
+	private static int[] getMemoryInt(int address, int length) {
+		if (!RuntimeContext.hasMemoryInt(address)) {
+			return null;
+		}
+
+		int[] memoryInt = RuntimeContext.getMemoryInt();
+		int offset = (address & Memory.addressMask) >> 2;
+		if (offset + length > memoryInt.length) {
+			return null;
+		}
+
+		return memoryInt;
+	}
+
+	private static int[] readWords(int address, int length) {
+		int[] words = new int[length];
+		IMemoryReader memoryReader = MemoryReader.getMemoryReader(address, length << 2, 4);
+		for (int i = 0; i < length; i++) {
+			words[i] = memoryReader.readNext();
+		}
+
+		return words;
+	}
+
+	private static boolean isUnswizzleSupported(int rowWidth) {
+		return rowWidth >= 16 || rowWidth == 8 || rowWidth == 4 || rowWidth == 2 || rowWidth == 1;
+	}
+
+	/**
+	 * Return the number of 32-bit values read from a swizzled image
+	 * for each block of 8 pixel rows.
+	 *
+	 * @param rowWidth  the width of one pixel row, in bytes
+	 * @return          the number of 32-bit values
+	 */
+	public static int getSwizzleBlockLength(int rowWidth) {
+		return Math.max(rowWidth >> 4, 1) * 32;
+	}
+
+	/**
+	 * Unswizzle an image stored in blocks of 16 bytes * 8 rows.
+	 *
+	 * @param src        the swizzled image
+	 * @param srcOffset  the offset in src of the first 32-bit value of the swizzled image
+	 * @param dst        the unswizzled image, with a pitch of rowWidth / 4.
+	 *                   The array has to be large enough to store all the blocks
+	 *                   of 8 rows, i.e. ((height + 7) / 8) * rowWidth * 2 values.
+	 * @param dstOffset  the offset in dst of the first 32-bit value of the unswizzled image
+	 * @param rowWidth   the width of one pixel row, in bytes
+	 * @param height     the image height
+	 */
+	public static void unswizzle(int[] src, int srcOffset, int[] dst, int dstOffset, int rowWidth, int height) {
+		int pitch = rowWidth >> 2;
+		int bxc = rowWidth >> 4;
+		int byc = Math.max((height + 7) >> 3, 1);
+		int s = srcOffset;
+		int ydest = dstOffset;
+
+		for (int by = 0; by < byc; by++) {
+			if (rowWidth >= 16) {
+				int xdest = ydest;
+				for (int bx = 0; bx < bxc; bx++) {
+					int dest = xdest;
+					for (int n = 0; n < 8; n++, s += 4) {
+						dst[dest    ] = src[s    ];
+						dst[dest + 1] = src[s + 1];
+						dst[dest + 2] = src[s + 2];
+						dst[dest + 3] = src[s + 3];
+
+						dest += pitch;
+					}
+					xdest += 4;
+				}
+				ydest += pitch << 3;
+			} else if (rowWidth == 8) {
+				for (int n = 0; n < 8; n++, ydest += 2, s += 4) {
+					dst[ydest] = src[s];
+					dst[ydest + 1] = src[s + 1];
+				}
+			} else if (rowWidth == 4) {
+				for (int n = 0; n < 8; n++, ydest++, s += 4) {
+					dst[ydest] = src[s];
+				}
+			} else if (rowWidth == 2) {
+				for (int n = 0; n < 4; n++, ydest++, s += 8) {
+					dst[ydest] = (src[s] & 0xFFFF) | (src[s + 4] << 16);
+				}
+			} else if (rowWidth == 1) {
+				for (int n = 0; n < 2; n++, ydest++, s += 16) {
+					dst[ydest] = (src[s] & 0xFF) | ((src[s + 4] & 0xFF) << 8) | ((src[s + 8] & 0xFF) << 16) | (src[s + 12] << 24);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unswizzle an image read from memory.
+	 *
+	 * @param address    the address of the swizzled image
+	 * @param dst        the unswizzled image, see unswizzle(int[], int, int[], int, int, int)
+	 * @param dstOffset  the offset in dst of the first 32-bit value of the unswizzled image
+	 * @param rowWidth   the width of one pixel row, in bytes
+	 * @param height     the image height
+	 */
+	public static void unswizzle(int address, int[] dst, int dstOffset, int rowWidth, int height) {
+		int numberOfBlocks = Math.max((height + 7) >> 3, 1);
+		int swizzledLength = numberOfBlocks * getSwizzleBlockLength(rowWidth);
+		int[] memoryInt = getMemoryInt(address, swizzledLength);
+		if (memoryInt != null && (address & 3) == 0) {
+			unswizzle(memoryInt, (address & Memory.addressMask) >> 2, dst, dstOffset, rowWidth, height);
+		} else {
+			unswizzle(readWords(address, swizzledLength), 0, dst, dstOffset, rowWidth, height);
+		}
+	}
+
+	private static void decode16(int[] words, int wordsOffset, int[] pixels, int imageWidth, int height, int bufferWidth, int pixelFormat) {
+		for (int y = 0, i = 0; y < height; y++) {
+			int p = y * bufferWidth;
+			switch (pixelFormat) {
+				case TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR4444:
+					for (int x = 0; x < imageWidth; x++, p++) {
+						pixels[i++] = color4444to8888((words[wordsOffset + (p >> 1)] >>> ((p & 1) << 4)) & 0xFFFF);
+					}
+					break;
+				case TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR5551:
+					for (int x = 0; x < imageWidth; x++, p++) {
+						pixels[i++] = color5551to8888((words[wordsOffset + (p >> 1)] >>> ((p & 1) << 4)) & 0xFFFF);
+					}
+					break;
+				case TPSM_PIXEL_STORAGE_MODE_16BIT_BGR5650:
+					for (int x = 0; x < imageWidth; x++, p++) {
+						pixels[i++] = color565to8888((words[wordsOffset + (p >> 1)] >>> ((p & 1) << 4)) & 0xFFFF);
+					}
+					break;
+			}
+		}
+	}
+
+	private static int clutColorTo8888(int color, int clutMode) {
+		switch (clutMode) {
+			case CMODE_FORMAT_16BIT_BGR5650:
+				return color565to8888(color);
+			case CMODE_FORMAT_16BIT_ABGR5551:
+				return color5551to8888(color);
+			case CMODE_FORMAT_16BIT_ABGR4444:
+				return color4444to8888(color);
+		}
+
+		return color;
+	}
+
+	private static void decodeIndexed(int[] words, int wordsOffset, int[] pixels, int imageWidth, int height, int bufferWidth, int pixelFormat, int clutAddr, int clutMode, int clutNumBlocks, int clutStart, int clutShift, int clutMask, int[] clut32, short[] clut16) {
+		int indexBits;
+		switch (pixelFormat) {
+			case TPSM_PIXEL_STORAGE_MODE_4BIT_INDEXED:  indexBits = 4;  break;
+			case TPSM_PIXEL_STORAGE_MODE_8BIT_INDEXED:  indexBits = 8;  break;
+			case TPSM_PIXEL_STORAGE_MODE_16BIT_INDEXED: indexBits = 16; break;
+			default:                                    indexBits = 32; break;
+		}
+
+		// Read the clut the same way as the ClutDecoder
+		// and convert all its entries to 8888 ABGR
+		ClutDecoder clutDecoder = (ClutDecoder) getClutDecoder(null, indexBits, clutAddr, clutMode, clutNumBlocks, clutStart, clutShift, clutMask, clut32, clut16);
+		int[] clut = new int[clutDecoder.clut.length];
+		for (int i = 0; i < clut.length; i++) {
+			clut[i] = clutColorTo8888(clutDecoder.clut[i], clutMode);
+		}
+
+		if (indexBits <= 8) {
+			// Pre-compute the color of each possible index
+			int[] colors = new int[1 << indexBits];
+			for (int index = 0; index < colors.length; index++) {
+				int clutIndex = clutDecoder.getClutIndex(index);
+				colors[index] = clutIndex < clut.length ? clut[clutIndex] : 0;
+			}
+
+			for (int y = 0, i = 0; y < height; y++) {
+				int p = y * bufferWidth;
+				if (indexBits == 4) {
+					for (int x = 0; x < imageWidth; x++, p++) {
+						pixels[i++] = colors[(words[wordsOffset + (p >> 3)] >>> ((p & 7) << 2)) & 0xF];
+					}
+				} else {
+					for (int x = 0; x < imageWidth; x++, p++) {
+						pixels[i++] = colors[(words[wordsOffset + (p >> 2)] >>> ((p & 3) << 3)) & 0xFF];
+					}
+				}
+			}
+		} else {
+			for (int y = 0, i = 0; y < height; y++) {
+				int p = y * bufferWidth;
+				for (int x = 0; x < imageWidth; x++, p++) {
+					int index;
+					if (indexBits == 16) {
+						index = (words[wordsOffset + (p >> 1)] >>> ((p & 1) << 4)) & 0xFFFF;
+					} else {
+						index = words[wordsOffset + p];
+					}
+					int clutIndex = clutDecoder.getClutIndex(index);
+					pixels[i++] = clutIndex >= 0 && clutIndex < clut.length ? clut[clutIndex] : 0;
+				}
+			}
+		}
+	}
+
+	private static void decodeDXT(int[] words, int wordsOffset, int[] pixels, int width, int height, int bufferWidth, int pixelFormat) {
+		DXTDecoder decoder;
+		IMemoryReader wordsReader = new IntArrayMemoryReader(words, wordsOffset);
+		switch (pixelFormat) {
+			case TPSM_PIXEL_STORAGE_MODE_DXT1: decoder = new DXT1Decoder(wordsReader, width, height, bufferWidth); break;
+			case TPSM_PIXEL_STORAGE_MODE_DXT3: decoder = new DXT3Decoder(wordsReader, width, height, bufferWidth); break;
+			default:                           decoder = new DXT5Decoder(wordsReader, width, height, bufferWidth); break;
+		}
+
+		// Decode one row of 4x4 blocks at a time, directly from the int array
+		for (int i = 0; i < pixels.length; ) {
+			decoder.reload();
+			int length = Math.min(decoder.maxIndex, pixels.length - i);
+			System.arraycopy(decoder.buffer, 0, pixels, i, length);
+			i += length;
+		}
+	}
+
+	/**
+	 * Simple sequential reader over an int array, used as input
+	 * for the DXT decoders when decoding in bulk.
+	 */
+	private static final class IntArrayMemoryReader implements IMemoryReader {
+		private final int[] values;
+		private int index;
+
+		public IntArrayMemoryReader(int[] values, int offset) {
+			this.values = values;
+			index = offset;
+		}
+
+		@Override
+		public int readNext() {
+			if (index >= values.length) {
+				return 0;
+			}
+			return values[index++];
+		}
+
+		@Override
+		public void skip(int n) {
+			index += n;
+		}
+
+		@Override
+		public int getCurrentAddress() {
+			return 0;
+		}
+	}
+
 	private static boolean isSimpleClutMask(int indexBits, int clutMask) {
 		// clutMask 0xFF means no masking
 		if (clutMask == 0xFF) {
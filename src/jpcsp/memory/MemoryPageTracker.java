@@ -0,0 +1,181 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.memory;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.settings.Settings;
+
+/**
+ * Write-generation counters for the main RAM, per 4KB page.
+ *
+ * Each write to a RAM page increments the generation of that page.
+ * The caches validating their content against the emulated memory
+ * (code blocks, textures, vertices) can remember the generation of
+ * the range they have read and skip their costly re-validation as
+ * long as the generation of that range is unchanged.
+ *
+ * The tracking is opt-in (settings "emu.memoryPageTracking") as it adds
+ * a small overhead to every memory write. It is maintained by
+ * the FastMemory/DirectBufferMemory/UnsafeMemory write paths, by their bulk operations
+ * (memcpy, memset, copyToMemory, getBuffer) and by the compiled code.
+ * The writes are reported after the stores, so that a concurrent reader
+ * cannot cache the old content under the new generation. The only
+ * exception is getBuffer(): the generation is bumped when the buffer is
+ * returned, i.e. before the caller is writing into it; a caller writing
+ * into such a buffer concurrently with a reader has to call write()
+ * again once its writes are done.
+ * Only the main RAM is tracked: the VRAM and the scratchpad are also
+ * written by the GE and by other devices, their generation is always unknown.
+ */
+public class MemoryPageTracker {
+	public static final int PAGE_SHIFT = 12;
+	public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	public static final long UNKNOWN_GENERATION = -1L;
+	private static final int NUMBER_PAGES = (MemoryMap.END_RAM_64MB - MemoryMap.START_RAM + 1) >> PAGE_SHIFT;
+	private static final int[] pageGenerations = new int[NUMBER_PAGES];
+	private static boolean enabled;
+
+	/**
+	 * Read the tracking settings, to be called when a new application is loaded
+	 * (i.e. before any code is compiled).
+	 */
+	public static void init() {
+		// Only the FastMemory, DirectBufferMemory and UnsafeMemory implementations are reporting their writes
+		Memory mem = Memory.getInstance();
+		enabled = Settings.getInstance().readBool("emu.memoryPageTracking") && (mem instanceof FastMemory || mem instanceof DirectBufferMemory || mem instanceof UnsafeMemory);
+		writeAll();
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private static int getPage(int address) {
+		return ((address & Memory.addressMask) - MemoryMap.START_RAM) >>> PAGE_SHIFT;
+	}
+
+	/**
+	 * Record a write at the given address.
+	 *
+	 * @param address   the address written
+	 */
+	public static void write(int address) {
+		int page = getPage(address);
+		if (page < NUMBER_PAGES) {
+			pageGenerations[page]++;
+		}
+	}
+
+	/**
+	 * Record a write at the given memoryInt index, called from the compiled code.
+	 *
+	 * @param memoryIntIndex   the index in RuntimeContext.memoryInt
+	 */
+	public static void writeMemoryInt(int memoryIntIndex) {
+		int page = (memoryIntIndex - (MemoryMap.START_RAM >> 2)) >>> (PAGE_SHIFT - 2);
+		if (page < NUMBER_PAGES) {
+			pageGenerations[page]++;
+		}
+	}
+
+	/**
+	 * Record a write to the given address range.
+	 *
+	 * @param address   the first address written
+	 * @param length    the number of bytes written
+	 */
+	public static void write(int address, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		int firstPage = getPage(address);
+		int lastPage = getPage(address + length - 1);
+		if (firstPage >= NUMBER_PAGES || lastPage >= NUMBER_PAGES || lastPage < firstPage) {
+			// Range not (completely) in RAM: mark the RAM part as written
+			if (firstPage < NUMBER_PAGES) {
+				lastPage = NUMBER_PAGES - 1;
+			} else if (lastPage < NUMBER_PAGES) {
+				firstPage = 0;
+			} else {
+				return;
+			}
+		}
+
+		for (int page = firstPage; page <= lastPage; page++) {
+			pageGenerations[page]++;
+		}
+	}
+
+	/**
+	 * Record a write to the complete memory, e.g. when the memory is cleared
+	 * or loaded from a state.
+	 */
+	public static void writeAll() {
+		for (int page = 0; page < NUMBER_PAGES; page++) {
+			pageGenerations[page]++;
+		}
+	}
+
+	/**
+	 * Return the generation of an address range.
+	 * The generation of a range is changing whenever one of its pages has been written.
+	 *
+	 * @param address   the first address of the range
+	 * @param length    the length in bytes of the range
+	 * @return          the generation of the range, or UNKNOWN_GENERATION
+	 *                  when the tracking is disabled or when the range is not
+	 *                  completely in RAM.
+	 */
+	public static long getGeneration(int address, int length) {
+		if (!enabled || length <= 0) {
+			return UNKNOWN_GENERATION;
+		}
+
+		int firstPage = getPage(address);
+		int lastPage = getPage(address + length - 1);
+		if (firstPage >= NUMBER_PAGES || lastPage >= NUMBER_PAGES || lastPage < firstPage) {
+			return UNKNOWN_GENERATION;
+		}
+
+		// The page generations are only increasing,
+		// their sum is changing as soon as one of them is changing.
+		long generation = 0L;
+		for (int page = firstPage; page <= lastPage; page++) {
+			generation += pageGenerations[page] & 0xFFFFFFFFL;
+		}
+
+		return generation;
+	}
+
+	/**
+	 * Combine the generations of two address ranges.
+	 *
+	 * @param generation1   the generation of the first range
+	 * @param generation2   the generation of the second range
+	 * @return              the combined generation, or UNKNOWN_GENERATION
+	 *                      if one of the generations is unknown.
+	 */
+	public static long combine(long generation1, long generation2) {
+		if (generation1 == UNKNOWN_GENERATION || generation2 == UNKNOWN_GENERATION) {
+			return UNKNOWN_GENERATION;
+		}
+
+		return generation1 + generation2;
+	}
+}
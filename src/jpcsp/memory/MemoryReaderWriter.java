@@ -37,7 +37,9 @@ public class MemoryReaderWriter {
 	}
 
 	public static IMemoryReaderWriter getMemoryReaderWriter(int address, int length, int step) {
-		if (RuntimeContext.hasMemoryInt(address)) {
+		// The writes of the dedicated memoryInt classes are not reported
+		// to the MemoryPageTracker, the generic one is reporting each write.
+		if (RuntimeContext.hasMemoryInt(address) && !MemoryPageTracker.isEnabled()) {
 			return getFastMemoryReaderWriter(address, step);
 		}
 
@@ -46,7 +48,7 @@ public class MemoryReaderWriter {
 	}
 
 	public static IMemoryReaderWriter getMemoryReaderWriter(int address, int step) {
-		if (RuntimeContext.hasMemoryInt(address)) {
+		if (RuntimeContext.hasMemoryInt(address) && !MemoryPageTracker.isEnabled()) {
 			return getFastMemoryReaderWriter(address, step);
 		}
 
@@ -0,0 +1,175 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.memory;
+
+import jpcsp.Memory;
+
+/**
+ * Memory watchpoints (read and write breakpoints) stored as a per-page bitmap.
+ *
+ * Each memory page has flags telling if at least one of its addresses is watched,
+ * so that an access to a page without watchpoint is rejected with a single array lookup.
+ * The watched addresses themselves are stored as a bitmap, allocated only for the
+ * pages having watchpoints.
+ */
+public class MemoryWatchpoints {
+	public static final int PAGE_SHIFT = 12;
+	public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	public static final int WATCH_READ = 0x1;
+	public static final int WATCH_WRITE = 0x2;
+	private static final int NUMBER_PAGES = (Memory.addressMask + 1) >>> PAGE_SHIFT;
+	// WATCH_READ and/or WATCH_WRITE for each page
+	private final byte[] pageFlags = new byte[NUMBER_PAGES];
+	private final long[][] readBits = new long[NUMBER_PAGES][];
+	private final long[][] writeBits = new long[NUMBER_PAGES][];
+
+	/**
+	 * Check if a memory page has watchpoints.
+	 *
+	 * @param address  an address in the page
+	 * @param flags    WATCH_READ and/or WATCH_WRITE
+	 * @return         true if at least one address of the page has one of the given watchpoints
+	 */
+	public boolean isPageWatched(int address, int flags) {
+		return (pageFlags[(address & Memory.addressMask) >>> PAGE_SHIFT] & flags) != 0;
+	}
+
+	public boolean isReadWatched(int address) {
+		return isWatched(readBits, WATCH_READ, address);
+	}
+
+	public boolean isWriteWatched(int address) {
+		return isWatched(writeBits, WATCH_WRITE, address);
+	}
+
+	public boolean isReadWatched(int address, int length) {
+		return isWatched(readBits, WATCH_READ, address, length);
+	}
+
+	public boolean isWriteWatched(int address, int length) {
+		return isWatched(writeBits, WATCH_WRITE, address, length);
+	}
+
+	public void addRead(int start, int end) {
+		setWatched(readBits, WATCH_READ, start, end, true);
+	}
+
+	public void removeRead(int start, int end) {
+		setWatched(readBits, WATCH_READ, start, end, false);
+	}
+
+	public void addWrite(int start, int end) {
+		setWatched(writeBits, WATCH_WRITE, start, end, true);
+	}
+
+	public void removeWrite(int start, int end) {
+		setWatched(writeBits, WATCH_WRITE, start, end, false);
+	}
+
+	private boolean isWatched(long[][] bits, int flag, int address) {
+		address &= Memory.addressMask;
+		int page = address >>> PAGE_SHIFT;
+		if ((pageFlags[page] & flag) == 0) {
+			return false;
+		}
+
+		int offset = address & (PAGE_SIZE - 1);
+		return (bits[page][offset >> 6] & (1L << offset)) != 0L;
+	}
+
+	private boolean isWatched(long[][] bits, int flag, int address, int length) {
+		if (length <= 0) {
+			return false;
+		}
+
+		address &= Memory.addressMask;
+		int end = Math.min(address + length, Memory.addressMask + 1);
+		for (int page = address >>> PAGE_SHIFT; (page << PAGE_SHIFT) < end; page++) {
+			if ((pageFlags[page] & flag) != 0) {
+				int pageStart = page << PAGE_SHIFT;
+				int from = Math.max(address, pageStart) - pageStart;
+				int to = Math.min(end, pageStart + PAGE_SIZE) - pageStart;
+				if (hasBits(bits[page], from, to)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private void setWatched(long[][] bits, int flag, int start, int end, boolean watched) {
+		start &= Memory.addressMask;
+		end &= Memory.addressMask;
+		if (end < start) {
+			return;
+		}
+
+		for (int page = start >>> PAGE_SHIFT; page <= end >>> PAGE_SHIFT; page++) {
+			int pageStart = page << PAGE_SHIFT;
+			int from = Math.max(start, pageStart) - pageStart;
+			int to = Math.min(end, pageStart + PAGE_SIZE - 1) - pageStart + 1;
+			long[] pageBits = bits[page];
+			if (watched) {
+				if (pageBits == null) {
+					pageBits = new long[PAGE_SIZE / 64];
+					bits[page] = pageBits;
+				}
+				setBits(pageBits, from, to, true);
+				pageFlags[page] |= flag;
+			} else if (pageBits != null) {
+				setBits(pageBits, from, to, false);
+				if (!hasBits(pageBits, 0, PAGE_SIZE)) {
+					// No more watchpoint in this page
+					bits[page] = null;
+					pageFlags[page] &= ~flag;
+				}
+			}
+		}
+	}
+
+	private static long getMask(int bit, int count) {
+		return (count == 64 ? -1L : (1L << count) - 1L) << bit;
+	}
+
+	private static void setBits(long[] bits, int from, int to, boolean value) {
+		while (from < to) {
+			int bit = from & 63;
+			int count = Math.min(64 - bit, to - from);
+			long mask = getMask(bit, count);
+			if (value) {
+				bits[from >> 6] |= mask;
+			} else {
+				bits[from >> 6] &= ~mask;
+			}
+			from += count;
+		}
+	}
+
+	private static boolean hasBits(long[] bits, int from, int to) {
+		while (from < to) {
+			int bit = from & 63;
+			int count = Math.min(64 - bit, to - from);
+			if ((bits[from >> 6] & getMask(bit, count)) != 0L) {
+				return true;
+			}
+			from += count;
+		}
+
+		return false;
+	}
+}
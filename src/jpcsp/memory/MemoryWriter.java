@@ -74,6 +74,12 @@ public class MemoryWriter {
 	 * @return        the MemoryWriter
 	 */
 	public static IMemoryWriter getMemoryWriter(int address, int length, int step) {
+		if (MemoryPageTracker.isEnabled()) {
+			// The generic MemoryWriter is reporting each write to the MemoryPageTracker,
+			// after the value has been stored.
+			return new MemoryWriterGeneric(address, length, step);
+		}
+
 		if (RuntimeContext.hasMemoryInt(address)) {
 			return getFastMemoryWriter(address, step);
 		}
@@ -115,6 +121,12 @@ public class MemoryWriter {
 	 * @return        the MemoryWriter
 	 */
 	public static IMemoryWriter getMemoryWriter(int address, int step) {
+		if (MemoryPageTracker.isEnabled()) {
+			// The written length is unknown, the generic MemoryWriter
+			// is reporting each write to the MemoryPageTracker.
+			return new MemoryWriterGeneric(address, getMaxLength(address), step);
+		}
+
 		if (RuntimeContext.hasMemoryInt(address)) {
 			return getFastMemoryWriter(address, step);
 		}
@@ -0,0 +1,385 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.memory;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.HLE.Modules;
+import sun.misc.Unsafe;
+
+/**
+ * A Memory implementation storing the PSP memory off-heap and
+ * accessing it through sun.misc.Unsafe, i.e. without any JNI call.
+ *
+ * The masked address space is split into 64KB pages. Only the pages of
+ * the scratchpad, the VRAM and the RAM are backed by direct buffers
+ * (one contiguous buffer per memory area, so that getBuffer() can return
+ * a slice of it). All the other pages are unbacked, so that any access
+ * to an invalid address stays inside allocated memory:
+ * - they are read from a zero page, which is never written;
+ * - they are written to a sink page, which is never read.
+ * A stray write to an invalid address is therefore never visible
+ * at another address. The buffers returned by getBuffer() for
+ * an unbacked page are read-only. SafeUnsafeMemory reports
+ * the invalid accesses as the other safe Memory implementations.
+ *
+ * Only the masked address space of the PSP (Memory.addressMask) is mapped:
+ * the full 32-bit address space used by the LLE (e.g. the MMIO areas)
+ * is not handled by this implementation.
+ *
+ * The memory content is always stored in little-endian order,
+ * the direct buffers returned by getBuffer() can be used as is by
+ * the callers expecting a native memory buffer.
+ */
+public class UnsafeMemory extends Memory {
+	private static final int PAGE_SHIFT = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int NUMBER_PAGES = (addressMask + 1) >>> PAGE_SHIFT;
+	private static final boolean nativeLittleEndian = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	private static Unsafe unsafe;
+	private static long bufferAddressOffset;
+	private static long byteArrayBaseOffset;
+	// The native address of "address" is "pageAddresses[address >>> PAGE_SHIFT] + address"
+	private final long[] pageAddresses = new long[NUMBER_PAGES];
+	// The native address for writing: identical to pageAddresses,
+	// except for the unbacked pages which are written to the sink page.
+	private final long[] writePageAddresses = new long[NUMBER_PAGES];
+	private final boolean[] unbackedPages = new boolean[NUMBER_PAGES];
+	// The direct buffer backing each page and the address matching the start of that buffer
+	private final ByteBuffer[] pageBuffers = new ByteBuffer[NUMBER_PAGES];
+	private final int[] pageBufferStarts = new int[NUMBER_PAGES];
+	private ByteBuffer ram;
+
+	private static boolean init() {
+		if (unsafe == null) {
+			try {
+				Field field = Unsafe.class.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe = (Unsafe) field.get(null);
+				bufferAddressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+				byteArrayBaseOffset = unsafe.arrayBaseOffset(byte[].class);
+			} catch (Exception e) {
+				log.error("Cannot access sun.misc.Unsafe", e);
+				unsafe = null;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long getBufferAddress(Buffer buffer) {
+		return unsafe.getLong(buffer, bufferAddressOffset);
+	}
+
+	private void mapArea(ByteBuffer buffer, int start) {
+		long bufferAddress = getBufferAddress(buffer);
+		int end = start + buffer.capacity();
+		for (int address = start; address < end; address += PAGE_SIZE) {
+			int page = address >>> PAGE_SHIFT;
+			pageAddresses[page] = bufferAddress - start;
+			writePageAddresses[page] = pageAddresses[page];
+			pageBuffers[page] = buffer;
+			pageBufferStarts[page] = start;
+			unbackedPages[page] = false;
+		}
+	}
+
+	private static ByteBuffer allocateArea(int start, int end) {
+		// Round the area to complete pages
+		int size = ((end | PAGE_MASK) + 1) - (start & ~PAGE_MASK);
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public boolean allocate() {
+		if (!init()) {
+			return false;
+		}
+
+		ByteBuffer zero;
+		ByteBuffer sink;
+		ByteBuffer scratchpad;
+		ByteBuffer vram;
+		try {
+			zero = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			sink = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			scratchpad = allocateArea(MemoryMap.START_SCRATCHPAD, MemoryMap.END_SCRATCHPAD);
+			vram = allocateArea(MemoryMap.START_VRAM, MemoryMap.END_VRAM);
+			ram = allocateArea(MemoryMap.START_RAM, MemoryMap.END_RAM);
+		} catch (OutOfMemoryError e) {
+			log.warn(String.format("Cannot allocate UnsafeMemory: add the option '-XX:MaxDirectMemorySize=256m' to the Java Virtual Machine startup command"));
+			return false;
+		}
+
+		long zeroAddress = getBufferAddress(zero);
+		long sinkAddress = getBufferAddress(sink);
+		for (int page = 0; page < NUMBER_PAGES; page++) {
+			int start = page << PAGE_SHIFT;
+			pageAddresses[page] = zeroAddress - start;
+			writePageAddresses[page] = sinkAddress - start;
+			pageBuffers[page] = zero;
+			pageBufferStarts[page] = start;
+			unbackedPages[page] = true;
+		}
+		mapArea(scratchpad, MemoryMap.START_SCRATCHPAD & ~PAGE_MASK);
+		mapArea(vram, MemoryMap.START_VRAM & ~PAGE_MASK);
+		mapArea(ram, MemoryMap.START_RAM & ~PAGE_MASK);
+
+		log.info(String.format("Using UnsafeMemory(littleEndian=%b)", nativeLittleEndian));
+
+		return super.allocate();
+	}
+
+	private long getAddress(int address) {
+		address &= addressMask;
+		return pageAddresses[address >>> PAGE_SHIFT] + address;
+	}
+
+	private long getWriteAddress(int address) {
+		address &= addressMask;
+		return writePageAddresses[address >>> PAGE_SHIFT] + address;
+	}
+
+	@Override
+	public void Initialise() {
+		ByteBuffer previousBuffer = null;
+		for (int page = 0; page < NUMBER_PAGES; page++) {
+			ByteBuffer buffer = pageBuffers[page];
+			if (buffer != previousBuffer && !unbackedPages[page]) {
+				unsafe.setMemory(getBufferAddress(buffer), buffer.capacity(), (byte) 0);
+				previousBuffer = buffer;
+			}
+		}
+		MemoryPageTracker.writeAll();
+	}
+
+	@Override
+	public int read8(int address) {
+		address &= addressMask;
+		return unsafe.getByte(pageAddresses[address >>> PAGE_SHIFT] + address) & 0xFF;
+	}
+
+	@Override
+	public int read16(int address) {
+		address &= addressMask & ~0x1;
+		short data = unsafe.getShort(pageAddresses[address >>> PAGE_SHIFT] + address);
+		if (!nativeLittleEndian) {
+			data = Short.reverseBytes(data);
+		}
+		return data & 0xFFFF;
+	}
+
+	@Override
+	public int read32(int address) {
+		address &= addressMask & ~0x3;
+		int data = unsafe.getInt(pageAddresses[address >>> PAGE_SHIFT] + address);
+		if (!nativeLittleEndian) {
+			data = Integer.reverseBytes(data);
+		}
+		return data;
+	}
+
+	@Override
+	public void write8(int address, byte data) {
+		address &= addressMask;
+		unsafe.putByte(writePageAddresses[address >>> PAGE_SHIFT] + address, data);
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
+        Modules.sceDisplayModule.write8(address);
+	}
+
+	@Override
+	public void write16(int address, short data) {
+		address &= addressMask & ~0x1;
+		if (!nativeLittleEndian) {
+			data = Short.reverseBytes(data);
+		}
+		unsafe.putShort(writePageAddresses[address >>> PAGE_SHIFT] + address, data);
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
+        Modules.sceDisplayModule.write16(address);
+	}
+
+	@Override
+	public void write32(int address, int data) {
+		address &= addressMask & ~0x3;
+		if (!nativeLittleEndian) {
+			data = Integer.reverseBytes(data);
+		}
+		unsafe.putInt(writePageAddresses[address >>> PAGE_SHIFT] + address, data);
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address);
+		}
+        Modules.sceDisplayModule.write32(address);
+	}
+
+	@Override
+	public void memset(int address, byte data, int length) {
+		if (length <= 0) {
+			return;
+		}
+
+		address &= addressMask;
+        Modules.sceDisplayModule.write(address);
+		int setAddress = address;
+		int setLength = length;
+
+		while (length > 0) {
+			int pageLength = Math.min(PAGE_SIZE - (address & PAGE_MASK), length);
+			unsafe.setMemory(getWriteAddress(address), pageLength, data);
+			length -= pageLength;
+			address += pageLength;
+		}
+
+		// Report the write only once the memory has been set,
+		// so that a concurrent reader cannot cache the old content
+		// under the new generation.
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(setAddress, setLength);
+		}
+	}
+
+	@Override
+	public Buffer getMainMemoryByteBuffer() {
+		return getByteBuffer(MemoryMap.START_RAM, MemoryMap.SIZE_RAM);
+	}
+
+	private ByteBuffer getByteBuffer(int address, int length) {
+		address &= addressMask;
+		int page = address >>> PAGE_SHIFT;
+		ByteBuffer buffer = pageBuffers[page].duplicate();
+		int offset = address - pageBufferStarts[page];
+		// The buffer cannot extend past the end of the memory area
+		buffer.limit(offset + Math.min(Math.max(length, 0), buffer.capacity() - offset));
+		buffer.position(offset);
+
+		ByteBuffer slice = buffer.slice();
+		if (unbackedPages[page]) {
+			// The zero page must never be written
+			slice = slice.asReadOnlyBuffer();
+		}
+
+		return slice.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public Buffer getBuffer(int address, int length) {
+		// The returned buffer could be written by the caller.
+		// The generation is bumped before the caller is writing,
+		// see MemoryPageTracker.
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(address, length);
+		}
+
+		return getByteBuffer(address, length);
+	}
+
+	@Override
+	public void copyToMemory(int address, ByteBuffer source, int length) {
+		address &= addressMask;
+		length = Math.min(length, source.remaining());
+		if (length <= 0) {
+			return;
+		}
+
+		int copyAddress = address;
+		int copyLength = length;
+		if (source.isDirect()) {
+			long sourceAddress = getBufferAddress(source) + source.position();
+			while (length > 0) {
+				int pageLength = Math.min(PAGE_SIZE - (address & PAGE_MASK), length);
+				unsafe.copyMemory(sourceAddress, getWriteAddress(address), pageLength);
+				length -= pageLength;
+				address += pageLength;
+				sourceAddress += pageLength;
+			}
+		} else if (source.hasArray()) {
+			byte[] array = source.array();
+			long sourceOffset = byteArrayBaseOffset + source.arrayOffset() + source.position();
+			while (length > 0) {
+				int pageLength = Math.min(PAGE_SIZE - (address & PAGE_MASK), length);
+				unsafe.copyMemory(array, sourceOffset, null, getWriteAddress(address), pageLength);
+				length -= pageLength;
+				address += pageLength;
+				sourceOffset += pageLength;
+			}
+		} else {
+			int position = source.position();
+			for (int i = 0; i < length; i++) {
+				unsafe.putByte(getWriteAddress(address + i), source.get(position + i));
+			}
+		}
+
+		// Report the write only once the memory has been copied
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(copyAddress, copyLength);
+		}
+	}
+
+	@Override
+	protected void memcpy(int destination, int source, int length, boolean checkOverlap) {
+		if (length <= 0) {
+			return;
+		}
+
+		destination &= addressMask;
+		source &= addressMask;
+        Modules.sceDisplayModule.write(destination);
+		int copyDestination = destination;
+		int copyLength = length;
+
+        if (!checkOverlap || source >= destination || !areOverlapping(destination, source, length)) {
+        	while (length > 0) {
+    			int pageLengthDestination = Math.min(PAGE_SIZE - (destination & PAGE_MASK), length);
+    			int pageLengthSource = Math.min(PAGE_SIZE - (source & PAGE_MASK), length);
+    			int pageLength = Math.min(pageLengthDestination, pageLengthSource);
+    			unsafe.copyMemory(getAddress(source), getWriteAddress(destination), pageLength);
+    			length -= pageLength;
+    			destination += pageLength;
+    			source += pageLength;
+        	}
+        } else {
+        	// Source and destination are overlapping and source < destination,
+        	// copy from the tail, page by page.
+        	destination += length;
+        	source += length;
+        	while (length > 0) {
+        		int pageLengthDestination = Math.min(((destination - 1) & PAGE_MASK) + 1, length);
+        		int pageLengthSource = Math.min(((source - 1) & PAGE_MASK) + 1, length);
+    			int pageLength = Math.min(pageLengthDestination, pageLengthSource);
+    			length -= pageLength;
+    			destination -= pageLength;
+    			source -= pageLength;
+    			unsafe.copyMemory(getAddress(source), getWriteAddress(destination), pageLength);
+        	}
+        }
+
+		// Report the write only once the memory has been copied
+		if (MemoryPageTracker.isEnabled()) {
+			MemoryPageTracker.write(copyDestination, copyLength);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.HLE.kernel.types.IAction;
+
+/**
+ * Wake up the PSP threads blocked on network operations as soon as
+ * their host channels are ready, instead of polling the channels.
+ *
+ * One thread is waiting on a host Selector for all the watched channels.
+ * When a watched channel is ready for one of the requested operations,
+ * the associated action is added to the Scheduler, to be executed immediately
+ * by the emulator thread. A watch is only triggered once: all the watches
+ * of the action are then removed, the action has to watch again the channels
+ * if it has to keep waiting.
+ *
+ * Only the channels created by the default SelectorProvider can be watched
+ * (i.e. not the raw channels).
+ *
+ * A channel is deregistered from the selector as soon as it has no more watches:
+ * the host socket of a closed channel is only released once the channel is
+ * deregistered from all its selectors.
+ */
+public class NetworkReactor {
+	public static Logger log = Logger.getLogger("network");
+	private static final long CHANNEL_CLOSE_TIMEOUT_MILLIS = 100;
+	private static NetworkReactor instance;
+	private Selector selector;
+	private final ConcurrentLinkedQueue<Watch> requests = new ConcurrentLinkedQueue<Watch>();
+	// The keys watched by each action, only accessed by the reactor thread
+	private final Map<IAction, List<SelectionKey>> actionKeys = new HashMap<IAction, List<SelectionKey>>();
+
+	private static class Watch {
+		public final SelectableChannel channel;
+		public final int interestOps;
+		public final IAction action;
+
+		public Watch(SelectableChannel channel, int interestOps, IAction action) {
+			this.channel = channel;
+			this.interestOps = interestOps;
+			this.action = action;
+		}
+
+		public boolean isCancel() {
+			return channel == null;
+		}
+	}
+
+	private class NetworkReactorThread extends Thread {
+		@Override
+		public void run() {
+			while (selector.isOpen()) {
+				try {
+					selector.select();
+				} catch (IOException e) {
+					log.error("NetworkReactorThread", e);
+					break;
+				}
+
+				processRequests();
+
+				for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+					SelectionKey selectionKey = it.next();
+					it.remove();
+					processReadyKey(selectionKey);
+				}
+			}
+		}
+	}
+
+	public static synchronized NetworkReactor getInstance() {
+		if (instance == null) {
+			instance = new NetworkReactor();
+		}
+
+		return instance;
+	}
+
+	private NetworkReactor() {
+		try {
+			selector = Selector.open();
+		} catch (IOException e) {
+			log.error("Cannot open the NetworkReactor selector", e);
+			selector = null;
+			return;
+		}
+
+		NetworkReactorThread thread = new NetworkReactorThread();
+		thread.setName("Network Reactor Thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Watch a channel until it is ready for one of the given operations.
+	 * Can be called from any thread.
+	 *
+	 * @param channel      the non-blocking channel to be watched
+	 * @param interestOps  the SelectionKey operations to be watched
+	 * @param action       the action to be scheduled once the channel is ready
+	 * @return             true if the channel is watched,
+	 *                     false if the channel cannot be watched and has to be polled
+	 */
+	public boolean watch(SelectableChannel channel, int interestOps, IAction action) {
+		// The raw channels are not implemented by the SelectorProvider, they cannot be selected
+		if (selector == null || !(channel instanceof AbstractSelectableChannel) || channel.provider() != selector.provider() || channel.isBlocking()) {
+			return false;
+		}
+
+		interestOps &= channel.validOps();
+		if (interestOps == 0) {
+			return false;
+		}
+
+		requests.add(new Watch(channel, interestOps, action));
+		selector.wakeup();
+
+		return true;
+	}
+
+	/**
+	 * Release a closed channel.
+	 * The host socket of a channel still registered with the reactor selector
+	 * is only released (e.g. its port unbound) when the selector
+	 * is deregistering the channel, i.e. during its next select operation.
+	 * Wake up the reactor thread and wait for the channel to be deregistered,
+	 * so that the socket can be rebound as soon as this method returns.
+	 * Can be called from any thread, except the reactor thread.
+	 *
+	 * @param channel  the channel that has just been closed
+	 */
+	public static void channelClosed(SelectableChannel channel) {
+		NetworkReactor reactor;
+		synchronized (NetworkReactor.class) {
+			reactor = instance;
+		}
+
+		if (reactor == null || reactor.selector == null) {
+			return;
+		}
+
+		long timeout = System.currentTimeMillis() + CHANNEL_CLOSE_TIMEOUT_MILLIS;
+		while (channel.keyFor(reactor.selector) != null && reactor.selector.isOpen()) {
+			reactor.selector.wakeup();
+			if (System.currentTimeMillis() >= timeout) {
+				log.warn(String.format("NetworkReactor: channel %s not yet deregistered", channel));
+				break;
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Remove all the watches of an action.
+	 * Can be called from any thread.
+	 *
+	 * @param action  the action
+	 */
+	public void cancel(IAction action) {
+		if (selector != null) {
+			requests.add(new Watch(null, 0, action));
+			selector.wakeup();
+		}
+	}
+
+	private void processRequests() {
+		for (Watch watch = requests.poll(); watch != null; watch = requests.poll()) {
+			if (watch.isCancel()) {
+				removeWatches(watch.action);
+			} else {
+				addWatch(watch);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Watch> getWatches(SelectionKey selectionKey) {
+		return (List<Watch>) selectionKey.attachment();
+	}
+
+	private void addWatch(Watch watch) {
+		SelectionKey selectionKey = watch.channel.keyFor(selector);
+		try {
+			if (selectionKey != null && !selectionKey.isValid() && watch.channel.isOpen()) {
+				// The key has been cancelled when its last watch has been removed,
+				// it has to be deregistered before registering again the channel
+				selector.selectNow();
+				selectionKey = null;
+			}
+
+			if (selectionKey == null || !selectionKey.isValid()) {
+				selectionKey = watch.channel.register(selector, watch.interestOps, new LinkedList<Watch>());
+			} else {
+				selectionKey.interestOps(selectionKey.interestOps() | watch.interestOps);
+			}
+		} catch (ClosedChannelException e) {
+			// Let the action find out that the channel has been closed
+			trigger(watch.action);
+			return;
+		} catch (CancelledKeyException e) {
+			// The channel has been closed and its key not yet removed from the selector
+			trigger(watch.action);
+			return;
+		} catch (IOException e) {
+			log.error("NetworkReactor addWatch", e);
+			trigger(watch.action);
+			return;
+		}
+
+		getWatches(selectionKey).add(watch);
+
+		List<SelectionKey> keys = actionKeys.get(watch.action);
+		if (keys == null) {
+			keys = new LinkedList<SelectionKey>();
+			actionKeys.put(watch.action, keys);
+		}
+		if (!keys.contains(selectionKey)) {
+			keys.add(selectionKey);
+		}
+	}
+
+	private void removeWatches(IAction action) {
+		List<SelectionKey> keys = actionKeys.remove(action);
+		if (keys == null) {
+			return;
+		}
+
+		for (SelectionKey selectionKey : keys) {
+			List<Watch> watches = getWatches(selectionKey);
+			int interestOps = 0;
+			for (Iterator<Watch> it = watches.iterator(); it.hasNext(); ) {
+				Watch watch = it.next();
+				if (watch.action == action) {
+					it.remove();
+				} else {
+					interestOps |= watch.interestOps;
+				}
+			}
+
+			if (watches.isEmpty()) {
+				// Deregister the channel during the next select operation,
+				// so that its host socket can be released as soon as it is closed
+				selectionKey.cancel();
+			} else if (selectionKey.isValid()) {
+				try {
+					selectionKey.interestOps(interestOps);
+				} catch (CancelledKeyException e) {
+					// Ignore exception
+				}
+			}
+		}
+	}
+
+	private void processReadyKey(SelectionKey selectionKey) {
+		int readyOps;
+		try {
+			readyOps = selectionKey.readyOps();
+		} catch (CancelledKeyException e) {
+			// The channel has been closed, trigger all its watches
+			readyOps = -1;
+		}
+
+		List<Watch> watches = getWatches(selectionKey);
+		IAction[] actions = new IAction[watches.size()];
+		int numberActions = 0;
+		for (Watch watch : watches) {
+			if ((watch.interestOps & readyOps) != 0) {
+				actions[numberActions++] = watch.action;
+			}
+		}
+
+		for (int i = 0; i < numberActions; i++) {
+			// The action might have been already triggered by another of its watches
+			if (actionKeys.containsKey(actions[i])) {
+				trigger(actions[i]);
+			}
+		}
+	}
+
+	private void trigger(IAction action) {
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("NetworkReactor triggering %s", action));
+		}
+
+		removeWatches(action);
+		Emulator.getScheduler().addAction(action);
+	}
+}
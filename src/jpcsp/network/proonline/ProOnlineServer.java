@@ -19,11 +19,14 @@ package jpcsp.network.proonline;
 import static jpcsp.hardware.Wlan.getLocalInetAddress;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -32,21 +35,32 @@ import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlConnectPacketS2C;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlDisconnectPacketS2C;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlPacketBaseC2S;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlPacketBaseS2C;
-import jpcsp.util.Utilities;
 
 import org.apache.log4j.Logger;
 
 /*
  * Ported from ProOnline aemu server
  * https://code.google.com/p/aemu/source/browse/#hg%2Fpspnet_adhocctl_server
+ *
+ * All the user connections are served by one thread waiting on a Selector:
+ * the packets received from the users are processed as soon as they are
+ * available and the packets sent to the users are only queued in their
+ * output buffer. The output buffers are flushed once all the ready users
+ * have been processed, so that the packets broadcast to a group during
+ * one selection are sent with one write per user.
  */
 public class ProOnlineServer {
 	protected static Logger log = ProOnlineNetworkAdapter.log;
 	private static ProOnlineServer instance;
 	private ProOnlineServerThread serverThread;
 	private static final int port = 27312;
-	private ServerSocket serverSocket;
+	// Interval between the checks of the user timeouts, in milliseconds
+	private static final int timeoutCheckInterval = 1000;
+	private Selector selector;
+	private ServerSocketChannel serverSocketChannel;
 	private List<User> users;
+	// The users having packets waiting in their output buffer
+	private final List<User> pendingOutputUsers = new ArrayList<User>();
 	private PacketFactory packetFactory;
 	private User currentUser;
 	private List<Game> games;
@@ -62,11 +76,17 @@ public class ProOnlineServer {
 	private ProOnlineServer() {
 	}
 
+	public int getPort() {
+		return port;
+	}
+
 	private static class User {
-		public Socket socket;
+		public SocketChannel channel;
+		public SelectionKey selectionKey;
 		public long lastReceiveTimestamp;
-		public byte[] buffer = new byte[1000];
-		public int bufferLength = 0;
+		public ByteBuffer inputBuffer = ByteBuffer.allocate(1000);
+		public ByteBuffer outputBuffer = ByteBuffer.allocate(1000);
+		public boolean outputPending;
 		public pspNetMacAddress mac;
 		public String nickName;
 		public Game game;
@@ -74,14 +94,28 @@ public class ProOnlineServer {
 		public int ip;
 		public String ipString;
 
-		public boolean isTimeout() {
-			boolean isTimeout = System.currentTimeMillis() - lastReceiveTimestamp > 15000;
+		public boolean isTimeout(long now) {
+			boolean isTimeout = now - lastReceiveTimestamp > 15000;
 			if (isTimeout) {
-				log.debug(String.format("User timed out now=%d, lastReceiveTimestamp=%d", System.currentTimeMillis(), lastReceiveTimestamp));
+				log.debug(String.format("User timed out now=%d, lastReceiveTimestamp=%d", now, lastReceiveTimestamp));
 			}
 			return isTimeout;
 		}
 
+		public boolean isConnected() {
+			return channel.isOpen();
+		}
+
+		public void addOutput(byte[] bytes) {
+			if (outputBuffer.remaining() < bytes.length) {
+				ByteBuffer newOutputBuffer = ByteBuffer.allocate(Math.max(outputBuffer.capacity() * 2, outputBuffer.position() + bytes.length));
+				outputBuffer.flip();
+				newOutputBuffer.put(outputBuffer);
+				outputBuffer = newOutputBuffer;
+			}
+			outputBuffer.put(bytes);
+		}
+
 		@Override
 		public String toString() {
 			return String.format("%s (MAC: %s - IP: %s)", nickName, mac, ipString);
@@ -115,50 +149,72 @@ public class ProOnlineServer {
 	}
 
 	private class ProOnlineServerThread extends Thread {
-		private boolean exit;
+		private volatile boolean exit;
 
 		@Override
 		public void run() {
 			log.debug(String.format("Starting ProOnlineServerThread"));
+			long lastTimeoutCheck = System.currentTimeMillis();
 			while (!exit) {
 				try {
-					Socket socket = serverSocket.accept();
-					socket.setSoTimeout(1);
-					loginUserStream(socket);
-				} catch (SocketTimeoutException e) {
-					// Ignore timeout
+					selector.select(timeoutCheckInterval);
 				} catch (IOException e) {
-					log.debug("Accept server socket", e);
+					log.error("ProOnlineServerThread select", e);
+					break;
+				}
+
+				if (exit) {
+					break;
 				}
 
-				// Copy the list of users to avoid ConcurrentModificationException
-				List<User> copyUsers = new LinkedList<User>(users);
-				for (User user : copyUsers) {
-					int length = 0;
-					try {
-						InputStream is = user.socket.getInputStream();
-						length = is.read(user.buffer, user.bufferLength, user.buffer.length - user.bufferLength);
-					} catch (SocketTimeoutException e) {
-						// Ignore timeout
-					} catch (IOException e) {
-						log.debug("Receive user socket", e);
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey selectionKey = selectedKeys.next();
+					selectedKeys.remove();
+
+					if (!selectionKey.isValid()) {
+						continue;
 					}
 
-					if (length > 0) {
-						user.bufferLength += length;
-						user.lastReceiveTimestamp = System.currentTimeMillis();
-						processUserStream(user);
-					} else if (length < 0 || user.isTimeout()) {
-						logoutUser(user);
+					if (selectionKey.isAcceptable()) {
+						acceptUsers();
+					} else {
+						User user = (User) selectionKey.attachment();
+						if (selectionKey.isReadable()) {
+							receiveFromUser(user);
+						}
+						if (selectionKey.isValid() && selectionKey.isWritable()) {
+							addPendingOutput(user);
+						}
 					}
 				}
 
-				Utilities.sleep(10);
+				flushPendingOutput();
+
+				long now = System.currentTimeMillis();
+				if (now - lastTimeoutCheck >= timeoutCheckInterval) {
+					lastTimeoutCheck = now;
+					// Copy the list of users to avoid ConcurrentModificationException
+					List<User> copyUsers = new ArrayList<User>(users);
+					for (User user : copyUsers) {
+						if (user.isConnected() && user.isTimeout(now)) {
+							logoutUser(user);
+						}
+					}
+					flushPendingOutput();
+				}
+			}
+
+			try {
+				selector.close();
+			} catch (IOException e) {
+				log.debug("Closing selector", e);
 			}
 		}
 
 		public void exit() {
 			exit = true;
+			selector.wakeup();
 		}
 	}
 
@@ -166,10 +222,14 @@ public class ProOnlineServer {
 		packetFactory = new PacketFactory();
 
 		try {
-			serverSocket = new ServerSocket(port, 50, getLocalInetAddress());
-			serverSocket.setSoTimeout(1);
+			selector = Selector.open();
+			serverSocketChannel = ServerSocketChannel.open();
+			serverSocketChannel.configureBlocking(false);
+			serverSocketChannel.bind(new InetSocketAddress(getLocalInetAddress(), port), 50);
+			serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			log.error(String.format("Server socket at port %d not available: %s", port, e));
+			closeServerSocketChannel();
 			return;
 		}
 
@@ -188,13 +248,17 @@ public class ProOnlineServer {
 			serverThread = null;
 		}
 
-		if (serverSocket != null) {
+		closeServerSocketChannel();
+	}
+
+	private void closeServerSocketChannel() {
+		if (serverSocketChannel != null) {
 			try {
-				serverSocket.close();
+				serverSocketChannel.close();
 			} catch (IOException e) {
 				log.debug("Closing server socket", e);
 			}
-			serverSocket = null;
+			serverSocketChannel = null;
 		}
 	}
 
@@ -208,14 +272,105 @@ public class ProOnlineServer {
 		return ip;
 	}
 
-	private void sendToUser(User user, SceNetAdhocctlPacketBaseS2C packet) throws IOException {
-		OutputStream os = user.socket.getOutputStream();
-		os.write(packet.getBytes());
-		os.flush();
+	private void addPendingOutput(User user) {
+		if (!user.outputPending) {
+			user.outputPending = true;
+			pendingOutputUsers.add(user);
+		}
 	}
 
-	private void loginUserStream(Socket socket) throws IOException {
-		String ip = socket.getInetAddress().getHostAddress();
+	private void sendToUser(User user, byte[] bytes) {
+		if (user.isConnected()) {
+			user.addOutput(bytes);
+			addPendingOutput(user);
+		}
+	}
+
+	private void sendToUser(User user, SceNetAdhocctlPacketBaseS2C packet) {
+		sendToUser(user, packet.getBytes());
+	}
+
+	private void flushPendingOutput() {
+		// Users might be added to the list while flushing,
+		// e.g. when a user is logged out after a write error.
+		for (int i = 0; i < pendingOutputUsers.size(); i++) {
+			User user = pendingOutputUsers.get(i);
+			user.outputPending = false;
+			if (user.isConnected()) {
+				flushOutput(user);
+			}
+		}
+		pendingOutputUsers.clear();
+	}
+
+	private void flushOutput(User user) {
+		user.outputBuffer.flip();
+		try {
+			user.channel.write(user.outputBuffer);
+		} catch (IOException e) {
+			log.debug("Send user socket", e);
+			user.outputBuffer.clear();
+			logoutUser(user);
+			return;
+		}
+		user.outputBuffer.compact();
+
+		// Wait for the socket to be writable again when the output could not be sent completely
+		int interestOps = SelectionKey.OP_READ;
+		if (user.outputBuffer.position() > 0) {
+			interestOps |= SelectionKey.OP_WRITE;
+		}
+		if (user.selectionKey.interestOps() != interestOps) {
+			user.selectionKey.interestOps(interestOps);
+		}
+	}
+
+	private void acceptUsers() {
+		while (true) {
+			SocketChannel channel;
+			try {
+				channel = serverSocketChannel.accept();
+			} catch (IOException e) {
+				log.debug("Accept server socket", e);
+				break;
+			}
+
+			if (channel == null) {
+				break;
+			}
+
+			try {
+				loginUserStream(channel);
+			} catch (IOException e) {
+				log.debug("Accept server socket", e);
+				try {
+					channel.close();
+				} catch (IOException e1) {
+					// Ignore exception
+				}
+			}
+		}
+	}
+
+	private void receiveFromUser(User user) {
+		int length;
+		try {
+			length = user.channel.read(user.inputBuffer);
+		} catch (IOException e) {
+			log.debug("Receive user socket", e);
+			length = -1;
+		}
+
+		if (length > 0) {
+			user.lastReceiveTimestamp = System.currentTimeMillis();
+			processUserStream(user);
+		} else if (length < 0) {
+			logoutUser(user);
+		}
+	}
+
+	private void loginUserStream(SocketChannel channel) throws IOException {
+		String ip = channel.socket().getInetAddress().getHostAddress();
 
 		// Check for duplicated user
 //		for (User user : users) {
@@ -227,23 +382,32 @@ public class ProOnlineServer {
 //			}
 //		}
 
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
 		User user = new User();
-		user.ip = convertIp(socket.getInetAddress().getAddress());
+		user.ip = convertIp(channel.socket().getInetAddress().getAddress());
 		user.ipString = ip;
-		user.socket = socket;
+		user.channel = channel;
 		user.lastReceiveTimestamp = System.currentTimeMillis();
+		user.selectionKey = channel.register(selector, SelectionKey.OP_READ, user);
 		users.add(user);
 
 		log.info(String.format("New Connection from %s", user.ipString));
 	}
 
 	private void logoutUser(User user) {
+		if (!user.isConnected()) {
+			// Already logged out
+			return;
+		}
+
 		if (user.group != null) {
 			disconnectUser(user);
 		}
 
 		try {
-			user.socket.close();
+			user.channel.close();
 		} catch (IOException e) {
 			// Ignore exception
 		}
@@ -267,33 +431,34 @@ public class ProOnlineServer {
 	}
 
 	private void processUserStream(User user) {
-		if (user.bufferLength <= 0) {
-			return;
-		}
-
-		int consumed = 0;
-		SceNetAdhocctlPacketBaseC2S packet = packetFactory.createPacketC2S(null, this, user.buffer, user.bufferLength);
-		if (packet == null) {
-			// Skip the unknown code
-			consumed = 1;
-		} else if (user.bufferLength >= packet.getLength()) {
-			if (log.isDebugEnabled()) {
-				log.debug(String.format("Incoming client packet %s", packet));
-			}
+		// Process all the complete packets received
+		while (user.inputBuffer.position() > 0 && user.isConnected()) {
+			byte[] buffer = user.inputBuffer.array();
+			int bufferLength = user.inputBuffer.position();
+			int consumed;
+			SceNetAdhocctlPacketBaseC2S packet = packetFactory.createPacketC2S(null, this, buffer, bufferLength);
+			if (packet == null) {
+				// Skip the unknown code
+				consumed = 1;
+			} else if (bufferLength >= packet.getLength()) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("Incoming client packet %s", packet));
+				}
 
-			currentUser = user;
-			packet.process();
-			currentUser = null;
+				currentUser = user;
+				packet.process();
+				currentUser = null;
 
-			consumed = packet.getLength();
-		}
+				consumed = packet.getLength();
+			} else {
+				// Wait for the rest of the packet
+				break;
+			}
 
-		if (consumed >= user.bufferLength) {
-			user.bufferLength = 0;
-		} else {
 			// Removed consumed bytes from the buffer
-			user.bufferLength -= consumed;
-			System.arraycopy(user.buffer, consumed, user.buffer, 0, user.bufferLength);
+			user.inputBuffer.flip();
+			user.inputBuffer.position(consumed);
+			user.inputBuffer.compact();
 		}
 	}
 
@@ -327,13 +492,9 @@ public class ProOnlineServer {
 			Group group = user.group;
 			group.players.remove(user);
 
+			byte[] packetBytes = new SceNetAdhocctlDisconnectPacketS2C(user.ip).getBytes();
 			for (User groupUser : group.players) {
-				SceNetAdhocctlDisconnectPacketS2C packet = new SceNetAdhocctlDisconnectPacketS2C(user.ip);
-				try {
-					sendToUser(groupUser, packet);
-				} catch (IOException e) {
-					log.debug("disconnectUser", e);
-				}
+				sendToUser(groupUser, packetBytes);
 			}
 
 			log.info(String.format("%s left %s group %s.", user, user.game.name, group.name));
@@ -364,11 +525,7 @@ public class ProOnlineServer {
 					// Founder of the group is the first player
 					mac = group.players.get(0).mac;
 				}
-				try {
-					sendToUser(currentUser, new PacketFactory.SceNetAdhocctlScanPacketS2C(group.name, mac));
-				} catch (IOException e) {
-					log.debug("processScan", e);
-				}
+				sendToUser(currentUser, new PacketFactory.SceNetAdhocctlScanPacketS2C(group.name, mac));
 			}
 		} else {
 			log.info(String.format("%s attempted to scan for %s groups without disconnecting from %s first.", currentUser, currentUser.game.name, currentUser.group.name));
@@ -379,29 +536,23 @@ public class ProOnlineServer {
 	private void spreadMessage(User fromUser, String message) {
 		// Global notice
 		if (fromUser == null) {
+			byte[] packetBytes = new PacketFactory.SceNetAdhocctlChatPacketS2C(message, "").getBytes();
 			// Iterate players
 			for (User user : users) {
 				// User has access to chat
 				if (user.group != null) {
-					try {
-						sendToUser(user, new PacketFactory.SceNetAdhocctlChatPacketS2C(message, ""));
-					} catch (IOException e) {
-						log.debug("spreadMessage global notice", e);
-					}
+					sendToUser(user, packetBytes);
 				}
 			}
 		} else if (fromUser.group != null) {
 			// User is connected
+			byte[] packetBytes = new PacketFactory.SceNetAdhocctlChatPacketS2C(message, fromUser.nickName).getBytes();
 			int messageCount = 0;
 			for (User user : fromUser.group.players) {
 				// Skip self
 				if (user != fromUser) {
-					try {
-						sendToUser(user, new PacketFactory.SceNetAdhocctlChatPacketS2C(message, fromUser.nickName));
-						messageCount++;
-					} catch (IOException e) {
-						log.debug("spreadMessage", e);
-					}
+					sendToUser(user, packetBytes);
+					messageCount++;
 				}
 			}
 
@@ -434,29 +585,15 @@ public class ProOnlineServer {
 					currentUser.group = new Group(groupName, currentUser.game);
 				}
 
+				byte[] packetBytes = new SceNetAdhocctlConnectPacketS2C(currentUser.nickName, currentUser.mac, currentUser.ip).getBytes();
 				for (User user : currentUser.group.players) {
-					SceNetAdhocctlConnectPacketS2C packet = new SceNetAdhocctlConnectPacketS2C(currentUser.nickName, currentUser.mac, currentUser.ip);
-					try {
-						sendToUser(user, packet);
-					} catch (IOException e) {
-						log.debug("processConnect", e);
-					}
-
-					packet = new SceNetAdhocctlConnectPacketS2C(user.nickName, user.mac, user.ip);
-					try {
-						sendToUser(currentUser, packet);
-					} catch (IOException e) {
-						log.debug("processConnect", e);
-					}
+					sendToUser(user, packetBytes);
+					sendToUser(currentUser, new SceNetAdhocctlConnectPacketS2C(user.nickName, user.mac, user.ip));
 				}
 
 				currentUser.group.players.add(currentUser);
 
-				try {
-					sendToUser(currentUser, new PacketFactory.SceNetAdhocctlConnectBSSIDPacketS2C(currentUser.group.players.get(0).mac));
-				} catch (IOException e) {
-					log.debug("processConnect", e);
-				}
+				sendToUser(currentUser, new PacketFactory.SceNetAdhocctlConnectBSSIDPacketS2C(currentUser.group.players.get(0).mac));
 				log.info(String.format("%s joined %s group '%s'.", currentUser, currentUser.game == null ? "" : currentUser.game.name, currentUser.group.name));
 			} else {
 				// Already connected to another group
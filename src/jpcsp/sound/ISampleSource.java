@@ -25,6 +25,15 @@ public interface ISampleSource {
 	 * @return sample in stereo (lower 16 bits = left, higher 16 bits = right)
 	 */
 	public int getNextSample();
+	/**
+	 * Fill a buffer with the next samples, as if getNextSample() was called
+	 * for each sample, but processing the complete block at once.
+	 *
+	 * @param buffer   the buffer receiving the samples in stereo (see getNextSample())
+	 * @param offset   the index in the buffer of the first sample
+	 * @param length   the number of samples
+	 */
+	public void getNextSamples(int[] buffer, int offset, int length);
 	public void resetToStart();
 	public boolean isEnded();
 }
@@ -98,6 +98,14 @@ public class SampleSourceAtrac3 implements ISampleSource {
 		return sample;
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			buffer[i] = getNextSample();
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		currentSampleIndex = 0;
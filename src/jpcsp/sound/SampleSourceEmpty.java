@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 /**
  * @author gid15
  *
@@ -26,6 +28,11 @@ public class SampleSourceEmpty implements ISampleSource {
 		return 0;
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		Arrays.fill(buffer, offset, offset + length, 0);
+	}
+
 	@Override
 	public void resetToStart() {
 	}
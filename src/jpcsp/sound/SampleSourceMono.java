@@ -38,6 +38,17 @@ public class SampleSourceMono implements ISampleSource {
 		return getSampleStereo(mono, mono);
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		sampleSource.getNextSamples(buffer, offset, length);
+
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			short mono = getSampleLeft(buffer[i]);
+			buffer[i] = getSampleStereo(mono, mono);
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
@@ -57,6 +57,14 @@ public class SampleSourcePCM implements ISampleSource {
 		return memoryReader.readNext();
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			buffer[i] = getNextSample();
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		memoryReader = MemoryReader.getMemoryReader(addr, size, 2);
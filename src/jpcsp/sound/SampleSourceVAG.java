@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
@@ -44,12 +46,15 @@ public class SampleSourceVAG implements ISampleSource {
     private boolean loopMode;
     private int loopStartVAGBlock;
     private boolean loopAtNextVAGBlock;
-    private static final double[][] VAG_f = {
-        {0.0, 0.0},
-        {60.0 / 64.0, 0.0},
-        {115.0 / 64.0, -52.0 / 64.0},
-        {98.0 / 64.0, -55.0 / 64.0},
-        {122.0 / 64.0, -60.0 / 64.0}
+    // Prediction filter coefficients, in 1/64th units.
+    // The integer arithmetic gives the same results as the exact
+    // fractions (e.g. 115.0 / 64.0), as the division truncates toward zero.
+    private static final int[][] VAG_f = {
+        {0, 0},
+        {60, 0},
+        {115, -52},
+        {98, -55},
+        {122, -60}
     };
 
 	public SampleSourceVAG(SoundVoice voice, int address, int size, boolean loopMode) {
@@ -142,8 +147,10 @@ public class SampleSourceVAG implements ISampleSource {
             unpackedSamples[j + 1] = s >> shift_factor;
         }
 
+        final int f0 = VAG_f[predict_nr][0];
+        final int f1 = VAG_f[predict_nr][1];
         for (int j = 0; j < 28; j++) {
-            int sample = (int) (unpackedSamples[j] + hist1 * VAG_f[predict_nr][0] + hist2 * VAG_f[predict_nr][1]);
+            int sample = ((unpackedSamples[j] << 6) + hist1 * f0 + hist2 * f1) / 64;
             hist2 = hist1;
             hist1 = sample;
             if (sample < -32768) {
@@ -184,6 +191,41 @@ public class SampleSourceVAG implements ISampleSource {
 		return sample & 0x0000FFFF;
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		if (log.isTraceEnabled()) {
+			// Keep the detailed tracing of each sample
+			for (int i = 0; i < length; i++) {
+				buffer[offset + i] = getNextSample();
+			}
+			return;
+		}
+
+		int end = offset + length;
+		while (offset < end) {
+			if (sampleIndex >= samples.length) {
+				if (!unpackNextVAGBlock()) {
+					Arrays.fill(buffer, offset, end, 0);
+					break;
+				}
+			}
+
+			// Copy as many samples as possible from the current VAG block
+			int count = Math.min(end - offset, samples.length - sampleIndex);
+			for (int i = 0; i < count; i++) {
+				buffer[offset + i] = samples[sampleIndex + i] & 0x0000FFFF;
+			}
+			offset += count;
+			sampleIndex += count;
+			currentSampleIndex += count;
+
+			if (loopAtNextVAGBlock && sampleIndex >= samples.length) {
+				loopAtNextVAGBlock = false;
+				setSampleIndex(loopStartVAGBlock * 28);
+			}
+		}
+	}
+
 	private void setSampleIndex(int index) {
 		currentSampleIndex = index;
 		currentVAGBlock = index / 28;
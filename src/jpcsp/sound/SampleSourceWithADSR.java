@@ -27,6 +27,8 @@ import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_ENVELOPE_HEIGHT_MAX;
 import static jpcsp.sound.SoundMixer.getSampleLeft;
 import static jpcsp.sound.SoundMixer.getSampleRight;
 
+import java.util.Arrays;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.HLE.modules.sceSasCore;
@@ -42,6 +44,7 @@ public class SampleSourceWithADSR implements ISampleSource {
 	private SoundVoice voice;
 	private EnvelopeState envelopeState;
 	private final boolean tracing;
+	private int[] envelopeHeights = new int[0];
 	private static final int ATTACK_CURVE_STATE  = 0;
 	private static final int DECAY_CURVE_STATE   = 1;
 	private static final int SUSTAIN_CURVE_STATE = 2;
@@ -338,6 +341,64 @@ public class SampleSourceWithADSR implements ISampleSource {
 		return modulatedSample;
 	}
 
+	/**
+	 * Return the next samples, modulated by the ADSR envelope.
+	 * The envelope is computed first for the complete block, so that only
+	 * the samples effectively played are read from the sampleSource.
+	 */
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("SampleSourceWithADSR.getNextSamples length=%d, height=0x%X, state=%d", length, envelopeState.envelopeHeight, envelopeState.curveState));
+		}
+
+		if (!voice.isOn()) {
+			// The voice has been keyed Off, process the Release part of the wave
+			envelopeState.setKeyOff();
+		}
+
+		if (envelopeHeights.length < length) {
+			envelopeHeights = new int[length];
+		}
+
+		int numberSamples = 0;
+		boolean ended = false;
+		while (numberSamples < length) {
+			if (envelopeState.isEnded()) {
+				ended = true;
+				break;
+			}
+			envelopeHeights[numberSamples++] = envelopeState.getNextEnvelopeHeight();
+		}
+
+		if (numberSamples > 0) {
+			sampleSource.getNextSamples(buffer, offset, numberSamples);
+
+			for (int i = 0; i < numberSamples; i++) {
+				int envelopeHeight16 = ((envelopeHeights[i] >> 14) + 1) >> 1;
+				int sample = buffer[offset + i];
+				short modulatedSampleLeft = modulate(getSampleLeft(sample), envelopeHeight16);
+				short modulatedSampleRight = modulate(getSampleRight(sample), envelopeHeight16);
+				int modulatedSample = SoundMixer.getSampleStereo(modulatedSampleLeft, modulatedSampleRight);
+				buffer[offset + i] = modulatedSample;
+
+				if (tracing) {
+					sceSasCore.log.trace(String.format("getNextSamples voice=0x%X, sample=0x%08X, envelopeHeight=0x%08X, modulatedSample=0x%08X", voice.getIndex(), sample, envelopeHeights[i], modulatedSample));
+				}
+			}
+
+			// Store the current envelope height
+			voice.getEnvelope().height = envelopeHeights[numberSamples - 1];
+		}
+
+		if (ended) {
+			// The Release/Sustain has ended, stop playing the voice.
+			// This is done only after reading the samples, as it is keying Off the voice.
+			voice.setPlaying(false);
+			Arrays.fill(buffer, offset + numberSamples, offset + length, 0);
+		}
+	}
+
 	private short modulate(short sample, int envelopeHeight16) {
 		return (short) ((sample * envelopeHeight16 + 0x4000) >> 15);
 	}
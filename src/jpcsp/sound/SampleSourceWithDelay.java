@@ -16,6 +16,8 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
+import java.util.Arrays;
+
 /**
  * @author gid15
  *
@@ -44,6 +46,21 @@ public class SampleSourceWithDelay implements ISampleSource {
 		return sample;
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		if (sampleIndex < delay) {
+			int delayLength = Math.min(length, delay - sampleIndex);
+			Arrays.fill(buffer, offset, offset + delayLength, 0);
+			sampleIndex += delayLength;
+			offset += delayLength;
+			length -= delayLength;
+		}
+
+		if (length > 0) {
+			sampleSource.getNextSamples(buffer, offset, length);
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
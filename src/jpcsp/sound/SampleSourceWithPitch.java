@@ -27,6 +27,7 @@ public class SampleSourceWithPitch implements ISampleSource {
 	private SoundVoice voice;
 	private int pitchRest;
 	private int currentSample;
+	private int[] sourceSamples = new int[0];
 
 	public SampleSourceWithPitch(ISampleSource sampleSource, SoundVoice voice) {
 		this.sampleSource = sampleSource;
@@ -48,6 +49,42 @@ public class SampleSourceWithPitch implements ISampleSource {
 		return currentSample;
 	}
 
+	@Override
+	public void getNextSamples(int[] buffer, int offset, int length) {
+		int pitch = getPitch();
+
+		// Count the number of samples required from the sample source...
+		int numberSourceSamples = 0;
+		int rest = pitchRest;
+		for (int i = 0; i < length; i++) {
+			while (rest <= 0) {
+				numberSourceSamples++;
+				rest += sceSasCore.PSP_SAS_PITCH_BASE;
+			}
+			rest -= pitch;
+		}
+
+		// ... read them at once...
+		if (sourceSamples.length < numberSourceSamples) {
+			sourceSamples = new int[numberSourceSamples];
+		}
+		if (numberSourceSamples > 0) {
+			sampleSource.getNextSamples(sourceSamples, 0, numberSourceSamples);
+		}
+
+		// ... and resample them according to the pitch
+		int sourceIndex = 0;
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			while (pitchRest <= 0) {
+				currentSample = sourceSamples[sourceIndex++];
+				pitchRest += sceSasCore.PSP_SAS_PITCH_BASE;
+			}
+			pitchRest -= pitch;
+			buffer[i] = currentSample;
+		}
+	}
+
 	@Override
 	public void resetToStart() {
 		sampleSource.resetToStart();
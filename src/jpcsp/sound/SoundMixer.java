@@ -20,6 +20,8 @@ import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_OUTPUTMODE_STEREO;
 import static jpcsp.sound.SoundChannel.MAX_VOLUME;
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
 
@@ -32,8 +34,86 @@ import jpcsp.memory.MemoryWriter;
 
 public class SoundMixer {
 	private static Logger log = SoftwareSynthesizer.log;
+	// Minimum number of playing voices before splitting the mixing across the mixer threads
+	private static final int PARALLEL_MIXING_MIN_VOICES = 8;
+	private static final int numberMixerThreads = Math.min(3, Runtime.getRuntime().availableProcessors() - 1);
+	private static final LinkedBlockingQueue<MixerTask> mixerTasksQueue = new LinkedBlockingQueue<MixerTask>();
+	private static boolean mixerThreadsStarted;
+	private static volatile boolean parallelMixing = true;
     private SoundVoice[] voices;
     private SoftwareSynthesizer[] synthesizers;
+    private final ISampleSource[] activeSampleSources;
+    private final int[] activeVoices;
+    private final MixerTask[] mixerTasks;
+    private final MixerTask mainTask;
+    private int[] mixedSamples = new int[0];
+
+    /**
+     * Mix a subset of the playing voices into its own buffer.
+     * Each voice is mixed by only one task during one synthesize call.
+     */
+    private class MixerTask {
+    	private final int[] voiceIndexes = new int[voices.length];
+    	private int numberVoices;
+    	private int[] taskSamples = new int[0];
+    	private int[] voiceSamples = new int[0];
+    	private int samples;
+    	private boolean isStereo;
+    	private CountDownLatch latch;
+
+    	public void init(int samples, boolean isStereo) {
+    		this.samples = samples;
+    		this.isStereo = isStereo;
+    		numberVoices = 0;
+
+    		if (voiceSamples.length < samples) {
+    			voiceSamples = new int[samples];
+    		}
+    	}
+
+    	public void addVoice(int voiceIndex) {
+    		voiceIndexes[numberVoices++] = voiceIndex;
+    	}
+
+    	public int[] getTaskSamples(int length) {
+    		if (taskSamples.length < length) {
+    			taskSamples = new int[length];
+    		} else {
+    			Arrays.fill(taskSamples, 0, length, 0);
+    		}
+
+    		return taskSamples;
+    	}
+
+    	public void mix(int[] mixedSamples) {
+    		for (int i = 0; i < numberVoices; i++) {
+    			mixVoice(mixedSamples, voiceSamples, voiceIndexes[i], samples, isStereo);
+    		}
+    	}
+
+    	public void run() {
+    		try {
+    			mix(getTaskSamples(isStereo ? samples * 2 : samples));
+    		} catch (Exception e) {
+    			log.error("Error while mixing", e);
+    		} finally {
+    			latch.countDown();
+    		}
+    	}
+    }
+
+    private static class MixerThread extends Thread {
+    	@Override
+    	public void run() {
+    		while (true) {
+    			try {
+    				mixerTasksQueue.take().run();
+    			} catch (InterruptedException e) {
+    				// Ignore Exception
+    			}
+    		}
+    	}
+    }
 
     public SoundMixer(SoundVoice[] voices) {
     	this.voices = voices;
@@ -42,6 +122,44 @@ public class SoundMixer {
     	for (int i = 0; i < voices.length; i++) {
     		synthesizers[i] = new SoftwareSynthesizer(voices[i]);
     	}
+
+    	activeSampleSources = new ISampleSource[voices.length];
+    	activeVoices = new int[voices.length];
+    	mainTask = new MixerTask();
+    	mixerTasks = new MixerTask[Math.max(numberMixerThreads, 0)];
+    	for (int i = 0; i < mixerTasks.length; i++) {
+    		mixerTasks[i] = new MixerTask();
+    	}
+    }
+
+    /**
+     * Enable or disable the mixing of the voices in parallel threads.
+     * The mixed samples are identical in both cases.
+     *
+     * @param enabled  true to mix the voices in parallel when enough voices are playing
+     */
+    public static void setParallelMixing(boolean enabled) {
+    	parallelMixing = enabled;
+    }
+
+    private static synchronized void startMixerThreads() {
+    	if (!mixerThreadsStarted) {
+    		for (int i = 0; i < numberMixerThreads; i++) {
+    			Thread thread = new MixerThread();
+    			thread.setName(String.format("Thread SoundMixer #%d", i + 1));
+    			thread.setDaemon(true);
+    			thread.start();
+    		}
+    		mixerThreadsStarted = true;
+    	}
+    }
+
+    private int[] getMixedSamples(int length) {
+    	if (mixedSamples.length < length) {
+    		mixedSamples = new int[length];
+    	}
+
+    	return mixedSamples;
     }
 
     private static short clampSample(int sample) {
@@ -54,27 +172,38 @@ public class SoundMixer {
     	return (short) sample;
     }
 
-    private void mixStereo(int[] stereoSamples, ISampleSource sampleSource, int startIndex, int length, int leftVol, int rightVol) {
-    	int endIndex = startIndex + length;
+    private void mixStereo(int[] stereoSamples, int[] voiceSamples, ISampleSource sampleSource, int startIndex, int length, int leftVol, int rightVol) {
     	if (startIndex == 0) {
     		sampleSource.resetToStart();
     	}
-    	for (int i = startIndex, j = 0; i < endIndex; i++, j += 2) {
-    		int sample = sampleSource.getNextSample();
+    	sampleSource.getNextSamples(voiceSamples, 0, length);
+    	for (int i = 0, j = 0; i < length; i++, j += 2) {
+    		int sample = voiceSamples[i];
     		stereoSamples[j] += SoundChannel.adjustSample(getSampleLeft(sample), leftVol);
     		stereoSamples[j + 1] += SoundChannel.adjustSample(getSampleRight(sample), rightVol);
     	}
     }
 
-    private void mixMono(int[] monoSamples, ISampleSource sampleSource, int startIndex, int length, int monoVol) {
-    	int endIndex = startIndex + length;
+    private void mixMono(int[] monoSamples, int[] voiceSamples, ISampleSource sampleSource, int startIndex, int length, int monoVol) {
     	if (startIndex == 0) {
     		sampleSource.resetToStart();
     	}
-    	for (int i = startIndex, j = 0; i < endIndex; i++, j++) {
-    		int sample = sampleSource.getNextSample();
-    		monoSamples[j] += SoundChannel.adjustSample(getSampleLeft(sample), monoVol);
+    	sampleSource.getNextSamples(voiceSamples, 0, length);
+    	for (int i = 0; i < length; i++) {
+    		monoSamples[i] += SoundChannel.adjustSample(getSampleLeft(voiceSamples[i]), monoVol);
+    	}
+    }
+
+    private void mixVoice(int[] mixedSamples, int[] voiceSamples, int voiceIndex, int samples, boolean isStereo) {
+    	SoundVoice voice = voices[voiceIndex];
+    	ISampleSource sampleSource = activeSampleSources[voiceIndex];
+    	int playSample = voice.getPlaySample();
+    	if (isStereo) {
+    		mixStereo(mixedSamples, voiceSamples, sampleSource, playSample, samples, voice.getLeftVolume(), voice.getRightVolume());
+    	} else {
+    		mixMono(mixedSamples, voiceSamples, sampleSource, playSample, samples, voice.getLeftVolume());
     	}
+    	voice.setPlaySample(1);
     }
 
     private void copyStereoSamplesToMem(int[] mixedSamples, int addr, int samples, int leftVol, int rightVol, boolean writeSamples) {
@@ -90,7 +219,7 @@ public class SoundMixer {
     		}
     	}
 
-    	int lengthInBytes = mixedSamples.length << 1;
+    	int lengthInBytes = samples << 2;
     	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 4);
     	for (int i = 0, j = 0; i < samples; i++, j += 2) {
     		short sampleLeft  = clampSample(mixedSamples[j]);
@@ -115,7 +244,7 @@ public class SoundMixer {
     		}
     	}
 
-    	int lengthInBytes = mixedSamples.length << 1;
+    	int lengthInBytes = samples << 1;
     	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 2);
     	for (int i = 0, j = 0; i < samples; i++, j++) {
     		short sampleMono  = clampSample(mixedSamples[j]);
@@ -128,12 +257,12 @@ public class SoundMixer {
     private void mix(int[] mixedSamples, int addr, int samples, int leftVol, int rightVol, boolean writeSamples) {
     	boolean isStereo = Modules.sceSasCoreModule.getOutputMode() == PSP_SAS_OUTPUTMODE_STEREO;
 
+    	int numberActiveVoices = 0;
     	for (int i = 0; i < voices.length; i++) {
     		SoundVoice voice = voices[i];
 
             if (voice.isPlaying() && !voice.isPaused()) {
             	ISampleSource sampleSource = synthesizers[i].getSampleSource();
-            	int playSample = voice.getPlaySample();
             	if (sampleSource.isEnded()) {
             		// End of voice sample reached
             		if (log.isTraceEnabled()) {
@@ -141,18 +270,23 @@ public class SoundMixer {
             		}
             		voice.setPlaying(false);
             	} else {
-            		if (isStereo) {
-            			mixStereo(mixedSamples, sampleSource, playSample, samples, voice.getLeftVolume(), voice.getRightVolume());
-            		} else {
-            			mixMono(mixedSamples, sampleSource, playSample, samples, voice.getLeftVolume());
-            		}
+            		activeSampleSources[i] = sampleSource;
+            		activeVoices[numberActiveVoices++] = i;
             		writeSamples = true;
-
-            		voice.setPlaySample(1);
             	}
             }
         }
 
+    	if (numberActiveVoices >= PARALLEL_MIXING_MIN_VOICES && mixerTasks.length > 0 && parallelMixing && !log.isTraceEnabled()) {
+    		mixParallel(mixedSamples, numberActiveVoices, samples, isStereo);
+    	} else {
+    		mainTask.init(samples, isStereo);
+    		for (int i = 0; i < numberActiveVoices; i++) {
+    			mainTask.addVoice(activeVoices[i]);
+    		}
+    		mainTask.mix(mixedSamples);
+    	}
+
     	if (isStereo) {
     		copyStereoSamplesToMem(mixedSamples, addr, samples, leftVol, rightVol, writeSamples);
     	} else {
@@ -160,14 +294,71 @@ public class SoundMixer {
     	}
     }
 
+    /**
+     * Mix the playing voices using the mixer threads.
+     * The voices are distributed between the mixer threads and the current thread,
+     * each one mixing into its own buffer. The buffers are then summed up,
+     * giving the same result as a sequential mixing.
+     * The Atrac3 voices are always mixed by the current thread, as the Atrac3
+     * decoder is not thread-safe.
+     */
+    private void mixParallel(int[] mixedSamples, int numberActiveVoices, int samples, boolean isStereo) {
+    	startMixerThreads();
+
+    	int numberTasks = Math.min(mixerTasks.length, numberActiveVoices / (PARALLEL_MIXING_MIN_VOICES / 2));
+    	mainTask.init(samples, isStereo);
+    	for (int i = 0; i < numberTasks; i++) {
+    		mixerTasks[i].init(samples, isStereo);
+    	}
+
+    	// Distribute the voices in a round-robin way
+    	for (int i = 0, task = 0; i < numberActiveVoices; i++) {
+    		int voiceIndex = activeVoices[i];
+    		if (voices[voiceIndex].getAtracId() != null) {
+    			mainTask.addVoice(voiceIndex);
+    		} else {
+    			if (task < numberTasks) {
+    				mixerTasks[task].addVoice(voiceIndex);
+    			} else {
+    				mainTask.addVoice(voiceIndex);
+    			}
+    			task = (task + 1) % (numberTasks + 1);
+    		}
+    	}
+
+    	CountDownLatch latch = new CountDownLatch(numberTasks);
+    	for (int i = 0; i < numberTasks; i++) {
+    		mixerTasks[i].latch = latch;
+    		mixerTasksQueue.add(mixerTasks[i]);
+    	}
+
+    	mainTask.mix(mixedSamples);
+
+    	while (latch.getCount() > 0) {
+    		try {
+    			latch.await();
+    		} catch (InterruptedException e) {
+    			// Ignore Exception
+    		}
+    	}
+
+    	int length = isStereo ? samples * 2 : samples;
+    	for (int i = 0; i < numberTasks; i++) {
+    		int[] taskSamples = mixerTasks[i].taskSamples;
+    		for (int j = 0; j < length; j++) {
+    			mixedSamples[j] += taskSamples[j];
+    		}
+    	}
+    }
+
     /**
      * Synthesizing audio function.
      * @param addr Output address for the PCM data (must be 64-byte aligned).
      * @param samples Number of samples returned.
      */
     public void synthesize(int addr, int samples) {
-    	int[] mixedSamples = new int[samples * 2];
-    	Arrays.fill(mixedSamples, 0);
+    	int[] mixedSamples = getMixedSamples(samples * 2);
+    	Arrays.fill(mixedSamples, 0, samples * 2, 0);
 
     	mix(mixedSamples, addr, samples, MAX_VOLUME, MAX_VOLUME, true);
     }
@@ -182,23 +373,24 @@ public class SoundMixer {
      *                 This volume is not affecting the currently played samples.
      */
     public void synthesizeWithMix(int addr, int samples, int leftVol, int rightVol) {
-    	int[] mixedSamples = new int[samples * 2];
+    	int length = samples * 2;
+    	int[] mixedSamples = getMixedSamples(length);
 
     	// Read the input buffer into mixedSamples.
     	// Check first for simple cases...
     	if (leftVol == 0 && rightVol == 0) {
     		// Do not mix with the input buffer
-    		Arrays.fill(mixedSamples, 0);
+    		Arrays.fill(mixedSamples, 0, length, 0);
     	} else if (leftVol == MAX_VOLUME && rightVol == MAX_VOLUME) {
     		// Mix with the input buffer with no volume change
-	    	int lengthInBytes = mixedSamples.length * 2;
+	    	int lengthInBytes = length * 2;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
-	    	for (int i = 0; i < mixedSamples.length; i++) {
+	    	for (int i = 0; i < length; i++) {
 	    		mixedSamples[i] = (short) memoryReader.readNext();
 	    	}
     	} else {
     		// Mix with the input buffer with a volume adjustment
-	    	int lengthInBytes = mixedSamples.length * 2;
+	    	int lengthInBytes = length * 2;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
 	    	for (int i = 0; i < samples; i++) {
 	    		short sampleLeft = (short) memoryReader.readNext();
@@ -0,0 +1,91 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+/**
+ * Helpers shared by the benchmarks and load tests.
+ */
+public class BenchmarkUtilities {
+	// Number of runs of each implementation before the timing,
+	// to let the JIT compiler compile both of them
+	private static final int WARMUP_RUNS = 3;
+	private static final int TIMED_RUNS = 5;
+
+	public interface IBenchmarkRun {
+		/**
+		 * Run the operations once.
+		 *
+		 * @return a checksum of the results, which has to be identical
+		 *         for both implementations
+		 */
+		public long run();
+	}
+
+	/**
+	 * Time two implementations of the same operations and display their rates.
+	 *
+	 * Both implementations are first warmed up, then they are run alternately
+	 * and the fastest run of each is kept, so that none of them is favored
+	 * by its position or by a garbage collection.
+	 *
+	 * @param name        the name of the benchmark
+	 * @param operations  the number of operations executed by one run
+	 * @param unit        the unit of the operations, e.g. "pixels"
+	 * @param nameA       the name of the first implementation
+	 * @param runA        the first implementation
+	 * @param nameB       the name of the second implementation
+	 * @param runB        the second implementation
+	 */
+	public static void compare(String name, double operations, String unit, String nameA, IBenchmarkRun runA, String nameB, IBenchmarkRun runB) {
+		boolean sameResults = true;
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			if (runA.run() != runB.run()) {
+				sameResults = false;
+			}
+		}
+
+		long durationA = Long.MAX_VALUE;
+		long durationB = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			long checksumA = runA.run();
+			durationA = Math.min(durationA, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			long checksumB = runB.run();
+			durationB = Math.min(durationB, System.nanoTime() - start);
+
+			if (checksumA != checksumB) {
+				sameResults = false;
+			}
+		}
+
+		System.out.println(String.format("%s: %s %.1f M%s/s, %s %.1f M%s/s (%.1fx)%s", name, nameA, operations * 1000.0 / durationA, unit, nameB, operations * 1000.0 / durationB, unit, durationA / (double) durationB, sameResults ? "" : ", FAILED: different results"));
+	}
+
+	/**
+	 * Return a percentile of measured durations (nearest-rank method).
+	 *
+	 * @param sortedNanos  the durations in nanoseconds, sorted in ascending order
+	 * @param percentile   the percentile, e.g. 99.0
+	 * @return             the duration in milliseconds
+	 */
+	public static double getPercentileMillis(long[] sortedNanos, double percentile) {
+		int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+		return sortedNanos[Math.max(index, 0)] / 1000000.0;
+	}
+}
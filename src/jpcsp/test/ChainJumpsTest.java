@@ -0,0 +1,124 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.HeadlessMain;
+import jpcsp.Memory;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.memory.MemorySection;
+import jpcsp.memory.MemorySections;
+
+/**
+ * Check that the chaining of the compiled code blocks across J instructions
+ * (setting "emu.compiler.chainJumps") is not nesting the Java calls
+ * of two code blocks jumping to each other.
+ *
+ * Block A is starting at a higher address than block B, but its J to B
+ * is located at a lower address than B: A is reaching it through
+ * an in-block backward branch. Block B is jumping back to A.
+ * The loop is executed LOOP_COUNT times before returning.
+ */
+public class ChainJumpsTest {
+	private static final int LOOP_COUNT = 0x7FFF;
+	private static final int SECTION_ADDRESS = 0x08900000;
+	private static final int LOOP_ADDRESS = SECTION_ADDRESS + 0x40;
+	private static final int EXIT_ADDRESS = SECTION_ADDRESS + 0x60;
+	private static final int BLOCK_B_ADDRESS = SECTION_ADDRESS + 0x80;
+	private static final int BLOCK_A_ADDRESS = SECTION_ADDRESS + 0x100;
+	private static final int RETURN_ADDRESS = 0x08800010;
+
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.INFO);
+		HeadlessMain.initHeadless();
+
+		new ChainJumpsTest().run();
+	}
+
+	private static int j(int address) {
+		return 0x08000000 | ((address >> 2) & 0x03FFFFFF);
+	}
+
+	private static int beq(int rs, int rt, int pc, int address) {
+		return 0x10000000 | (rs << 21) | (rt << 16) | (((address - (pc + 4)) >> 2) & 0xFFFF);
+	}
+
+	private void write(Memory mem, int address, int... opcodes) {
+		for (int i = 0; i < opcodes.length; i++) {
+			mem.write32(address + (i << 2), opcodes[i]);
+		}
+	}
+
+	public void run() {
+		// Only the processor and the compiler are used
+		new Emulator(null);
+		Memory mem = Memory.getInstance();
+		mem.Initialise();
+		RuntimeContext.initialise();
+		RuntimeContext.cpu = Emulator.getProcessor().cpu;
+
+		// The J targets are in a writable section: they are not compiled
+		// into the same code block, they are chained or dispatched.
+		MemorySections.getInstance().addMemorySection(new MemorySection(SECTION_ADDRESS, 0x1000, true, true, true));
+
+		// LOOP: slti $t0, $v0, LOOP_COUNT
+		//       beq $t0, $zero, EXIT
+		//       nop
+		//       j B
+		//       nop
+		write(mem, LOOP_ADDRESS, 0x28480000 | LOOP_COUNT, beq(8, 0, LOOP_ADDRESS + 4, EXIT_ADDRESS), 0, j(BLOCK_B_ADDRESS), 0);
+		// EXIT: jr $ra
+		//       nop
+		write(mem, EXIT_ADDRESS, 0x03E00008, 0);
+		// B:    j A
+		//       nop
+		write(mem, BLOCK_B_ADDRESS, j(BLOCK_A_ADDRESS), 0);
+		// A:    addiu $v0, $v0, 1
+		//       b LOOP
+		//       nop
+		write(mem, BLOCK_A_ADDRESS, 0x24420001, beq(0, 0, BLOCK_A_ADDRESS + 4, LOOP_ADDRESS), 0);
+
+		RuntimeContext.cpu._v0 = 0;
+		RuntimeContext.cpu._ra = RETURN_ADDRESS;
+
+		boolean success;
+		String result;
+		try {
+			// Same loop as RuntimeContext.jump()
+			int address = BLOCK_A_ADDRESS;
+			while (address != RETURN_ADDRESS) {
+				address = RuntimeContext.getExecutable(address).exec();
+			}
+			success = RuntimeContext.cpu._v0 == LOOP_COUNT;
+			result = String.format("$v0=0x%X, expected 0x%X", RuntimeContext.cpu._v0, LOOP_COUNT);
+		} catch (StackOverflowError e) {
+			success = false;
+			result = "StackOverflowError";
+		} catch (Exception e) {
+			success = false;
+			result = e.toString();
+		}
+
+		System.out.println(String.format("ChainJumpsTest %s: %s", success ? "OK" : "FAILED", result));
+		System.exit(success ? 0 : 1);
+	}
+}
@@ -0,0 +1,249 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.HLE.kernel.managers.MbxManager.PSP_MBX_ATTR_FIFO;
+import static jpcsp.HLE.kernel.managers.MbxManager.PSP_MBX_ATTR_PRIORITY;
+import static jpcsp.HLE.kernel.managers.SemaManager.PSP_SEMA_ATTR_FIFO;
+import static jpcsp.HLE.kernel.managers.SemaManager.PSP_SEMA_ATTR_PRIORITY;
+import static jpcsp.HLE.modules.SysMemUserForUser.USER_PARTITION_ID;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.HeadlessMain;
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.HLE.Modules;
+import jpcsp.HLE.TPointer;
+import jpcsp.HLE.TPointer32;
+import jpcsp.HLE.kernel.Managers;
+import jpcsp.HLE.kernel.managers.SceUidManager;
+import jpcsp.HLE.kernel.types.SceKernelErrors;
+import jpcsp.HLE.kernel.types.SceKernelThreadInfo;
+import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.test.BenchmarkUtilities.IBenchmarkRun;
+import jpcsp.util.IntHashMap;
+
+/**
+ * Benchmark of the kernel objects on a producer/consumer workload,
+ * as found in games streaming data between threads.
+ *
+ * The SemaManager, MbxManager and ThreadManForUser are driven without
+ * executing any PSP code: at each step, the syscall that the current
+ * thread would execute is called directly.
+ * A low priority producer thread is signaling semaphores and sending
+ * messages to message boxes, each of them being shared by several
+ * consumer threads. The consumer threads are waiting on the semaphore
+ * and then receiving from the message box, so that the waiting lists
+ * of both are holding several blocked threads.
+ *
+ * The same workload is run with the FIFO and the priority waiting lists.
+ * The content of an IntHashMap is also checked against a HashMap.
+ */
+public class KernelObjectsBenchmark {
+	private static final int OBJECTS = 4;
+	private static final int CONSUMERS_PER_OBJECT = 4;
+	private static final int CONSUMERS = OBJECTS * CONSUMERS_PER_OBJECT;
+	private static final int PRODUCER_PRIORITY = 0x40;
+	private static final int CONSUMER_PRIORITY = 0x20;
+	private static final int STEPS = 200000;
+	private static final int ROUNDS = 200;
+	private static final int MAP_OBJECTS = 256;
+	private static final int RESULT_ADDRESS = MemoryMap.START_USERSPACE;
+	private static final int MESSAGE_ADDRESS = RESULT_ADDRESS + CONSUMERS * 4;
+	private static final int MESSAGE_SIZE = 16;
+	// The consumer state is stored in the $a1 register of the consumer thread
+	private static final int STATE_WAIT_SEMA = 0;
+	private static final int STATE_RECEIVE_MBX = 1;
+	private final Memory mem = Memory.getInstance();
+	private ThreadManForUser threadMan;
+	private SceKernelThreadInfo producer;
+	private final int[][] semaIds = new int[2][OBJECTS];
+	private final int[][] mbxIds = new int[2][OBJECTS];
+	private int variant;
+	private int nextObject;
+	private boolean nextIsSend;
+	private long checksum;
+
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+		HeadlessMain.initHeadless();
+
+		checkIntHashMap(new Random(0));
+		new KernelObjectsBenchmark().run();
+
+		// The RuntimeThreads started for the PSP threads are not daemon threads
+		System.exit(0);
+	}
+
+	private void run() {
+		// Only the kernel modules are used, no PSP code is executed
+		Emulator emulator = new Emulator(null);
+		emulator.initNewPsp(false);
+		threadMan = Modules.ThreadManForUserModule;
+
+		for (int i = 0; i < OBJECTS; i++) {
+			semaIds[0][i] = Managers.semas.sceKernelCreateSema("FifoSema", PSP_SEMA_ATTR_FIFO, 0, CONSUMERS_PER_OBJECT, TPointer.NULL);
+			semaIds[1][i] = Managers.semas.sceKernelCreateSema("PrioritySema", PSP_SEMA_ATTR_PRIORITY, 0, CONSUMERS_PER_OBJECT, TPointer.NULL);
+			mbxIds[0][i] = Managers.mbx.sceKernelCreateMbx("FifoMbx", PSP_MBX_ATTR_FIFO, TPointer.NULL);
+			mbxIds[1][i] = Managers.mbx.sceKernelCreateMbx("PriorityMbx", PSP_MBX_ATTR_PRIORITY, TPointer.NULL);
+		}
+
+		producer = threadMan.hleKernelCreateThread("Producer", MemoryMap.START_USERSPACE, PRODUCER_PRIORITY, 0x1000, 0, 0, USER_PARTITION_ID);
+		threadMan.hleKernelStartThread(producer, 0, TPointer.NULL, 0);
+		for (int i = 0; i < CONSUMERS; i++) {
+			// Use different priorities, the priority waiting lists have to sort the threads
+			SceKernelThreadInfo consumer = threadMan.hleKernelCreateThread("Consumer", MemoryMap.START_USERSPACE, CONSUMER_PRIORITY + (i % CONSUMERS_PER_OBJECT), 0x1000, 0, 0, USER_PARTITION_ID);
+			consumer.cpuContext._a0 = i;
+			consumer.cpuContext._a1 = STATE_WAIT_SEMA;
+			threadMan.hleKernelStartThread(consumer, 0, TPointer.NULL, 0);
+			// Run the consumer until it is blocked
+			runUntilProducer();
+		}
+
+		IBenchmarkRun fifo = new IBenchmarkRun() {
+			@Override
+			public long run() {
+				return runVariant(0);
+			}
+		};
+
+		IBenchmarkRun priority = new IBenchmarkRun() {
+			@Override
+			public long run() {
+				return runVariant(1);
+			}
+		};
+
+		BenchmarkUtilities.compare(String.format("%d consumers on %d semaphores and message boxes", CONSUMERS, OBJECTS), STEPS, "syscalls", "FIFO waiting lists", fifo, "priority waiting lists", priority);
+	}
+
+	private long runVariant(int newVariant) {
+		if (variant != newVariant) {
+			// Move the consumers to the semaphores of the new variant:
+			// they are all blocked on the semaphores of the previous variant
+			// and are returning ERROR_KERNEL_WAIT_CANCELLED.
+			int previousVariant = variant;
+			variant = newVariant;
+			for (int i = 0; i < OBJECTS; i++) {
+				Managers.semas.sceKernelCancelSema(semaIds[previousVariant][i], 0, TPointer32.NULL);
+				runUntilProducer();
+			}
+		}
+
+		checksum = 0L;
+		for (int i = 0; i < STEPS; i++) {
+			step();
+		}
+
+		return checksum;
+	}
+
+	private void runUntilProducer() {
+		while (threadMan.getCurrentThread() != producer) {
+			step();
+		}
+	}
+
+	/**
+	 * Execute the next syscall of the current thread.
+	 */
+	private void step() {
+		SceKernelThreadInfo thread = threadMan.getCurrentThread();
+		if (thread == producer) {
+			// Signal a semaphore, then send a message to the message box
+			// used by the same consumers, and move to the next object
+			if (nextIsSend) {
+				Managers.mbx.sceKernelSendMbx(mbxIds[variant][nextObject], new TPointer(mem, MESSAGE_ADDRESS + nextObject * MESSAGE_SIZE));
+				nextObject = (nextObject + 1) % OBJECTS;
+			} else {
+				Managers.semas.sceKernelSignalSema(semaIds[variant][nextObject], 1);
+			}
+			nextIsSend = !nextIsSend;
+		} else {
+			int consumer = thread.cpuContext._a0;
+			int object = consumer % OBJECTS;
+			// The message received by the previous syscall, if any
+			checksum += mem.read32(RESULT_ADDRESS + consumer * 4);
+			mem.write32(RESULT_ADDRESS + consumer * 4, 0);
+			if (thread.cpuContext._a1 == STATE_WAIT_SEMA || thread.cpuContext._v0 == SceKernelErrors.ERROR_KERNEL_WAIT_CANCELLED) {
+				thread.cpuContext._a1 = STATE_RECEIVE_MBX;
+				thread.cpuContext._v0 = Managers.semas.sceKernelWaitSema(semaIds[variant][object], 1, TPointer32.NULL);
+			} else {
+				thread.cpuContext._a1 = STATE_WAIT_SEMA;
+				thread.cpuContext._v0 = Managers.mbx.sceKernelReceiveMbx(mbxIds[variant][object], new TPointer32(mem, RESULT_ADDRESS + consumer * 4), TPointer32.NULL);
+			}
+		}
+	}
+
+	private static void checkIntHashMap(Random random) {
+		SceUidManager.reset();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		int errors = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			int[] uids = new int[MAP_OBJECTS];
+			for (int i = 0; i < MAP_OBJECTS; i++) {
+				uids[i] = SceUidManager.getNewUid("ThreadMan-sema");
+			}
+			for (int i = 0; i < MAP_OBJECTS * 4; i++) {
+				int uid = uids[random.nextInt(MAP_OBJECTS)];
+				switch (random.nextInt(3)) {
+					case 0:
+						if (!equals(expected.put(uid, i), map.put(uid, i))) {
+							errors++;
+						}
+						break;
+					case 1:
+						if (!equals(expected.remove(uid), map.remove(uid))) {
+							errors++;
+						}
+						break;
+					default:
+						if (!equals(expected.get(uid), map.get(uid))) {
+							errors++;
+						}
+						break;
+				}
+			}
+			if (expected.size() != map.size()) {
+				errors++;
+			}
+			for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+				if (!equals(entry.getValue(), map.get(entry.getKey().intValue()))) {
+					errors++;
+				}
+			}
+			for (int uid : uids) {
+				SceUidManager.releaseUid(uid, "ThreadMan-sema");
+			}
+		}
+		System.out.println(String.format("IntHashMap: %d rounds, %d errors", ROUNDS, errors));
+	}
+
+	private static boolean equals(Integer a, Integer b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.memory.FastMemory;
+import jpcsp.memory.NativeMemory;
+import jpcsp.memory.UnsafeMemory;
+
+/**
+ * Benchmark of the memory implementations not performing any address checking:
+ * FastMemory (int array on the heap), UnsafeMemory (off-heap, accessed
+ * through sun.misc.Unsafe) and NativeMemory (off-heap, accessed through JNI,
+ * only when the "memory" library is available).
+ * All the implementations are reading the same data, the checksums
+ * displayed for each implementation have to be identical.
+ * FastMemory.copyToMemory() is writing through Memory.getInstance(), its rate
+ * is only meaningful when FastMemory is the memory implementation selected
+ * in the settings.
+ */
+public class MemoryBenchmark {
+	private static final int ADDRESS = MemoryMap.START_USERSPACE;
+	private static final int SIZE = 4 * 1024 * 1024;
+	private static final int ITERATIONS = 20;
+	private static final int COPY_LENGTH = 64 * 1024;
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		// Run twice, the first run is warming up the JIT compiler
+		for (int run = 0; run < 2; run++) {
+			System.out.println(run == 0 ? "Warming up..." : "Results:");
+			benchmark("FastMemory", new FastMemory());
+			benchmark("UnsafeMemory", new UnsafeMemory());
+			try {
+				System.loadLibrary("memory");
+				benchmark("NativeMemory", new NativeMemory());
+			} catch (UnsatisfiedLinkError e) {
+				System.out.println("NativeMemory: the memory library is not available");
+			}
+		}
+	}
+
+	private static double getRate(long duration) {
+		return (double) SIZE * ITERATIONS * 1000000000.0 / duration / (1024 * 1024);
+	}
+
+	private static void benchmark(String name, Memory mem) {
+		if (!mem.allocate()) {
+			System.out.println(String.format("%s: cannot allocate the memory", name));
+			return;
+		}
+		mem.Initialise();
+
+		long checksum = 0L;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset += 4) {
+				mem.write32(ADDRESS + offset, offset * 0x9E3779B9 + i);
+			}
+		}
+		long write32Duration = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset += 4) {
+				checksum += mem.read32(ADDRESS + offset);
+			}
+		}
+		long read32Duration = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset += 2) {
+				checksum += mem.read16(ADDRESS + offset);
+			}
+		}
+		long read16Duration = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset++) {
+				checksum += mem.read8(ADDRESS + offset);
+			}
+		}
+		long read8Duration = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset += COPY_LENGTH) {
+				mem.memcpy(ADDRESS + SIZE + offset, ADDRESS + offset, COPY_LENGTH);
+			}
+		}
+		long memcpyDuration = System.nanoTime() - start;
+		checksum += mem.read32(ADDRESS + SIZE + SIZE - 4);
+
+		ByteBuffer source = ByteBuffer.allocateDirect(COPY_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < COPY_LENGTH; i++) {
+			source.put(i, (byte) i);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			for (int offset = 0; offset < SIZE; offset += COPY_LENGTH) {
+				source.clear();
+				mem.copyToMemory(ADDRESS + offset, source, COPY_LENGTH);
+			}
+		}
+		long copyToMemoryDuration = System.nanoTime() - start;
+
+		System.out.println(String.format("%-12s: write32 %6.0f MB/s, read32 %6.0f MB/s, read16 %6.0f MB/s, read8 %6.0f MB/s, memcpy %6.0f MB/s, copyToMemory %6.0f MB/s, checksum 0x%016X", name, getRate(write32Duration), getRate(read32Duration), getRate(read16Duration), getRate(read8Duration), getRate(memcpyDuration), getRate(copyToMemoryDuration), checksum));
+	}
+}
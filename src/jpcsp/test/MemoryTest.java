@@ -27,6 +27,7 @@ import jpcsp.Memory;
 import jpcsp.MemoryMap;
 import jpcsp.memory.FastMemory;
 import jpcsp.memory.StandardMemory;
+import jpcsp.memory.UnsafeMemory;
 import jpcsp.util.Utilities;
 
 public class MemoryTest {
@@ -63,6 +64,13 @@ public class MemoryTest {
 		} else {
 			TestMemory(new FastMemory(), "FastMemory");
 		}
+
+		// Test UnsafeMemory implementation
+		if (mem instanceof UnsafeMemory) {
+			TestMemory(mem, "UnsafeMemory");
+		} else {
+			TestMemory(new UnsafeMemory(), "UnsafeMemory");
+		}
 	}
 
 	public void log(String s) {
@@ -0,0 +1,186 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.test.BenchmarkUtilities.getPercentileMillis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Emulator;
+import jpcsp.HLE.kernel.types.IAction;
+import jpcsp.autotests.AutoTestsRunner;
+import jpcsp.network.NetworkReactor;
+import jpcsp.scheduler.Scheduler;
+
+/**
+ * Round-trip latency of a blocked receive against a local echo server,
+ * when the blocked operation is polled by the Scheduler every 10ms
+ * (as done by sceNetInet for the channels that cannot be watched)
+ * and when it is woken up by the NetworkReactor.
+ *
+ * The emulator thread is simulated by a loop executing the Scheduler actions
+ * and sleeping at most 1ms while idle.
+ */
+public class NetworkReactorBenchmark {
+	private static final int ROUND_TRIPS = 200;
+	private static final int MESSAGE_LENGTH = 64;
+	private static final int POLLING_MICROS = 10000;
+	private static final int IDLE_SLEEP_MICROS = 1000;
+	private SocketChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_LENGTH);
+	private boolean useReactor;
+	private volatile boolean received;
+	private int wakeups;
+
+	private class BlockedReceiveAction implements IAction {
+		@Override
+		public void execute() {
+			wakeups++;
+			try {
+				if (channel.read(buffer) > 0 && !buffer.hasRemaining()) {
+					received = true;
+					return;
+				}
+			} catch (IOException e) {
+				System.out.println(String.format("Receive: %s", e));
+				received = true;
+				return;
+			}
+
+			// Keep blocking
+			if (useReactor) {
+				NetworkReactor.getInstance().watch(channel, SelectionKey.OP_READ, this);
+			} else {
+				Emulator.getScheduler().addAction(Emulator.getClock().microTime() + POLLING_MICROS, this);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		DOMConfigurator.configure("LogSettings.xml");
+		new Emulator(new AutoTestsRunner.DummyGUI());
+		Emulator.getClock().resume();
+		Emulator.getScheduler().reset();
+
+		final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread echoThread = new Thread() {
+			@Override
+			public void run() {
+				echo(serverSocket);
+			}
+		};
+		echoThread.setName("Echo Server");
+		echoThread.setDaemon(true);
+		echoThread.start();
+
+		NetworkReactorBenchmark benchmark = new NetworkReactorBenchmark();
+		benchmark.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+		benchmark.channel.socket().setTcpNoDelay(true);
+		benchmark.channel.configureBlocking(false);
+
+		// Warm up both implementations before measuring
+		benchmark.run(false, ROUND_TRIPS / 10);
+		benchmark.run(true, ROUND_TRIPS / 10);
+		benchmark.report("Polling every 10ms", benchmark.run(false, ROUND_TRIPS));
+		benchmark.report("NetworkReactor", benchmark.run(true, ROUND_TRIPS));
+
+		benchmark.channel.close();
+		serverSocket.close();
+	}
+
+	private static void echo(ServerSocket serverSocket) {
+		try {
+			Socket socket = serverSocket.accept();
+			socket.setTcpNoDelay(true);
+			InputStream is = socket.getInputStream();
+			OutputStream os = socket.getOutputStream();
+			byte[] bytes = new byte[MESSAGE_LENGTH];
+			while (true) {
+				int length = is.read(bytes);
+				if (length < 0) {
+					break;
+				}
+				os.write(bytes, 0, length);
+				os.flush();
+			}
+			socket.close();
+		} catch (IOException e) {
+			// The benchmark is completed
+		}
+	}
+
+	private long[] run(boolean useReactor, int roundTrips) throws IOException {
+		this.useReactor = useReactor;
+		wakeups = 0;
+		Scheduler scheduler = Emulator.getScheduler();
+		BlockedReceiveAction action = new BlockedReceiveAction();
+		long[] latencies = new long[roundTrips];
+		for (int i = 0; i < roundTrips; i++) {
+			long start = System.nanoTime();
+			ByteBuffer message = ByteBuffer.allocate(MESSAGE_LENGTH);
+			while (message.hasRemaining()) {
+				channel.write(message);
+			}
+
+			buffer.clear();
+			received = false;
+			// First receive attempt, as done by sceNetInetRecv
+			action.execute();
+
+			// Simulated emulator thread
+			while (!received) {
+				scheduler.step();
+				if (!received) {
+					long delay = scheduler.getNextActionDelay(IDLE_SLEEP_MICROS);
+					if (delay > 0) {
+						long sleepMicros = Math.min(delay, IDLE_SLEEP_MICROS);
+						try {
+							Thread.sleep(sleepMicros / 1000, (int) (sleepMicros % 1000) * 1000);
+						} catch (InterruptedException e) {
+							// Ignore exception
+						}
+					}
+				}
+			}
+			latencies[i] = System.nanoTime() - start;
+		}
+
+		return latencies;
+	}
+
+	private void report(String name, long[] latencies) {
+		long[] sortedLatencies = Arrays.copyOf(latencies, latencies.length);
+		Arrays.sort(sortedLatencies);
+		long sum = 0L;
+		for (long latency : latencies) {
+			sum += latency;
+		}
+		System.out.println(String.format("%-18s: round trip average %.3f ms, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, %.1f receive attempts per round trip", name, sum / 1000000.0 / latencies.length, getPercentileMillis(sortedLatencies, 50.0), getPercentileMillis(sortedLatencies, 90.0), getPercentileMillis(sortedLatencies, 99.0), wakeups / (double) latencies.length));
+	}
+}
@@ -0,0 +1,284 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.test.BenchmarkUtilities.getPercentileMillis;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.network.proonline.ProOnlineServer;
+
+/**
+ * Load test of the ProOnline server: simulated clients are connecting
+ * to the server over the loopback interface, are joining groups and are
+ * sending chat messages to their group. The latency between the sending
+ * of a message and its reception by the other members of the group is
+ * measured and its percentiles are reported.
+ *
+ * Usage: ProOnlineServerLoadTest [clients [groupSize [messagesPerClient [intervalMillis]]]]
+ */
+public class ProOnlineServerLoadTest {
+	private static final int OPCODE_LOGIN = 1;
+	private static final int OPCODE_CONNECT = 2;
+	private static final int OPCODE_DISCONNECT = 3;
+	private static final int OPCODE_SCAN = 4;
+	private static final int OPCODE_SCAN_COMPLETE = 5;
+	private static final int OPCODE_CONNECT_BSSID = 6;
+	private static final int OPCODE_CHAT = 7;
+	private static final int MAC_ADDRESS_LENGTH = 6;
+	private static final int NICK_NAME_LENGTH = 128;
+	private static final int GROUP_NAME_LENGTH = 8;
+	private static final int ADHOC_ID_LENGTH = 9;
+	private static final int CHAT_MESSAGE_LENGTH = 64;
+	private static final String GAME_NAME = "ULUS99999";
+	private static final long TIMEOUT_MILLIS = 60000;
+	private final Selector selector;
+	private final Client[] clients;
+	private volatile int connectedClients;
+	private volatile int receivedMessages;
+	private long[] latencies;
+
+	private static class Client {
+		public SocketChannel channel;
+		public ByteBuffer inputBuffer = ByteBuffer.allocate(4096);
+		public boolean connected;
+	}
+
+	public static void main(String[] args) throws Exception {
+		DOMConfigurator.configure("LogSettings.xml");
+		// Do not log each connection and chat message
+		Logger.getLogger("ProOnline").setLevel(Level.WARN);
+
+		int numberClients = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int groupSize = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int messagesPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+		int intervalMillis = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+		ProOnlineServer server = ProOnlineServer.getInstance();
+		server.start();
+
+		ProOnlineServerLoadTest loadTest = new ProOnlineServerLoadTest(numberClients);
+		try {
+			loadTest.run(server.getPort(), groupSize, messagesPerClient, intervalMillis);
+		} finally {
+			loadTest.close();
+			server.exit();
+		}
+	}
+
+	private ProOnlineServerLoadTest(int numberClients) throws IOException {
+		selector = Selector.open();
+		clients = new Client[numberClients];
+	}
+
+	private void run(int port, int groupSize, int messagesPerClient, int intervalMillis) throws Exception {
+		InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		for (int i = 0; i < clients.length; i++) {
+			Client client = new Client();
+			client.channel = SocketChannel.open(serverAddress);
+			client.channel.socket().setTcpNoDelay(true);
+			client.channel.configureBlocking(false);
+			client.channel.register(selector, SelectionKey.OP_READ, client);
+			clients[i] = client;
+		}
+
+		// Each message is received by all the other members of the sender's group
+		long expectedMessages = 0;
+		for (int i = 0; i < clients.length; i++) {
+			int groupStart = i - i % groupSize;
+			expectedMessages += (long) messagesPerClient * (Math.min(groupStart + groupSize, clients.length) - groupStart - 1);
+		}
+		latencies = new long[(int) expectedMessages];
+
+		Thread receiveThread = new Thread() {
+			@Override
+			public void run() {
+				receive();
+			}
+		};
+		receiveThread.setName("ProOnlineServerLoadTest Receive Thread");
+		receiveThread.setDaemon(true);
+		receiveThread.start();
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < clients.length; i++) {
+			ByteBuffer login = ByteBuffer.allocate(1 + MAC_ADDRESS_LENGTH + NICK_NAME_LENGTH + ADHOC_ID_LENGTH);
+			login.put((byte) OPCODE_LOGIN);
+			login.put(new byte[] { 0x02, 0x00, 0x00, 0x00, (byte) (i >> 8), (byte) i });
+			putString(login, String.format("Client%d", i), NICK_NAME_LENGTH);
+			putString(login, GAME_NAME, ADHOC_ID_LENGTH);
+			send(clients[i], login);
+
+			ByteBuffer connect = ByteBuffer.allocate(1 + GROUP_NAME_LENGTH);
+			connect.put((byte) OPCODE_CONNECT);
+			putString(connect, String.format("G%d", i / groupSize), GROUP_NAME_LENGTH);
+			send(clients[i], connect);
+		}
+		while (connectedClients < clients.length) {
+			if (System.currentTimeMillis() - start > TIMEOUT_MILLIS) {
+				System.out.println(String.format("Timeout: only %d clients out of %d have joined their group", connectedClients, clients.length));
+				return;
+			}
+			Thread.sleep(1);
+		}
+		System.out.println(String.format("%d clients joined %d groups in %d ms", clients.length, (clients.length + groupSize - 1) / groupSize, System.currentTimeMillis() - start));
+
+		start = System.currentTimeMillis();
+		for (int n = 0; n < messagesPerClient; n++) {
+			for (int i = 0; i < clients.length; i++) {
+				ByteBuffer chat = ByteBuffer.allocate(1 + CHAT_MESSAGE_LENGTH);
+				chat.put((byte) OPCODE_CHAT);
+				putString(chat, Long.toString(System.nanoTime()), CHAT_MESSAGE_LENGTH);
+				send(clients[i], chat);
+			}
+			if (intervalMillis > 0) {
+				Thread.sleep(intervalMillis);
+			}
+		}
+		while (receivedMessages < latencies.length) {
+			if (System.currentTimeMillis() - start > TIMEOUT_MILLIS) {
+				System.out.println(String.format("Timeout: only %d messages out of %d have been received", receivedMessages, latencies.length));
+				break;
+			}
+			Thread.sleep(1);
+		}
+		long duration = System.currentTimeMillis() - start;
+
+		int count = receivedMessages;
+		long[] sortedLatencies = Arrays.copyOf(latencies, count);
+		Arrays.sort(sortedLatencies);
+		System.out.println(String.format("%d messages received in %d ms (%d clients, groups of %d, %d messages per client, every %d ms)", count, duration, clients.length, groupSize, messagesPerClient, intervalMillis));
+		if (count > 0) {
+			System.out.println(String.format("Latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms", getPercentileMillis(sortedLatencies, 50.0), getPercentileMillis(sortedLatencies, 90.0), getPercentileMillis(sortedLatencies, 99.0), getPercentileMillis(sortedLatencies, 99.9), sortedLatencies[count - 1] / 1000000.0));
+		}
+	}
+
+	private static void putString(ByteBuffer buffer, String s, int length) {
+		for (int i = 0; i < length; i++) {
+			buffer.put((byte) (i < s.length() ? s.charAt(i) : 0));
+		}
+	}
+
+	private static String getString(ByteBuffer buffer, int offset, int length) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(offset + i);
+			if (b == 0) {
+				break;
+			}
+			s.append((char) b);
+		}
+
+		return s.toString();
+	}
+
+	private static void send(Client client, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			if (client.channel.write(buffer) == 0) {
+				Thread.yield();
+			}
+		}
+	}
+
+	private static int getPacketLength(int opcode) {
+		switch (opcode) {
+			case OPCODE_CONNECT:       return 1 + NICK_NAME_LENGTH + MAC_ADDRESS_LENGTH + 4;
+			case OPCODE_DISCONNECT:    return 1 + 4;
+			case OPCODE_SCAN:          return 1 + GROUP_NAME_LENGTH + MAC_ADDRESS_LENGTH;
+			case OPCODE_SCAN_COMPLETE: return 1;
+			case OPCODE_CONNECT_BSSID: return 1 + MAC_ADDRESS_LENGTH;
+			case OPCODE_CHAT:          return 1 + CHAT_MESSAGE_LENGTH + NICK_NAME_LENGTH;
+		}
+		// Ping or unknown opcode
+		return 1;
+	}
+
+	private void receive() {
+		while (selector.isOpen()) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey selectionKey = selectedKeys.next();
+					selectedKeys.remove();
+					Client client = (Client) selectionKey.attachment();
+					if (client.channel.read(client.inputBuffer) < 0) {
+						selectionKey.cancel();
+						continue;
+					}
+					processPackets(client, System.nanoTime());
+				}
+			} catch (IOException e) {
+				System.out.println(String.format("Receive: %s", e));
+				break;
+			} catch (RuntimeException e) {
+				// The selector has been closed
+				break;
+			}
+		}
+	}
+
+	private void processPackets(Client client, long now) {
+		ByteBuffer buffer = client.inputBuffer;
+		int offset = 0;
+		while (offset < buffer.position()) {
+			int opcode = buffer.get(offset);
+			int length = getPacketLength(opcode);
+			if (offset + length > buffer.position()) {
+				break;
+			}
+
+			if (opcode == OPCODE_CONNECT_BSSID && !client.connected) {
+				client.connected = true;
+				connectedClients++;
+			} else if (opcode == OPCODE_CHAT) {
+				long sent = Long.parseLong(getString(buffer, offset + 1, CHAT_MESSAGE_LENGTH));
+				if (receivedMessages < latencies.length) {
+					latencies[receivedMessages] = now - sent;
+					receivedMessages++;
+				}
+			}
+			offset += length;
+		}
+
+		buffer.flip();
+		buffer.position(offset);
+		buffer.compact();
+	}
+
+	private void close() throws IOException {
+		selector.close();
+		for (Client client : clients) {
+			if (client != null) {
+				client.channel.close();
+			}
+		}
+	}
+}
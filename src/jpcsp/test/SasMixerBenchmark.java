@@ -0,0 +1,226 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_ENVELOPE_FREQ_MAX;
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_ENVELOPE_HEIGHT_MAX;
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_GRAIN_SAMPLES;
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_LOOP_MODE_ON;
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_PITCH_BASE;
+import static jpcsp.HLE.modules.sceSasCore.PSP_SAS_VOICES_MAX;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.memory.IMemoryWriter;
+import jpcsp.memory.MemoryWriter;
+import jpcsp.sound.ISampleSource;
+import jpcsp.sound.SoftwareSynthesizer;
+import jpcsp.sound.SoundChannel;
+import jpcsp.sound.SoundMixer;
+import jpcsp.sound.SoundVoice;
+import jpcsp.test.BenchmarkUtilities.IBenchmarkRun;
+
+/**
+ * Benchmark of the SAS software mixer: 32 looping VAG voices are synthesized
+ * with a sequential and with a parallel mixing.
+ * The output of both mixing modes is also compared.
+ *
+ * As a baseline, the block mixing of the SoundMixer is also compared to
+ * a mixing reading the voices one sample at a time, as the SoundMixer
+ * was doing before.
+ */
+public class SasMixerBenchmark {
+	private static final int NUMBER_VAG_BLOCKS = 256;
+	private static final int VAG_SIZE = NUMBER_VAG_BLOCKS * 16;
+	private static final int VAG_ADDRESS = MemoryMap.START_USERSPACE;
+	private static final int OUTPUT_ADDRESS = VAG_ADDRESS + PSP_SAS_VOICES_MAX * VAG_SIZE;
+	private static final int WARMUP_ITERATIONS = 2000;
+	private static final int ITERATIONS = 20000;
+	private static final int BASELINE_GRAINS = 1000;
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		final Memory mem = Memory.getInstance();
+		writeVAGs(mem);
+
+		SoundMixer.setParallelMixing(false);
+		BenchmarkUtilities.compare("SAS mixing", BASELINE_GRAINS * PSP_SAS_GRAIN_SAMPLES * PSP_SAS_VOICES_MAX, "samples", "per-sample", new IBenchmarkRun() {
+			@Override
+			public long run() {
+				return runPerSample(mem);
+			}
+		}, "block", new IBenchmarkRun() {
+			@Override
+			public long run() {
+				return runBlock(mem);
+			}
+		});
+
+		long checksumSequential = run(mem, false);
+		long checksumParallel = run(mem, true);
+
+		if (checksumSequential == checksumParallel) {
+			System.out.println(String.format("Sequential and parallel mixing are identical (checksum 0x%016X)", checksumSequential));
+		} else {
+			System.out.println(String.format("FAILED: sequential mixing checksum 0x%016X, parallel mixing checksum 0x%016X", checksumSequential, checksumParallel));
+		}
+	}
+
+	private static void writeVAGs(Memory mem) {
+		Random random = new Random(0);
+		for (int voice = 0; voice < PSP_SAS_VOICES_MAX; voice++) {
+			int address = VAG_ADDRESS + voice * VAG_SIZE;
+			for (int block = 0; block < NUMBER_VAG_BLOCKS; block++) {
+				int predictNr = random.nextInt(5);
+				int shiftFactor = 4 + random.nextInt(8);
+				int flag = 0x00;
+				if (block == 0) {
+					flag = 0x06; // Loop start
+				} else if (block == NUMBER_VAG_BLOCKS - 1) {
+					flag = 0x03; // Loop end
+				}
+				mem.write8(address++, (byte) ((predictNr << 4) | shiftFactor));
+				mem.write8(address++, (byte) flag);
+				for (int i = 0; i < 14; i++) {
+					mem.write8(address++, (byte) random.nextInt(256));
+				}
+			}
+		}
+	}
+
+	private static SoundVoice[] createVoices() {
+		SoundVoice[] voices = new SoundVoice[PSP_SAS_VOICES_MAX];
+		for (int i = 0; i < voices.length; i++) {
+			SoundVoice voice = new SoundVoice(i);
+			voice.setVAG(VAG_ADDRESS + i * VAG_SIZE, VAG_SIZE);
+			voice.setLoopMode(PSP_SAS_LOOP_MODE_ON);
+			// Mix of pitches below and above the base pitch
+			voice.setPitch(PSP_SAS_PITCH_BASE / 2 + i * (PSP_SAS_PITCH_BASE / 16));
+			voice.setLeftVolume(0x1000 / PSP_SAS_VOICES_MAX);
+			voice.setRightVolume(0x1000 / PSP_SAS_VOICES_MAX);
+			voice.getEnvelope().AttackRate = PSP_SAS_ENVELOPE_FREQ_MAX;
+			voice.getEnvelope().SustainLevel = PSP_SAS_ENVELOPE_HEIGHT_MAX;
+			voice.on();
+			voices[i] = voice;
+		}
+
+		return voices;
+	}
+
+	private static SoundMixer createMixer() {
+		return new SoundMixer(createVoices());
+	}
+
+	private static long checksum(Memory mem) {
+		long checksum = 0L;
+		for (int i = 0; i < PSP_SAS_GRAIN_SAMPLES; i++) {
+			checksum = checksum * 31 + mem.read32(OUTPUT_ADDRESS + (i << 2));
+		}
+
+		return checksum;
+	}
+
+	private static long runBlock(Memory mem) {
+		SoundMixer mixer = createMixer();
+
+		long checksum = 0L;
+		for (int i = 0; i < BASELINE_GRAINS; i++) {
+			mixer.synthesize(OUTPUT_ADDRESS, PSP_SAS_GRAIN_SAMPLES);
+			checksum = checksum * 31 + checksum(mem);
+		}
+
+		return checksum;
+	}
+
+	/**
+	 * Mix the voices by reading them one sample at a time
+	 * through ISampleSource.getNextSample().
+	 */
+	private static long runPerSample(Memory mem) {
+		SoundVoice[] voices = createVoices();
+		SoftwareSynthesizer[] synthesizers = new SoftwareSynthesizer[voices.length];
+		for (int i = 0; i < voices.length; i++) {
+			synthesizers[i] = new SoftwareSynthesizer(voices[i]);
+		}
+		int[] mixedSamples = new int[PSP_SAS_GRAIN_SAMPLES * 2];
+
+		long checksum = 0L;
+		for (int grain = 0; grain < BASELINE_GRAINS; grain++) {
+			Arrays.fill(mixedSamples, 0);
+			for (int i = 0; i < voices.length; i++) {
+				SoundVoice voice = voices[i];
+				ISampleSource sampleSource = synthesizers[i].getSampleSource();
+				if (voice.getPlaySample() == 0) {
+					sampleSource.resetToStart();
+				}
+				int leftVol = voice.getLeftVolume();
+				int rightVol = voice.getRightVolume();
+				for (int j = 0; j < mixedSamples.length; j += 2) {
+					int sample = sampleSource.getNextSample();
+					mixedSamples[j] += SoundChannel.adjustSample(SoundMixer.getSampleLeft(sample), leftVol);
+					mixedSamples[j + 1] += SoundChannel.adjustSample(SoundMixer.getSampleRight(sample), rightVol);
+				}
+				voice.setPlaySample(1);
+			}
+
+			IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(OUTPUT_ADDRESS, PSP_SAS_GRAIN_SAMPLES << 2, 4);
+			for (int j = 0; j < mixedSamples.length; j += 2) {
+				memoryWriter.writeNext(SoundMixer.getSampleStereo(clampSample(mixedSamples[j]), clampSample(mixedSamples[j + 1])));
+			}
+			memoryWriter.flush();
+
+			checksum = checksum * 31 + checksum(mem);
+		}
+
+		return checksum;
+	}
+
+	private static short clampSample(int sample) {
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+	}
+
+	private static long run(Memory mem, boolean parallelMixing) {
+		SoundMixer.setParallelMixing(parallelMixing);
+		SoundMixer mixer = createMixer();
+
+		long checksum = 0L;
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			mixer.synthesize(OUTPUT_ADDRESS, PSP_SAS_GRAIN_SAMPLES);
+			checksum = checksum * 31 + checksum(mem);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			mixer.synthesize(OUTPUT_ADDRESS, PSP_SAS_GRAIN_SAMPLES);
+		}
+		long end = System.nanoTime();
+
+		double durationMillis = (end - start) / 1000000.0;
+		double grainMicros = (end - start) / 1000.0 / ITERATIONS;
+		// One grain is 256 samples at 44100Hz, i.e. 5.8ms of audio
+		double realTimeFactor = (PSP_SAS_GRAIN_SAMPLES * 1000000.0 / 44100.0) / grainMicros;
+		System.out.println(String.format("%s mixing: %d grains of %d voices in %.1f ms, %.1f us per grain (%.0fx real-time)", parallelMixing ? "Parallel" : "Sequential", ITERATIONS, PSP_SAS_VOICES_MAX, durationMillis, grainMicros, realTimeFactor));
+
+		return checksum;
+	}
+}
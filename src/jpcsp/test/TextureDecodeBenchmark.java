@@ -0,0 +1,191 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.graphics.GeCommands.CMODE_FORMAT_16BIT_ABGR4444;
+import static jpcsp.graphics.GeCommands.CMODE_FORMAT_16BIT_ABGR5551;
+import static jpcsp.graphics.GeCommands.CMODE_FORMAT_16BIT_BGR5650;
+import static jpcsp.graphics.GeCommands.CMODE_FORMAT_32BIT_ABGR8888;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR4444;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR5551;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_16BIT_BGR5650;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_16BIT_INDEXED;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_INDEXED;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_4BIT_INDEXED;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_8BIT_INDEXED;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_DXT1;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_DXT3;
+import static jpcsp.graphics.GeCommands.TPSM_PIXEL_STORAGE_MODE_DXT5;
+
+import java.util.Random;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.ImageReader;
+import jpcsp.test.BenchmarkUtilities.IBenchmarkRun;
+
+/**
+ * Benchmark of the texture decoding: the pixels returned by the chain
+ * of decoders (ImageReader.getImageReader()) are compared with the pixels
+ * returned by the bulk decoding (ImageReader.readImage()) for all the
+ * texture formats, and the throughput of both is measured.
+ */
+public class TextureDecodeBenchmark {
+	private static final int IMAGE_ADDRESS = MemoryMap.START_USERSPACE;
+	private static final int IMAGE_MAX_SIZE = 1024 * 1024;
+	private static final int CLUT_ADDRESS = IMAGE_ADDRESS + IMAGE_MAX_SIZE;
+	private static final int ITERATIONS = 50;
+	private static final int[] pixelFormats = {
+		TPSM_PIXEL_STORAGE_MODE_16BIT_BGR5650,
+		TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR5551,
+		TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR4444,
+		TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888,
+		TPSM_PIXEL_STORAGE_MODE_4BIT_INDEXED,
+		TPSM_PIXEL_STORAGE_MODE_8BIT_INDEXED,
+		TPSM_PIXEL_STORAGE_MODE_16BIT_INDEXED,
+		TPSM_PIXEL_STORAGE_MODE_32BIT_INDEXED,
+		TPSM_PIXEL_STORAGE_MODE_DXT1,
+		TPSM_PIXEL_STORAGE_MODE_DXT3,
+		TPSM_PIXEL_STORAGE_MODE_DXT5
+	};
+	private static final int[] clutModes = {
+		CMODE_FORMAT_16BIT_BGR5650,
+		CMODE_FORMAT_16BIT_ABGR5551,
+		CMODE_FORMAT_16BIT_ABGR4444,
+		CMODE_FORMAT_32BIT_ABGR8888
+	};
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		Memory mem = Memory.getInstance();
+		Random random = new Random(0);
+		for (int i = 0; i < IMAGE_MAX_SIZE + 1024; i += 4) {
+			mem.write32(IMAGE_ADDRESS + i, random.nextInt());
+		}
+
+		// Compare first when reading through the memory buffers,
+		// then when reading directly from the memory int array, as done by the emulator
+		compareAll(random);
+		RuntimeContext.updateMemory();
+		compareAll(random);
+
+		benchmark("swizzled CLUT4", TPSM_PIXEL_STORAGE_MODE_4BIT_INDEXED, true, CMODE_FORMAT_16BIT_ABGR5551);
+		benchmark("swizzled CLUT8", TPSM_PIXEL_STORAGE_MODE_8BIT_INDEXED, true, CMODE_FORMAT_32BIT_ABGR8888);
+		benchmark("swizzled 5551", TPSM_PIXEL_STORAGE_MODE_16BIT_ABGR5551, true, 0);
+		benchmark("8888", TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888, false, 0);
+		benchmark("DXT5", TPSM_PIXEL_STORAGE_MODE_DXT5, false, 0);
+	}
+
+	private static void compareAll(Random random) {
+		int errors = 0;
+		int comparisons = 0;
+		int[] sizes = { 1, 2, 4, 8, 16, 32, 64, 480, 512 };
+		for (int pixelFormat : pixelFormats) {
+			boolean isCompressed = pixelFormat >= TPSM_PIXEL_STORAGE_MODE_DXT1;
+			for (int swizzle = 0; swizzle < (isCompressed ? 1 : 2); swizzle++) {
+				for (int width : sizes) {
+					for (int bufferWidth : new int[] { width, width * 2, Math.max(width / 2, 1) }) {
+						int height = sizes[random.nextInt(sizes.length)];
+						if (isCompressed && (width < 4 || bufferWidth < 4)) {
+							continue;
+						}
+						for (int clutMode : clutModes) {
+							int clutStart = random.nextInt(2);
+							int clutShift = random.nextInt(2) * 4;
+							int clutMask = random.nextBoolean() ? 0xFF : 0x3F;
+							if (!compare(pixelFormat, swizzle != 0, width, height, bufferWidth, clutMode, clutStart, clutShift, clutMask)) {
+								errors++;
+							}
+							comparisons++;
+						}
+					}
+				}
+			}
+		}
+		System.out.println(String.format("%d comparisons, %d errors", comparisons, errors));
+	}
+
+	private static int[] readChain(int pixelFormat, boolean swizzle, int width, int height, int bufferWidth, int clutMode, int clutStart, int clutShift, int clutMask) {
+		IMemoryReader imageReader = ImageReader.getImageReader(IMAGE_ADDRESS, width, height, bufferWidth, pixelFormat, swizzle, CLUT_ADDRESS, clutMode, 32, clutStart, clutShift, clutMask, null, null);
+		int[] pixels = new int[Math.min(width, bufferWidth) * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = imageReader.readNext();
+		}
+
+		return pixels;
+	}
+
+	private static int[] readBulk(int pixelFormat, boolean swizzle, int width, int height, int bufferWidth, int clutMode, int clutStart, int clutShift, int clutMask) {
+		return ImageReader.readImage(IMAGE_ADDRESS, width, height, bufferWidth, pixelFormat, swizzle, CLUT_ADDRESS, clutMode, 32, clutStart, clutShift, clutMask, null, null);
+	}
+
+	private static boolean compare(int pixelFormat, boolean swizzle, int width, int height, int bufferWidth, int clutMode, int clutStart, int clutShift, int clutMask) {
+		int[] expected;
+		try {
+			expected = readChain(pixelFormat, swizzle, width, height, bufferWidth, clutMode, clutStart, clutShift, clutMask);
+		} catch (RuntimeException e) {
+			// Not supported by the chain of decoders (e.g. reading past the end of the swizzled blocks)
+			return true;
+		}
+		int[] pixels = readBulk(pixelFormat, swizzle, width, height, bufferWidth, clutMode, clutStart, clutShift, clutMask);
+
+		for (int i = 0; i < expected.length; i++) {
+			if (pixels[i] != expected[i]) {
+				System.out.println(String.format("FAILED: format %d, swizzle %b, width %d, height %d, bufferWidth %d, clutMode %d, pixel #%d: 0x%08X instead of 0x%08X", pixelFormat, swizzle, width, height, bufferWidth, clutMode, i, pixels[i], expected[i]));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void benchmark(String name, final int pixelFormat, final boolean swizzle, final int clutMode) {
+		final int width = 512;
+		final int height = 512;
+
+		IBenchmarkRun chain = new IBenchmarkRun() {
+			@Override
+			public long run() {
+				long checksum = 0L;
+				for (int i = 0; i < ITERATIONS; i++) {
+					checksum += readChain(pixelFormat, swizzle, width, height, width, clutMode, 0, 0, 0xFF)[i];
+				}
+				return checksum;
+			}
+		};
+
+		IBenchmarkRun bulk = new IBenchmarkRun() {
+			@Override
+			public long run() {
+				long checksum = 0L;
+				for (int i = 0; i < ITERATIONS; i++) {
+					checksum += readBulk(pixelFormat, swizzle, width, height, width, clutMode, 0, 0, 0xFF)[i];
+				}
+				return checksum;
+			}
+		};
+
+		double pixels = (double) width * height * ITERATIONS;
+		BenchmarkUtilities.compare(String.format("%s %dx%d", name, width, height), pixels, "pixels", "decoder chain", chain, "bulk decoding", bulk);
+	}
+}
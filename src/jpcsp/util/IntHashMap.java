@@ -0,0 +1,206 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A map with primitive int keys, using open addressing with linear probing.
+ *
+ * The lookups (get, containsKey) are not allocating any object,
+ * unlike a HashMap<Integer, V> boxing each key.
+ * The null value cannot be stored, it is used to mark the free slots.
+ *
+ * @param <V>  the type of the values
+ */
+public class IntHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private int[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	public IntHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IntHashMap(int expectedSize) {
+		int capacity = DEFAULT_CAPACITY;
+		// Keep the load factor at most 1/2
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private int getSlot(int key) {
+		// Spread the keys, as the UIDs are mostly consecutive values
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private int indexOf(int key) {
+		for (int i = getSlot(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+
+		return (V) values[index];
+	}
+
+	public boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("IntHashMap does not support null values");
+		}
+
+		int i = getSlot(key);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V oldValue = (V) values[i];
+				values[i] = value;
+				return oldValue;
+			}
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size * 2 > values.length) {
+			rehash(values.length << 1);
+		}
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+
+		V oldValue = (V) values[index];
+		size--;
+
+		// Shift back the following entries of the probe sequence
+		// instead of leaving a deleted marker in the slot.
+		int i = index;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int slot = getSlot(keys[j]);
+			// Move the entry j to the free slot i
+			// if its own slot is not between i (excluded) and j (included)
+			if (i <= j ? (slot <= i || slot > j) : (slot <= i && slot > j)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		values[i] = null;
+
+		return oldValue;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int j = getSlot(oldKeys[i]);
+				while (values[j] != null) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		if (size > 0) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = null;
+			}
+			size = 0;
+		}
+	}
+
+	/**
+	 * Return a copy of the values, in no particular order.
+	 * The map can be modified while iterating over the returned list.
+	 *
+	 * @return  the values stored in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> list = new ArrayList<V>(size);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				list.add((V) values[i]);
+			}
+		}
+
+		return list;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				if (s.length() > 1) {
+					s.append(", ");
+				}
+				s.append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		s.append('}');
+
+		return s.toString();
+	}
+}
@@ -35,6 +35,12 @@ public class LongLongKey {
 		shift = key.shift;
 	}
 
+	public void setKey(LongLongKey key) {
+		key1 = key.key1;
+		key2 = key.key2;
+		shift = key.shift;
+	}
+
 	public void reset() {
 		key1 = 0;
 		key2 = 0;
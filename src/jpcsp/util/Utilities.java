@@ -84,6 +84,7 @@ import jpcsp.filesystems.umdiso.UmdIsoFile;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.IntArrayMemory;
+import jpcsp.memory.MemoryPageTracker;
 import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.memory.mmio.MMIO;
@@ -1608,6 +1609,7 @@ public class Utilities {
 		// Optimize the most common case
     	if (RuntimeContext.hasMemoryInt(address)) {
     		System.arraycopy(a, offset, RuntimeContext.getMemoryInt(), (address.getAddress() & addressMask) >> 2, length4);
+    		MemoryPageTracker.write(address.getAddress(), length4 << 2);
     	} else {
 	    	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(address, length, 4);
 	    	for (int i = 0; i < length4; i++) {